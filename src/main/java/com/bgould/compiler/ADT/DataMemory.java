@@ -0,0 +1,241 @@
+package com.bgould.compiler.ADT;
+
+import java.util.Arrays;
+
+/**
+ * Execution-time copy of the values in a SymbolTable.
+ *
+ * Each symbol's value is stored in a primitive array slot at the same index the symbol has in the
+ * SymbolTable, so a running program can read and write values without boxing or casting. Values
+ * are copied out of a SymbolTable when the memory is created, and copied back with WriteBack once
+ * execution is finished.
+ *
+ * An array symbol's elements are held in one primitive array of their own, referenced from the
+ * symbol's slot of GetIntegerArrays or GetFloatArrays, so an element is read or written with a
+ * single array access.
+ */
+public class DataMemory {
+	/**
+	 * Creates a data memory holding the current value and data type of every symbol in the given
+	 * SymbolTable.
+	 *
+	 * @param s The SymbolTable to copy values from
+	 */
+	public DataMemory(SymbolTable s) {
+		size = s.Count();
+		ints = new int[size];
+		reals = new double[size];
+		strings = new String[size];
+		types = new char[size];
+		intArrays = new int[size][];
+		realArrays = new double[size][];
+
+		for (int i = 0; i < size; i++) {
+			types[i] = s.GetDataType(i);
+			switch (types[i]) {
+			case SymbolTable.INTEGER_TYPE:
+				ints[i] = s.GetInteger(i);
+				break;
+			case SymbolTable.REAL_TYPE:
+				reals[i] = s.GetFloat(i);
+				break;
+			case SymbolTable.STRING_TYPE:
+				strings[i] = s.GetString(i);
+				break;
+			case SymbolTable.INTEGER_ARRAY_TYPE:
+				intArrays[i] = s.GetIntegerArray(i).clone();
+				break;
+			case SymbolTable.REAL_ARRAY_TYPE:
+				realArrays[i] = s.GetFloatArray(i).clone();
+				break;
+			default:
+				throw new IllegalArgumentException("Symbol " + i + " has an invalid data type");
+			}
+		}
+	}
+
+	/**
+	 * Creates a data memory with the given number of slots, each holding the integer 0.
+	 *
+	 * @param size The number of slots
+	 */
+	public DataMemory(int size) {
+		this.size = size;
+		ints = new int[size];
+		reals = new double[size];
+		strings = new String[size];
+		types = new char[size];
+		intArrays = new int[size][];
+		realArrays = new double[size][];
+		Arrays.fill(types, SymbolTable.INTEGER_TYPE);
+	}
+
+	/**
+	 * Creates a data memory holding a copy of every slot of another.
+	 *
+	 * @param other The memory to copy
+	 */
+	public DataMemory(DataMemory other) {
+		size = other.size;
+		ints = other.ints.clone();
+		reals = other.reals.clone();
+		strings = other.strings.clone();
+		types = other.types.clone();
+		intArrays = new int[size][];
+		realArrays = new double[size][];
+		for (int i = 0; i < size; i++) {
+			if (other.intArrays[i] != null) {
+				intArrays[i] = other.intArrays[i].clone();
+			}
+			if (other.realArrays[i] != null) {
+				realArrays[i] = other.realArrays[i].clone();
+			}
+		}
+	}
+
+	/**
+	 * Overwrites every slot with the value and data type of the same slot in another memory,
+	 * without allocating unless an array differs in length.
+	 *
+	 * @param other A memory of the same size, such as the one this memory was copied from
+	 */
+	public void CopyFrom(DataMemory other) {
+		if (other.size != size) {
+			throw new IllegalArgumentException("Cannot copy a memory of a different size");
+		}
+		System.arraycopy(other.ints, 0, ints, 0, size);
+		System.arraycopy(other.reals, 0, reals, 0, size);
+		System.arraycopy(other.strings, 0, strings, 0, size);
+		System.arraycopy(other.types, 0, types, 0, size);
+		for (int i = 0; i < size; i++) {
+			intArrays[i] = copyInto(intArrays[i], other.intArrays[i]);
+			realArrays[i] = copyInto(realArrays[i], other.realArrays[i]);
+		}
+	}
+
+	// Copies an array's elements into another of the same length, which is only replaced if not
+	private static int[] copyInto(int[] to, int[] from) {
+		if (from == null) {
+			return null;
+		}
+		if (to == null || to.length != from.length) {
+			return from.clone();
+		}
+		System.arraycopy(from, 0, to, 0, from.length);
+		return to;
+	}
+
+	private static double[] copyInto(double[] to, double[] from) {
+		if (from == null) {
+			return null;
+		}
+		if (to == null || to.length != from.length) {
+			return from.clone();
+		}
+		System.arraycopy(from, 0, to, 0, from.length);
+		return to;
+	}
+
+	/**
+	 * Copies the value and data type of every slot back into the symbol at the same index of the
+	 * given SymbolTable. The usage of each symbol is left unchanged.
+	 *
+	 * @param s The SymbolTable this memory was created from
+	 */
+	public void WriteBack(SymbolTable s) {
+		for (int i = 0; i < size; i++) {
+			switch (types[i]) {
+			case SymbolTable.INTEGER_TYPE:
+				s.UpdateSymbol(i, s.GetUsage(i), ints[i]);
+				break;
+			case SymbolTable.REAL_TYPE:
+				s.UpdateSymbol(i, s.GetUsage(i), reals[i]);
+				break;
+			case SymbolTable.STRING_TYPE:
+				s.UpdateSymbol(i, s.GetUsage(i), strings[i]);
+				break;
+			case SymbolTable.INTEGER_ARRAY_TYPE:
+				s.UpdateSymbol(i, s.GetUsage(i), intArrays[i].clone());
+				break;
+			case SymbolTable.REAL_ARRAY_TYPE:
+				s.UpdateSymbol(i, s.GetUsage(i), realArrays[i].clone());
+				break;
+			default:
+				throw new IllegalStateException("Slot " + i + " has an invalid data type");
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of slots in this memory.
+	 *
+	 * @return The number of symbols copied into this memory
+	 */
+	public int Size() { return size; }
+
+	/**
+	 * Gets the integer slots of this memory. The array is live: writes to it change the memory.
+	 *
+	 * Only slots whose data type is SymbolTable.INTEGER_TYPE hold meaningful values. No type
+	 * checking is performed when the slots are read or written.
+	 *
+	 * @return The integer value of every slot, indexed by symbol
+	 */
+	public int[] GetIntegers() { return ints; }
+
+	/**
+	 * Gets the floating-point slots of this memory. The array is live: writes to it change the
+	 * memory.
+	 *
+	 * Only slots whose data type is SymbolTable.REAL_TYPE hold meaningful values.
+	 *
+	 * @return The floating-point value of every slot, indexed by symbol
+	 */
+	public double[] GetFloats() { return reals; }
+
+	/**
+	 * Gets the String slots of this memory. The array is live: writes to it change the memory.
+	 *
+	 * Only slots whose data type is SymbolTable.STRING_TYPE hold meaningful values.
+	 *
+	 * @return The String value of every slot, indexed by symbol
+	 */
+	public String[] GetStrings() { return strings; }
+
+	/**
+	 * Gets the integer array slots of this memory. Both the slots and the arrays they hold are
+	 * live: writes to them change the memory.
+	 *
+	 * Only slots whose data type is SymbolTable.INTEGER_ARRAY_TYPE hold an array; the rest are
+	 * null.
+	 *
+	 * @return The elements of every integer array, indexed by symbol
+	 */
+	public int[][] GetIntegerArrays() { return intArrays; }
+
+	/**
+	 * Gets the floating-point array slots of this memory. Both the slots and the arrays they hold
+	 * are live: writes to them change the memory.
+	 *
+	 * Only slots whose data type is SymbolTable.REAL_ARRAY_TYPE hold an array; the rest are null.
+	 *
+	 * @return The elements of every floating-point array, indexed by symbol
+	 */
+	public double[][] GetFloatArrays() { return realArrays; }
+
+	/**
+	 * Gets the data type of every slot in this memory. The array is live: a slot's data type must
+	 * be updated whenever a value of a different type is written to it.
+	 *
+	 * @return The data type of every slot, indexed by symbol
+	 */
+	public char[] GetDataTypes() { return types; }
+
+	private int size;              // number of slots in this memory
+	private int[] ints;            // integer values, indexed by symbol
+	private double[] reals;        // floating-point values, indexed by symbol
+	private String[] strings;      // String values, indexed by symbol
+	private char[] types;          // data type of the value currently held by each slot
+	private int[][] intArrays;     // elements of integer arrays, indexed by symbol
+	private double[][] realArrays; // elements of floating-point arrays, indexed by symbol
+}
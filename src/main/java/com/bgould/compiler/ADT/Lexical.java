@@ -1,6 +1,7 @@
 package com.bgould.compiler.ADT;
 
 import java.io.*;
+import java.util.ArrayList;
 
 /**
  * Lexical
@@ -15,11 +16,16 @@ public class Lexical {
 	private boolean EOF;             // End Of File indicator
 	private boolean echo;            // true means echo each input line
 	private boolean printToken;      // true to print found tokens here
-	private int lineCount;           // line #in file, for echo- ing
+	private int lineCount;           // line # in file, for echo-ing and LineNumber
 	private boolean needLine;        // track when to read a new line
+	private int tokenLine;           // line # of the token GetNextToken returned last
+	private boolean tokenEOF;        // End Of File indicator as of that token
+
+	// Tokens already read by PeekToken, which GetNextToken returns before reading any more
+	private ArrayList<token> lookahead = new ArrayList<>();
 
 	// Tables to hold the reserve words and the mnemonics for token codes
-	private final int sizeReserveTable = 50; // a few more than # reserves
+	private final int sizeReserveTable = 70; // a few more than # reserves
 	private ReserveTable reserveWords = new ReserveTable(sizeReserveTable);
 	private ReserveTable mnemonics = new ReserveTable(sizeReserveTable);
 
@@ -56,6 +62,7 @@ public class Lexical {
 			EOF = true;
 			e.printStackTrace();
 		}
+		tokenEOF = EOF;
 	}
 
 	/**
@@ -68,6 +75,9 @@ public class Lexical {
 		public int code;
 		// Chosen abbreviation for token
 		public String mnemonic;
+		// Line # the token was read from, and whether the file had ended once it was read
+		int line;
+		boolean atEOF;
 
 		token() {
 			lexeme = "";
@@ -84,8 +94,10 @@ public class Lexical {
 		return reserveWords.LookupCode(mnemonics.LookupName(mnemonic));
 	}
 
-	// Public access to the current End Of File status
-	public boolean EOF() { return EOF; }
+	// Public access to the End Of File status, as of the most recent token
+	public boolean EOF() { return tokenEOF; }
+	// Number of the line holding the most recent token, starting from 1
+	public int LineNumber() { return tokenLine; }
 	// DEBUG enabler, turns on/OFF token printing inside of GetNextToken
 	public void setPrintToken(boolean on) { printToken = on; }
 
@@ -122,6 +134,10 @@ public class Lexical {
 		reserveWords.Add("REAL", 23);
 		reserveWords.Add("STRING", 24);
 		reserveWords.Add("ARRAY", 25);
+		reserveWords.Add("CASE", 26);
+		reserveWords.Add("AND", 27);
+		reserveWords.Add("OR", 28);
+		reserveWords.Add("NOT", 29);
 
 		reserveWords.Add("/", 30);
 		reserveWords.Add("*", 31);
@@ -142,6 +158,17 @@ public class Lexical {
 		reserveWords.Add("]", 46);
 		reserveWords.Add(":", 47);
 		reserveWords.Add(".", 48);
+		reserveWords.Add("..", 49);
+
+		reserveWords.Add("ABS", 60);
+		reserveWords.Add("MIN", 61);
+		reserveWords.Add("MAX", 62);
+		reserveWords.Add("MOD", 63);
+		reserveWords.Add("POW", 64);
+		reserveWords.Add("SQRT", 65);
+		reserveWords.Add("FILL", 66);
+		reserveWords.Add("COPY", 67);
+		reserveWords.Add("SUMOF", 68);
 
 		reserveWords.Add("NOTFOUND", 99);
 	}
@@ -179,6 +206,10 @@ public class Lexical {
 		mnemonics.Add("DFPR", 23);
 		mnemonics.Add("STRR", 24);
 		mnemonics.Add("ARAY", 25);
+		mnemonics.Add("CASE", 26);
+		mnemonics.Add("AND_", 27);
+		mnemonics.Add("OR__", 28);
+		mnemonics.Add("NOT_", 29);
 
 		mnemonics.Add("DVDE", 30);
 		mnemonics.Add("MTPY", 31);
@@ -199,6 +230,17 @@ public class Lexical {
 		mnemonics.Add("RBKT", 46);
 		mnemonics.Add("COLN", 47);
 		mnemonics.Add("DOT_", 48);
+		mnemonics.Add("DDOT", 49);
+
+		mnemonics.Add("ABS_", 60);
+		mnemonics.Add("MIN_", 61);
+		mnemonics.Add("MAX_", 62);
+		mnemonics.Add("MOD_", 63);
+		mnemonics.Add("POW_", 64);
+		mnemonics.Add("SQRT", 65);
+		mnemonics.Add("FILL", 66);
+		mnemonics.Add("COPY", 67);
+		mnemonics.Add("SMOF", 68);
 
 		mnemonics.Add("IDNT", 50);
 		mnemonics.Add("INTV", 51);
@@ -248,9 +290,11 @@ public class Lexical {
 	private void GetNextLine() {
 		try {
 			line = bufferedreader.readLine();
-			if ((line != null) && (echo)) {
+			if (line != null) {
 				lineCount++;
-				System.out.println(String.format("%04d", lineCount) + " " + line);
+				if (echo) {
+					System.out.println(String.format("%04d", lineCount) + " " + line);
+				}
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -356,7 +400,9 @@ public class Lexical {
 		return currCh;
 	}
 
-	private boolean isPrefix(char ch) { return ((ch == ':') || (ch == '<') || (ch == '>')); }
+	private boolean isPrefix(char ch) {
+		return ((ch == ':') || (ch == '<') || (ch == '>') || (ch == '.'));
+	}
 	private boolean isStringStart(char ch) { return ch == '"'; }
 	// global char
 	char currCh;
@@ -425,8 +471,9 @@ public class Lexical {
 		}
 
 		// digits after decimal, before exponential
-		// only continue if we haven't already maxed out int places
-		if (currCh == '.' && !seenTruncationWarning) {
+		// only continue if we haven't already maxed out int places, and the dot does not start
+		// a subrange's ".."
+		if (currCh == '.' && PeekNextChar() != '.' && !seenTruncationWarning) {
 			result.lexeme += currCh;
 			result.code = FLOAT_CODE;
 			currCh = GetNextChar();
@@ -573,7 +620,33 @@ public class Lexical {
 		return result;
 	}
 
+	// Returns the next token, which may already have been read by PeekToken
 	public token GetNextToken() {
+		token result = lookahead.isEmpty() ? readToken() : lookahead.remove(0);
+		tokenLine = result.line;
+		tokenEOF = result.atEOF;
+
+		// Print result if needed
+		if (result.code != codeFor("UKWN")) {
+			if (printToken) {
+				System.out.println("\t" + result.mnemonic + " | \t" +
+				                   String.format("%04d", result.code) + " | \t" + result.lexeme);
+			}
+		}
+
+		return result;
+	}
+
+	// Returns a token after the one GetNextToken returned last, without moving past it. Ahead is
+	// 1 for the next token, 2 for the one after, and so on.
+	public token PeekToken(int ahead) {
+		while (lookahead.size() < ahead) {
+			lookahead.add(readToken());
+		}
+		return lookahead.get(ahead - 1);
+	}
+
+	private token readToken() {
 		token result = new token();
 		currCh = skipWhiteSpace();
 
@@ -593,14 +666,8 @@ public class Lexical {
 			result.code = codeFor("UKWN");
 			result.mnemonic = "UKWN";
 		}
-
-		// Print result if needed
-		if (result.code != codeFor("UKWN")) {
-			if (printToken) {
-				System.out.println("\t" + result.mnemonic + " | \t" +
-				                   String.format("%04d", result.code) + " | \t" + result.lexeme);
-			}
-		}
+		result.line = lineCount;
+		result.atEOF = EOF;
 
 		return result;
 	}
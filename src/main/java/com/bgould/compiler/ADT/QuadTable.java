@@ -7,7 +7,8 @@ import com.bgould.compiler.utils.StringUtils;
 /**
  * Data structure storing "assembly" operations.
  *
- * Each operation is stored as 4 integers, giving the name QuadTable.
+ * Each operation is stored as 4 integers, giving the name QuadTable. The number of the source line
+ * that generated each operation is kept alongside it, for reporting on the running program.
  */
 public class QuadTable {
 	/**
@@ -22,6 +23,7 @@ public class QuadTable {
 		// Initialize quads to all -1
 		this.quads = new int[maxSize][4];
 		Arrays.setAll(quads, i -> new int[] {-1, -1, -1, -1});
+		this.lines = new int[maxSize];
 	}
 
 	/**
@@ -43,12 +45,29 @@ public class QuadTable {
 	 * @param op3 Third operation argument
 	 */
 	public void AddQuad(int opCode, int op1, int op2, int op3) {
+		AddQuad(opCode, op1, op2, op3, 0);
+	}
+
+	/**
+	 * Adds a new row to this QuadTable at the first open slot, recording the source line that
+	 * generated it.
+	 *
+	 * If the QuadTable is already full, no modifications will be made to the table.
+	 *
+	 * @param opCode The code for operation type
+	 * @param op1 First operation argument
+	 * @param op2 Second operation argument
+	 * @param op3 Third operation argument
+	 * @param line Number of the source line the operation was generated from, or 0 if unknown
+	 */
+	public void AddQuad(int opCode, int op1, int op2, int op3, int line) {
 		// check if table is full
 		if (count >= maxSize)
 			return;
 
 		// add row
 		quads[count] = new int[] {opCode, op1, op2, op3};
+		lines[count] = line;
 		count++;
 	}
 
@@ -65,6 +84,26 @@ public class QuadTable {
 	 */
 	public int[] GetQuad(int index) { return quads[index]; }
 
+	/**
+	 * Gets the number of operations currently stored in this QuadTable.
+	 *
+	 * @return The number of rows that have been added to this QuadTable
+	 */
+	public int Count() { return count; }
+
+	/**
+	 * Gets the source line that generated the operation stored at the given index.
+	 *
+	 * @param index The location of the operation
+	 * @return The line number, or 0 if unknown or there is no operation at index
+	 */
+	public int GetLine(int index) {
+		if (count <= index || index < 0)
+			return 0;
+
+		return lines[index];
+	}
+
 	/**
 	 * Changes the jump value (op3) for the operation stored at the given index.
 	 *
@@ -83,6 +122,25 @@ public class QuadTable {
 		quads[index][3] = op3;
 	}
 
+	/**
+	 * Changes the second operand (op2) for the operation stored at the given index, such as the
+	 * frame size of a CALL generated before its callee's frame was complete.
+	 *
+	 * If there is no operation stored at the given index, or the index is out of range for this
+	 * QuadTable, then no modifications are made.
+	 *
+	 * @param index The location of the operation to update
+	 * @param op2 The new second operand
+	 */
+	public void UpdateOp2(int index, int op2) {
+		// check if there is an operation at the given index
+		if (count <= index || index < 0)
+			return;
+
+		// update operation
+		quads[index][2] = op2;
+	}
+
 	/**
 	 * Pretty prints the contents of the QuadTable. Empty rows are not printed.
 	 *
@@ -129,4 +187,5 @@ public class QuadTable {
 	private int maxSize;   // maximum number of operations that fit in this table
 	private int count;     // number of operations currently in this table
 	private int[][] quads; // list of operations stored in the table
+	private int[] lines;   // source line of each operation, or 0 if unknown
 }
@@ -1,6 +1,7 @@
 package com.bgould.compiler.ADT;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import com.bgould.compiler.utils.StringUtils;
 
@@ -11,9 +12,15 @@ public class SymbolTable {
 	public static final char LABEL_USAGE = 'L';
 	public static final char VARIABLE_USAGE = 'V';
 	public static final char CONSTANT_USAGE = 'C';
+	public static final char ROUTINE_USAGE = 'R'; // names a procedure, or holds a function result
 	public static final char INTEGER_TYPE = 'I';
 	public static final char REAL_TYPE = 'F';
 	public static final char STRING_TYPE = 'S';
+	public static final char INTEGER_ARRAY_TYPE = 'A'; // value is an int[]
+	public static final char REAL_ARRAY_TYPE = 'R';    // value is a double[]
+
+	// Elements of an array shown by toString before the rest are elided
+	private static final int SHOWN_ELEMENTS = 10;
 
 	private class Symbol<T> {
 		public Symbol(String indentifier, char usage, char dataType, T value) {
@@ -143,6 +150,70 @@ public class SymbolTable {
 		return count++;
 	}
 
+	/**
+	 * Appends an integer array symbol with the given usage to the SymbolTable. The array itself
+	 * becomes the symbol's value, and is not copied.
+	 *
+	 * If the given symbol is already in this SymbolTable (case-insensitive match), then no
+	 * modifications are made to the SymbolTable.
+	 *
+	 * If the SymbolTable is already full, then no modifications are made, and an error code is
+	 * returned.
+	 *
+	 * @param symbol The symbol to add to the table
+	 * @param usage The way the symbol is used in the program
+	 * @param value The elements stored in the symbol
+	 * @return If the symbol was successfully added, then the index it is now stored at.
+	 * 		   If the symbol was already present, then the index where it was found.
+	 * 		   If the SymbolTable was already full, then -1.
+	 */
+	public int AddSymbol(String symbol, char usage, int[] value) {
+		// check if symbol in table
+		int symIdx = LookupSymbol(symbol);
+		if (symIdx != -1)
+			return symIdx;
+
+		// check if table is full
+		if (count >= maxSize)
+			return -1;
+
+		// add symbol to table
+		symbols.add(new Symbol<int[]>(symbol, usage, INTEGER_ARRAY_TYPE, value));
+		return count++;
+	}
+
+	/**
+	 * Appends a floating-point array symbol with the given usage to the SymbolTable. The array
+	 * itself becomes the symbol's value, and is not copied.
+	 *
+	 * If the given symbol is already in this SymbolTable (case-insensitive match), then no
+	 * modifications are made to the SymbolTable.
+	 *
+	 * If the SymbolTable is already full, then no modifications are made, and an error code is
+	 * returned.
+	 *
+	 * @param symbol The symbol to add to the table
+	 * @param usage The way the symbol is used in the program
+	 * @param value The elements stored in the symbol
+	 * @return If the symbol was successfully added, then the index it is now stored at.
+	 * 		   If the symbol was already present, then the index where it was found.
+	 * 		   If the SymbolTable was already full, then -1.
+	 */
+	public int AddSymbol(String symbol, char usage, double[] value) {
+		// check if symbol in table
+		int symIdx = LookupSymbol(symbol);
+		if (symIdx != -1)
+			return symIdx;
+
+		// check if table is full
+		if (count >= maxSize)
+			return -1;
+
+		// add symbol to table
+		symbols.add(new Symbol<double[]>(symbol, usage, REAL_ARRAY_TYPE, value));
+		return count++;
+	}
+
 	/**
 	 * Finds a symbol in the SymbolTable (using case-insensitive search).
 	 *
@@ -160,6 +231,13 @@ public class SymbolTable {
 		return -1;
 	}
 
+	/**
+	 * Gets the number of symbols currently stored in this SymbolTable.
+	 *
+	 * @return The number of rows that have been added to this SymbolTable
+	 */
+	public int Count() { return count; }
+
 	/**
 	 * Gets the symbol representation of the symbol stored at the given index.
 	 *
@@ -256,6 +334,30 @@ public class SymbolTable {
 	// HACK: more specific exceptions
 	public double GetFloat(int index) { return (double) symbols.get(index).getValue(); }
 
+	/**
+	 * Gets the elements of the integer array symbol stored at the given index. The array is live:
+	 * writes to it change the symbol's value.
+	 *
+	 * If there is no symbol at the given index, or the symbol there is not an integer array, then
+	 * an exception may be thrown.
+	 *
+	 * @param index The location of the symbol to get
+	 * @return The elements of the corresponding symbol
+	 */
+	public int[] GetIntegerArray(int index) { return (int[]) symbols.get(index).getValue(); }
+
+	/**
+	 * Gets the elements of the floating-point array symbol stored at the given index. The array is
+	 * live: writes to it change the symbol's value.
+	 *
+	 * If there is no symbol at the given index, or the symbol there is not a floating-point array,
+	 * then an exception may be thrown.
+	 *
+	 * @param index The location of the symbol to get
+	 * @return The elements of the corresponding symbol
+	 */
+	public double[] GetFloatArray(int index) { return (double[]) symbols.get(index).getValue(); }
+
 	/**
 	 * Update the usage and value of the symbol at the given index.
 	 *
@@ -340,6 +442,54 @@ public class SymbolTable {
 		sym.setValue(value);
 	}
 
+	/**
+	 * Update the usage and value of the symbol at the given index to an integer array. The array
+	 * itself becomes the symbol's value, and is not copied.
+	 *
+	 * If there is no value at the given index, then no modifications to the SybmolTable are
+	 * performed.
+	 *
+	 * @param index The location of the sybmol to modify
+	 * @param usage The new usage code for the symbol
+	 * @param value The new elements to store in the symbol
+	 */
+	public void UpdateSymbol(int index, char usage, int[] value) {
+		// check if there is a symbol at the given index
+		if (count <= index || index < 0)
+			return;
+
+		// Update the symbol's information
+		@SuppressWarnings("unchecked")
+		Symbol<int[]> sym = (Symbol<int[]>) symbols.get(index);
+		sym.setUsage(usage);
+		sym.setDataType(INTEGER_ARRAY_TYPE);
+		sym.setValue(value);
+	}
+
+	/**
+	 * Update the usage and value of the symbol at the given index to a floating-point array. The
+	 * array itself becomes the symbol's value, and is not copied.
+	 *
+	 * If there is no value at the given index, then no modifications to the SybmolTable are
+	 * performed.
+	 *
+	 * @param index The location of the sybmol to modify
+	 * @param usage The new usage code for the symbol
+	 * @param value The new elements to store in the symbol
+	 */
+	public void UpdateSymbol(int index, char usage, double[] value) {
+		// check if there is a symbol at the given index
+		if (count <= index || index < 0)
+			return;
+
+		// Update the symbol's information
+		@SuppressWarnings("unchecked")
+		Symbol<double[]> sym = (Symbol<double[]>) symbols.get(index);
+		sym.setUsage(usage);
+		sym.setDataType(REAL_ARRAY_TYPE);
+		sym.setValue(value);
+	}
+
 	/**
 	 * Pretty prints the SymbolTable to a file. Empty rows are not printed.
 	 *
@@ -375,12 +525,35 @@ public class SymbolTable {
 			        StringUtils.PadToLength(sym.getIndentifier(), nameColLen) + "\t" +
 			        StringUtils.PadToLength(String.valueOf(sym.getUsage()), useColLen) + "\t" +
 			        StringUtils.PadToLength(String.valueOf(sym.getDataType()), typeColLen) + "\t" +
-			        sym.getValue();
+			        valueString(sym);
 		}
 
 		return repr;
 	}
 
+	// Shows an array as its length and first few elements, and any other value as is
+	private static String valueString(Symbol<?> sym) {
+		Object value = sym.getValue();
+		String elements;
+		int length;
+		if (value instanceof int[]) {
+			int[] ints = (int[]) value;
+			length = ints.length;
+			elements = Arrays.toString(Arrays.copyOf(ints, Math.min(length, SHOWN_ELEMENTS)));
+		} else if (value instanceof double[]) {
+			double[] reals = (double[]) value;
+			length = reals.length;
+			elements = Arrays.toString(Arrays.copyOf(reals, Math.min(length, SHOWN_ELEMENTS)));
+		} else {
+			return String.valueOf(value);
+		}
+
+		if (length > SHOWN_ELEMENTS) {
+			elements = elements.substring(0, elements.length() - 1) + ", ...]";
+		}
+		return "ARRAY[" + length + "] " + elements;
+	}
+
 	private int maxSize;                  // maximum symbols that fit in this table
 	private int count;                    // the number of symbols currently in this table
 	private ArrayList<Symbol<?>> symbols; // A list of symbols stored in the table
@@ -1,9 +1,22 @@
 package com.bgould.compiler.ADT;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.UUID;
 
+import com.bgould.compiler.BinaryTrace;
+import com.bgould.compiler.BytecodeCompiler;
+import com.bgould.compiler.CompileTimeEvaluator;
+import com.bgould.compiler.ExecutionContext;
 import com.bgould.compiler.Interpreter;
+import com.bgould.compiler.Profiler;
+import com.bgould.compiler.QuadOptimizer;
+import com.bgould.compiler.utils.BufferedPrintStream;
+import com.bgould.compiler.utils.IntInput;
 
 /**
  * Class performing CFG based syntactic parsing of source code
@@ -11,20 +24,33 @@ import com.bgould.compiler.Interpreter;
  */
 public class Syntactic {
 	private String filein;          // The full file path to input file
+	private String programName;     // Identifier given to the program by its UNIT statement
 	private SymbolTable symbolList; // Symbol table storing ident/const
 	private QuadTable quads;
 	private Interpreter interp;
 	private Lexical lex;         // Lexical analyzer
 	private Lexical.token token; // Next Token retrieved
 
-	private boolean traceon;   // Controls tracing mode
-	private int level = 0;     // Controls indent for trace mode
-	private boolean anyErrors; // Set TRUE if an error happens
+	private boolean traceon;       // Controls tracing mode
+	private int level = 0;         // Controls indent for trace mode
+	private boolean anyErrors;     // Set TRUE if an error happens
+	private boolean optimize;      // Set TRUE to fuse generated quads into superinstructions
+	private int precomputeBudget;  // Quads the compiler may run before the first READ, or 0
+	private String checkpointPath; // File to save checkpoints to while running, or null
+	private int traceRing;         // Executed quads kept in a binary trace, or 0 for none
+	private boolean profiling;     // Set TRUE to count executed quads in a profile
+	private int statementLine;     // Source line of the statement generating quads
 
 	private final int symbolSize = 250;
 	private final int quadsSize = 1000;
+	private final int arraySize = 1 << 24; // most elements one array may hold
+	private final int maxCaseTable = 256;  // most entries the jump table of one CASE may hold
+	private HashMap<Integer, Integer> lowerBounds = new HashMap<>(); // of each array, by symbol
 	private int Minus1Index;
+	private int Minus1RealIndex = -1; // added the first time a real is negated
 	private int Plus1Index;
+	private HashMap<String, Routine> routines = new HashMap<>(); // declared so far, by upper case
+	private Routine routine; // procedure or function being parsed, or null in the program's body
 
 	public Syntactic(String filename, boolean traceOn) {
 		filein = filename;
@@ -39,28 +65,84 @@ public class Syntactic {
 		lex = new Lexical(filein, symbolList, true);
 		lex.setPrintToken(traceOn);
 		anyErrors = false;
+		optimize = true;
+		precomputeBudget = 0;
 	}
 
+	/**
+	 * Selects the strategy the interpreter uses to execute the parsed program.
+	 *
+	 * @param engine The execution strategy to use
+	 */
+	public void setEngine(Interpreter.Engine engine) { interp.setEngine(engine); }
+
+	/**
+	 * Sets whether generated quads are rewritten to use fused superinstructions. On by default.
+	 *
+	 * @param optimize true to optimize generated quads
+	 */
+	public void setOptimize(boolean optimize) { this.optimize = optimize; }
+
+	/**
+	 * Sets how many quads compile may execute to run the part of the program before its first
+	 * READ, and replace it with the output and values it produces. Off by default, and skipped
+	 * when the program is profiled, traced or checkpointed, since those observe the quads that
+	 * evaluation would remove.
+	 *
+	 * @param budget Maximum number of quads to execute while compiling, or 0 to run the whole
+	 *        program at run time
+	 */
+	public void setPrecomputeBudget(int budget) { this.precomputeBudget = budget; }
+
+	/**
+	 * Makes parse run the program as an ExecutionContext that saves a checkpoint to the given file
+	 * at regular intervals, so it can be resumed with Main --resume.
+	 *
+	 * @param path File to save checkpoints to, or null to run without checkpoints
+	 */
+	public void setCheckpointing(String path) { this.checkpointPath = path; }
+
+	/**
+	 * Makes parse keep a binary trace of the last quads the program executes, with the values
+	 * they write, in a file ending in "TRACE.bin" that BinaryTrace decodes. The trace is written
+	 * even if the program fails.
+	 *
+	 * @param capacity Number of quads to keep, or 0 to run without a trace
+	 */
+	public void setTraceRing(int capacity) {
+		this.traceRing = capacity;
+		interp.setBinaryTrace(capacity, BinaryTrace.VALUES);
+	}
+
+	/**
+	 * Makes parse count how often each quad of the program executes, and write a report of the
+	 * hottest lines and loops to a file ending in "PROFILE.txt", and the counts as collapsed
+	 * stacks for flame graph tools to a file ending in "PROFILE.folded".
+	 *
+	 * @param profiling true to profile the program
+	 */
+	public void setProfiling(boolean profiling) { this.profiling = profiling; }
+
 	// The interface to the syntax analyzer, initiates parsing
 	// Uses variable RECUR to get return values throughout the non-terminal methods
 	public void parse() {
 		// Use source filename as pattern for symbol table and quad table output later
 		String filenameBase = filein.substring(0, filein.length() - 4);
 		System.out.println(filenameBase);
-		int recur = 0;
 
-		// prime the pump to get the first token to process
-		token = lex.GetNextToken();
-		// call PROGRAM
-		recur = Program();
+		compile();
 
-		// Done with recursion, so add the final STOP quad
-		quads.AddQuad(interp.opcodeFor("STOP"), 0, 0, 0);
 		// Print SymbolTable, QuadTable before execute
 		symbolList.PrintSymbolTable(filenameBase + "ST-before.txt");
 		quads.PrintQuadTable(filenameBase + "QUADS.txt");
 		// interpret
-		if (!anyErrors) {
+		if (!anyErrors && checkpointPath != null) {
+			runCheckpointed();
+		} else if (!anyErrors && profiling) {
+			runProfiled(filenameBase);
+		} else if (!anyErrors && traceRing > 0) {
+			interp.InterpretQuads(quads, symbolList, true, filenameBase + "TRACE.bin");
+		} else if (!anyErrors) {
 			interp.InterpretQuads(quads, symbolList, false, filenameBase + "TRACE.txt");
 		} else {
 			System.out.println("Errors, unable to run program.");
@@ -68,6 +150,98 @@ public class Syntactic {
 		symbolList.PrintSymbolTable(filenameBase + "ST-after.txt");
 	}
 
+	/**
+	 * Lexes and parses the source file, generating its quads, without running the program.
+	 *
+	 * @return true if the program compiled without errors
+	 */
+	public boolean compile() {
+		int recur = 0;
+
+		// prime the pump to get the first token to process
+		token = lex.GetNextToken();
+		// call PROGRAM
+		recur = Program();
+
+		// Done with recursion, so add the final STOP quad, on the line ending the program
+		statementLine = lex.LineNumber();
+		addQuad(interp.opcodeFor("STOP"), 0, 0, 0);
+
+		if (optimize && !anyErrors) {
+			quads = QuadOptimizer.fuseSuperinstructions(quads, symbolList);
+		}
+		boolean observed = profiling || traceRing > 0 || checkpointPath != null;
+		if (precomputeBudget > 0 && !observed && !anyErrors) {
+			quads = CompileTimeEvaluator.evaluate(quads, symbolList, precomputeBudget);
+		}
+		return !anyErrors;
+	}
+
+	/**
+	 * @return The instruction memory generated by compile
+	 */
+	public QuadTable getQuads() { return quads; }
+
+	/**
+	 * @return The data memory of the program, as compile left it
+	 */
+	public SymbolTable getSymbols() { return symbolList; }
+
+	/**
+	 * Writes the compiled program as a standalone JVM class named after the program, which can be
+	 * run without this compiler. Must be called after compile.
+	 *
+	 * @param path A directory to write the .class file to, or a file name ending in ".jar" to
+	 *     write a runnable jar to
+	 * @return true if the program was written, false if it could not be
+	 */
+	public boolean emit(String path) {
+		String className = (programName != null) ? programName : "Program";
+		byte[] classFile = BytecodeCompiler.compileStandalone(quads, symbolList, className);
+		if (classFile == null) {
+			System.out.println("ERROR: Program cannot be compiled to a standalone class");
+			return false;
+		}
+
+		try {
+			if (path.endsWith(".jar")) {
+				BytecodeCompiler.writeJar(path, className, classFile);
+			} else {
+				Files.write(Paths.get(path, className + ".class"), classFile);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+	// Runs the compiled program a slice at a time, saving checkpoints as it goes, with the same
+	// console as the interpreter
+	private void runCheckpointed() {
+		PrintStream out = new BufferedPrintStream(System.out);
+		ExecutionContext context = new ExecutionContext(quads, symbolList, out);
+		context.setCheckpointing(Paths.get(checkpointPath),
+		                         ExecutionContext.DEFAULT_CHECKPOINT_INTERVAL);
+		ExecutionContext.Status status = context.runToCompletion(IntInput.FromStream(System.in));
+		if (status == ExecutionContext.Status.FAILED) {
+			throw context.getError();
+		}
+	}
+
+	// Runs the compiled program with a profiler, writing its reports even if the program fails
+	private void runProfiled(String filenameBase) {
+		Profiler profiler = new Profiler(quads, (programName != null) ? programName : "Program");
+		interp.setProfiler(profiler);
+		try {
+			interp.InterpretQuads(quads, symbolList, false, filenameBase + "TRACE.txt");
+		} finally {
+			interp.setProfiler(null);
+			profiler.printReport(filenameBase + "PROFILE.txt");
+			profiler.printCollapsedStacks(filenameBase + "PROFILE.folded");
+		}
+	}
+
 	// Non Terminal PROGIDENTIFIER is fully implemented here, leave it as-is.
 	private int ProgIdentifier() {
 		int recur = 0;
@@ -79,6 +253,7 @@ public class Syntactic {
 		if (token.code == lex.codeFor("IDNT")) {
 			// Because this is the progIdentifier, it will get a 'P' type to prevent re-use as a var
 			symbolList.AddSymbol(token.lexeme, 'P', 0);
+			programName = token.lexeme;
 			// move on
 			token = lex.GetNextToken();
 		}
@@ -130,21 +305,38 @@ public class Syntactic {
 	}
 
 	/**
-	 * Parses the main body of a program.
-	 * Production rule: <block> -> {<variable-dec-sec>}* <block-body>
+	 * Parses the main body of a program, or the locals and body of a procedure or function.
+	 * Production rule: <block> -> {<variable-dec-sec> | <routine-declaration>}* <block-body>
+	 *
+	 * Routines can only be declared in the program's block. Their code comes first, and is
+	 * skipped over by a jump to the program's body.
 	 *
 	 * @return Unused for now
 	 */
 	private int Block() {
 		int recur = 0;
+		int skipQuad = -1; // jump over the routines, if there are any
 		if (anyErrors) {
 			return -1;
 		}
 		trace("Block", true);
 
-		// optional variable declaration section
-		while (token.code == lex.codeFor("VAR_")) {
-			recur = VariableDeclarationSection();
+		// optional variable declaration sections and routines
+		while (!anyErrors && (token.code == lex.codeFor("VAR_") ||
+		                      (routine == null && isRoutineStart(token)))) {
+			if (token.code == lex.codeFor("VAR_")) {
+				recur = VariableDeclarationSection();
+			} else {
+				if (skipQuad == -1) {
+					statementLine = lex.LineNumber();
+					skipQuad = quads.NextQuad();
+					addQuad(interp.opcodeFor("JMP"), 0, 0, 0); // destination set later
+				}
+				recur = RoutineDeclaration();
+			}
+		}
+		if (skipQuad != -1) {
+			quads.UpdateJump(skipQuad, quads.NextQuad());
 		}
 
 		// parse block body
@@ -181,7 +373,7 @@ public class Syntactic {
 	/**
 	 * Parses the identifier and type information of variable declarations
 	 * Production rule: <variable-declaration> -> {<identifier> {$COMMA <identifier>}* $COLON
-	 * <simple type> $SEMICOLON}+
+	 * (<simple type> | <array type>) $SEMICOLON}+
 	 *
 	 * @return Unused for now
 	 */
@@ -195,14 +387,14 @@ public class Syntactic {
 		do {
 			ArrayList<Integer> variableIdx = new ArrayList<>();
 			// Get list of identifiers to declare
-			variableIdx.add(symbolList.AddSymbol(
-				token.lexeme, 'V', 0)); // if not identifier, error will show in Identifier()
+			// if not identifier, error will show in Identifier()
+			variableIdx.add(symbolList.AddSymbol(scopedName(token.lexeme), 'V', 0));
 			Identifier();
 			while (token.code == lex.codeFor("COMA")) {
 				token = lex.GetNextToken();
 
 				// Add found identifier to symbol table.
-				variableIdx.add(symbolList.AddSymbol(token.lexeme, 'V', 0));
+				variableIdx.add(symbolList.AddSymbol(scopedName(token.lexeme), 'V', 0));
 
 				Identifier();
 			}
@@ -213,17 +405,26 @@ public class Syntactic {
 
 				// Update type of all symbols in this declaration
 				// Variables are int by default, only need to change type if double or string
-				if (token.code == lex.codeFor("DFPR")) {
-					for (int i : variableIdx) {
-						symbolList.UpdateSymbol(i, 'V', 0.0f);
-					}
-				} else if (token.code == lex.codeFor("STRR")) {
-					for (int i : variableIdx) {
-						symbolList.UpdateSymbol(i, 'V', "");
-					}
-				} // if token lexeme is unrecognized, SimpleType will output error
-
-				SimpleType();
+				if (routine != null && (token.code == lex.codeFor("ARAY") ||
+				                        token.code == lex.codeFor("STRR"))) {
+					// frames only save integers and reals
+					error(lex.reserveFor("INTR") + " or " + lex.reserveFor("DFPR") + " local",
+					      token.lexeme);
+				} else if (token.code == lex.codeFor("ARAY")) {
+					ArrayType(variableIdx);
+				} else {
+					if (token.code == lex.codeFor("DFPR")) {
+						for (int i : variableIdx) {
+							symbolList.UpdateSymbol(i, 'V', 0.0f);
+						}
+					} else if (token.code == lex.codeFor("STRR")) {
+						for (int i : variableIdx) {
+							symbolList.UpdateSymbol(i, 'V', "");
+						}
+					} // if token lexeme is unrecognized, SimpleType will output error
+
+					SimpleType();
+				}
 			} else {
 				error("':'", token.lexeme);
 			}
@@ -238,6 +439,166 @@ public class Syntactic {
 		return recur;
 	}
 
+	/**
+	 * Parses a procedure or function, and generates its body as a subroutine.
+	 * Production rule: <routine-declaration> -> ($PROCEDURE | $FUNCTION) <identifier>
+	 *                  [$LPAR <parameter-list> $RPAR] [$COLON <numeric type>] $SEMICOLON
+	 *                  <block> $SEMICOLON
+	 *
+	 * Only functions have a result type. Every symbol added while the routine is parsed, i.e. its
+	 * parameters, locals and temps, belongs to its frame, which CALL saves and RET restores, so
+	 * each activation of a recursive routine has values of its own. Arguments and results pass
+	 * through symbols outside the frame: the body starts by copying its arguments into its
+	 * parameters, and a function assigns its result to a local named after itself.
+	 *
+	 * @return Unused for now
+	 */
+	private int RoutineDeclaration() {
+		int recur = 0;
+		if (anyErrors) {
+			return -1;
+		}
+		trace("RoutineDeclaration", true);
+
+		boolean isFunction = token.code == lex.codeFor("FNCN");
+		statementLine = lex.LineNumber();
+		token = lex.GetNextToken();
+
+		String name = token.lexeme;
+		if (token.code != lex.codeFor("IDNT") || symbolList.LookupSymbol(name) != -1) {
+			error("new identifier", name);
+		}
+		token = lex.GetNextToken();
+
+		// optional parameters
+		ArrayList<String> names = new ArrayList<>();
+		ArrayList<Character> types = new ArrayList<>();
+		if (token.code == lex.codeFor("LFTP")) {
+			token = lex.GetNextToken();
+			ParameterList(names, types);
+			if (token.code == lex.codeFor("RITP")) {
+				token = lex.GetNextToken();
+			} else {
+				error("')'", token.lexeme);
+			}
+		}
+
+		char resultType = SymbolTable.INTEGER_TYPE;
+		if (isFunction) {
+			if (token.code == lex.codeFor("COLN")) {
+				token = lex.GetNextToken();
+				resultType = NumericType();
+			} else {
+				error("':'", token.lexeme);
+			}
+		}
+
+		if (token.code == lex.codeFor("SCLN")) {
+			token = lex.GetNextToken();
+		} else {
+			error("';'", token.lexeme);
+		}
+		if (anyErrors) {
+			trace("RoutineDeclaration", false);
+			return -1;
+		}
+
+		// symbols passing arguments and the result, outside the frame
+		Routine r = new Routine(name, isFunction);
+		r.symbol = addSymbol(name, SymbolTable.ROUTINE_USAGE, resultType);
+		for (int i = 0; i < names.size(); i++) {
+			r.arguments.add(addSymbol(name + "(" + names.get(i) + ")", SymbolTable.VARIABLE_USAGE,
+			                          types.get(i)));
+		}
+		routines.put(name.toUpperCase(), r);
+		routine = r;
+
+		// the frame, starting with the parameters and the local result
+		r.frameStart = symbolList.Count();
+		r.entry = quads.NextQuad();
+		for (int i = 0; i < names.size(); i++) {
+			int parameter = addSymbol(scopedName(names.get(i)), SymbolTable.VARIABLE_USAGE,
+			                          types.get(i));
+			emitMove(r.arguments.get(i), parameter);
+		}
+		if (isFunction) {
+			r.localResult = addSymbol(scopedName(name), SymbolTable.VARIABLE_USAGE, resultType);
+		}
+
+		recur = Block();
+
+		// falling off the end of the body returns
+		statementLine = lex.LineNumber();
+		emitReturn(r);
+		r.frameSize = symbolList.Count() - r.frameStart;
+		for (int call : r.recursiveCalls) {
+			quads.UpdateOp2(call, r.frameSize);
+		}
+		routine = null;
+
+		if (token.code == lex.codeFor("SCLN")) {
+			token = lex.GetNextToken();
+		} else {
+			error("';'", token.lexeme);
+		}
+
+		trace("RoutineDeclaration", false);
+		return recur;
+	}
+
+	/**
+	 * Parses the parameters of a procedure or function
+	 * Production rule: <parameter-list> -> <identifier> {$COMMA <identifier>}* $COLON
+	 *                  <numeric type> {$SEMICOLON <identifier> {$COMMA <identifier>}* $COLON
+	 *                  <numeric type>}*
+	 *
+	 * @param names Filled with the name of each parameter, in order
+	 * @param types Filled with the data type of each parameter, in order
+	 * @return Unused for now
+	 */
+	private int ParameterList(ArrayList<String> names, ArrayList<Character> types) {
+		int recur = 0;
+		if (anyErrors) {
+			return -1;
+		}
+		trace("ParameterList", true);
+
+		do {
+			if (names.size() > 0) {
+				token = lex.GetNextToken(); // skip the ';' between groups
+			}
+
+			// Get list of parameters sharing a type
+			int first = names.size();
+			do {
+				if (names.size() > first) {
+					token = lex.GetNextToken(); // skip the ','
+				}
+				if (token.code != lex.codeFor("IDNT") ||
+				    names.stream().anyMatch(token.lexeme::equalsIgnoreCase)) {
+					error("new identifier", token.lexeme);
+				}
+				names.add(token.lexeme);
+				token = lex.GetNextToken();
+			} while (!anyErrors && token.code == lex.codeFor("COMA"));
+
+			// Get their type
+			char type = SymbolTable.INTEGER_TYPE;
+			if (token.code == lex.codeFor("COLN")) {
+				token = lex.GetNextToken();
+				type = NumericType();
+			} else {
+				error("':'", token.lexeme);
+			}
+			while (types.size() < names.size()) {
+				types.add(type);
+			}
+		} while (!anyErrors && token.code == lex.codeFor("SCLN"));
+
+		trace("ParameterList", false);
+		return recur;
+	}
+
 	/**
 	 * Parse a block of statements
 	 * Production rule: $BEGIN <statement> {$SCOLN <statement>}* $END
@@ -292,7 +653,13 @@ public class Syntactic {
 	 *          $REPEAT <statement> $UNTIL <relexpression> |
 	 *          $FOR <variable> $ASSIGN <simple expression> $TO <simple expression> $DO <statement>
 	 * | $WRITELN $LPAR (<simple expression> | <identifier> | <stringconst> ) $RPAR | $READLN $LPAR
-	 * <identifier> $RPAR
+	 * <identifier> $RPAR |
+	 *          $FILL $LPAR <variable> $COMMA <simple expression> $RPAR |
+	 *          $COPY $LPAR <variable> $COMMA <variable> $RPAR |
+	 *          $CASE <simple expression> $OF <case arm> {$SCOLN <case arm>}* [$SCOLN]
+	 *              [$ELSE <statement> [$SCOLN]] $END |
+	 *          <routine call> |
+	 *          $RETURN
 	 *      ]+
 	 * }
 	 *
@@ -305,10 +672,15 @@ public class Syntactic {
 		}
 		trace("Statement", true);
 
+		// quads belong to the innermost statement, until it ends and its parent carries on
+		int parentLine = statementLine;
+		statementLine = lex.LineNumber();
 		boolean badStatement = false;
 
 		do {
-			if (token.code == lex.codeFor("IDNT")) { // assignment
+			if (token.code == lex.codeFor("IDNT") && isProcedure(token.lexeme)) { // call
+				recur = RoutineCall();
+			} else if (token.code == lex.codeFor("IDNT")) { // assignment
 				recur = handleAssignment();
 			} else if (token.code == lex.codeFor("BGIN")) { // block-body
 				recur = BlockBody();
@@ -320,10 +692,18 @@ public class Syntactic {
 				recur = handleRepeat();
 			} else if (token.code == lex.codeFor("FOR_")) { // for loop
 				recur = handleFor();
+			} else if (token.code == lex.codeFor("CASE")) { // case statement
+				recur = handleCase();
 			} else if (token.code == lex.codeFor("WTLN")) { // writeln statement
 				recur = handleWriteln();
 			} else if (token.code == lex.codeFor("RDLN")) { // readln statement
 				recur = handleReadln();
+			} else if (token.code == lex.codeFor("FILL")) { // array fill
+				recur = handleFill();
+			} else if (token.code == lex.codeFor("COPY")) { // array copy
+				recur = handleCopy();
+			} else if (token.code == lex.codeFor("RTRN")) { // return from a routine
+				recur = handleReturn();
 			} else {
 				error("Statement start", token.lexeme);
 			}
@@ -332,13 +712,15 @@ public class Syntactic {
 			badStatement = resynch();
 		} while (badStatement);
 
+		statementLine = parentLine;
 		trace("Statement", false);
 		return recur;
 	}
 
 	// Not a Non Terminal, but used to shorten Statement code body for readability.
-	//<variable> $COLON-EQUALS <simple expression>
+	//<variable> [<index>] $COLON-EQUALS <simple expression>
 	private int handleAssignment() {
+		int offset = 0;
 		if (anyErrors) {
 			return -1;
 		}
@@ -346,6 +728,9 @@ public class Syntactic {
 
 		// have ident already in order to get to here, handle as Variable
 		int varLoc = Variable(); // Variable moves ahead, next token ready
+		if (isArray(varLoc)) {
+			offset = ArrayIndex(varLoc);
+		}
 		if (token.code == lex.codeFor("DEFN")) {
 			int valLoc;
 			token = lex.GetNextToken();
@@ -357,7 +742,11 @@ public class Syntactic {
 			}
 
 			// Generate code
-			quads.AddQuad(interp.opcodeFor("MOV"), valLoc, 0, varLoc);
+			if (isArray(varLoc)) {
+				emitArrayWrite("STA", valLoc, offset, varLoc);
+			} else {
+				emitMove(valLoc, varLoc);
+			}
 		} else {
 			error(lex.reserveFor("DEFN"), token.lexeme);
 		}
@@ -367,7 +756,8 @@ public class Syntactic {
 	}
 
 	private int handleIf() {
-		int jumpQuad, elseQuad, elseJumpQuad, endQuad;
+		int elseQuad, elseJumpQuad, endQuad;
+		ArrayList<Integer> falseJumps;
 		if (anyErrors) {
 			return -1;
 		}
@@ -380,7 +770,7 @@ public class Syntactic {
 		token = lex.GetNextToken();
 
 		// Get conditional expression
-		jumpQuad = RelExpression();
+		falseJumps = RelExpression();
 
 		// Get mandatory THEN
 		if (token.code != lex.codeFor("THEN")) {
@@ -395,11 +785,11 @@ public class Syntactic {
 		if (token.code == lex.codeFor("ELSE")) {
 			// after executing if branch, jump over else
 			elseJumpQuad = quads.NextQuad();
-			quads.AddQuad(interp.opcodeFor("JMP"), 0, 0, 0);
+			addQuad(interp.opcodeFor("JMP"), 0, 0, 0);
 
 			// Save location for jump to else branch
 			elseQuad = quads.NextQuad();
-			quads.UpdateJump(jumpQuad, elseQuad);
+			backpatch(falseJumps, elseQuad);
 
 			token = lex.GetNextToken();
 			Statement();
@@ -410,15 +800,16 @@ public class Syntactic {
 		} else {
 			// save location for jump to end of statement
 			endQuad = quads.NextQuad();
-			quads.UpdateJump(jumpQuad, endQuad);
+			backpatch(falseJumps, endQuad);
 		}
 
 		trace("handleIf", false);
-		return jumpQuad;
+		return endQuad;
 	}
 
 	private int handleWhile() {
-		int jumpQuad, testQuad;
+		int testQuad;
+		ArrayList<Integer> falseJumps;
 		if (anyErrors) {
 			return -1;
 		}
@@ -432,7 +823,7 @@ public class Syntactic {
 
 		// Get conditional expression
 		testQuad = quads.NextQuad(); // quad location of test instruction
-		jumpQuad = RelExpression();
+		falseJumps = RelExpression();
 
 		// Get mandatory DO
 		if (token.code != lex.codeFor("DO__")) {
@@ -444,11 +835,11 @@ public class Syntactic {
 		Statement();
 
 		// Implement loop jumps
-		quads.AddQuad(interp.opcodeFor("JMP"), 0, 0, testQuad);
-		quads.UpdateJump(jumpQuad, quads.NextQuad());
+		addQuad(interp.opcodeFor("JMP"), 0, 0, testQuad);
+		backpatch(falseJumps, quads.NextQuad());
 
 		trace("handleWhile", false);
-		return jumpQuad;
+		return testQuad;
 	}
 
 	private int handleRepeat() {
@@ -465,6 +856,7 @@ public class Syntactic {
 		token = lex.GetNextToken();
 
 		// Get conditional statement
+		int loopStartQuad = quads.NextQuad();
 		recur = Statement();
 
 		// Get mandatory UNTIL
@@ -473,8 +865,8 @@ public class Syntactic {
 		}
 		token = lex.GetNextToken();
 
-		// Get conditional expression
-		recur = RelExpression();
+		// Get conditional expression, repeating the statement until it holds
+		backpatch(RelExpression(), loopStartQuad);
 
 		trace("handleRepeat", false);
 		return recur;
@@ -493,7 +885,13 @@ public class Syntactic {
 		}
 		token = lex.GetNextToken();
 
+		String counterName = token.lexeme;
 		counter = Variable();
+		if (isArray(counter)) {
+			error("scalar loop counter", counterName);
+		} else if (!anyErrors && symbolList.GetDataType(counter) != SymbolTable.INTEGER_TYPE) {
+			error("Integer loop counter", counterName);
+		}
 
 		if (token.code != lex.codeFor("DEFN")) {
 			error(lex.reserveFor("DEFN"), token.lexeme);
@@ -502,7 +900,7 @@ public class Syntactic {
 
 		startVal = SimpleExpression();
 
-		quads.AddQuad(interp.opcodeFor("MOV"), startVal, 0, counter);
+		emitMove(startVal, counter);
 
 		// Get FOR endpoint
 		if (token.code != lex.codeFor("TO__")) {
@@ -512,6 +910,15 @@ public class Syntactic {
 
 		endVal = SimpleExpression();
 
+		// The loop counts in integers, so a real endpoint is truncated once, before the loop
+		if (!anyErrors && isReal(endVal)) {
+			temp = GenSymbol(SymbolTable.INTEGER_TYPE);
+			addQuad(interp.opcodeFor("FTOI"), endVal, 0, temp);
+			endVal = temp;
+		} else if (!anyErrors && symbolList.GetDataType(endVal) != SymbolTable.INTEGER_TYPE) {
+			error("Integer endpoint", "a string");
+		}
+
 		// Get repeated statement
 		if (token.code != lex.codeFor("DO__")) {
 			error(lex.reserveFor("DO__"), token.lexeme);
@@ -522,18 +929,139 @@ public class Syntactic {
 
 		Statement();
 
-		// Increment counter
-		quads.AddQuad(interp.opcodeFor("ADD"), counter, Plus1Index, counter);
-
-		// Conditional jump to loop start
-		temp = GenSymbol();
-		quads.AddQuad(interp.opcodeFor("SUB"), endVal, counter, temp);
-		quads.AddQuad(interp.opcodeFor("JNN"), temp, 0, loopStartQuad);
+		// Increment counter and jump back to loop start, unless the loop failed to parse
+		if (!anyErrors) {
+			addQuad(interp.opcodeFor("ADD"), counter, Plus1Index, counter);
+			temp = GenSymbol(SymbolTable.INTEGER_TYPE);
+			addQuad(interp.opcodeFor("SUB"), endVal, counter, temp);
+			addQuad(interp.opcodeFor("JNN"), temp, 0, loopStartQuad);
+		}
 
 		trace("handleFor", false);
 		return counter;
 	}
 
+	/**
+	 * Parses a CASE statement. Its arms are generated first, each followed by a jump past the
+	 * statement, and the code choosing an arm comes after them all, once every label is known.
+	 * Labels are generated as a jump table if they are dense enough, so any arm is reached in a
+	 * constant number of quads, and otherwise as a binary search over the label ranges. A
+	 * selector matching no label runs the ELSE statement, or nothing if there is none.
+	 *
+	 * @return Location of the selector as an index into the symbol table
+	 */
+	private int handleCase() {
+		int selector, dispatchJump, otherwise;
+		ArrayList<int[]> labels = new ArrayList<>(); // {low, high, first quad of arm}
+		ArrayList<Integer> exits = new ArrayList<>(); // jumps to the end of the statement
+		if (anyErrors) {
+			return -1;
+		}
+		trace("handleCase", true);
+
+		// Get mandatory CASE
+		if (token.code != lex.codeFor("CASE")) {
+			error(lex.reserveFor("CASE"), token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		selector = SimpleExpression();
+		if (!anyErrors && symbolList.GetDataType(selector) != SymbolTable.INTEGER_TYPE) {
+			error("Integer selector", isReal(selector) ? "a real" : "a string");
+		}
+
+		// Jump over the arms to the dispatch code, which is generated last
+		dispatchJump = quads.NextQuad();
+		addQuad(interp.opcodeFor("JMP"), 0, 0, 0);
+
+		// Get mandatory OF
+		if (token.code != lex.codeFor("OF__")) {
+			error(lex.reserveFor("OF__"), token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		// Get arms, each separated by a semicolon, which may also follow the last one
+		CaseArm(labels, exits);
+		while (token.code == lex.codeFor("SCLN") && !anyErrors) {
+			token = lex.GetNextToken();
+			if (token.code == lex.codeFor("ELSE") || token.code == lex.codeFor("END_")) {
+				break;
+			}
+			CaseArm(labels, exits);
+		}
+
+		// Get optional ELSE
+		otherwise = -1; // the end of the statement
+		if (token.code == lex.codeFor("ELSE")) {
+			token = lex.GetNextToken();
+			otherwise = quads.NextQuad();
+			Statement();
+			exits.add(quads.NextQuad());
+			addQuad(interp.opcodeFor("JMP"), 0, 0, 0);
+			if (token.code == lex.codeFor("SCLN")) {
+				token = lex.GetNextToken();
+			}
+		}
+
+		// Get mandatory END
+		if (token.code != lex.codeFor("END_")) {
+			error(lex.reserveFor("END_"), token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		// Generate dispatch code, then send every jump to the end of the statement past it. The
+		// jumps are patched even after an error, so a bad CASE is skipped rather than left
+		// jumping to quad 0.
+		quads.UpdateJump(dispatchJump, quads.NextQuad());
+		ArrayList<int[]> ranges = sortCaseLabels(labels);
+		if (!anyErrors && !ranges.isEmpty()) {
+			emitCaseDispatch(selector, ranges, otherwise, exits);
+		}
+		for (int exit : exits) {
+			quads.UpdateJump(exit, quads.NextQuad());
+		}
+
+		trace("handleCase", false);
+		return selector;
+	}
+
+	/**
+	 * Parses one arm of a CASE statement, and generates its statement.
+	 * Production rule: <case arm> -> <case label> {$COMMA <case label>}* $COLON <statement>
+	 *
+	 * @param labels Receives {low, high, first quad of the arm} for every label of the arm
+	 * @param exits Receives the jump generated after the arm's statement
+	 * @return Location of the arm's first quad as an index into the quad table
+	 */
+	private int CaseArm(ArrayList<int[]> labels, ArrayList<Integer> exits) {
+		int arm = quads.NextQuad();
+		if (anyErrors) {
+			return -1;
+		}
+		trace("CaseArm", true);
+
+		int[] label = CaseLabel();
+		labels.add(new int[] {label[0], label[1], arm});
+		while (token.code == lex.codeFor("COMA") && !anyErrors) {
+			token = lex.GetNextToken();
+			label = CaseLabel();
+			labels.add(new int[] {label[0], label[1], arm});
+		}
+
+		// Get mandatory colon
+		if (token.code != lex.codeFor("COLN")) {
+			error(lex.reserveFor("COLN"), token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		Statement();
+		exits.add(quads.NextQuad());
+		addQuad(interp.opcodeFor("JMP"), 0, 0, 0);
+
+		trace("CaseArm", false);
+		return arm;
+	}
+
 	private int handleWriteln() {
 		int recur = 0;
 		int toprint = 0;
@@ -554,7 +1082,8 @@ public class Syntactic {
 		token = lex.GetNextToken();
 
 		// Get expression to write
-		if (isAddOp(token) || isNumber(token) || token.code == lex.codeFor("IDNT")) {
+		if (isAddOp(token) || isNumber(token) || token.code == lex.codeFor("IDNT") ||
+		    isFunction(token)) {
 			toprint = SimpleExpression();
 		} else if (token.code == lex.codeFor("STRV")) {
 			toprint = StringConst();
@@ -569,7 +1098,7 @@ public class Syntactic {
 		token = lex.GetNextToken();
 
 		// Generate print instruction
-		quads.AddQuad(interp.opcodeFor("PRINT"), 0, 0, toprint);
+		addQuad(interp.opcodeFor("PRINT"), 0, 0, toprint);
 
 		trace("handleWriteln", false);
 		return recur;
@@ -593,7 +1122,11 @@ public class Syntactic {
 		}
 		token = lex.GetNextToken();
 
+		String dstName = token.lexeme;
 		dst = Identifier();
+		if (isArray(dst)) {
+			error("scalar variable", dstName);
+		}
 
 		// Get command end
 		if (token.code != lex.codeFor("RITP")) {
@@ -601,51 +1134,167 @@ public class Syntactic {
 		}
 		token = lex.GetNextToken();
 
-		// Generate instructions
-		quads.AddQuad(interp.opcodeFor("READ"), 0, 0, dst);
+		// Generate instructions. READ only produces integers, so reals are read through a temp.
+		if (symbolList.GetDataType(dst) == SymbolTable.REAL_TYPE) {
+			int temp = GenSymbol(SymbolTable.INTEGER_TYPE);
+			addQuad(interp.opcodeFor("READ"), 0, 0, temp);
+			addQuad(interp.opcodeFor("ITOF"), temp, 0, dst);
+		} else {
+			addQuad(interp.opcodeFor("READ"), 0, 0, dst);
+		}
 
 		trace("handleReadln", false);
 		return dst;
 	}
 
-	/**
-	 * Syntactically parses a simple arithmetic expression.
-	 * Production rule: [<sign>] <term> {<addop> <term>}*
-	 *
-	 * @return Location of expression result as an index into the symbol table
-	 */
-	private int SimpleExpression() {
-		int left, right, signval, temp, opcode;
-		signval = 1;
+	// $RETURN, leaving the procedure or function being parsed
+	private int handleReturn() {
 		if (anyErrors) {
 			return -1;
 		}
-		trace("SimpleExpression", true);
+		trace("handleReturn", true);
 
-		// optional sign value
-		if (isAddOp(token)) {
-			signval = Sign();
+		if (routine == null) {
+			error("procedure or function body", token.lexeme);
+		} else {
+			emitReturn(routine);
 		}
+		token = lex.GetNextToken();
 
-		// mandatory term
-		left = Term();
-
-		if (signval == -1)
-			quads.AddQuad(interp.opcodeFor("MUL"), left, Minus1Index, left);
+		trace("handleReturn", false);
+		return 0;
+	}
 
-		// optional additional terms
-		while ((!anyErrors) && isAddOp(token)) {
-			opcode = AddOp();
-			right = Term();
+	// $FILL $LPAR <variable> $COMMA <simple expression> $RPAR, setting every element to the value
+	private int handleFill() {
+		int array, value;
+		if (anyErrors) {
+			return -1;
+		}
+		trace("handleFill", true);
 
-			// Generate code
-			temp = GenSymbol();
-			quads.AddQuad(opcode, left, right, temp);
-			left = temp; // iterative result becomes new LHS
+		// Get command start
+		if (token.code != lex.codeFor("FILL")) {
+			error(lex.reserveFor("FILL"), token.lexeme);
 		}
+		token = lex.GetNextToken();
 
-		trace("SimpleExpression", false);
-		return left;
+		if (token.code != lex.codeFor("LFTP")) {
+			error(lex.reserveFor("LFTP"), token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		array = ArrayVariable();
+
+		if (token.code != lex.codeFor("COMA")) {
+			error(lex.reserveFor("COMA"), token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		value = SimpleExpression();
+
+		// Get command end
+		if (token.code != lex.codeFor("RITP")) {
+			error(lex.reserveFor("RITP"), token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		// Generate code
+		emitArrayWrite("FILL", value, 0, array);
+
+		trace("handleFill", false);
+		return array;
+	}
+
+	// $COPY $LPAR <variable> $COMMA <variable> $RPAR, copying the first array into the second
+	private int handleCopy() {
+		int src, dst;
+		if (anyErrors) {
+			return -1;
+		}
+		trace("handleCopy", true);
+
+		// Get command start
+		if (token.code != lex.codeFor("COPY")) {
+			error(lex.reserveFor("COPY"), token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		if (token.code != lex.codeFor("LFTP")) {
+			error(lex.reserveFor("LFTP"), token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		src = ArrayVariable();
+
+		if (token.code != lex.codeFor("COMA")) {
+			error(lex.reserveFor("COMA"), token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		String dstName = token.lexeme;
+		dst = ArrayVariable();
+
+		// Get command end
+		if (token.code != lex.codeFor("RITP")) {
+			error(lex.reserveFor("RITP"), token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		// Generate code. Both arrays are checked here, so COPY never has to check them as it runs.
+		if (anyErrors) {
+			return -1;
+		}
+		char type = symbolList.GetDataType(src);
+		if (symbolList.GetDataType(dst) != type || arrayLength(dst) != arrayLength(src)) {
+			error("an array of the same type and length", dstName);
+		} else if (type == SymbolTable.REAL_ARRAY_TYPE) {
+			addQuad(interp.opcodeFor("COPYF"), src, 0, dst);
+		} else {
+			addQuad(interp.opcodeFor("COPY"), src, 0, dst);
+		}
+
+		trace("handleCopy", false);
+		return dst;
+	}
+
+	/**
+	 * Syntactically parses a simple arithmetic expression.
+	 * Production rule: [<sign>] <term> {<addop> <term>}*
+	 *
+	 * @return Location of expression result as an index into the symbol table
+	 */
+	private int SimpleExpression() {
+		int left, right, signval, opcode;
+		signval = 1;
+		if (anyErrors) {
+			return -1;
+		}
+		trace("SimpleExpression", true);
+
+		// optional sign value
+		if (isAddOp(token)) {
+			signval = Sign();
+		}
+
+		// mandatory term
+		left = Term();
+
+		if (signval == -1 && !anyErrors) {
+			left = emitNegate(left);
+		}
+
+		// optional additional terms
+		while ((!anyErrors) && isAddOp(token)) {
+			opcode = AddOp();
+			right = Term();
+
+			// Generate code, iterative result becomes new LHS
+			left = emitArithmetic(opcode, left, right);
+		}
+
+		trace("SimpleExpression", false);
+		return left;
 	}
 
 	/**
@@ -655,7 +1304,7 @@ public class Syntactic {
 	 * @return Location of expression result as an index into the symbol table
 	 */
 	private int Term() {
-		int left, right, temp, opcode;
+		int left, right, opcode;
 		if (anyErrors) {
 			return -1;
 		}
@@ -669,10 +1318,8 @@ public class Syntactic {
 			opcode = MulOp();
 			right = Factor();
 
-			// Generate code
-			temp = GenSymbol();
-			quads.AddQuad(opcode, left, right, temp);
-			left = temp; // iterative result becomes new LHS
+			// Generate code, iterative result becomes new LHS
+			left = emitArithmetic(opcode, left, right);
 		}
 
 		trace("Term", false);
@@ -681,7 +1328,8 @@ public class Syntactic {
 
 	/**
 	 * Syntactically parses a factor in an arithmetic expression
-	 * Production rule: <unsigned constant> | <variable> | $LPAR <simple expression> $RPAR
+	 * Production rule: <unsigned constant> | <variable> [<index>] | <function call> |
+	 *                  <routine call> | $LPAR <simple expression> $RPAR
 	 *
 	 * @return Location of expression result as an index into the symbol table
 	 */
@@ -694,8 +1342,19 @@ public class Syntactic {
 
 		if (isNumber(token)) { // some constant
 			ret = UnsignedConstant();
+		} else if (token.code == lex.codeFor("IDNT") && calledRoutine(token.lexeme) != null) {
+			String name = token.lexeme; // a declared function
+			ret = RoutineCall();
+			if (ret == -1 && !anyErrors) {
+				error("function", name);
+			}
 		} else if (token.code == lex.codeFor("IDNT")) { // some variable
 			ret = Variable();
+			if (isArray(ret)) { // or one of its elements
+				ret = emitArrayRead(ret, ArrayIndex(ret));
+			}
+		} else if (isFunction(token)) { // built-in function
+			ret = FunctionCall();
 		} else if (token.code == lex.codeFor("LFTP")) { // nested expression
 			token = lex.GetNextToken();
 
@@ -707,7 +1366,7 @@ public class Syntactic {
 				error("')'", token.lexeme);
 			}
 		} else {
-			error("Constant, Variable, or '('", token.lexeme);
+			error("Constant, Variable, Function, or '('", token.lexeme);
 		}
 
 		trace("Factor", false);
@@ -715,32 +1374,236 @@ public class Syntactic {
 	}
 
 	/**
-	 * Parses a single relative / conditional expression.
-	 * Production rule: <relexpression> -> <simple expression> <relop> <simple expression>
+	 * Parses a call to a built-in function, which is generated as a single quad.
+	 * Production rule: <function call> -> <function name> $LPAR (<simple expression>
+	 *                  [$COMMA <simple expression>] | <variable>) $RPAR
 	 *
-	 * Also generates a quad to jump to the false branch of a relative expression.
+	 * ABS and SQRT take one argument, MIN, MAX, MOD and POW take two, and SUMOF takes an array.
 	 *
-	 * @return Location of jump quad as an index into the quad table
+	 * @return Location of function result as an index into the symbol table
 	 */
-	private int RelExpression() {
-		int left, right, saveRelop, ret, temp;
+	private int FunctionCall() {
+		int left, right, ret;
+		String function;
 		if (anyErrors) {
 			return -1;
 		}
-		trace("RelExpression", true);
+		trace("FunctionCall", true);
 
-		// Parse expression
-		left = SimpleExpression();
-		saveRelop = RelOp();
-		right = SimpleExpression();
+		function = token.mnemonic;
+		left = -1;
+		right = -1;
+		token = lex.GetNextToken();
 
-		// Generate code
-		temp = GenSymbol();
-		quads.AddQuad(interp.opcodeFor("SUB"), left, right, temp);
-		ret = quads.NextQuad();
-		quads.AddQuad(RelopToOpcode(saveRelop), temp, 0, 0); // jump destination set later
+		if (token.code == lex.codeFor("LFTP")) {
+			token = lex.GetNextToken();
+			if (function.equals("SMOF")) {
+				left = ArrayVariable();
+			} else {
+				left = SimpleExpression();
+			}
+
+			if (!function.equals("ABS_") && !function.equals("SQRT") && !function.equals("SMOF")) {
+				if (token.code == lex.codeFor("COMA")) {
+					token = lex.GetNextToken();
+					right = SimpleExpression();
+				} else {
+					error("','", token.lexeme);
+				}
+			}
+
+			if (token.code == lex.codeFor("RITP")) {
+				token = lex.GetNextToken();
+			} else {
+				error("')'", token.lexeme);
+			}
+		} else {
+			error("'('", token.lexeme);
+		}
+
+		ret = emitIntrinsic(function, left, right);
+
+		trace("FunctionCall", false);
+		return ret;
+	}
+
+	/**
+	 * Parses a call to a declared procedure or function.
+	 * Production rule: <routine call> -> <identifier> [$LPAR <simple expression>
+	 *                  {$COMMA <simple expression>}* $RPAR]
+	 *
+	 * @return Location of function result as an index into the symbol table, or -1 for a
+	 *         procedure
+	 */
+	private int RoutineCall() {
+		int ret;
+		if (anyErrors) {
+			return -1;
+		}
+		trace("RoutineCall", true);
+
+		Routine callee = calledRoutine(token.lexeme);
+		token = lex.GetNextToken();
+
+		// optional arguments
+		ArrayList<Integer> arguments = new ArrayList<>();
+		if (token.code == lex.codeFor("LFTP")) {
+			do {
+				token = lex.GetNextToken();
+				arguments.add(SimpleExpression());
+			} while (!anyErrors && token.code == lex.codeFor("COMA"));
+
+			if (token.code == lex.codeFor("RITP")) {
+				token = lex.GetNextToken();
+			} else {
+				error("')'", token.lexeme);
+			}
+		}
+
+		ret = emitCall(callee, arguments);
+
+		trace("RoutineCall", false);
+		return ret;
+	}
+
+	/**
+	 * Parses a condition, made of relative expressions joined by OR, AND and NOT, which bind in
+	 * increasing order of precedence.
+	 * Production rule: <relexpression> -> <relterm> {$OR <relterm>}*
+	 *
+	 * Generates code that falls through to the quads after it if the condition holds, and
+	 * otherwise jumps to the false branch, once the caller patches the jumps returned. Conditions
+	 * are short-circuited: each relative expression jumps as soon as the outcome is known, so the
+	 * rest are never evaluated, and no temps hold the truth of any part of the condition.
+	 *
+	 * @return Locations of the jumps to the false branch, as indexes into the quad table
+	 */
+	private ArrayList<Integer> RelExpression() {
+		if (anyErrors) {
+			return new ArrayList<>();
+		}
+		trace("RelExpression", true);
+
+		Condition condition = RelDisjunction();
+		emitTest(condition, false);
+		backpatch(condition.trueJumps, quads.NextQuad());
 
 		trace("RelExpression", false);
+		return condition.falseJumps;
+	}
+
+	/**
+	 * Parses the relative terms of a <relexpression>, of which any one must hold, for a whole
+	 * condition or one grouped in parentheses.
+	 *
+	 * @return The condition, whose last test is left for the caller to generate
+	 */
+	private Condition RelDisjunction() {
+		if (anyErrors) {
+			return new Condition();
+		}
+		trace("RelDisjunction", true);
+
+		Condition left = RelTerm();
+
+		// if any term holds, so does the condition; otherwise try the next
+		while (token.code == lex.codeFor("OR__") && !anyErrors) {
+			token = lex.GetNextToken();
+			emitTest(left, true);
+			backpatch(left.falseJumps, quads.NextQuad());
+
+			Condition right = RelTerm();
+			right.trueJumps.addAll(left.trueJumps);
+			left = right;
+		}
+
+		trace("RelDisjunction", false);
+		return left;
+	}
+
+	/**
+	 * Parses relative expressions which must all hold.
+	 * Production rule: <relterm> -> <relfactor> {$AND <relfactor>}*
+	 *
+	 * @return The condition, whose last test is left for the caller to generate
+	 */
+	private Condition RelTerm() {
+		if (anyErrors) {
+			return new Condition();
+		}
+		trace("RelTerm", true);
+
+		Condition left = RelFactor();
+
+		// if any factor fails, so does the term; otherwise test the next
+		while (token.code == lex.codeFor("AND_") && !anyErrors) {
+			token = lex.GetNextToken();
+			emitTest(left, false);
+			backpatch(left.trueJumps, quads.NextQuad());
+
+			Condition right = RelFactor();
+			right.falseJumps.addAll(left.falseJumps);
+			left = right;
+		}
+
+		trace("RelTerm", false);
+		return left;
+	}
+
+	/**
+	 * Parses a single relative expression, a condition grouped in parentheses, or the negation of
+	 * either. Negating generates no code, since it only swaps which way the jumps testing the
+	 * expression go. A $LPAR may also start the arithmetic expression being compared, so it only
+	 * starts a grouped condition if a relop, AND, OR or NOT comes before its matching $RPAR.
+	 * Production rule: <relfactor> -> $NOT <relfactor> | $LPAR <relexpression> $RPAR |
+	 *                                 <simple expression> <relop> <simple expression>
+	 *
+	 * @return The condition, whose last test is left for the caller to generate
+	 */
+	private Condition RelFactor() {
+		Condition ret = new Condition();
+		int left, right;
+		if (anyErrors) {
+			return ret;
+		}
+		trace("RelFactor", true);
+
+		if (token.code == lex.codeFor("NOT_")) {
+			token = lex.GetNextToken();
+			ret = RelFactor();
+
+			ArrayList<Integer> trueJumps = ret.trueJumps;
+			ret.trueJumps = ret.falseJumps;
+			ret.falseJumps = trueJumps;
+			ret.negated = !ret.negated;
+		} else if (token.code == lex.codeFor("LFTP") && isGroupedCondition()) {
+			token = lex.GetNextToken();
+			ret = RelDisjunction();
+			if (token.code == lex.codeFor("RITP")) {
+				token = lex.GetNextToken();
+			} else {
+				error("')'", token.lexeme);
+			}
+		} else {
+			// Parse expression
+			left = SimpleExpression();
+			ret.relop = RelOp();
+			right = SimpleExpression();
+
+			// Generate code. Reals are compared with CMPF, which gives an integer of the same sign
+			// as their difference, so both kinds of comparison can share the integer jumps.
+			if (anyErrors) {
+				return ret;
+			}
+			ret.temp = GenSymbol(SymbolTable.INTEGER_TYPE);
+			if (isReal(left) || isReal(right)) {
+				addQuad(interp.opcodeFor("CMPF"), toReal(left), toReal(right), ret.temp);
+			} else {
+				addQuad(interp.opcodeFor("SUB"), left, right, ret.temp);
+			}
+		}
+
+		trace("RelFactor", false);
 		return ret;
 	}
 
@@ -759,10 +1622,12 @@ public class Syntactic {
 
 		if ((token.code == lex.codeFor("IDNT"))) {
 			// bookkeeping and move on
-			recur = symbolList.LookupSymbol(token.lexeme);
+			recur = lookupVariable(token.lexeme);
 			if (recur == -1) {
 				System.out.println("ERROR: Undeclared identifier " + token.lexeme);
 				recur = symbolList.AddSymbol(token.lexeme, SymbolTable.VARIABLE_USAGE, 0);
+			} else if (symbolList.GetUsage(recur) == SymbolTable.ROUTINE_USAGE) {
+				error("Variable", token.lexeme);
 			}
 			token = lex.GetNextToken();
 		} else {
@@ -790,9 +1655,11 @@ public class Syntactic {
 			error("identifier", token.lexeme);
 		}
 
-		ret = symbolList.LookupSymbol(token.lexeme);
+		ret = lookupVariable(token.lexeme);
 		if (ret == -1) {
 			ret = symbolList.AddSymbol(token.lexeme, SymbolTable.VARIABLE_USAGE, 0);
+		} else if (symbolList.GetUsage(ret) == SymbolTable.ROUTINE_USAGE) {
+			error("identifier", token.lexeme);
 		}
 
 		token = lex.GetNextToken();
@@ -826,6 +1693,230 @@ public class Syntactic {
 		return recur;
 	}
 
+	// Parses the type of a parameter or function result, which frames can only save if numeric
+	private char NumericType() {
+		char type = SymbolTable.INTEGER_TYPE;
+		if (token.code == lex.codeFor("DFPR")) {
+			type = SymbolTable.REAL_TYPE;
+		} else if (token.code != lex.codeFor("INTR")) {
+			error(lex.reserveFor("INTR") + " or " + lex.reserveFor("DFPR"), token.lexeme);
+		}
+		token = lex.GetNextToken();
+		return type;
+	}
+
+	/**
+	 * Parses the bounds and element type of an array declaration, and gives each declared variable
+	 * its own contiguous storage for the elements.
+	 * Production rule: <array type> -> $ARRAY $LBKT <bound> $DOTDOT <bound> $RBKT $OF
+	 *                  ($INTEGER | $FLOAT)
+	 *
+	 * @param variables Indexes of the declared variables in the symbol table
+	 * @return Unused for now
+	 */
+	private int ArrayType(ArrayList<Integer> variables) {
+		int recur = 0;
+		int low, high;
+		if (anyErrors) {
+			return -1;
+		}
+		trace("ArrayType", true);
+
+		if (token.code != lex.codeFor("ARAY")) {
+			error(lex.reserveFor("ARAY"), token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		// Get bounds
+		if (token.code != lex.codeFor("LBKT")) {
+			error("'['", token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		low = ArrayBound();
+
+		if (token.code != lex.codeFor("DDOT")) {
+			error("'..'", token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		high = ArrayBound();
+
+		if (token.code != lex.codeFor("RBKT")) {
+			error("']'", token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		// Get element type
+		if (token.code != lex.codeFor("OF__")) {
+			error(lex.reserveFor("OF__"), token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		// Each array is one primitive array, indexed from 0 once the lower bound is subtracted
+		long length = (long) high - low + 1;
+		if (anyErrors) {
+			return -1;
+		} else if (length < 1 || length > arraySize) {
+			error("between 1 and " + arraySize + " elements", length + " elements");
+		} else if (token.code == lex.codeFor("INTR")) {
+			for (int i : variables) {
+				symbolList.UpdateSymbol(i, 'V', new int[(int) length]);
+				lowerBounds.put(i, low);
+			}
+		} else if (token.code == lex.codeFor("DFPR")) {
+			for (int i : variables) {
+				symbolList.UpdateSymbol(i, 'V', new double[(int) length]);
+				lowerBounds.put(i, low);
+			}
+		} else {
+			error(lex.reserveFor("INTR") + " or " + lex.reserveFor("DFPR"), token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		trace("ArrayType", false);
+		return recur;
+	}
+
+	/**
+	 * Parses one bound of an array declaration
+	 * Production rule: <bound> -> [<sign>] $INTEGER
+	 *
+	 * @return Value of the bound
+	 */
+	private int ArrayBound() {
+		int ret = 0;
+		int signval = 1;
+		if (anyErrors) {
+			return 0;
+		}
+		trace("ArrayBound", true);
+
+		if (isAddOp(token)) {
+			signval = Sign();
+		}
+
+		if (token.code == lex.codeFor("INTV")) {
+			ret = signval * Integer.parseInt(token.lexeme);
+		} else {
+			error("Integer bound", token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		trace("ArrayBound", false);
+		return ret;
+	}
+
+	/**
+	 * Parses a label of a CASE arm, which is a single value or an inclusive range of values.
+	 * Production rule: <case label> -> <case constant> [$DDOT <case constant>]
+	 *
+	 * @return {low, high}, the lowest and highest values the label matches
+	 */
+	private int[] CaseLabel() {
+		int[] ret = new int[2];
+		if (anyErrors) {
+			return ret;
+		}
+		trace("CaseLabel", true);
+
+		ret[0] = CaseConstant();
+		ret[1] = ret[0];
+		if (token.code == lex.codeFor("DDOT")) {
+			token = lex.GetNextToken();
+			ret[1] = CaseConstant();
+			if (ret[1] < ret[0]) {
+				error("Ascending label range", ret[0] + ".." + ret[1]);
+			}
+		}
+
+		trace("CaseLabel", false);
+		return ret;
+	}
+
+	/**
+	 * Parses one value of a CASE label.
+	 * Production rule: <case constant> -> [<sign>] $INTEGER
+	 *
+	 * @return Value of the constant
+	 */
+	private int CaseConstant() {
+		int ret = 0;
+		int signval = 1;
+		if (anyErrors) {
+			return 0;
+		}
+		trace("CaseConstant", true);
+
+		if (isAddOp(token)) {
+			signval = Sign();
+		}
+
+		if (token.code == lex.codeFor("INTV")) {
+			ret = signval * Integer.parseInt(token.lexeme);
+		} else {
+			error("Integer label", token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		trace("CaseConstant", false);
+		return ret;
+	}
+
+	/**
+	 * Parses the index of an array element, and generates code to turn it into the element's
+	 * offset from the start of the array.
+	 * Production rule: <index> -> $LBKT <simple expression> $RBKT
+	 *
+	 * @param array Index of the array in the symbol table
+	 * @return Location of the offset as an index into the symbol table
+	 */
+	private int ArrayIndex(int array) {
+		int ret = 0;
+		if (anyErrors) {
+			return -1;
+		}
+		trace("ArrayIndex", true);
+
+		if (token.code != lex.codeFor("LBKT")) {
+			error("'['", token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		ret = SimpleExpression();
+
+		if (token.code != lex.codeFor("RBKT")) {
+			error("']'", token.lexeme);
+		}
+		token = lex.GetNextToken();
+
+		// Generate code. Indexes outside the bounds are caught by the JVM as the quad runs.
+		if (anyErrors) {
+			return -1;
+		}
+		int low = lowerBounds.get(array);
+		if (symbolList.GetDataType(ret) != SymbolTable.INTEGER_TYPE) {
+			error("Integer index", isReal(ret) ? "a real" : "a string");
+		} else if (isLiteral(ret)) {
+			ret = constantFor(symbolList.GetInteger(ret) - low); // offset known while compiling
+		} else if (low != 0) {
+			ret = emitArithmetic(interp.opcodeFor("SUB"), ret, constantFor(low));
+		}
+
+		trace("ArrayIndex", false);
+		return ret;
+	}
+
+	// Parses a variable that must name a whole array, as taken by FILL, COPY and SUMOF
+	private int ArrayVariable() {
+		String name = token.lexeme;
+		int ret = Variable();
+		if (!anyErrors && !isArray(ret)) {
+			error("array", name);
+		}
+		return ret;
+	}
+
 	/**
 	 * Syntactically parses an unsigned constant in an arithmetic expression
 	 * Production rule: <unsigned number>
@@ -864,12 +1955,21 @@ public class Syntactic {
 		}
 
 		// Generate code
-		int val = Integer.parseInt(token.lexeme); // NOTE: assumed that only integer math is used
 		ret = symbolList.LookupSymbol(token.lexeme);
-		if (ret == -1) {
-			ret = symbolList.AddSymbol(token.lexeme, SymbolTable.VARIABLE_USAGE, val);
+		if (token.code == lex.codeFor("DFPV")) {
+			double val = Double.parseDouble(token.lexeme);
+			if (ret == -1) {
+				ret = symbolList.AddSymbol(token.lexeme, SymbolTable.VARIABLE_USAGE, val);
+			} else {
+				symbolList.UpdateSymbol(ret, SymbolTable.VARIABLE_USAGE, val);
+			}
 		} else {
-			symbolList.UpdateSymbol(ret, SymbolTable.VARIABLE_USAGE, val);
+			int val = Integer.parseInt(token.lexeme);
+			if (ret == -1) {
+				ret = symbolList.AddSymbol(token.lexeme, SymbolTable.VARIABLE_USAGE, val);
+			} else {
+				symbolList.UpdateSymbol(ret, SymbolTable.VARIABLE_USAGE, val);
+			}
 		}
 
 		token = lex.GetNextToken();
@@ -987,9 +2087,7 @@ public class Syntactic {
 		}
 		trace("RelOp", true);
 
-		if (token.code != lex.codeFor("GTHN") && token.code != lex.codeFor("LTHN") &&
-		    token.code != lex.codeFor("GRET") && token.code != lex.codeFor("LSET") &&
-		    token.code != lex.codeFor("EQUL") && token.code != lex.codeFor("NEQL")) {
+		if (!isRelOp(token.code)) {
 			error("relative expression", token.lexeme);
 		}
 		ret = token.code;
@@ -1072,11 +2170,495 @@ public class Syntactic {
 		return true;
 	}
 
-	private int GenSymbol() {
+	private int GenSymbol(char dataType) {
 		String name = UUID.randomUUID().toString();
+		if (dataType == SymbolTable.REAL_TYPE) {
+			return symbolList.AddSymbol(name, SymbolTable.VARIABLE_USAGE, 0.0);
+		}
 		return symbolList.AddSymbol(name, SymbolTable.VARIABLE_USAGE, 0);
 	}
 
+	// Adds a named integer or real symbol holding zero
+	private int addSymbol(String name, char usage, char dataType) {
+		if (dataType == SymbolTable.REAL_TYPE) {
+			return symbolList.AddSymbol(name, usage, 0.0);
+		}
+		return symbolList.AddSymbol(name, usage, 0);
+	}
+
+	// Locals are stored under their routine's name, so they can shadow globals of the same name
+	private String scopedName(String name) {
+		return (routine == null) ? name : routine.name + "." + name;
+	}
+
+	// Finds the symbol a name refers to: a local of the routine being parsed, or else a global
+	private int lookupVariable(String name) {
+		if (routine != null) {
+			int local = symbolList.LookupSymbol(scopedName(name));
+			if (local != -1) {
+				return local;
+			}
+		}
+		return symbolList.LookupSymbol(name);
+	}
+
+	// Returns the routine a name calls, or null if it is a variable. Inside a function, its own
+	// name calls it recursively, except as the target of an assignment.
+	private Routine calledRoutine(String name) {
+		Routine callee = routines.get(name.toUpperCase());
+		if (callee == null || routine == null || callee == routine) {
+			return callee;
+		}
+		return (symbolList.LookupSymbol(scopedName(name)) == -1) ? callee : null;
+	}
+
+	private boolean isProcedure(String name) {
+		Routine callee = calledRoutine(name);
+		return callee != null && !callee.isFunction;
+	}
+
+	private boolean isReal(int symbol) {
+		return symbolList.GetDataType(symbol) == SymbolTable.REAL_TYPE;
+	}
+
+	private boolean isArray(int symbol) {
+		return symbol >= 0 && (symbolList.GetDataType(symbol) == SymbolTable.INTEGER_ARRAY_TYPE ||
+		                       symbolList.GetDataType(symbol) == SymbolTable.REAL_ARRAY_TYPE);
+	}
+
+	// Checks whether a symbol is an integer written in the source, which no quad ever changes
+	private boolean isLiteral(int symbol) {
+		String name = symbolList.GetSymbol(symbol);
+		return !name.isEmpty() && name.chars().allMatch(Character::isDigit); // temps have '-'s
+	}
+
+	private int arrayLength(int array) {
+		if (symbolList.GetDataType(array) == SymbolTable.REAL_ARRAY_TYPE) {
+			return symbolList.GetFloatArray(array).length;
+		}
+		return symbolList.GetIntegerArray(array).length;
+	}
+
+	// Returns the symbol of an integer constant, adding it the first time it is used
+	private int constantFor(int value) {
+		String name = Integer.toString(value);
+		int symbol = symbolList.LookupSymbol(name);
+		if (symbol == -1) {
+			symbol = symbolList.AddSymbol(name, SymbolTable.CONSTANT_USAGE, value);
+		}
+		return symbol;
+	}
+
+	// Adds a quad, recording the source line of the statement it was generated for
+	private void addQuad(int opcode, int op1, int op2, int op3) {
+		quads.AddQuad(opcode, op1, op2, op3, statementLine);
+	}
+
+	// Sorts the labels of a CASE by value, merging neighbouring labels of the same arm into one
+	// range. Reports an error if two labels share a value.
+	private ArrayList<int[]> sortCaseLabels(ArrayList<int[]> labels) {
+		labels.sort((a, b) -> Integer.compare(a[0], b[0]));
+		ArrayList<int[]> ranges = new ArrayList<>();
+		for (int[] label : labels) {
+			int[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+			if (last != null && label[0] <= last[1]) {
+				error("Distinct CASE labels", "a repeated value " + label[0]);
+				break;
+			}
+			if (last != null && label[2] == last[2] && label[0] == last[1] + 1) {
+				last[1] = label[1];
+			} else {
+				ranges.add(label.clone());
+			}
+		}
+		return ranges;
+	}
+
+	/**
+	 * Generates the code choosing the arm of a CASE. A jump table is used if there are enough
+	 * ranges for a binary search to take several tests, and the table would not hold many more
+	 * entries than there are ranges. Otherwise each test of the binary search compares the
+	 * selector to a range with a single compare-and-jump quad, so no temps are needed.
+	 *
+	 * @param selector Index of the selector in the symbol table
+	 * @param ranges Sorted, distinct {low, high, first quad of arm} of every label
+	 * @param otherwise Quad to jump to if no label matches, or -1 for the end of the statement
+	 * @param exits Receives every jump to the end of the statement
+	 */
+	private void emitCaseDispatch(int selector, ArrayList<int[]> ranges, int otherwise,
+	                              ArrayList<Integer> exits) {
+		long low = ranges.get(0)[0];
+		long span = ranges.get(ranges.size() - 1)[1] - low + 1;
+		if (ranges.size() < 3 || span > 4L * ranges.size() || span > maxCaseTable) {
+			emitCaseSearch(selector, ranges, 0, ranges.size(), otherwise, exits);
+			return;
+		}
+
+		int index = selector;
+		if (low != 0) {
+			index = emitArithmetic(interp.opcodeFor("SUB"), selector, constantFor((int) low));
+		}
+		emitCaseJump("JTAB", index, (int) span, otherwise, exits);
+		long next = low; // value the next entry of the table is for
+		for (int[] range : ranges) {
+			for (; next < range[0]; next++) { // values between labels
+				emitCaseJump("JMP", 0, 0, otherwise, exits);
+			}
+			for (; next <= range[1]; next++) {
+				emitCaseJump("JMP", 0, 0, range[2], exits);
+			}
+		}
+	}
+
+	// Generates a binary search for the selector among ranges[from] to ranges[to - 1]
+	private void emitCaseSearch(int selector, ArrayList<int[]> ranges, int from, int to,
+	                            int otherwise, ArrayList<Integer> exits) {
+		if (from == to) {
+			emitCaseJump("JMP", 0, 0, otherwise, exits);
+			return;
+		}
+
+		int middle = (from + to) >>> 1;
+		int[] range = ranges.get(middle);
+		int below = quads.NextQuad();
+		emitCaseJump("CJN", selector, constantFor(range[0]),
+		             (middle == from) ? otherwise : 0, exits);
+		emitCaseJump("CJNP", selector, constantFor(range[1]), range[2], exits);
+		emitCaseSearch(selector, ranges, middle + 1, to, otherwise, exits);
+		if (middle > from) {
+			quads.UpdateJump(below, quads.NextQuad());
+			emitCaseSearch(selector, ranges, from, middle, otherwise, exits);
+		}
+	}
+
+	// Adds a jump of a CASE, to the end of the statement if target is -1
+	private void emitCaseJump(String opcode, int op1, int op2, int target,
+	                          ArrayList<Integer> exits) {
+		if (target == -1) {
+			exits.add(quads.NextQuad());
+		}
+		addQuad(interp.opcodeFor(opcode), op1, op2, Math.max(target, 0));
+	}
+
+	/**
+	 * Generates an arithmetic quad whose opcode matches the types of its operands. If either
+	 * operand is real, the other is converted and real arithmetic is used.
+	 *
+	 * @param opcode Integer arithmetic opcode, as returned by AddOp or MulOp
+	 * @param left Index of the left operand in the symbol table
+	 * @param right Index of the right operand in the symbol table
+	 * @return Index of a new temp holding the result
+	 */
+	private int emitArithmetic(int opcode, int left, int right) {
+		if (anyErrors) {
+			return -1;
+		}
+
+		int temp;
+		if (isReal(left) || isReal(right)) {
+			left = toReal(left);
+			right = toReal(right);
+			temp = GenSymbol(SymbolTable.REAL_TYPE);
+			addQuad(RealOpcodeFor(opcode), left, right, temp);
+		} else {
+			temp = GenSymbol(SymbolTable.INTEGER_TYPE);
+			addQuad(opcode, left, right, temp);
+		}
+		return temp;
+	}
+
+	/**
+	 * Generates a move between two symbols, converting the value if their types differ. Reals
+	 * are truncated when stored to an integer.
+	 *
+	 * @param src Index of the symbol to copy
+	 * @param dst Index of the symbol to overwrite
+	 */
+	private void emitMove(int src, int dst) {
+		if (anyErrors) {
+			return;
+		}
+
+		if (isReal(src) && isReal(dst)) {
+			addQuad(interp.opcodeFor("MOVF"), src, 0, dst);
+		} else if (isReal(dst) && symbolList.GetDataType(src) == SymbolTable.INTEGER_TYPE) {
+			addQuad(interp.opcodeFor("ITOF"), src, 0, dst);
+		} else if (isReal(src)) {
+			addQuad(interp.opcodeFor("FTOI"), src, 0, dst);
+		} else {
+			addQuad(interp.opcodeFor("MOV"), src, 0, dst);
+		}
+	}
+
+	/**
+	 * Generates a call to a procedure or function. Each argument is converted and moved to the
+	 * symbol passing its parameter, then CALL jumps to the callee's body, saving its frame first
+	 * if the callee is calling itself. A function's result is copied to a new temp as soon as it
+	 * returns, before another call can overwrite it.
+	 *
+	 * @param callee The routine to call
+	 * @param arguments Indexes of the arguments in the symbol table
+	 * @return Index of a new temp holding the function result, or -1 for a procedure
+	 */
+	private int emitCall(Routine callee, ArrayList<Integer> arguments) {
+		if (anyErrors) {
+			return -1;
+		}
+		if (arguments.size() != callee.arguments.size()) {
+			error(callee.arguments.size() + " arguments", Integer.toString(arguments.size()));
+			return -1;
+		}
+
+		for (int i = 0; i < arguments.size(); i++) {
+			int argument = arguments.get(i);
+			char type = symbolList.GetDataType(argument);
+			if (type != SymbolTable.INTEGER_TYPE && type != SymbolTable.REAL_TYPE) {
+				error(lex.reserveFor("INTR") + " or " + lex.reserveFor("DFPR") + " argument",
+				      symbolList.GetSymbol(argument));
+				return -1;
+			}
+			emitMove(argument, callee.arguments.get(i));
+		}
+
+		// Routines are declared before use, so only a routine calling itself can find its frame
+		// in use. Every other call has no values to save.
+		if (callee == routine) {
+			callee.recursiveCalls.add(quads.NextQuad()); // its frame size is not known yet
+		}
+		addQuad(interp.opcodeFor("CALL"), callee.frameStart, 0, callee.entry);
+
+		if (!callee.isFunction) {
+			return -1;
+		}
+		int temp = GenSymbol(symbolList.GetDataType(callee.symbol));
+		emitMove(callee.symbol, temp);
+		return temp;
+	}
+
+	// Generates a return from a routine, first passing a function's result out of its frame
+	private void emitReturn(Routine r) {
+		if (r.isFunction) {
+			emitMove(r.localResult, r.symbol);
+		}
+		addQuad(interp.opcodeFor("RET"), 0, 0, 0);
+	}
+
+	/**
+	 * Generates the quad for a built-in function, with the opcode of the same name. ABS, MIN, MAX
+	 * and POW use their real form if any argument is real, SQRT always works on reals, MOD only
+	 * accepts integers, and SUMOF uses the form matching the elements of its array.
+	 *
+	 * @param function Mnemonic of the function, such as "ABS_"
+	 * @param left Index of the first argument in the symbol table
+	 * @param right Index of the second argument in the symbol table, or -1 if there is none
+	 * @return Index of a new temp holding the result
+	 */
+	private int emitIntrinsic(String function, int left, int right) {
+		if (anyErrors) {
+			return -1;
+		}
+
+		if (function.equals("SMOF")) {
+			// the result has the element type of the summed array
+			boolean realArray = symbolList.GetDataType(left) == SymbolTable.REAL_ARRAY_TYPE;
+			int temp = GenSymbol(realArray ? SymbolTable.REAL_TYPE : SymbolTable.INTEGER_TYPE);
+			addQuad(interp.opcodeFor(realArray ? "SUMF" : "SUM"), left, 0, temp);
+			return temp;
+		}
+
+		String name = lex.reserveFor(function);
+		boolean real = isReal(left) || (right >= 0 && isReal(right));
+		int temp;
+		if (function.equals("MOD_") && real) {
+			error("Integer arguments to MOD", "a real");
+			return -1;
+		}
+
+		if (function.equals("SQRT") || real) {
+			left = toReal(left);
+			if (right >= 0) {
+				right = toReal(right);
+			}
+			if (!function.equals("SQRT")) {
+				name = name + "F"; // real form of the function
+			}
+			temp = GenSymbol(SymbolTable.REAL_TYPE);
+		} else {
+			temp = GenSymbol(SymbolTable.INTEGER_TYPE);
+		}
+		addQuad(interp.opcodeFor(name), left, Math.max(right, 0), temp);
+		return temp;
+	}
+
+	/**
+	 * Generates a load of one array element into a new temp of the element type.
+	 *
+	 * @param array Index of the array in the symbol table
+	 * @param offset Index of the symbol holding the element's offset, as returned by ArrayIndex
+	 * @return Index of a new temp holding the element
+	 */
+	private int emitArrayRead(int array, int offset) {
+		if (anyErrors) {
+			return -1;
+		}
+
+		int temp;
+		if (symbolList.GetDataType(array) == SymbolTable.REAL_ARRAY_TYPE) {
+			temp = GenSymbol(SymbolTable.REAL_TYPE);
+			addQuad(interp.opcodeFor("LDAF"), array, offset, temp);
+		} else {
+			temp = GenSymbol(SymbolTable.INTEGER_TYPE);
+			addQuad(interp.opcodeFor("LDA"), array, offset, temp);
+		}
+		return temp;
+	}
+
+	/**
+	 * Generates a quad writing a value into an array, converting the value to the element type.
+	 * Reals are truncated when stored to an integer array.
+	 *
+	 * @param opcode Integer form of the opcode, STA or FILL, whose real form ends in F
+	 * @param value Index of the value to write in the symbol table
+	 * @param offset Index of the symbol holding the element's offset, unused by FILL
+	 * @param array Index of the array in the symbol table
+	 */
+	private void emitArrayWrite(String opcode, int value, int offset, int array) {
+		if (anyErrors) {
+			return;
+		}
+
+		if (symbolList.GetDataType(value) == SymbolTable.STRING_TYPE) {
+			error("Integer or Real value", "a string");
+		} else if (symbolList.GetDataType(array) == SymbolTable.REAL_ARRAY_TYPE) {
+			addQuad(interp.opcodeFor(opcode + "F"), toReal(value), offset, array);
+		} else if (isReal(value)) {
+			int temp = GenSymbol(SymbolTable.INTEGER_TYPE);
+			addQuad(interp.opcodeFor("FTOI"), value, 0, temp);
+			addQuad(interp.opcodeFor(opcode), temp, offset, array);
+		} else {
+			addQuad(interp.opcodeFor(opcode), value, offset, array);
+		}
+	}
+
+	// Negates a value into a new temp, leaving the negated symbol itself unchanged
+	private int emitNegate(int symbol) {
+		int temp;
+		if (isReal(symbol)) {
+			if (Minus1RealIndex == -1) {
+				Minus1RealIndex =
+					symbolList.AddSymbol("-1.0", SymbolTable.CONSTANT_USAGE, -1.0);
+			}
+			temp = GenSymbol(SymbolTable.REAL_TYPE);
+			addQuad(interp.opcodeFor("MULF"), symbol, Minus1RealIndex, temp);
+		} else {
+			temp = GenSymbol(SymbolTable.INTEGER_TYPE);
+			addQuad(interp.opcodeFor("MUL"), symbol, Minus1Index, temp);
+		}
+		return temp;
+	}
+
+	// Returns a real symbol holding the same value, converting integers into a new temp
+	private int toReal(int symbol) {
+		if (isReal(symbol)) {
+			return symbol;
+		}
+
+		int temp = GenSymbol(SymbolTable.REAL_TYPE);
+		addQuad(interp.opcodeFor("ITOF"), symbol, 0, temp);
+		return temp;
+	}
+
+	private int RealOpcodeFor(int opcode) {
+		int ret = 0;
+
+		if (opcode == interp.opcodeFor("ADD")) {
+			ret = interp.opcodeFor("ADDF");
+		} else if (opcode == interp.opcodeFor("SUB")) {
+			ret = interp.opcodeFor("SUBF");
+		} else if (opcode == interp.opcodeFor("MUL")) {
+			ret = interp.opcodeFor("MULF");
+		} else if (opcode == interp.opcodeFor("DIV")) {
+			ret = interp.opcodeFor("DIVF");
+		} else {
+			throw new RuntimeException("Invalid arithmetic opcode");
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Generates the jump testing the last relative expression of a condition, whose comparison
+	 * has already been generated.
+	 *
+	 * @param c The condition
+	 * @param jumpIfTrue true to jump if the condition holds, false to jump if it fails; the
+	 *        other outcome falls through
+	 */
+	private void emitTest(Condition c, boolean jumpIfTrue) {
+		if (anyErrors) {
+			return;
+		}
+
+		// RelopToOpcode jumps if the comparison fails, i.e. if a negated condition holds
+		int opcode = RelopToOpcode(c.relop);
+		if (jumpIfTrue != c.negated) {
+			opcode = negateJump(opcode);
+		}
+		(jumpIfTrue ? c.trueJumps : c.falseJumps).add(quads.NextQuad());
+		addQuad(opcode, c.temp, 0, 0); // jump destination set later
+	}
+
+	// Sets the destination of every jump in a list
+	private void backpatch(ArrayList<Integer> jumps, int target) {
+		for (int jump : jumps) {
+			quads.UpdateJump(jump, target);
+		}
+	}
+
+	// Checks whether the $LPAR that is the current token groups a condition, by reading ahead for
+	// a relop, AND, OR or NOT before its matching $RPAR, which an arithmetic expression cannot hold
+	private boolean isGroupedCondition() {
+		int depth = 1;
+		for (int ahead = 1; depth > 0; ahead++) {
+			Lexical.token next = lex.PeekToken(ahead);
+			if (next.code == lex.codeFor("LFTP")) {
+				depth++;
+			} else if (next.code == lex.codeFor("RITP")) {
+				depth--;
+			} else if (isRelOp(next.code) || next.code == lex.codeFor("AND_") ||
+			           next.code == lex.codeFor("OR__") || next.code == lex.codeFor("NOT_")) {
+				return true;
+			} else if (next.code == lex.codeFor("SCLN") || next.code == lex.codeFor("THEN") ||
+			           next.code == lex.codeFor("DO__") || next.code == lex.codeFor("UKWN")) {
+				return false; // unbalanced, so left for the arithmetic expression to report
+			}
+		}
+		return false;
+	}
+
+	// Returns the conditional jump taken exactly when the given one is not
+	private int negateJump(int opcode) {
+		if (opcode == interp.opcodeFor("JZ")) {
+			return interp.opcodeFor("JNZ");
+		} else if (opcode == interp.opcodeFor("JNZ")) {
+			return interp.opcodeFor("JZ");
+		} else if (opcode == interp.opcodeFor("JP")) {
+			return interp.opcodeFor("JNP");
+		} else if (opcode == interp.opcodeFor("JNP")) {
+			return interp.opcodeFor("JP");
+		} else if (opcode == interp.opcodeFor("JN")) {
+			return interp.opcodeFor("JNN");
+		} else {
+			return interp.opcodeFor("JN");
+		}
+	}
+
+	private boolean isRelOp(int code) {
+		return code == lex.codeFor("GTHN") || code == lex.codeFor("LTHN") ||
+		       code == lex.codeFor("GRET") || code == lex.codeFor("LSET") ||
+		       code == lex.codeFor("EQUL") || code == lex.codeFor("NEQL");
+	}
+
 	private int RelopToOpcode(int relop) {
 		int ret = 0;
 
@@ -1118,6 +2700,13 @@ public class Syntactic {
 		return t.code == lex.codeFor("DVDE") || t.code == lex.codeFor("MTPY");
 	}
 
+	private boolean isFunction(Lexical.token t) {
+		return t.code == lex.codeFor("ABS_") || t.code == lex.codeFor("MIN_") ||
+		    t.code == lex.codeFor("MAX_") || t.code == lex.codeFor("MOD_") ||
+		    t.code == lex.codeFor("POW_") || t.code == lex.codeFor("SQRT") ||
+		    t.code == lex.codeFor("SMOF");
+	}
+
 	private boolean isNumber(Lexical.token t) {
 		return t.code == lex.codeFor("INTV") || t.code == lex.codeFor("DFPV");
 	}
@@ -1126,6 +2715,46 @@ public class Syntactic {
 		return token.code == lex.codeFor("IDNT") || token.code == lex.codeFor("BGIN") ||
 		    token.code == lex.codeFor("IF__") || token.code == lex.codeFor("WHIL") ||
 		    token.code == lex.codeFor("REPT") || token.code == lex.codeFor("FOR_") ||
-		    token.code == lex.codeFor("WTLN") || token.code == lex.codeFor("RDLN");
+		    token.code == lex.codeFor("WTLN") || token.code == lex.codeFor("RDLN") ||
+		    token.code == lex.codeFor("FILL") || token.code == lex.codeFor("COPY") ||
+		    token.code == lex.codeFor("RTRN") || token.code == lex.codeFor("CASE");
+	}
+
+	private boolean isRoutineStart(Lexical.token t) {
+		return t.code == lex.codeFor("PCDR") || t.code == lex.codeFor("FNCN");
+	}
+
+	/**
+	 * Part of a condition being generated. Every relative expression is compared as soon as it
+	 * is parsed, but the jump testing the last one is left out until the operator after it shows
+	 * which outcome should jump and which should fall through.
+	 */
+	private static class Condition {
+		ArrayList<Integer> trueJumps = new ArrayList<>();  // jumps taken if the condition holds
+		ArrayList<Integer> falseJumps = new ArrayList<>(); // jumps taken if it fails
+		int temp = -1;   // symbol holding the comparison of the last relative expression
+		int relop;       // token code of the last relative expression's relop
+		boolean negated; // true if the condition holds when the last comparison fails
+	}
+
+	/**
+	 * A declared procedure or function. Its frame is the range of symbols added while it was
+	 * parsed, and callers pass its arguments and receive its result through symbols outside it.
+	 */
+	private static class Routine {
+		Routine(String name, boolean isFunction) {
+			this.name = name;
+			this.isFunction = isFunction;
+		}
+
+		final String name;         // name as declared
+		final boolean isFunction;  // true if the routine returns a result
+		int symbol;                // symbol naming the routine, which holds a function's result
+		ArrayList<Integer> arguments = new ArrayList<>(); // symbol passing each parameter
+		int localResult = -1;      // symbol a function assigns its result to
+		int frameStart;            // first symbol of the frame
+		int frameSize;             // symbols in the frame, known once the body has been parsed
+		int entry;                 // first quad of the body
+		ArrayList<Integer> recursiveCalls = new ArrayList<>(); // CALLs that save the frame
 	}
 }
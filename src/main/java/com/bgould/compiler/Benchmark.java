@@ -0,0 +1,897 @@
+package com.bgould.compiler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.function.Supplier;
+
+import com.bgould.compiler.ADT.QuadTable;
+import com.bgould.compiler.ADT.SymbolTable;
+import com.bgould.compiler.ADT.Syntactic;
+import com.bgould.compiler.utils.BufferedPrintStream;
+import com.bgould.compiler.utils.IntInput;
+import com.bgould.compiler.utils.StringUtils;
+
+/**
+ * Compares the running time of the interpreter's execution engines on the hardcoded test kernels.
+ *
+ * Usage: Benchmark [loop iterations] [timed runs] [engine]
+ *
+ * Startup latency is measured first, while the JVM is still cold. Engines share one JVM, so only
+ * the first engine measured sees a truly cold start; name a single engine to measure it alone.
+ */
+public class Benchmark {
+	// Engines are given this many untimed runs so the JIT can compile them first
+	private static final int WARMUP_RUNS = 20;
+
+	// Number of jobs, and the loop bound of each, in a batch run by the ExecutionService
+	private static final int BATCH_JOBS = 2000;
+	private static final int BATCH_ITERATIONS = 1000;
+
+	// Number of input sets in a parameter sweep
+	private static final int SWEEP_RUNS = 20000;
+
+	// Runs held by the result cache, enough for every distinct input set of a sweep
+	private static final int CACHE_CAPACITY = 4096;
+
+	// Number of values read per run by the input-heavy kernel, and the timed runs of each source
+	private static final int READ_VALUES = 1000000;
+	private static final int READ_RUNS = 5;
+
+	// Quads an ExecutionContext runs per slice, and between automatic checkpoints
+	private static final int CHECKPOINT_SLICE = 10000;
+	private static final int CHECKPOINT_INTERVAL = 100000;
+
+	// Timed runs of the traced kernel, each of which writes about 30 bytes per executed quad
+	private static final int TRACE_RUNS = 5;
+
+	// Quads held in memory by a binary trace
+	private static final int TRACE_CAPACITY = 1 << 20;
+
+	// One in this many quads is traced by the sampled trace
+	private static final int TRACE_SAMPLE = 1000;
+
+	// Elements in each array of the array kernel, which makes one pass over them per this many
+	// loop iterations
+	private static final int ARRAY_LENGTH = 1000;
+
+	// Arms of the CASE kernel, one of which is chosen on each loop iteration
+	private static final int CASE_ARMS = 16;
+
+	// Sums MOD(i, 7) + ABS(i - n / 2) + POW(3, 10) for i from 1 to n, the way programs had to
+	// before intrinsics: MOD with a DIV, MUL and SUB, ABS with an IF, and POW with a loop of MULs
+	private static final String MATH_BY_HAND = program(
+		"UNIT math;",
+		"VAR n, half, i, t, power, count, total : INTEGER;",
+		"BEGIN",
+		"  half := n / 2;",
+		"  total := 0;",
+		"  FOR i := 1 TO n DO",
+		"  BEGIN",
+		"    t := i - i / 7 * 7;",
+		"    total := total + t;",
+		"    t := i - half;",
+		"    IF t < 0 THEN t := 0 - t;",
+		"    total := total + t;",
+		"    power := 1;",
+		"    FOR count := 1 TO 10 DO",
+		"      power := power * 3;",
+		"    total := total + power",
+		"  END",
+		"END.");
+
+	// The same sum with intrinsics
+	private static final String MATH_INTRINSICS = program(
+		"UNIT math;",
+		"VAR n, half, i, total : INTEGER;",
+		"BEGIN",
+		"  half := n / 2;",
+		"  total := 0;",
+		"  FOR i := 1 TO n DO",
+		"    total := total + MOD(i, 7) + ABS(i - half) + POW(3, 10)",
+		"END.");
+
+	// For each of n / ARRAY_LENGTH passes, fills an array with the pass number, copies it to a
+	// second array, and adds up the copy, a loop over the elements for each step
+	private static final String ARRAYS_BY_ELEMENT = program(
+		"UNIT arrays;",
+		"VAR a, b : ARRAY[0.." + (ARRAY_LENGTH - 1) + "] OF INTEGER;",
+		"VAR n, pass, j, total : INTEGER;",
+		"BEGIN",
+		"  total := 0;",
+		"  FOR pass := 1 TO n / " + ARRAY_LENGTH + " DO",
+		"  BEGIN",
+		"    FOR j := 0 TO " + (ARRAY_LENGTH - 1) + " DO",
+		"      a[j] := pass;",
+		"    FOR j := 0 TO " + (ARRAY_LENGTH - 1) + " DO",
+		"      b[j] := a[j];",
+		"    FOR j := 0 TO " + (ARRAY_LENGTH - 1) + " DO",
+		"      total := total + b[j]",
+		"  END",
+		"END.");
+
+	// The same passes with the bulk array statements
+	private static final String ARRAYS_IN_BULK = program(
+		"UNIT arrays;",
+		"VAR a, b : ARRAY[0.." + (ARRAY_LENGTH - 1) + "] OF INTEGER;",
+		"VAR n, pass, total : INTEGER;",
+		"BEGIN",
+		"  total := 0;",
+		"  FOR pass := 1 TO n / " + ARRAY_LENGTH + " DO",
+		"  BEGIN",
+		"    FILL(a, pass);",
+		"    COPY(a, b);",
+		"    total := total + SUMOF(b)",
+		"  END",
+		"END.");
+
+	// Adds up 1 to n, each addition made by a call to a function
+	private static final String SUM_CALLED = program(
+		"UNIT calls;",
+		"VAR n, i, total : INTEGER;",
+		"FUNCTION step(acc : INTEGER; k : INTEGER) : INTEGER;",
+		"BEGIN",
+		"  step := acc + k",
+		"END;",
+		"BEGIN",
+		"  total := 0;",
+		"  FOR i := 1 TO n DO",
+		"    total := step(total, i)",
+		"END.");
+
+	// The same sum with the addition inlined
+	private static final String SUM_INLINED = program(
+		"UNIT calls;",
+		"VAR n, i, total : INTEGER;",
+		"BEGIN",
+		"  total := 0;",
+		"  FOR i := 1 TO n DO",
+		"    total := total + i",
+		"END.");
+
+	// Counts the i from 1 to n that are multiples of both 3 and 5, the way programs had to before
+	// AND, by adding up the absolute values of both remainders for a single test
+	private static final String CONDITION_COMPUTED = program(
+		"UNIT conditions;",
+		"VAR n, i, count : INTEGER;",
+		"BEGIN",
+		"  count := 0;",
+		"  FOR i := 1 TO n DO",
+		"    IF ABS(MOD(i, 3)) + ABS(MOD(i, 5)) = 0 THEN count := count + 1",
+		"END.");
+
+	// The same count with AND, which skips the second remainder whenever the first test fails
+	private static final String CONDITION_SHORT_CIRCUIT = program(
+		"UNIT conditions;",
+		"VAR n, i, count : INTEGER;",
+		"BEGIN",
+		"  count := 0;",
+		"  FOR i := 1 TO n DO",
+		"    IF MOD(i, 3) = 0 AND MOD(i, 5) = 0 THEN count := count + 1",
+		"END.");
+
+	public static void main(String[] args) {
+		int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+		int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 50;
+		Interpreter.Engine[] engines = Interpreter.Engine.values();
+		if (args.length > 2) {
+			engines = new Interpreter.Engine[] {Interpreter.Engine.valueOf(args[2].toUpperCase())};
+		}
+
+		System.out.println("Interpreter benchmark: " + iterations + " loop iterations, " + runs +
+		                   " timed runs");
+		benchmarkLatency("factorial", engines, iterations);
+		benchmarkDispatch("factorial", engines, iterations, runs);
+		benchmarkDispatch("summation", engines, iterations, runs);
+		benchmarkPrint(engines, iterations, runs);
+		benchmarkRead();
+		benchmarkCheckpoint(iterations, runs);
+		benchmarkTrace(iterations);
+		benchmarkPrecompute(iterations, runs);
+		compareKernels("math steady state (by hand, intrinsics)", engines, MATH_BY_HAND,
+		               MATH_INTRINSICS, "iteration saved", iterations, runs);
+		compareKernels("arrays steady state (element loops, bulk statements)", engines,
+		               ARRAYS_BY_ELEMENT, ARRAYS_IN_BULK, "iteration saved", iterations, runs);
+		compareKernels("calls steady state (called, inlined)", engines, SUM_CALLED, SUM_INLINED,
+		               "call", iterations, runs);
+		compareKernels("case of " + CASE_ARMS + " arms steady state (IF chain, CASE)", engines,
+		               caseKernel(false), caseKernel(true), "choice saved", iterations, runs);
+		compareKernels("conditions steady state (computed, short-circuit)", engines,
+		               CONDITION_COMPUTED, CONDITION_SHORT_CIRCUIT, "test saved", iterations,
+		               runs);
+		for (Interpreter.Engine engine : engines) {
+			benchmarkBatch("summation", engine);
+		}
+		for (Interpreter.Engine engine : engines) {
+			benchmarkSweep(engine);
+		}
+	}
+
+	/**
+	 * Runs a kernel once on a new Interpreter for each engine, and prints the time taken until
+	 * the kernel first printed output, and until it finished.
+	 *
+	 * @param kernel Either "factorial" or "summation"
+	 * @param engines The engines to measure
+	 * @param iterations The loop bound n to run the kernel with
+	 */
+	private static void benchmarkLatency(String kernel, Interpreter.Engine[] engines,
+	                                     int iterations) {
+		System.out.println(kernel + " startup (first run on a new Interpreter):");
+		for (Interpreter.Engine engine : engines) {
+			Interpreter interp = new Interpreter();
+			SymbolTable s = new SymbolTable(20);
+			QuadTable q = new QuadTable(20);
+			initializeKernel(kernel, interp, s, q, iterations);
+			interp.setEngine(engine);
+
+			FirstWriteStream output = new FirstWriteStream();
+			PrintStream console = System.out;
+			System.setOut(new PrintStream(output));
+			long start = System.nanoTime();
+			try {
+				interp.InterpretQuads(q, s, false, null);
+			} finally {
+				System.setOut(console);
+			}
+			long end = System.nanoTime();
+
+			System.out.println("  " + StringUtils.PadToLength(engine.toString(), 10) +
+			                   String.format("%10.3f ms to first output  %10.3f ms total",
+			                                 (output.firstWrite - start) / 1e6,
+			                                 (end - start) / 1e6));
+		}
+	}
+
+	/**
+	 * Times execution engines on one of the hardcoded kernels, and prints the average time per
+	 * run along with the speedup relative to the opcode lookup and decoded switch engines.
+	 *
+	 * @param kernel Either "factorial" or "summation"
+	 * @param engines The engines to measure
+	 * @param iterations The loop bound n to run the kernel with
+	 * @param runs The number of timed runs to average over
+	 */
+	private static void benchmarkDispatch(String kernel, Interpreter.Engine[] engines,
+	                                      int iterations, int runs) {
+		double[] nanos = new double[engines.length];
+		double lookup = Double.NaN;
+		double decoded = Double.NaN;
+
+		for (int i = 0; i < engines.length; i++) {
+			nanos[i] = timeKernel(kernel, engines[i], iterations, runs);
+			if (engines[i] == Interpreter.Engine.LOOKUP) {
+				lookup = nanos[i];
+			} else if (engines[i] == Interpreter.Engine.DECODED) {
+				decoded = nanos[i];
+			}
+		}
+
+		System.out.println(kernel + " steady state (speedup vs LOOKUP, vs DECODED):");
+		for (int i = 0; i < engines.length; i++) {
+			System.out.println("  " + StringUtils.PadToLength(engines[i].toString(), 10) +
+			                   String.format("%10.3f ms/run  %6.2fx  %6.2fx", nanos[i] / 1e6,
+			                                 lookup / nanos[i], decoded / nanos[i]));
+		}
+	}
+
+	/**
+	 * Times a kernel that prints a string constant and an integer on every iteration, writing to
+	 * a plain PrintStream and to a BufferedPrintStream, and prints the average time per run of
+	 * each along with the speedup from buffering.
+	 *
+	 * @param engines The engines to measure
+	 * @param iterations The number of iterations, and so pairs of lines printed, per run
+	 * @param runs The number of timed runs to average over
+	 */
+	private static void benchmarkPrint(Interpreter.Engine[] engines, int iterations, int runs) {
+		Interpreter interp = new Interpreter();
+		SymbolTable s = new SymbolTable(20);
+		QuadTable q = new QuadTable(20);
+		int n = s.AddSymbol("n", 'V', iterations);
+		int i = s.AddSymbol("i", 'V', 0);
+		int one = s.AddSymbol("1", 'C', 1);
+		int label = s.AddSymbol("label", 'C', "i is");
+		int temp = s.AddSymbol("$temp", 'V', 0);
+		q.AddQuad(interp.opcodeFor("MOV"), one, 0, i);
+		q.AddQuad(interp.opcodeFor("SUB"), i, n, temp);
+		q.AddQuad(interp.opcodeFor("JP"), temp, 0, 7);
+		q.AddQuad(interp.opcodeFor("PRINT"), 0, 0, label);
+		q.AddQuad(interp.opcodeFor("PRINT"), 0, 0, i);
+		q.AddQuad(interp.opcodeFor("ADD"), i, one, i);
+		q.AddQuad(interp.opcodeFor("JMP"), 0, 0, 1);
+		q.AddQuad(interp.opcodeFor("STOP"), 0, 0, 0);
+
+		System.out.println("print-heavy steady state (PrintStream, BufferedPrintStream):");
+		for (Interpreter.Engine engine : engines) {
+			interp.setEngine(engine);
+			double plain = timePrinting(interp, q, s,
+			                            new PrintStream(OutputStream.nullOutputStream()), runs);
+			double buffered = timePrinting(interp, q, s,
+			                               new BufferedPrintStream(OutputStream.nullOutputStream()),
+			                               runs);
+			System.out.println("  " + StringUtils.PadToLength(engine.toString(), 10) +
+			                   String.format("%10.3f ms/run  %10.3f ms/run  %6.2fx", plain / 1e6,
+			                                 buffered / 1e6, plain / buffered));
+		}
+	}
+
+	/**
+	 * Runs a program repeatedly with its output sent to the given stream.
+	 *
+	 * @return Average nanoseconds per timed run
+	 */
+	private static double timePrinting(Interpreter interp, QuadTable q, SymbolTable s,
+	                                   PrintStream out, int runs) {
+		IntInput in = IntInput.FromArray();
+		for (int i = 0; i < WARMUP_RUNS; i++) {
+			interp.InterpretQuads(q, s, false, null, in, out);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < runs; i++) {
+			interp.InterpretQuads(q, s, false, null, in, out);
+		}
+		return (System.nanoTime() - start) / (double) runs;
+	}
+
+	/**
+	 * Times a kernel that reads and sums READ_VALUES integers, taking them from each kind of
+	 * IntInput in turn, and prints the average time per run and the rate values were read at.
+	 */
+	private static void benchmarkRead() {
+		Interpreter interp = new Interpreter();
+		interp.setEngine(Interpreter.Engine.DECODED);
+		SymbolTable s = new SymbolTable(20);
+		QuadTable q = new QuadTable(20);
+		int n = s.AddSymbol("n", 'V', READ_VALUES);
+		int i = s.AddSymbol("i", 'V', 0);
+		int x = s.AddSymbol("x", 'V', 0);
+		int sum = s.AddSymbol("sum", 'V', 0);
+		int one = s.AddSymbol("1", 'C', 1);
+		int zero = s.AddSymbol("0", 'C', 0);
+		int temp = s.AddSymbol("$temp", 'V', 0);
+		q.AddQuad(interp.opcodeFor("MOV"), zero, 0, sum);
+		q.AddQuad(interp.opcodeFor("MOV"), one, 0, i);
+		q.AddQuad(interp.opcodeFor("SUB"), i, n, temp);
+		q.AddQuad(interp.opcodeFor("JP"), temp, 0, 8);
+		q.AddQuad(interp.opcodeFor("READ"), 0, 0, x);
+		q.AddQuad(interp.opcodeFor("ADD"), sum, x, sum);
+		q.AddQuad(interp.opcodeFor("ADD"), i, one, i);
+		q.AddQuad(interp.opcodeFor("JMP"), 0, 0, 2);
+		q.AddQuad(interp.opcodeFor("PRINT"), 0, 0, sum);
+		q.AddQuad(interp.opcodeFor("STOP"), 0, 0, 0);
+
+		int[] values = new int[READ_VALUES];
+		StringBuilder text = new StringBuilder(READ_VALUES * 7);
+		for (int v = 0; v < READ_VALUES; v++) {
+			values[v] = v % 1000 - 500;
+			text.append(values[v]).append(v % 16 == 15 ? '\n' : ' ');
+		}
+		String input = text.toString();
+		Path file;
+		try {
+			file = Files.createTempFile("benchmark-input", ".txt");
+			file.toFile().deleteOnExit();
+			Files.writeString(file, input);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		System.out.println("input-heavy kernel reading " + READ_VALUES + " values on DECODED:");
+		timeReading("Scanner", interp, q, s, () -> IntInput.FromScanner(new Scanner(input)));
+		timeReading("string", interp, q, s, () -> IntInput.FromString(input));
+		timeReading("file", interp, q, s, () -> {
+			try {
+				return IntInput.FromFile(file);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		timeReading("array", interp, q, s, () -> IntInput.FromArray(values));
+	}
+
+	/**
+	 * Runs a program with a new input from the given source each time, and prints the average
+	 * time per run.
+	 */
+	private static void timeReading(String name, Interpreter interp, QuadTable q, SymbolTable s,
+	                                Supplier<IntInput> source) {
+		PrintStream out = new BufferedPrintStream(OutputStream.nullOutputStream());
+		interp.InterpretQuads(q, s, false, null, source.get(), out); // warm up
+
+		long start = System.nanoTime();
+		for (int i = 0; i < READ_RUNS; i++) {
+			interp.InterpretQuads(q, s, false, null, source.get(), out);
+		}
+		double nanos = (System.nanoTime() - start) / (double) READ_RUNS;
+		System.out.println("  " + StringUtils.PadToLength(name, 10) +
+		                   String.format("%10.3f ms/run  %10.1f M values/s", nanos / 1e6,
+		                                 READ_VALUES / (nanos / 1e3)));
+	}
+
+	/**
+	 * Runs the summation kernel as an ExecutionContext, with and without automatic checkpoints,
+	 * and prints the average time per run of each along with the cost of taking one checkpoint.
+	 *
+	 * @param iterations The loop bound n to run the kernel with
+	 * @param runs The number of timed runs to average over
+	 */
+	private static void benchmarkCheckpoint(int iterations, int runs) {
+		Path file;
+		try {
+			file = Files.createTempFile("benchmark-checkpoint", ".bin");
+			file.toFile().deleteOnExit();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		System.out.println("summation in slices of " + CHECKPOINT_SLICE + " quads:");
+		double plain = timeSlices(iterations, runs, null);
+		double checkpointed = timeSlices(iterations, runs, file);
+		System.out.println("  " + StringUtils.PadToLength("none", 24) +
+		                   String.format("%10.3f ms/run", plain / 1e6));
+		System.out.println("  " + StringUtils.PadToLength("every " + CHECKPOINT_INTERVAL, 24) +
+		                   String.format("%10.3f ms/run", checkpointed / 1e6));
+
+		ExecutionContext context = makeSummationContext(iterations);
+		context.run(CHECKPOINT_SLICE);
+		long start = System.nanoTime();
+		for (int i = 0; i < runs; i++) {
+			context.checkpoint();
+		}
+		double capture = (System.nanoTime() - start) / (double) runs;
+		start = System.nanoTime();
+		try {
+			context.checkpoint().save(file);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		double save = System.nanoTime() - start;
+		System.out.println("  " + StringUtils.PadToLength("one checkpoint", 24) +
+		                   String.format("%10.3f us to capture  %10.3f us to save", capture / 1e3,
+		                                 save / 1e3));
+	}
+
+	/**
+	 * Runs the summation kernel to completion as an ExecutionContext, a slice at a time.
+	 *
+	 * @param path File to save automatic checkpoints to, or null for none
+	 * @return Average nanoseconds per timed run
+	 */
+	private static double timeSlices(int iterations, int runs, Path path) {
+		long total = 0;
+		for (int i = 0; i < WARMUP_RUNS + runs; i++) {
+			ExecutionContext context = makeSummationContext(iterations);
+			context.setCheckpointing(path, CHECKPOINT_INTERVAL);
+
+			long start = System.nanoTime();
+			while (context.run(CHECKPOINT_SLICE) == ExecutionContext.Status.RUNNING) {
+				// next slice
+			}
+			if (i >= WARMUP_RUNS) {
+				total += System.nanoTime() - start;
+			}
+			if (context.getCheckpointWrite() != null) {
+				context.getCheckpointWrite().join();
+			}
+		}
+		return total / (double) runs;
+	}
+
+	private static ExecutionContext makeSummationContext(int iterations) {
+		SymbolTable s = new SymbolTable(20);
+		QuadTable q = new QuadTable(20);
+		initializeKernel("summation", new Interpreter(), s, q, iterations);
+		return new ExecutionContext(q, s, new PrintStream(OutputStream.nullOutputStream()));
+	}
+
+	/**
+	 * Runs the summation kernel on DECODED without a trace, with a text trace, and with binary
+	 * traces that keep the latest quads and that spill every quad to the file. The text trace is
+	 * also run with a filter no quad passes, and sampling one in TRACE_SAMPLE quads. Prints the
+	 * average time per run of each along with the cost of tracing one quad.
+	 *
+	 * @param iterations The loop bound n to run the kernel with
+	 */
+	private static void benchmarkTrace(int iterations) {
+		Path file;
+		try {
+			file = Files.createTempFile("benchmark-trace", ".txt");
+			file.toFile().deleteOnExit();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		Interpreter interp = new Interpreter();
+		interp.setEngine(Interpreter.Engine.DECODED);
+		SymbolTable s = new SymbolTable(20);
+		QuadTable q = new QuadTable(20);
+		initializeKernel("summation", interp, s, q, iterations);
+		long quads = 5L * iterations + 6; // the loop body is 5 quads, the rest runs once
+
+		System.out.println("summation with and without a trace file on DECODED:");
+		double plain = timeTracing(interp, q, s, null);
+		System.out.println("  " + StringUtils.PadToLength("untraced", 10) +
+		                   String.format("%10.3f ms/run", plain / 1e6));
+		printTracing("text", timeTracing(interp, q, s, file), plain, quads);
+		interp.setTraceFilter(new TraceFilter().pcRange(-1, -1));
+		printTracing("no match", timeTracing(interp, q, s, file), plain, quads);
+		interp.setTraceFilter(new TraceFilter().sampleEvery(TRACE_SAMPLE));
+		printTracing("sampled", timeTracing(interp, q, s, file), plain, quads);
+		interp.setTraceFilter(null);
+		interp.setBinaryTrace(TRACE_CAPACITY, 0);
+		printTracing("ring", timeTracing(interp, q, s, file), plain, quads);
+		interp.setBinaryTrace(TRACE_CAPACITY, BinaryTrace.SPILL);
+		printTracing("spill", timeTracing(interp, q, s, file), plain, quads);
+		interp.setBinaryTrace(0, 0);
+		interp.setProfiler(new Profiler(q, "summation"));
+		printTracing("profiled", timeTracing(interp, q, s, null), plain, quads);
+		interp.setProfiler(null);
+	}
+
+	/**
+	 * Evaluates the summation kernel, which never reads input, at compile time, and prints the
+	 * time that takes along with the average time per run on DECODED with and without it.
+	 *
+	 * @param iterations The loop bound n to run the kernel with
+	 * @param runs The number of timed runs to average over
+	 */
+	private static void benchmarkPrecompute(int iterations, int runs) {
+		Interpreter interp = new Interpreter();
+		interp.setEngine(Interpreter.Engine.DECODED);
+		long evaluating = 0;
+		for (int i = 0; i < WARMUP_RUNS + runs; i++) {
+			SymbolTable s = new SymbolTable(20);
+			QuadTable q = new QuadTable(20);
+			initializeKernel("summation", interp, s, q, iterations);
+
+			long start = System.nanoTime();
+			CompileTimeEvaluator.evaluate(q, s, CompileTimeEvaluator.DEFAULT_BUDGET);
+			if (i >= WARMUP_RUNS) {
+				evaluating += System.nanoTime() - start;
+			}
+		}
+
+		SymbolTable s = new SymbolTable(20);
+		QuadTable q = new QuadTable(20);
+		initializeKernel("summation", interp, s, q, iterations);
+		System.out.println("summation evaluated at compile time on DECODED:");
+		System.out.println("  " + StringUtils.PadToLength("evaluate", 10) +
+		                   String.format("%10.3f ms", evaluating / (double) runs / 1e6));
+		System.out.println("  " + StringUtils.PadToLength("as is", 10) +
+		                   String.format("%10.3f ms/run", timeRuns(interp, q, s, runs) / 1e6));
+		q = CompileTimeEvaluator.evaluate(q, s, CompileTimeEvaluator.DEFAULT_BUDGET);
+		System.out.println("  " + StringUtils.PadToLength("evaluated", 10) +
+		                   String.format("%10.3f ms/run", timeRuns(interp, q, s, runs) / 1e6));
+	}
+
+	/**
+	 * Compiles two versions of a kernel, and prints the average time per run of each on every
+	 * engine, along with the speedup of the second and the time it saves per loop iteration.
+	 *
+	 * @param label Name of the comparison, followed by the names of the two versions
+	 * @param engines The engines to measure
+	 * @param before Source of the first version
+	 * @param after Source of the second version
+	 * @param unit What the time saved per iteration is a time per, such as "call"
+	 * @param iterations The loop bound n to run the kernels with
+	 * @param runs The number of timed runs to average over
+	 */
+	private static void compareKernels(String label, Interpreter.Engine[] engines, String before,
+	                                   String after, String unit, int iterations, int runs) {
+		Syntactic first = compileKernel(before, iterations);
+		Syntactic second = compileKernel(after, iterations);
+		Interpreter interp = new Interpreter();
+
+		System.out.println(label + ":");
+		for (Interpreter.Engine engine : engines) {
+			interp.setEngine(engine);
+			double slower = timeRuns(interp, first.getQuads(), first.getSymbols(), runs);
+			double faster = timeRuns(interp, second.getQuads(), second.getSymbols(), runs);
+			System.out.println("  " + StringUtils.PadToLength(engine.toString(), 10) +
+			                   String.format("%10.3f ms/run  %10.3f ms/run  %6.2fx  %6.1f ns/%s",
+			                                 slower / 1e6, faster / 1e6, slower / faster,
+			                                 (slower - faster) / iterations, unit));
+		}
+	}
+
+	/**
+	 * Compiles the source of a kernel as the compiler would a program, without running any of it
+	 * at compile time, and sets the kernel's loop bound n, which it reads but never assigns.
+	 *
+	 * @param source Source of the kernel
+	 * @param iterations The loop bound n to run the kernel with
+	 * @return The parser, holding the kernel's quads and symbols
+	 */
+	private static Syntactic compileKernel(String source, int iterations) {
+		Path file;
+		try {
+			file = Files.createTempFile("kernel", ".txt");
+			Files.writeString(file, source);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		// the parser echoes the source and reports its progress on the console
+		Syntactic parser;
+		boolean compiled;
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			parser = new Syntactic(file.toString(), false);
+			parser.setPrecomputeBudget(0);
+			compiled = parser.compile();
+		} finally {
+			System.setOut(console);
+			file.toFile().delete();
+		}
+		if (!compiled) {
+			throw new IllegalStateException("Benchmark kernel does not compile:\n" + source);
+		}
+
+		SymbolTable s = parser.getSymbols();
+		s.UpdateSymbol(s.LookupSymbol("n"), SymbolTable.VARIABLE_USAGE, iterations);
+		return parser;
+	}
+
+	/**
+	 * Generates a kernel that, for i from 1 to n, adds i MOD CASE_ARMS to a total in the arm
+	 * chosen by i MOD CASE_ARMS, either from a chain of IF statements or from a CASE statement.
+	 *
+	 * @param useCase true to choose the arm with a CASE statement
+	 * @return Source of the kernel
+	 */
+	private static String caseKernel(boolean useCase) {
+		StringBuilder arms = new StringBuilder();
+		for (int j = 0; j < CASE_ARMS; j++) {
+			String add = "total := total + " + j;
+			if (useCase) {
+				arms.append("      " + j + ": " + add + ";\n");
+			} else {
+				arms.append((j == 0) ? "    " : "    ELSE ");
+				arms.append("IF k = " + j + " THEN " + add + "\n");
+			}
+		}
+		return program(
+			"UNIT cases;",
+			"VAR n, i, k, total : INTEGER;",
+			"BEGIN",
+			"  total := 0;",
+			"  FOR i := 1 TO n DO",
+			"  BEGIN",
+			"    k := MOD(i, " + CASE_ARMS + ");",
+			useCase ? "    CASE k OF\n" + arms + "    END" : arms.substring(0, arms.length() - 1),
+			"  END",
+			"END.");
+	}
+
+	// Joins lines of source into a program
+	private static String program(String... lines) { return String.join("\n", lines) + "\n"; }
+
+	// Runs a program repeatedly with its output discarded, returning the nanoseconds per run
+	private static double timeRuns(Interpreter interp, QuadTable q, SymbolTable s, int runs) {
+		PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+		IntInput in = IntInput.FromArray();
+		for (int i = 0; i < WARMUP_RUNS; i++) {
+			interp.InterpretQuads(q, s, false, null, in, out);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < runs; i++) {
+			interp.InterpretQuads(q, s, false, null, in, out);
+		}
+		return (System.nanoTime() - start) / (double) runs;
+	}
+
+	private static void printTracing(String name, double traced, double plain, long quads) {
+		System.out.println("  " + StringUtils.PadToLength(name, 10) +
+		                   String.format("%10.3f ms/run  %10.1f ns/quad traced", traced / 1e6,
+		                                 (traced - plain) / quads));
+	}
+
+	/**
+	 * Runs a program repeatedly, starting a new trace file for each run.
+	 *
+	 * @param path File to trace to, or null to run untraced
+	 * @return Average nanoseconds per timed run
+	 */
+	private static double timeTracing(Interpreter interp, QuadTable q, SymbolTable s, Path path) {
+		PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+		IntInput in = IntInput.FromArray();
+		long total = 0;
+		for (int i = 0; i < 1 + TRACE_RUNS; i++) {
+			if (path != null) {
+				try {
+					Files.deleteIfExists(path);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			long start = System.nanoTime();
+			interp.InterpretQuads(q, s, path != null, (path != null) ? path.toString() : null, in,
+			                      out);
+			if (i > 0) { // the first run warms up
+				total += System.nanoTime() - start;
+			}
+		}
+		return total / (double) TRACE_RUNS;
+	}
+
+	/**
+	 * Runs a batch of small jobs through an ExecutionService with one worker, and with one worker
+	 * per processor, and prints the throughput and latency of each.
+	 *
+	 * @param kernel Either "factorial" or "summation"
+	 * @param engine The engine to run the jobs on
+	 */
+	private static void benchmarkBatch(String kernel, Interpreter.Engine engine) {
+		int processors = Runtime.getRuntime().availableProcessors();
+		System.out.println(kernel + " batch of " + BATCH_JOBS + " jobs on " + engine + ":");
+
+		int[] workerCounts = (processors > 1) ? new int[] {1, processors} : new int[] {1};
+		for (int workers : workerCounts) {
+			try (ExecutionService service = new ExecutionService(workers, engine)) {
+				service.runAll(makeBatch(kernel)); // warm up
+				try (ExecutionService timed = new ExecutionService(workers, engine)) {
+					timed.runAll(makeBatch(kernel));
+					System.out.println("  " + StringUtils.PadToLength(workers + " workers", 12) +
+					                   timed.getStats());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Sweeps a summation kernel that reads its loop bound over many inputs, with one thread and
+	 * with one thread per processor, and prints the throughput of each. Each sweep is then run
+	 * again through an empty ResultCache, which every input set after the first
+	 * BATCH_ITERATIONS hits.
+	 *
+	 * @param engine The engine to run the sweep on
+	 */
+	private static void benchmarkSweep(Interpreter.Engine engine) {
+		Interpreter interp = new Interpreter();
+		SymbolTable s = new SymbolTable(20);
+		QuadTable q = new QuadTable(20);
+		int n = s.AddSymbol("n", 'V', 0);
+		int i = s.AddSymbol("i", 'V', 0);
+		int sum = s.AddSymbol("sum", 'V', 0);
+		int one = s.AddSymbol("1", 'C', 1);
+		int zero = s.AddSymbol("0", 'C', 0);
+		int temp = s.AddSymbol("$temp", 'V', 0);
+		q.AddQuad(interp.opcodeFor("READ"), 0, 0, n);
+		q.AddQuad(interp.opcodeFor("MOV"), zero, 0, sum);
+		q.AddQuad(interp.opcodeFor("MOV"), one, 0, i);
+		q.AddQuad(interp.opcodeFor("SUB"), i, n, temp);
+		q.AddQuad(interp.opcodeFor("JP"), temp, 0, 8);
+		q.AddQuad(interp.opcodeFor("ADD"), sum, i, sum);
+		q.AddQuad(interp.opcodeFor("ADD"), i, one, i);
+		q.AddQuad(interp.opcodeFor("JMP"), 0, 0, 3);
+		q.AddQuad(interp.opcodeFor("PRINT"), 0, 0, sum);
+		q.AddQuad(interp.opcodeFor("STOP"), 0, 0, 0);
+
+		List<int[]> inputs = new ArrayList<>(SWEEP_RUNS);
+		for (int run = 0; run < SWEEP_RUNS; run++) {
+			inputs.add(new int[] {run % BATCH_ITERATIONS});
+		}
+
+		ParameterSweep sweep = new ParameterSweep(q, s, engine);
+		sweep.run(inputs, 1); // warm up
+		System.out.println("summation sweep of " + SWEEP_RUNS + " input sets on " + engine + ":");
+		int processors = Runtime.getRuntime().availableProcessors();
+		int[] threadCounts = (processors > 1) ? new int[] {1, processors} : new int[] {1};
+		for (int threads : threadCounts) {
+			long start = System.nanoTime();
+			sweep.run(inputs, threads);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.println("  " + StringUtils.PadToLength(threads + " threads", 20) +
+			                   String.format("%10.1f runs/s", SWEEP_RUNS / seconds));
+		}
+
+		ResultCache cache = new ResultCache(CACHE_CAPACITY);
+		sweep.setResultCache(cache);
+		for (int threads : threadCounts) {
+			cache.clear();
+			long start = System.nanoTime();
+			sweep.run(inputs, threads);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.println("  " + StringUtils.PadToLength(threads + " threads, cached", 20) +
+			                   String.format("%10.1f runs/s", SWEEP_RUNS / seconds));
+		}
+		System.out.println("  " + cache);
+	}
+
+	private static List<ExecutionService.Job> makeBatch(String kernel) {
+		Interpreter interp = new Interpreter();
+		List<ExecutionService.Job> jobs = new ArrayList<>(BATCH_JOBS);
+		for (int i = 0; i < BATCH_JOBS; i++) {
+			SymbolTable s = new SymbolTable(20);
+			QuadTable q = new QuadTable(20);
+			initializeKernel(kernel, interp, s, q, BATCH_ITERATIONS);
+			jobs.add(new ExecutionService.Job(kernel + i, q, s, ""));
+		}
+		return jobs;
+	}
+
+	/**
+	 * Runs a kernel repeatedly on a single engine. Output printed by the kernel is discarded.
+	 *
+	 * @param kernel Either "factorial" or "summation"
+	 * @param engine The engine to run the kernel on
+	 * @param iterations The loop bound n to run the kernel with
+	 * @param runs The number of timed runs to average over
+	 * @return Average nanoseconds per timed run
+	 */
+	private static double timeKernel(String kernel, Interpreter.Engine engine, int iterations,
+	                                 int runs) {
+		Interpreter interp = new Interpreter();
+		SymbolTable s = new SymbolTable(20);
+		QuadTable q = new QuadTable(20);
+		initializeKernel(kernel, interp, s, q, iterations);
+		interp.setEngine(engine);
+
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			for (int i = 0; i < WARMUP_RUNS; i++) {
+				interp.InterpretQuads(q, s, false, null);
+			}
+
+			long start = System.nanoTime();
+			for (int i = 0; i < runs; i++) {
+				interp.InterpretQuads(q, s, false, null);
+			}
+			return (System.nanoTime() - start) / (double) runs;
+		} finally {
+			System.setOut(console);
+		}
+	}
+
+	/**
+	 * Loads one of the Interpreter's hardcoded kernels, with its loop bound n changed.
+	 *
+	 * @param kernel Either "factorial" or "summation"
+	 * @param interp Interpreter providing the kernel
+	 * @param s The SymbolTable to hold data memory
+	 * @param q The QuadTable to hold instruction memory
+	 * @param iterations The loop bound n to run the kernel with
+	 */
+	private static void initializeKernel(String kernel, Interpreter interp, SymbolTable s,
+	                                     QuadTable q, int iterations) {
+		if (kernel.equals("factorial")) {
+			interp.initializeFactorialTest(s, q);
+		} else {
+			interp.initializeSummationTest(s, q);
+		}
+		s.UpdateSymbol(s.LookupSymbol("n"), SymbolTable.VARIABLE_USAGE, iterations);
+	}
+
+	/**
+	 * Output stream that discards its output, but remembers when it was first written to.
+	 */
+	private static class FirstWriteStream extends OutputStream {
+		@Override
+		public void write(int b) {
+			if (firstWrite < 0) {
+				firstWrite = System.nanoTime();
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			write(0);
+		}
+
+		long firstWrite = -1; // System.nanoTime() of the first write, or -1 if none yet
+	}
+}
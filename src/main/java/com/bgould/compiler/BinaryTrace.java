@@ -0,0 +1,317 @@
+package com.bgould.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records the interpreter's execution trace as fixed-size binary records, and decodes them back
+ * into the text lines written by TraceWriter.
+ *
+ * Each executed quad is stored as five ints in an in-memory ring of records: its program counter,
+ * opcode and operands. With VALUES, the value the quad left in its op3 symbol is stored as well,
+ * and the top bit of the opcode is set once it has been. A quad that failed, or that does not
+ * write op3, has no value. Recording a quad costs a handful of array stores.
+ *
+ * Without SPILL, the ring keeps only the most recent quads and is written out when the trace is
+ * closed. The interpreter closes its trace even when the program fails, so the last quads before
+ * a failure are kept at almost no cost. With SPILL, the ring is written out every time it fills,
+ * so the file holds the whole trace. COMPRESS writes the file through a GZIP stream.
+ *
+ * A trace file starts with MAGIC, VERSION, the flags, and the number of quads executed before the
+ * first record. The records follow in execution order, as big-endian ints.
+ *
+ * Usage: BinaryTrace <trace file> [text file]
+ *
+ * Run as a program, decodes a trace file into text, which is written to the text file if given
+ * and printed otherwise.
+ */
+public class BinaryTrace extends Trace {
+	public static final int VALUES = 1;   // record the value each quad leaves in its op3 symbol
+	public static final int SPILL = 2;    // write the ring out whenever it fills
+	public static final int COMPRESS = 4; // write the file through a GZIP stream
+
+	private static final int MAGIC = 0x51545243; // "QTRC"
+	private static final int VERSION = 1;
+
+	// Set in the opcode of a record whose value has been stored
+	private static final int HAS_VALUE = 0x80000000;
+
+	// Ints in a record without and with a value, which is stored as the two halves of a long
+	private static final int RECORD_INTS = 5;
+	private static final int RECORD_INTS_WITH_VALUE = 7;
+
+	// Bytes of records converted at a time when writing the ring out
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	/**
+	 * Creates a trace. With SPILL, the file is created straight away. Otherwise it is only
+	 * written when the trace is closed.
+	 *
+	 * @param filename File to write the trace to, which is replaced if it exists
+	 * @param capacity Number of quads the ring holds
+	 * @param flags Any combination of VALUES, SPILL and COMPRESS
+	 */
+	public BinaryTrace(String filename, int capacity, int flags) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Trace capacity must be positive");
+		}
+		this.filename = filename;
+		this.capacity = capacity;
+		this.flags = flags;
+		width = ((flags & VALUES) != 0) ? RECORD_INTS_WITH_VALUE : RECORD_INTS;
+		ring = new int[Math.multiplyExact(capacity, width)];
+		chunk = ByteBuffer.allocate(CHUNK_SIZE);
+		chunkInts = chunk.asIntBuffer();
+
+		if ((flags & SPILL) != 0) {
+			out = open(0);
+		}
+	}
+
+	@Override
+	public void record(int pc, int opcode, int op1, int op2, int op3) {
+		if (next == capacity) {
+			wrap();
+		}
+
+		int at = next * width;
+		ring[at] = pc;
+		ring[at + 1] = opcode;
+		ring[at + 2] = op1;
+		ring[at + 3] = op2;
+		ring[at + 4] = op3;
+		if (width == RECORD_INTS_WITH_VALUE) {
+			ring[at + 5] = 0;
+			ring[at + 6] = 0;
+		}
+		next++;
+	}
+
+	@Override
+	public void recordResult(int value) { storeValue(value); }
+
+	@Override
+	public void recordResult(double value) { storeValue(Double.doubleToRawLongBits(value)); }
+
+	/**
+	 * Writes the records still in the ring to the file, and closes it.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		if ((flags & SPILL) == 0) {
+			long kept = wrapped ? capacity : next;
+			out = open(recorded + next - kept);
+			if (out != null && wrapped) {
+				writeRecords(next, capacity);
+			}
+		}
+		if (out != null) {
+			writeRecords(0, next);
+		}
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Decodes a trace file into text lines, in the format written by TraceWriter. " = " and the
+	 * value are appended to the line of every quad that has a value.
+	 *
+	 * @param in Stream holding the trace file, compressed or not, which is left open
+	 * @param text Stream to write the lines to, which is flushed and left open
+	 * @return Number of quads executed before the first record in the file
+	 * @throws IOException If the trace cannot be read, or is not a complete trace file
+	 */
+	public static long decode(InputStream in, OutputStream text) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(in, CHUNK_SIZE);
+		buffered.mark(2);
+		boolean compressed = buffered.read() == 0x1f && buffered.read() == 0x8b;
+		buffered.reset();
+		DataInputStream data = new DataInputStream(compressed ?
+			new BufferedInputStream(new GZIPInputStream(buffered), CHUNK_SIZE) : buffered);
+
+		if (data.readInt() != MAGIC) {
+			throw new IOException("Not a trace file");
+		}
+		if (data.readInt() != VERSION) {
+			throw new IOException("Unsupported trace version");
+		}
+		boolean values = (data.readInt() & VALUES) != 0;
+		long skipped = data.readLong();
+
+		ByteBuffer record =
+			ByteBuffer.allocate(4 * (values ? RECORD_INTS_WITH_VALUE : RECORD_INTS));
+		OutputStream lines = new BufferedOutputStream(text, CHUNK_SIZE);
+		byte[] line = new byte[0];
+		int first;
+		while ((first = data.read()) >= 0) {
+			record.array()[0] = (byte) first;
+			try {
+				data.readFully(record.array(), 1, record.capacity() - 1);
+			} catch (IOException e) {
+				throw new IOException("Trace ends part way through a record", e);
+			}
+
+			int opcode = record.getInt(4) & ~HAS_VALUE;
+			if (line.length < TraceWriter.maxLineLength(opcode)) {
+				line = new byte[TraceWriter.maxLineLength(opcode)];
+			}
+			int count = TraceWriter.formatLine(line, 0, record.getInt(0), opcode, record.getInt(8),
+			                                   record.getInt(12), record.getInt(16));
+			lines.write(line, 0, count);
+			if ((record.getInt(4) & HAS_VALUE) != 0) {
+				long bits = record.getLong(20);
+				String value = writesReal(opcode) ? Double.toString(Double.longBitsToDouble(bits)) :
+				                                    Integer.toString((int) bits);
+				lines.write((" = " + value).getBytes(StandardCharsets.US_ASCII));
+			}
+			lines.write(System.lineSeparator().getBytes(StandardCharsets.US_ASCII));
+		}
+		lines.flush();
+		return skipped;
+	}
+
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.out.println("Usage: BinaryTrace <trace file> [text file]");
+			return;
+		}
+
+		try (InputStream in = Files.newInputStream(Paths.get(args[0]))) {
+			long skipped;
+			if (args.length > 1) {
+				try (OutputStream text = Files.newOutputStream(Paths.get(args[1]))) {
+					skipped = decode(in, text);
+				}
+			} else {
+				skipped = decode(in, System.out);
+			}
+			if (skipped > 0) {
+				System.err.println("Trace starts after " + skipped + " quads were executed");
+			}
+		} catch (IOException e) {
+			System.out.println("Unable to decode trace " + args[0] + ": " + e.getMessage());
+		}
+	}
+
+	// Stores the value of the last recorded quad, if the trace has values
+	private void storeValue(long bits) {
+		if (width == RECORD_INTS_WITH_VALUE && next > 0) {
+			int at = (next - 1) * width;
+			ring[at + 1] |= HAS_VALUE;
+			ring[at + 5] = (int) (bits >>> 32);
+			ring[at + 6] = (int) bits;
+		}
+	}
+
+	// Makes room for another record once the ring is full
+	private void wrap() {
+		if ((flags & SPILL) != 0 && out != null) {
+			writeRecords(0, capacity);
+		}
+		recorded += capacity;
+		wrapped = true;
+		next = 0;
+	}
+
+	// Opens the trace file and writes its header, or returns null if it cannot be written
+	private DataOutputStream open(long skipped) {
+		try {
+			OutputStream stream = Files.newOutputStream(Paths.get(filename));
+			if ((flags & COMPRESS) != 0) {
+				stream = new GZIPOutputStream(stream, CHUNK_SIZE) {
+					{
+						def.setLevel(Deflater.BEST_SPEED); // records are repetitive
+					}
+				};
+			}
+			DataOutputStream data = new DataOutputStream(stream);
+			data.writeInt(MAGIC);
+			data.writeInt(VERSION);
+			data.writeInt(flags & VALUES);
+			data.writeLong(skipped);
+			return data;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	// Writes records from..to-1 of the ring, giving up on the file if the write fails
+	private void writeRecords(int from, int to) {
+		try {
+			int end = to * width;
+			for (int at = from * width; at < end; at += chunkInts.capacity()) {
+				int length = Math.min(end - at, chunkInts.capacity());
+				chunkInts.clear();
+				chunkInts.put(ring, at, length);
+				out.write(chunk.array(), 0, 4 * length);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			try {
+				out.close();
+			} catch (IOException ignored) {
+				// already reported the first failure
+			}
+			out = null;
+		}
+	}
+
+	// Opcodes that leave a real in their op3 symbol
+	private static boolean writesReal(int opcode) {
+		switch (opcode) {
+		case Interpreter.OP_DIVF:
+		case Interpreter.OP_MULF:
+		case Interpreter.OP_SUBF:
+		case Interpreter.OP_ADDF:
+		case Interpreter.OP_MOVF:
+		case Interpreter.OP_ITOF:
+		case Interpreter.OP_ABSF:
+		case Interpreter.OP_MINF:
+		case Interpreter.OP_MAXF:
+		case Interpreter.OP_POWF:
+		case Interpreter.OP_SQRT:
+		case Interpreter.OP_LDAF:
+		case Interpreter.OP_SUMF:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private final String filename;     // file the trace is written to
+	private final int capacity;        // number of records the ring holds
+	private final int flags;           // VALUES, SPILL and COMPRESS
+	private final int width;           // ints per record
+	private final int[] ring;          // records, the oldest at next once the ring has wrapped
+	private final ByteBuffer chunk;    // records being converted to bytes
+	private final IntBuffer chunkInts; // view of chunk to put records into
+	private DataOutputStream out;      // the trace file, or null if not open or it failed
+	private int next;                  // index of the record to fill next
+	private long recorded;             // records filled before the ring last wrapped
+	private boolean wrapped;           // true once the ring has been filled at least once
+	private boolean closed;            // true once close has been called
+}
@@ -0,0 +1,999 @@
+package com.bgould.compiler;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import com.bgould.compiler.ADT.DataMemory;
+import com.bgould.compiler.ADT.QuadTable;
+import com.bgould.compiler.ADT.SymbolTable;
+import com.bgould.compiler.utils.ClassFileWriter;
+import com.bgould.compiler.utils.IntInput;
+
+/**
+ * Translates a decoded program into a JVM class with a single static method, so that HotSpot can
+ * compile the whole program to native code.
+ *
+ * Every integer symbol the program uses is held in a local variable of the generated method, reals
+ * are operated on in place in data memory, and jumps become real JVM branches. A JTAB becomes a
+ * tableswitch whose entries lead straight to where the JMPs of its table go. Programs that
+ * cannot be translated statically (e.g. a JINDR through a symbol the program writes to, a CALL,
+ * whose RET only finds its destination at run time, or a symbol whose data type changes while
+ * running) are rejected, and must be executed by the interpreter instead.
+ */
+public class BytecodeCompiler {
+	// Internal name given to every generated class. Each class is defined by its own class
+	// loader, so the names never clash.
+	static final String CLASS_NAME = "com/bgould/compiler/CompiledQuads";
+	static final String RUN_DESCRIPTOR =
+		"([I[D[Ljava/lang/String;Lcom/bgould/compiler/utils/IntInput;Ljava/io/PrintStream;)V";
+
+	// Standalone classes read from a Scanner instead, so they only depend on the standard library
+	static final String STANDALONE_RUN_DESCRIPTOR =
+		"([I[D[Ljava/lang/String;Ljava/util/Scanner;Ljava/io/PrintStream;)V";
+
+	// Local variable slots of the generated run method
+	private static final int INTS_LOCAL = 0;
+	private static final int REALS_LOCAL = 1;
+	private static final int STRINGS_LOCAL = 2;
+	private static final int INPUT_LOCAL = 3;
+	private static final int OUT_LOCAL = 4;
+	private static final int FIRST_SYMBOL_LOCAL = 5;
+
+	// Timestamp of every entry in generated jars (1980-01-01, the earliest a jar can record)
+	private static final long JAR_ENTRY_TIME = 315532800000L;
+
+	// Deepest operand stack of the run method: a real array store with two real operands
+	private static final int MAX_STACK = 6;
+
+	// Largest method body whose branches can all use 16-bit offsets
+	private static final int MAX_CODE_LENGTH = Short.MAX_VALUE;
+
+	// JVM instructions used by generated code
+	private static final int ICONST_0 = 0x03;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC = 0x12;
+	private static final int LDC_W = 0x13;
+	private static final int LDC2_W = 0x14;
+	private static final int ILOAD = 0x15;
+	private static final int ALOAD = 0x19;
+	private static final int IALOAD = 0x2e;
+	private static final int DALOAD = 0x31;
+	private static final int AALOAD = 0x32;
+	private static final int ISTORE = 0x36;
+	private static final int ASTORE = 0x3a;
+	private static final int IASTORE = 0x4f;
+	private static final int DASTORE = 0x52;
+	private static final int AASTORE = 0x53;
+	private static final int DUP = 0x59;
+	private static final int IADD = 0x60;
+	private static final int DADD = 0x63;
+	private static final int ISUB = 0x64;
+	private static final int DSUB = 0x67;
+	private static final int IMUL = 0x68;
+	private static final int DMUL = 0x6b;
+	private static final int IDIV = 0x6c;
+	private static final int DDIV = 0x6f;
+	private static final int IREM = 0x70;
+	private static final int IINC = 0x84;
+	private static final int I2D = 0x87;
+	private static final int D2I = 0x8e;
+	private static final int DCMPL = 0x97;
+	private static final int IFEQ = 0x99;
+	private static final int IFNE = 0x9a;
+	private static final int IFLT = 0x9b;
+	private static final int IFGE = 0x9c;
+	private static final int IFGT = 0x9d;
+	private static final int IFLE = 0x9e;
+	private static final int GOTO = 0xa7;
+	private static final int TABLESWITCH = 0xaa;
+	private static final int RETURN = 0xb1;
+	private static final int GETSTATIC = 0xb2;
+	private static final int INVOKEVIRTUAL = 0xb6;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int INVOKESTATIC = 0xb8;
+	private static final int NEW = 0xbb;
+	private static final int NEWARRAY = 0xbc;
+	private static final int ANEWARRAY = 0xbd;
+	private static final int ATHROW = 0xbf;
+	private static final int WIDE = 0xc4;
+
+	// Element types for NEWARRAY
+	private static final int T_DOUBLE = 7;
+	private static final int T_INT = 10;
+
+	// Local variable slots of the generated main method
+	private static final int MAIN_INTS_LOCAL = 1;
+	private static final int MAIN_REALS_LOCAL = 2;
+	private static final int MAIN_STRINGS_LOCAL = 3;
+	private static final int MAIN_SCANNER_LOCAL = 4;
+
+	/**
+	 * A program that has been translated to bytecode and loaded into the JVM.
+	 */
+	public static class CompiledProgram {
+		private CompiledProgram(int[] code, char[] types, int[] indirectSlots,
+		                        int[] indirectTargets, MethodHandle run) {
+			this.code = code;
+			this.types = types;
+			this.indirectSlots = indirectSlots;
+			this.indirectTargets = indirectTargets;
+			this.run = run;
+		}
+
+		/**
+		 * Checks whether this program was compiled from the given decoded program and data
+		 * memory, i.e. whether it may be run in place of interpreting them.
+		 *
+		 * @param code A decoded program
+		 * @param mem Data memory the program is about to run against
+		 * @return true if running this compiled program is equivalent to interpreting code
+		 */
+		public boolean matches(int[] code, DataMemory mem) {
+			if (!Arrays.equals(this.code, code) || !Arrays.equals(types, mem.GetDataTypes())) {
+				return false;
+			}
+
+			// static JINDR targets were resolved using the values in memory at compile time
+			for (int i = 0; i < indirectSlots.length; i++) {
+				if (mem.GetIntegers()[indirectSlots[i]] != indirectTargets[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Runs the program to completion against the given data memory.
+		 *
+		 * @param mem Data memory for execution; must satisfy matches()
+		 * @param in Source of values for READ instructions
+		 * @param out Destination of PRINT output and READ prompts
+		 */
+		public void run(DataMemory mem, IntInput in, PrintStream out) {
+			try {
+				run.invokeExact(mem.GetIntegers(), mem.GetFloats(), mem.GetStrings(), in, out);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new IllegalStateException(t);
+			}
+		}
+
+		private int[] code;            // decoded program this was compiled from
+		private char[] types;          // data types of memory this was compiled against
+		private int[] indirectSlots;   // symbols read by JINDR instructions
+		private int[] indirectTargets; // values of indirectSlots at compile time
+		private MethodHandle run;      // the generated run method
+	}
+
+	/**
+	 * Translates and loads a decoded program.
+	 *
+	 * @param code The program to translate, as produced by Interpreter.decode
+	 * @param mem Data memory the program will run against
+	 * @return The loaded program, or null if the program cannot be translated
+	 */
+	public static CompiledProgram compile(int[] code, DataMemory mem) {
+		BytecodeCompiler compiler = new BytecodeCompiler(code, mem);
+		byte[] classFile = compiler.translate(CLASS_NAME);
+		if (classFile == null) {
+			return null;
+		}
+
+		Class<?> program = new ProgramLoader().define(CLASS_NAME.replace('/', '.'), classFile);
+		MethodHandle run;
+		try {
+			run = MethodHandles.lookup().findStatic(
+				program, "run",
+				MethodType.methodType(void.class, int[].class, double[].class, String[].class,
+			                          IntInput.class, PrintStream.class));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+
+		return new CompiledProgram(code.clone(), mem.GetDataTypes().clone(),
+		                           compiler.indirectSlots.stream().mapToInt(i -> i).toArray(),
+		                           compiler.indirectTargets.stream().mapToInt(i -> i).toArray(),
+		                           run);
+	}
+
+	/**
+	 * Class loader holding a single generated class. Giving each program its own loader lets the
+	 * class be unloaded once the program is no longer referenced.
+	 */
+	private static class ProgramLoader extends ClassLoader {
+		ProgramLoader() { super(BytecodeCompiler.class.getClassLoader()); }
+
+		Class<?> define(String name, byte[] classFile) {
+			return defineClass(name, classFile, 0, classFile.length);
+		}
+	}
+
+	/**
+	 * Translates a program into a standalone class, which can be run with "java -cp". Its main
+	 * method starts from the symbol values currently in s, reads input from System.in, and prints
+	 * to System.out.
+	 *
+	 * The generated class only depends on the Java standard library, and is identical every time
+	 * the same program is translated.
+	 *
+	 * @param q QuadTable containing instruction memory of the program
+	 * @param s SymbolTable containing initial data memory of the program
+	 * @param className Internal name of the class to generate, e.g. "Factorial"
+	 * @return The class file, or null if the program cannot be translated
+	 */
+	public static byte[] compileStandalone(QuadTable q, SymbolTable s, String className) {
+		DataMemory mem = new DataMemory(s);
+		BytecodeCompiler compiler = new BytecodeCompiler(Interpreter.decode(q), mem);
+		if (!compiler.generateRun(className, true)) {
+			return null;
+		}
+
+		compiler.generateMain(className, mem);
+		return compiler.out.ToByteArray();
+	}
+
+	/**
+	 * Writes a runnable jar holding a single class, which is run by "java -jar". Entries are
+	 * timestamped with a fixed date, so the same class always produces an identical jar.
+	 *
+	 * @param path File to write the jar to
+	 * @param className Internal name of the class, which becomes the jar's Main-Class
+	 * @param classFile Contents of the class file
+	 * @throws IOException If the jar cannot be written
+	 */
+	public static void writeJar(String path, String className, byte[] classFile)
+		throws IOException {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, className.replace('/', '.'));
+
+		try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(path))) {
+			JarEntry entry = new JarEntry(JarFile.MANIFEST_NAME);
+			entry.setTime(JAR_ENTRY_TIME);
+			jar.putNextEntry(entry);
+			manifest.write(jar);
+			jar.closeEntry();
+
+			entry = new JarEntry(className + ".class");
+			entry.setTime(JAR_ENTRY_TIME);
+			jar.putNextEntry(entry);
+			jar.write(classFile);
+			jar.closeEntry();
+		}
+	}
+
+	private BytecodeCompiler(int[] code, DataMemory mem) {
+		this.code = code;
+		this.count = code.length / Interpreter.QUAD_WIDTH - 1; // decode adds one row past the end
+		this.types = mem.GetDataTypes();
+		this.ints = mem.GetIntegers();
+		this.size = mem.Size();
+	}
+
+	/**
+	 * Generates a class whose static run method executes the program.
+	 *
+	 * @param className Internal name of the class to generate
+	 * @return The class file, or null if the program cannot be translated
+	 */
+	byte[] translate(String className) {
+		return generateRun(className, false) ? out.ToByteArray() : null;
+	}
+
+	/**
+	 * Starts a class, and adds a static run method to it that executes the program.
+	 *
+	 * @param className Internal name of the class to generate
+	 * @param standalone true to read input from a Scanner, prompting for every value as the
+	 *        console does, rather than from an IntInput
+	 * @return true if the program could be translated
+	 */
+	private boolean generateRun(String className, boolean standalone) {
+		if (!analyze()) {
+			return false;
+		}
+		this.standalone = standalone;
+
+		out = new ClassFileWriter(className, "java/lang/Object",
+		                          ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL |
+		                              ClassFileWriter.ACC_SUPER);
+		buf = new ClassFileWriter.CodeBuffer();
+		int[] quadStart = new int[count];
+		ArrayList<int[]> branches = new ArrayList<>(); // {branch offset, target quad}
+		switchEntries = new ArrayList<>();
+
+		// Copy every integer symbol the program uses into its local
+		for (int i = 0; i < size; i++) {
+			if (usedInts[i]) {
+				load(ALOAD, INTS_LOCAL);
+				pushInt(i);
+				buf.U1(IALOAD);
+				store(ISTORE, symbolLocal(i));
+			}
+		}
+
+		int bodyStart = buf.Position();
+		for (int pc = 0; pc < count; pc++) {
+			int at = pc * Interpreter.QUAD_WIDTH;
+			int op1 = code[at + 1];
+			int op2 = code[at + 2];
+			int op3 = code[at + 3];
+			quadStart[pc] = buf.Position();
+
+			switch (code[at]) {
+			case Interpreter.OP_STOP:
+				branches.add(new int[] {buf.Position(), count});
+				branch(GOTO);
+				break;
+			case Interpreter.OP_DIV:
+				arithmetic(IDIV, op1, op2, op3);
+				break;
+			case Interpreter.OP_MUL:
+				arithmetic(IMUL, op1, op2, op3);
+				break;
+			case Interpreter.OP_SUB:
+				arithmetic(ISUB, op1, op2, op3);
+				break;
+			case Interpreter.OP_ADD:
+				arithmetic(IADD, op1, op2, op3);
+				break;
+			case Interpreter.OP_MOV:
+				load(ILOAD, symbolLocal(op1));
+				store(ISTORE, symbolLocal(op3));
+				break;
+			case Interpreter.OP_PRINT:
+				print(op3);
+				break;
+			case Interpreter.OP_READ:
+				if (standalone) {
+					printConstant("> ");
+					flushOutput();
+					load(ALOAD, INPUT_LOCAL);
+					buf.U1(INVOKEVIRTUAL);
+					buf.U2(out.MethodRef("java/util/Scanner", "nextInt", "()I"));
+				} else {
+					load(ALOAD, INPUT_LOCAL);
+					buf.U1(INVOKEVIRTUAL);
+					buf.U2(out.MethodRef("com/bgould/compiler/utils/IntInput", "NextInt", "()I"));
+				}
+				store(ISTORE, symbolLocal(op3));
+				break;
+			case Interpreter.OP_JMP:
+				branches.add(new int[] {buf.Position(), op3});
+				branch(GOTO);
+				break;
+			case Interpreter.OP_JINDR:
+				branches.add(new int[] {buf.Position(), ints[op3]});
+				branch(GOTO);
+				break;
+			case Interpreter.OP_JTAB:
+				if (op2 == 0) { // a tableswitch needs at least one entry
+					branches.add(new int[] {buf.Position(), op3});
+					branch(GOTO);
+				} else {
+					load(ILOAD, symbolLocal(op1));
+					tableSwitch(pc, op2, op3);
+				}
+				break;
+			case Interpreter.OP_CJZ:
+			case Interpreter.OP_CJP:
+			case Interpreter.OP_CJN:
+			case Interpreter.OP_CJNZ:
+			case Interpreter.OP_CJNP:
+			case Interpreter.OP_CJNN:
+				load(ILOAD, symbolLocal(op1));
+				load(ILOAD, symbolLocal(op2));
+				buf.U1(ISUB);
+				branches.add(new int[] {buf.Position(), op3});
+				branch(conditionalBranch(code[at] - Interpreter.OP_CJZ + Interpreter.OP_JZ));
+				break;
+			case Interpreter.OP_LOOP:
+				increment(symbolLocal(op1));
+				load(ILOAD, symbolLocal(op2));
+				load(ILOAD, symbolLocal(op1));
+				buf.U1(ISUB);
+				branches.add(new int[] {buf.Position(), op3});
+				branch(IFGE);
+				break;
+			case Interpreter.OP_DIVF:
+				realArithmetic(DDIV, op1, op2, op3);
+				break;
+			case Interpreter.OP_MULF:
+				realArithmetic(DMUL, op1, op2, op3);
+				break;
+			case Interpreter.OP_SUBF:
+				realArithmetic(DSUB, op1, op2, op3);
+				break;
+			case Interpreter.OP_ADDF:
+				realArithmetic(DADD, op1, op2, op3);
+				break;
+			case Interpreter.OP_MOVF:
+				startRealStore(op3);
+				loadReal(op1);
+				buf.U1(DASTORE);
+				break;
+			case Interpreter.OP_ITOF:
+				startRealStore(op3);
+				load(ILOAD, symbolLocal(op1));
+				buf.U1(I2D);
+				buf.U1(DASTORE);
+				break;
+			case Interpreter.OP_FTOI:
+				loadReal(op1);
+				buf.U1(D2I);
+				store(ISTORE, symbolLocal(op3));
+				break;
+			case Interpreter.OP_CMPF:
+				loadReal(op1);
+				loadReal(op2);
+				buf.U1(DCMPL);
+				store(ISTORE, symbolLocal(op3));
+				break;
+			case Interpreter.OP_ABS:
+				load(ILOAD, symbolLocal(op1));
+				invokeMath("abs", "(I)I");
+				store(ISTORE, symbolLocal(op3));
+				break;
+			case Interpreter.OP_MIN:
+			case Interpreter.OP_MAX:
+				load(ILOAD, symbolLocal(op1));
+				load(ILOAD, symbolLocal(op2));
+				invokeMath(code[at] == Interpreter.OP_MIN ? "min" : "max", "(II)I");
+				store(ISTORE, symbolLocal(op3));
+				break;
+			case Interpreter.OP_MOD:
+				arithmetic(IREM, op1, op2, op3);
+				break;
+			case Interpreter.OP_POW:
+				load(ILOAD, symbolLocal(op1));
+				buf.U1(I2D);
+				load(ILOAD, symbolLocal(op2));
+				buf.U1(I2D);
+				invokeMath("pow", "(DD)D");
+				buf.U1(D2I);
+				store(ISTORE, symbolLocal(op3));
+				break;
+			case Interpreter.OP_ABSF:
+			case Interpreter.OP_SQRT:
+				startRealStore(op3);
+				loadReal(op1);
+				invokeMath(code[at] == Interpreter.OP_ABSF ? "abs" : "sqrt", "(D)D");
+				buf.U1(DASTORE);
+				break;
+			case Interpreter.OP_MINF:
+			case Interpreter.OP_MAXF:
+			case Interpreter.OP_POWF:
+				startRealStore(op3);
+				loadReal(op1);
+				loadReal(op2);
+				invokeMath(realFunctionName(code[at]), "(DD)D");
+				buf.U1(DASTORE);
+				break;
+			default: // conditional jump
+				load(ILOAD, symbolLocal(op1));
+				branches.add(new int[] {buf.Position(), op3});
+				branch(conditionalBranch(code[at]));
+				break;
+			}
+		}
+
+		// Running off the end of the program behaves like an unrecognized operation
+		buf.U1(NEW);
+		buf.U2(out.ClassRef("java/lang/IllegalArgumentException"));
+		buf.U1(DUP);
+		pushString("QuadTable contained an unrecognized operation");
+		buf.U1(INVOKESPECIAL);
+		buf.U2(out.MethodRef("java/lang/IllegalArgumentException", "<init>",
+		                     "(Ljava/lang/String;)V"));
+		buf.U1(ATHROW);
+
+		// STOP: copy written symbols back to memory and return
+		int exit = buf.Position();
+		storeWrittenSymbols();
+		buf.U1(RETURN);
+
+		// Any exception: copy written symbols back to memory, then rethrow
+		int handler = buf.Position();
+		storeWrittenSymbols();
+		buf.U1(ATHROW);
+
+		if (buf.Position() > MAX_CODE_LENGTH) {
+			return false;
+		}
+		for (int[] branch : branches) {
+			int target = (branch[1] == count) ? exit : quadStart[branch[1]];
+			buf.PatchU2(branch[0] + 1, target - branch[0]);
+		}
+		for (int[] entry : switchEntries) {
+			buf.PatchU4(entry[0], quadStart[entry[2]] - entry[1]);
+		}
+
+		out.AddMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, "run",
+		              standalone ? STANDALONE_RUN_DESCRIPTOR : RUN_DESCRIPTOR, MAX_STACK,
+		              FIRST_SYMBOL_LOCAL + size, buf.ToByteArray(),
+		              new int[][] {{bodyStart, exit, handler}});
+		return true;
+	}
+
+	/**
+	 * Adds a main method to the class, which fills data memory with the symbol values in mem and
+	 * then calls run.
+	 *
+	 * @param className Internal name of the class being generated
+	 * @param mem Initial data memory of the program
+	 */
+	private void generateMain(String className, DataMemory mem) {
+		buf = new ClassFileWriter.CodeBuffer();
+
+		pushInt(size);
+		buf.U1(NEWARRAY);
+		buf.U1(T_INT);
+		store(ASTORE, MAIN_INTS_LOCAL);
+		for (int i = 0; i < size; i++) {
+			if (usedInts[i] && ints[i] != 0) {
+				load(ALOAD, MAIN_INTS_LOCAL);
+				pushInt(i);
+				pushInt(ints[i]);
+				buf.U1(IASTORE);
+			}
+		}
+
+		pushInt(size);
+		buf.U1(NEWARRAY);
+		buf.U1(T_DOUBLE);
+		store(ASTORE, MAIN_REALS_LOCAL);
+		pushInt(size);
+		buf.U1(ANEWARRAY);
+		buf.U2(out.ClassRef("java/lang/String"));
+		store(ASTORE, MAIN_STRINGS_LOCAL);
+		for (int i = 0; i < size; i++) {
+			if (types[i] == SymbolTable.REAL_TYPE) {
+				load(ALOAD, MAIN_REALS_LOCAL);
+				pushInt(i);
+				buf.U1(LDC2_W);
+				buf.U2(out.DoubleConst(mem.GetFloats()[i]));
+				buf.U1(DASTORE);
+			} else if (types[i] == SymbolTable.STRING_TYPE) {
+				load(ALOAD, MAIN_STRINGS_LOCAL);
+				pushInt(i);
+				pushString(mem.GetStrings()[i]);
+				buf.U1(AASTORE);
+			}
+		}
+
+		buf.U1(NEW);
+		buf.U2(out.ClassRef("java/util/Scanner"));
+		buf.U1(DUP);
+		buf.U1(GETSTATIC);
+		buf.U2(out.FieldRef("java/lang/System", "in", "Ljava/io/InputStream;"));
+		buf.U1(INVOKESPECIAL);
+		buf.U2(out.MethodRef("java/util/Scanner", "<init>", "(Ljava/io/InputStream;)V"));
+		store(ASTORE, MAIN_SCANNER_LOCAL);
+
+		load(ALOAD, MAIN_INTS_LOCAL);
+		load(ALOAD, MAIN_REALS_LOCAL);
+		load(ALOAD, MAIN_STRINGS_LOCAL);
+		load(ALOAD, MAIN_SCANNER_LOCAL);
+		buf.U1(GETSTATIC);
+		buf.U2(out.FieldRef("java/lang/System", "out", "Ljava/io/PrintStream;"));
+		buf.U1(INVOKESTATIC);
+		buf.U2(out.MethodRef(className, "run", STANDALONE_RUN_DESCRIPTOR));
+
+		load(ALOAD, MAIN_SCANNER_LOCAL);
+		buf.U1(INVOKEVIRTUAL);
+		buf.U2(out.MethodRef("java/util/Scanner", "close", "()V"));
+		buf.U1(RETURN);
+
+		out.AddMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, "main",
+		              "([Ljava/lang/String;)V", 5, MAIN_SCANNER_LOCAL + 1, buf.ToByteArray(),
+		              new int[0][]);
+	}
+
+	/**
+	 * Checks that every quad can be translated, and records which symbols the generated code
+	 * reads and writes as integers.
+	 *
+	 * @return true if the program can be translated
+	 */
+	private boolean analyze() {
+		usedInts = new boolean[size];
+		written = new boolean[size];
+		indirectSlots = new ArrayList<>();
+		indirectTargets = new ArrayList<>();
+
+		for (int pc = 0; pc < count; pc++) {
+			int at = pc * Interpreter.QUAD_WIDTH;
+			int op1 = code[at + 1];
+			int op2 = code[at + 2];
+			int op3 = code[at + 3];
+
+			switch (code[at]) {
+			case Interpreter.OP_STOP:
+				break;
+			case Interpreter.OP_DIV:
+			case Interpreter.OP_MUL:
+			case Interpreter.OP_SUB:
+			case Interpreter.OP_ADD:
+				if (!readInt(op1) || !readInt(op2) || !writeInt(op3)) {
+					return false;
+				}
+				break;
+			case Interpreter.OP_MOV:
+				if (!readInt(op1) || !writeInt(op3)) {
+					return false;
+				}
+				break;
+			case Interpreter.OP_PRINT:
+				if (!inMemory(op3) || (types[op3] == SymbolTable.INTEGER_TYPE && !readInt(op3))) {
+					return false;
+				}
+				break;
+			case Interpreter.OP_READ:
+				if (!writeInt(op3)) {
+					return false;
+				}
+				break;
+			case Interpreter.OP_JMP:
+				if (!isQuad(op3)) {
+					return false;
+				}
+				break;
+			case Interpreter.OP_JZ:
+			case Interpreter.OP_JP:
+			case Interpreter.OP_JN:
+			case Interpreter.OP_JNZ:
+			case Interpreter.OP_JNP:
+			case Interpreter.OP_JNN:
+				if (!readInt(op1) || !isQuad(op3)) {
+					return false;
+				}
+				break;
+			case Interpreter.OP_CJZ:
+			case Interpreter.OP_CJP:
+			case Interpreter.OP_CJN:
+			case Interpreter.OP_CJNZ:
+			case Interpreter.OP_CJNP:
+			case Interpreter.OP_CJNN:
+				if (!readInt(op1) || !readInt(op2) || !isQuad(op3)) {
+					return false;
+				}
+				break;
+			case Interpreter.OP_LOOP:
+				if (!writeInt(op1) || !readInt(op2) || !isQuad(op3)) {
+					return false;
+				}
+				break;
+			case Interpreter.OP_JTAB:
+				if (!readInt(op1) || op2 < 0 || op2 >= count - pc || !isQuad(op3)) {
+					return false;
+				}
+				break;
+			case Interpreter.OP_JINDR:
+				if (!readInt(op3) || !isQuad(ints[op3])) {
+					return false;
+				}
+				indirectSlots.add(op3);
+				indirectTargets.add(ints[op3]);
+				break;
+			case Interpreter.OP_DIVF:
+			case Interpreter.OP_MULF:
+			case Interpreter.OP_SUBF:
+			case Interpreter.OP_ADDF:
+				if (!isReal(op1) || !isReal(op2) || !isReal(op3)) {
+					return false;
+				}
+				break;
+			case Interpreter.OP_MOVF:
+				if (!isReal(op1) || !isReal(op3)) {
+					return false;
+				}
+				break;
+			case Interpreter.OP_ITOF:
+				if (!readInt(op1) || !isReal(op3)) {
+					return false;
+				}
+				break;
+			case Interpreter.OP_FTOI:
+				if (!isReal(op1) || !writeInt(op3)) {
+					return false;
+				}
+				break;
+			case Interpreter.OP_CMPF:
+				if (!isReal(op1) || !isReal(op2) || !writeInt(op3)) {
+					return false;
+				}
+				break;
+			case Interpreter.OP_ABS:
+				if (!readInt(op1) || !writeInt(op3)) {
+					return false;
+				}
+				break;
+			case Interpreter.OP_MIN:
+			case Interpreter.OP_MAX:
+			case Interpreter.OP_MOD:
+			case Interpreter.OP_POW:
+				if (!readInt(op1) || !readInt(op2) || !writeInt(op3)) {
+					return false;
+				}
+				break;
+			case Interpreter.OP_ABSF:
+			case Interpreter.OP_SQRT:
+				if (!isReal(op1) || !isReal(op3)) {
+					return false;
+				}
+				break;
+			case Interpreter.OP_MINF:
+			case Interpreter.OP_MAXF:
+			case Interpreter.OP_POWF:
+				if (!isReal(op1) || !isReal(op2) || !isReal(op3)) {
+					return false;
+				}
+				break;
+			default:
+				return false;
+			}
+		}
+
+		// a JINDR target is only static if nothing in the program can change it
+		for (int slot : indirectSlots) {
+			if (written[slot]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean inMemory(int slot) { return slot >= 0 && slot < size; }
+
+	private boolean isQuad(int target) { return target >= 0 && target < count; }
+
+	// Records an integer read, which is only possible if the symbol is an integer
+	private boolean readInt(int slot) {
+		if (!inMemory(slot) || types[slot] != SymbolTable.INTEGER_TYPE) {
+			return false;
+		}
+		usedInts[slot] = true;
+		return true;
+	}
+
+	// Records an integer write. Writing an integer to a symbol changes its data type, which would
+	// change how other instructions treat it, so only integer symbols may be written.
+	private boolean writeInt(int slot) {
+		if (!readInt(slot)) {
+			return false;
+		}
+		written[slot] = true;
+		return true;
+	}
+
+	// Reals stay in data memory rather than locals, so they only need the right data type
+	private boolean isReal(int slot) {
+		return inMemory(slot) && types[slot] == SymbolTable.REAL_TYPE;
+	}
+
+	private int symbolLocal(int slot) { return FIRST_SYMBOL_LOCAL + slot; }
+
+	private void arithmetic(int instruction, int op1, int op2, int op3) {
+		load(ILOAD, symbolLocal(op1));
+		load(ILOAD, symbolLocal(op2));
+		buf.U1(instruction);
+		store(ISTORE, symbolLocal(op3));
+	}
+
+	private void realArithmetic(int instruction, int op1, int op2, int op3) {
+		startRealStore(op3);
+		loadReal(op1);
+		loadReal(op2);
+		buf.U1(instruction);
+		buf.U1(DASTORE);
+	}
+
+	// Calls a static method of java.lang.Math, whose arguments are already on the stack
+	private void invokeMath(String name, String descriptor) {
+		buf.U1(INVOKESTATIC);
+		buf.U2(out.MethodRef("java/lang/Math", name, descriptor));
+	}
+
+	private static String realFunctionName(int opcode) {
+		switch (opcode) {
+		case Interpreter.OP_MINF:
+			return "min";
+		case Interpreter.OP_MAXF:
+			return "max";
+		default:
+			return "pow";
+		}
+	}
+
+	private void loadReal(int slot) {
+		load(ALOAD, REALS_LOCAL);
+		pushInt(slot);
+		buf.U1(DALOAD);
+	}
+
+	// Pushes the array and index of a real, ready for the value to store and a DASTORE
+	private void startRealStore(int slot) {
+		load(ALOAD, REALS_LOCAL);
+		pushInt(slot);
+	}
+
+	// Prints a symbol the same way the interpreter's PRINT does
+	private void print(int slot) {
+		load(ALOAD, OUT_LOCAL);
+		switch (types[slot]) {
+		case SymbolTable.INTEGER_TYPE:
+			load(ILOAD, symbolLocal(slot));
+			println("(I)V");
+			break;
+		case SymbolTable.REAL_TYPE:
+			loadReal(slot);
+			println("(D)V");
+			break;
+		default:
+			load(ALOAD, STRINGS_LOCAL);
+			pushInt(slot);
+			buf.U1(AALOAD);
+			println("(Ljava/lang/String;)V");
+			break;
+		}
+	}
+
+	private void printConstant(String value) {
+		load(ALOAD, OUT_LOCAL);
+		pushString(value);
+		println("(Ljava/lang/String;)V");
+	}
+
+	// Makes sure the prompt is seen before waiting for input
+	private void flushOutput() {
+		load(ALOAD, OUT_LOCAL);
+		buf.U1(INVOKEVIRTUAL);
+		buf.U2(out.MethodRef("java/io/PrintStream", "flush", "()V"));
+	}
+
+	private void println(String descriptor) {
+		buf.U1(INVOKEVIRTUAL);
+		buf.U2(out.MethodRef("java/io/PrintStream", "println", descriptor));
+	}
+
+	private void storeWrittenSymbols() {
+		for (int i = 0; i < size; i++) {
+			if (written[i]) {
+				load(ALOAD, INTS_LOCAL);
+				pushInt(i);
+				load(ILOAD, symbolLocal(i));
+				buf.U1(IASTORE);
+			}
+		}
+	}
+
+	// Emits a branch instruction whose offset is patched once every quad has been placed
+	private void branch(int instruction) {
+		buf.U1(instruction);
+		buf.U2(0);
+	}
+
+	// Emits a tableswitch on the value on the stack, for the table of quads after the JTAB at pc.
+	// Entry offsets are patched once every quad has been placed.
+	private void tableSwitch(int pc, int length, int defaultTarget) {
+		int start = buf.Position();
+		buf.U1(TABLESWITCH);
+		while (buf.Position() % 4 != 0) {
+			buf.U1(0);
+		}
+		switchEntry(start, defaultTarget);
+		buf.U4(0);
+		buf.U4(length - 1);
+		for (int i = 1; i <= length; i++) {
+			int at = (pc + i) * Interpreter.QUAD_WIDTH;
+			switchEntry(start, (code[at] == Interpreter.OP_JMP) ? code[at + 3] : pc + i);
+		}
+	}
+
+	private void switchEntry(int start, int target) {
+		switchEntries.add(new int[] {buf.Position(), start, target});
+		buf.U4(0);
+	}
+
+	private int conditionalBranch(int opcode) {
+		switch (opcode) {
+		case Interpreter.OP_JZ:
+			return IFEQ;
+		case Interpreter.OP_JP:
+			return IFGT;
+		case Interpreter.OP_JN:
+			return IFLT;
+		case Interpreter.OP_JNZ:
+			return IFNE;
+		case Interpreter.OP_JNP:
+			return IFLE;
+		case Interpreter.OP_JNN:
+			return IFGE;
+		default:
+			throw new IllegalArgumentException("Not a conditional jump: " + opcode);
+		}
+	}
+
+	private void load(int instruction, int local) { localInstruction(instruction, local); }
+
+	private void store(int instruction, int local) { localInstruction(instruction, local); }
+
+	private void increment(int local) {
+		if (local > 0xff) {
+			buf.U1(WIDE);
+			buf.U1(IINC);
+			buf.U2(local);
+			buf.U2(1);
+		} else {
+			buf.U1(IINC);
+			buf.U1(local);
+			buf.U1(1);
+		}
+	}
+
+	private void localInstruction(int instruction, int local) {
+		if (local > 0xff) {
+			buf.U1(WIDE);
+			buf.U1(instruction);
+			buf.U2(local);
+		} else {
+			buf.U1(instruction);
+			buf.U1(local);
+		}
+	}
+
+	private void pushInt(int value) {
+		if (value >= -1 && value <= 5) {
+			buf.U1(ICONST_0 + value);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			buf.U1(BIPUSH);
+			buf.U1(value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			buf.U1(SIPUSH);
+			buf.U2(value);
+		} else {
+			pushConstant(out.IntConst(value));
+		}
+	}
+
+	private void pushString(String value) { pushConstant(out.StringConst(value)); }
+
+	private void pushConstant(int index) {
+		if (index > 0xff) {
+			buf.U1(LDC_W);
+			buf.U2(index);
+		} else {
+			buf.U1(LDC);
+			buf.U1(index);
+		}
+	}
+
+	private int[] code;  // decoded program being translated
+	private int count;   // number of quads in the program
+	private char[] types; // data type of every symbol
+	private int[] ints;   // integer value of every symbol
+	private int size;     // number of symbols
+
+	private boolean[] usedInts; // symbols held in locals of the generated method
+	private boolean[] written;  // symbols the program writes to
+	private ArrayList<Integer> indirectSlots;   // symbols read by JINDR instructions
+	private ArrayList<Integer> indirectTargets; // value of each indirect slot
+
+	private ClassFileWriter out;            // class being generated
+	private ClassFileWriter.CodeBuffer buf; // body of the run method
+	private boolean standalone;             // true if the run method reads from a Scanner
+	private ArrayList<int[]> switchEntries; // {entry offset, tableswitch offset, target quad}
+}
@@ -0,0 +1,236 @@
+package com.bgould.compiler;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import com.bgould.compiler.ADT.SymbolTable;
+
+/**
+ * Activation records of the procedures and functions a program is running, for CALL and RET.
+ *
+ * Every routine keeps its parameters, locals and temps in a contiguous range of symbols, its
+ * frame, which quads address directly. CALL pushes the values the callee's frame held before the
+ * call, along with the quad to return to, and RET pops them back into the frame. Only the
+ * activation that is running lives in data memory, so a recursive routine sees its own values,
+ * and its caller's values are unchanged once it returns. Routines are declared before they are
+ * used, so only a routine calling itself can find its frame in use, and every other CALL saves
+ * an empty frame and just the quad to return to.
+ *
+ * Saved values are held in primitive arrays that grow as needed, so a call allocates nothing once
+ * the stack has reached its deepest point.
+ */
+class CallStack {
+	// Number of activations that may be saved at once, beyond which CALL fails
+	static final int MAX_DEPTH = 100000;
+
+	// Ints used to record one activation: return address, first slot and slot count of its frame
+	private static final int RECORD_WIDTH = 3;
+
+	CallStack() {
+		this.records = new int[16 * RECORD_WIDTH];
+		this.ints = new int[64];
+		this.reals = new double[64];
+	}
+
+	/**
+	 * Saves the values of a frame held in data memory, before a CALL overwrites them.
+	 *
+	 * @param returnAddress Quad to execute once the callee returns
+	 * @param ints Integer values of data memory
+	 * @param reals Real values of data memory
+	 * @param first Slot of the first symbol in the callee's frame
+	 * @param count Number of symbols in the callee's frame
+	 * @throws IllegalStateException If MAX_DEPTH activations are already saved
+	 */
+	void push(int returnAddress, int[] ints, double[] reals, int first, int count) {
+		reserve(returnAddress, first, count);
+		System.arraycopy(ints, first, this.ints, top, count);
+		System.arraycopy(reals, first, this.reals, top, count);
+		top += count;
+	}
+
+	/**
+	 * Saves the values of a frame held in a SymbolTable, before a CALL overwrites them. Only
+	 * integer and real symbols are saved.
+	 *
+	 * @param returnAddress Quad to execute once the callee returns
+	 * @param s SymbolTable holding data memory
+	 * @param first Slot of the first symbol in the callee's frame
+	 * @param count Number of symbols in the callee's frame
+	 * @throws IllegalStateException If MAX_DEPTH activations are already saved
+	 */
+	void push(int returnAddress, SymbolTable s, int first, int count) {
+		reserve(returnAddress, first, count);
+		for (int i = 0; i < count; i++) {
+			switch (s.GetDataType(first + i)) {
+			case SymbolTable.INTEGER_TYPE:
+				ints[top + i] = s.GetInteger(first + i);
+				break;
+			case SymbolTable.REAL_TYPE:
+				reals[top + i] = s.GetFloat(first + i);
+				break;
+			default:
+				break;
+			}
+		}
+		top += count;
+	}
+
+	/**
+	 * Restores the values the latest activation's frame held when it was called.
+	 *
+	 * @param ints Integer values of data memory
+	 * @param reals Real values of data memory
+	 * @return The quad to return to
+	 * @throws IllegalStateException If no activation is saved
+	 */
+	int pop(int[] ints, double[] reals) {
+		int at = release();
+		int first = records[at + 1];
+		int count = records[at + 2];
+		System.arraycopy(this.ints, top, ints, first, count);
+		System.arraycopy(this.reals, top, reals, first, count);
+		return records[at];
+	}
+
+	/**
+	 * Restores the values the latest activation's frame held when it was called, into a
+	 * SymbolTable. Only integer and real symbols are restored.
+	 *
+	 * @param s SymbolTable holding data memory
+	 * @return The quad to return to
+	 * @throws IllegalStateException If no activation is saved
+	 */
+	int pop(SymbolTable s) {
+		int at = release();
+		int first = records[at + 1];
+		int count = records[at + 2];
+		for (int i = 0; i < count; i++) {
+			switch (s.GetDataType(first + i)) {
+			case SymbolTable.INTEGER_TYPE:
+				s.UpdateSymbol(first + i, s.GetUsage(first + i), ints[top + i]);
+				break;
+			case SymbolTable.REAL_TYPE:
+				s.UpdateSymbol(first + i, s.GetUsage(first + i), reals[top + i]);
+				break;
+			default:
+				break;
+			}
+		}
+		return records[at];
+	}
+
+	/**
+	 * @return Number of activations saved, which is 0 while the main program is running
+	 */
+	int depth() { return depth; }
+
+	/**
+	 * @return A stack holding the same activations, which shares nothing with this one
+	 */
+	CallStack copy() {
+		CallStack copy = new CallStack();
+		copy.records = records.clone();
+		copy.ints = ints.clone();
+		copy.reals = reals.clone();
+		copy.depth = depth;
+		copy.top = top;
+		return copy;
+	}
+
+	/**
+	 * Writes the saved activations to a checkpoint, oldest first.
+	 *
+	 * @param data The stream to write to
+	 * @throws IOException If the stream cannot be written
+	 */
+	void writeTo(DataOutputStream data) throws IOException {
+		data.writeInt(depth);
+		for (int i = 0; i < depth * RECORD_WIDTH; i++) {
+			data.writeInt(records[i]);
+		}
+		data.writeInt(top);
+		for (int i = 0; i < top; i++) {
+			data.writeInt(ints[i]);
+			data.writeDouble(reals[i]);
+		}
+	}
+
+	/**
+	 * Reads activations written by writeTo.
+	 *
+	 * @param data The stream to read from
+	 * @return The stack
+	 * @throws IOException If the stream cannot be read, or holds an invalid stack
+	 */
+	static CallStack readFrom(DataInputStream data) throws IOException {
+		CallStack stack = new CallStack();
+		int depth = data.readInt();
+		if (depth < 0 || depth > MAX_DEPTH) {
+			throw new IOException("Checkpoint has an invalid call stack");
+		}
+		stack.records = new int[Math.max(depth, 16) * RECORD_WIDTH];
+		for (int i = 0; i < depth * RECORD_WIDTH; i++) {
+			stack.records[i] = data.readInt();
+		}
+
+		int top = data.readInt();
+		if (top < 0) {
+			throw new IOException("Checkpoint has an invalid call stack");
+		}
+		stack.ints = new int[Math.max(top, 64)];
+		stack.reals = new double[stack.ints.length];
+		for (int i = 0; i < top; i++) {
+			stack.ints[i] = data.readInt();
+			stack.reals[i] = data.readDouble();
+		}
+		stack.depth = depth;
+		stack.top = top;
+		return stack;
+	}
+
+	// Records a new activation, and makes room for count saved values above top
+	private void reserve(int returnAddress, int first, int count) {
+		if (depth == MAX_DEPTH) {
+			throw new IllegalStateException("Call stack overflow");
+		}
+		if ((depth + 1) * RECORD_WIDTH > records.length) {
+			int[] grown = new int[records.length * 2];
+			System.arraycopy(records, 0, grown, 0, records.length);
+			records = grown;
+		}
+		if (top + count > ints.length) {
+			int length = Math.max(ints.length * 2, top + count);
+			int[] grownInts = new int[length];
+			double[] grownReals = new double[length];
+			System.arraycopy(ints, 0, grownInts, 0, top);
+			System.arraycopy(reals, 0, grownReals, 0, top);
+			ints = grownInts;
+			reals = grownReals;
+		}
+
+		int at = depth * RECORD_WIDTH;
+		records[at] = returnAddress;
+		records[at + 1] = first;
+		records[at + 2] = count;
+		depth++;
+	}
+
+	// Removes the latest activation, leaving top at its saved values
+	private int release() {
+		if (depth == 0) {
+			throw new IllegalStateException("RET without a matching CALL");
+		}
+		depth--;
+		int at = depth * RECORD_WIDTH;
+		top -= records[at + 2];
+		return at;
+	}
+
+	private int[] records;  // return address, first slot and slot count of every activation
+	private int[] ints;     // integer values saved by every activation, oldest first
+	private double[] reals; // real values saved by every activation, oldest first
+	private int depth;      // number of activations saved
+	private int top;        // number of values saved in ints and reals
+}
@@ -0,0 +1,374 @@
+package com.bgould.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import com.bgould.compiler.ADT.DataMemory;
+import com.bgould.compiler.ADT.SymbolTable;
+
+/**
+ * A snapshot of an ExecutionContext between two slices, which can be saved to a file and resumed
+ * in another process.
+ *
+ * A checkpoint holds everything needed to carry on running: the decoded program, the name, usage
+ * and value of every symbol, the program counter, the activations of procedures and functions
+ * that have not yet returned, input that was provided but not yet read, and
+ * how much input and output the program had consumed and produced. Taking a checkpoint only copies
+ * data memory, so it costs time proportional to the number of symbols, and saveAsync leaves the
+ * encoding and writing to a background thread.
+ *
+ * The file format is a fixed header, the fields in the order they are written by writeTo, and a
+ * CRC32 of everything before it, so a checkpoint cut short by a crash is never resumed.
+ */
+public class Checkpoint {
+	private static final int MAGIC = 0x51434B50; // "QCKP"
+	private static final int VERSION = 2;
+
+	Checkpoint(int[] code, SymbolTable symbols, DataMemory mem, int pc, CallStack calls,
+	           long executed, long instructionBudget, int[] pendingInput, boolean prompted,
+	           long inputConsumed, long outputLines) {
+		this.code = code;
+		this.names = new String[mem.Size()];
+		this.usages = new char[mem.Size()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = symbols.GetSymbol(i);
+			usages[i] = symbols.GetUsage(i);
+		}
+		this.mem = new DataMemory(mem);
+		this.pc = pc;
+		this.calls = calls.copy();
+		this.executed = executed;
+		this.instructionBudget = instructionBudget;
+		this.pendingInput = pendingInput;
+		this.prompted = prompted;
+		this.inputConsumed = inputConsumed;
+		this.outputLines = outputLines;
+	}
+
+	private Checkpoint(int[] code, String[] names, char[] usages, DataMemory mem, int pc,
+	                   CallStack calls, long executed, long instructionBudget, int[] pendingInput,
+	                   boolean prompted, long inputConsumed, long outputLines) {
+		this.code = code;
+		this.names = names;
+		this.usages = usages;
+		this.mem = mem;
+		this.pc = pc;
+		this.calls = calls;
+		this.executed = executed;
+		this.instructionBudget = instructionBudget;
+		this.pendingInput = pendingInput;
+		this.prompted = prompted;
+		this.inputConsumed = inputConsumed;
+		this.outputLines = outputLines;
+	}
+
+	/**
+	 * Creates a context that carries on from this checkpoint. The checkpoint itself is not
+	 * changed, so it can be resumed any number of times.
+	 *
+	 * @param out Destination of PRINT output and READ prompts from now on
+	 * @return A context whose next slice starts where the checkpointed one stopped. Its results
+	 *         are written back to a new SymbolTable, available from getSymbols.
+	 */
+	public ExecutionContext resume(PrintStream out) {
+		return new ExecutionContext(this, toSymbolTable(), new DataMemory(mem), out);
+	}
+
+	public int getProgramCounter() { return pc; }
+
+	public long getExecutedCount() { return executed; }
+
+	/**
+	 * @return Number of values the program had read by the time of the checkpoint
+	 */
+	public long getInputConsumed() { return inputConsumed; }
+
+	/**
+	 * @return Number of lines the program had printed by the time of the checkpoint, not
+	 *         counting READ prompts
+	 */
+	public long getOutputLines() { return outputLines; }
+
+	/**
+	 * Writes this checkpoint to a stream, in the checkpoint file format.
+	 *
+	 * @param stream The stream to write to, which is left open
+	 * @throws IOException If the stream cannot be written
+	 */
+	public void writeTo(OutputStream stream) throws IOException {
+		CheckedOutputStream checked = new CheckedOutputStream(stream, new CRC32());
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(checked));
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+
+		data.writeInt(code.length);
+		for (int word : code) {
+			data.writeInt(word);
+		}
+
+		int[] ints = mem.GetIntegers();
+		double[] reals = mem.GetFloats();
+		String[] strings = mem.GetStrings();
+		char[] types = mem.GetDataTypes();
+		data.writeInt(names.length);
+		for (int i = 0; i < names.length; i++) {
+			writeString(data, names[i]);
+			data.writeChar(usages[i]);
+			data.writeChar(types[i]);
+			switch (types[i]) {
+			case SymbolTable.INTEGER_TYPE:
+				data.writeInt(ints[i]);
+				break;
+			case SymbolTable.REAL_TYPE:
+				data.writeDouble(reals[i]);
+				break;
+			case SymbolTable.INTEGER_ARRAY_TYPE:
+				data.writeInt(mem.GetIntegerArrays()[i].length);
+				for (int element : mem.GetIntegerArrays()[i]) {
+					data.writeInt(element);
+				}
+				break;
+			case SymbolTable.REAL_ARRAY_TYPE:
+				data.writeInt(mem.GetFloatArrays()[i].length);
+				for (double element : mem.GetFloatArrays()[i]) {
+					data.writeDouble(element);
+				}
+				break;
+			default:
+				writeString(data, strings[i]);
+				break;
+			}
+		}
+
+		data.writeInt(pc);
+		calls.writeTo(data);
+		data.writeLong(executed);
+		data.writeLong(instructionBudget);
+		data.writeLong(inputConsumed);
+		data.writeLong(outputLines);
+		data.writeBoolean(prompted);
+		data.writeInt(pendingInput.length);
+		for (int value : pendingInput) {
+			data.writeInt(value);
+		}
+
+		data.flush();
+		data.writeLong(checked.getChecksum().getValue());
+		data.flush();
+	}
+
+	/**
+	 * Reads a checkpoint written by writeTo.
+	 *
+	 * @param stream The stream to read from, which is left open
+	 * @return The checkpoint
+	 * @throws IOException If the stream cannot be read, or does not hold a complete checkpoint
+	 */
+	public static Checkpoint readFrom(InputStream stream) throws IOException {
+		CheckedInputStream checked =
+			new CheckedInputStream(new BufferedInputStream(stream), new CRC32());
+		DataInputStream data = new DataInputStream(checked);
+		if (data.readInt() != MAGIC) {
+			throw new IOException("Not a checkpoint");
+		}
+		if (data.readInt() != VERSION) {
+			throw new IOException("Unsupported checkpoint version");
+		}
+
+		int[] code = new int[data.readInt()];
+		for (int i = 0; i < code.length; i++) {
+			code[i] = data.readInt();
+		}
+
+		int size = data.readInt();
+		String[] names = new String[size];
+		char[] usages = new char[size];
+		SymbolTable symbols = new SymbolTable(size);
+		for (int i = 0; i < size; i++) {
+			names[i] = readString(data);
+			usages[i] = data.readChar();
+			int index;
+			switch (data.readChar()) {
+			case SymbolTable.INTEGER_TYPE:
+				index = symbols.AddSymbol(names[i], usages[i], data.readInt());
+				break;
+			case SymbolTable.REAL_TYPE:
+				index = symbols.AddSymbol(names[i], usages[i], data.readDouble());
+				break;
+			case SymbolTable.STRING_TYPE:
+				index = symbols.AddSymbol(names[i], usages[i], readString(data));
+				break;
+			case SymbolTable.INTEGER_ARRAY_TYPE:
+				int[] ints = new int[data.readInt()];
+				for (int j = 0; j < ints.length; j++) {
+					ints[j] = data.readInt();
+				}
+				index = symbols.AddSymbol(names[i], usages[i], ints);
+				break;
+			case SymbolTable.REAL_ARRAY_TYPE:
+				double[] reals = new double[data.readInt()];
+				for (int j = 0; j < reals.length; j++) {
+					reals[j] = data.readDouble();
+				}
+				index = symbols.AddSymbol(names[i], usages[i], reals);
+				break;
+			default:
+				throw new IOException("Symbol " + i + " has an invalid data type");
+			}
+			if (index != i) {
+				throw new IOException("Checkpoint has a duplicate symbol " + names[i]);
+			}
+		}
+
+		int pc = data.readInt();
+		CallStack calls = CallStack.readFrom(data);
+		long executed = data.readLong();
+		long instructionBudget = data.readLong();
+		long inputConsumed = data.readLong();
+		long outputLines = data.readLong();
+		boolean prompted = data.readBoolean();
+		int[] pendingInput = new int[data.readInt()];
+		for (int i = 0; i < pendingInput.length; i++) {
+			pendingInput[i] = data.readInt();
+		}
+
+		long expected = checked.getChecksum().getValue();
+		if (data.readLong() != expected) {
+			throw new IOException("Checkpoint is corrupt");
+		}
+
+		return new Checkpoint(code, names, usages, new DataMemory(symbols), pc, calls, executed,
+		                      instructionBudget, pendingInput, prompted, inputConsumed,
+		                      outputLines);
+	}
+
+	/**
+	 * Writes this checkpoint to a file. The file is replaced in one step, so it always holds
+	 * either the previous checkpoint or this one.
+	 *
+	 * @param path The file to write
+	 * @throws IOException If the file cannot be written
+	 */
+	public void save(Path path) throws IOException {
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (OutputStream stream = Files.newOutputStream(temp)) {
+			writeTo(stream);
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+		           StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Writes this checkpoint to a file on a background thread. Checkpoints are written one at a
+	 * time, in the order they were saved.
+	 *
+	 * @param path The file to write
+	 * @return A future completed once the file has been written
+	 */
+	public CompletableFuture<Void> saveAsync(Path path) {
+		return CompletableFuture.runAsync(() -> {
+			try {
+				save(path);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, WRITER);
+	}
+
+	/**
+	 * Reads a checkpoint from a file written by save.
+	 *
+	 * @param path The file to read
+	 * @return The checkpoint
+	 * @throws IOException If the file cannot be read, or does not hold a complete checkpoint
+	 */
+	public static Checkpoint load(Path path) throws IOException {
+		try (InputStream stream = Files.newInputStream(path)) {
+			return readFrom(stream);
+		}
+	}
+
+	// Builds a SymbolTable holding the symbols as they were when the checkpoint was taken
+	private SymbolTable toSymbolTable() {
+		SymbolTable s = new SymbolTable(names.length);
+		int[] ints = mem.GetIntegers();
+		double[] reals = mem.GetFloats();
+		String[] strings = mem.GetStrings();
+		char[] types = mem.GetDataTypes();
+
+		for (int i = 0; i < names.length; i++) {
+			int index;
+			switch (types[i]) {
+			case SymbolTable.INTEGER_TYPE:
+				index = s.AddSymbol(names[i], usages[i], ints[i]);
+				break;
+			case SymbolTable.REAL_TYPE:
+				index = s.AddSymbol(names[i], usages[i], reals[i]);
+				break;
+			case SymbolTable.INTEGER_ARRAY_TYPE:
+				index = s.AddSymbol(names[i], usages[i], mem.GetIntegerArrays()[i].clone());
+				break;
+			case SymbolTable.REAL_ARRAY_TYPE:
+				index = s.AddSymbol(names[i], usages[i], mem.GetFloatArrays()[i].clone());
+				break;
+			default:
+				index = s.AddSymbol(names[i], usages[i], strings[i]);
+				break;
+			}
+			if (index != i) {
+				throw new IllegalStateException("Checkpoint has a duplicate symbol " + names[i]);
+			}
+		}
+		return s;
+	}
+
+	// Strings are written as a length and UTF-8 bytes, since writeUTF is limited to 64 KB
+	private static void writeString(DataOutputStream data, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		data.writeInt(bytes.length);
+		data.write(bytes);
+	}
+
+	private static String readString(DataInputStream data) throws IOException {
+		byte[] bytes = new byte[data.readInt()];
+		data.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// Writes checkpoints in the background, one at a time
+	private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(task -> {
+		Thread thread = new Thread(task, "checkpoint-writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	final int[] code;             // decoded program
+	private final String[] names; // name of every symbol
+	private final char[] usages;  // usage of every symbol
+	final DataMemory mem;         // value and data type of every symbol, never modified
+	final int pc;                 // quad to execute next
+	final CallStack calls;        // activations not yet returned from, never modified
+	final long executed;          // quads executed so far
+	final long instructionBudget; // quads the program may execute in total
+	final int[] pendingInput;     // values provided for READ but not yet read, oldest first
+	final boolean prompted;       // true if the READ at pc has printed its prompt
+	final long inputConsumed;     // values read so far
+	final long outputLines;       // lines printed so far
+}
@@ -0,0 +1,1189 @@
+package com.bgould.compiler;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import com.bgould.compiler.ADT.DataMemory;
+import com.bgould.compiler.ADT.SymbolTable;
+import com.bgould.compiler.utils.IntInput;
+
+/**
+ * Links a decoded program into a graph of executable nodes, one per quad.
+ *
+ * Each node holds its operands already resolved to slots of a DataMemory, or to the arrays of
+ * array operands, and a direct reference to the node that runs after it, so executing a program
+ * is just a chain of exec calls. Linking only allocates one small object per quad, so it is much
+ * cheaper to start than translating a program to bytecode.
+ */
+public class ClosureCompiler {
+	/**
+	 * A single executable instruction.
+	 */
+	abstract static class Node {
+		/**
+		 * Executes this instruction.
+		 *
+		 * @return The next node to execute, or null to stop execution
+		 */
+		abstract Node exec();
+
+		Node next; // node that runs after this one, unless it branches
+	}
+
+	/**
+	 * Links a decoded program against the given data memory.
+	 *
+	 * @param code The program to link, as produced by Interpreter.decode
+	 * @param mem Data memory the program will run against
+	 * @param in Source of values for READ instructions
+	 * @param out Destination of PRINT output
+	 * @return The node for the first quad of the program
+	 */
+	public static Node link(int[] code, DataMemory mem, IntInput in, PrintStream out) {
+		int count = code.length / Interpreter.QUAD_WIDTH - 1; // decode adds one row past the end
+		Node[] nodes = new Node[count + 1];
+		CallStack calls = new CallStack();
+		for (int pc = 0; pc < count; pc++) {
+			nodes[pc] = makeNode(code, pc * Interpreter.QUAD_WIDTH, mem, in, out, nodes, calls);
+		}
+		nodes[count] = new OffEnd();
+
+		// Fill in successors and branch targets now that every node exists
+		for (int pc = 0; pc < count; pc++) {
+			int at = pc * Interpreter.QUAD_WIDTH;
+			Node node = nodes[pc];
+			node.next = follow(code, pc + 1, nodes);
+			if (node instanceof Branch) {
+				((Branch) node).target = follow(code, code[at + 3], nodes);
+			}
+			if (node instanceof JTab) {
+				Node[] table = ((JTab) node).table;
+				for (int i = 0; i < table.length; i++) {
+					table[i] = follow(code, pc + 1 + i, nodes);
+				}
+			}
+		}
+
+		return follow(code, 0, nodes);
+	}
+
+	/**
+	 * Runs a linked program until it stops.
+	 *
+	 * @param entry The node to start execution at
+	 */
+	public static void run(Node entry) {
+		Node node = entry;
+		while (node != null) {
+			node = node.exec();
+		}
+	}
+
+	private static Node makeNode(int[] code, int at, DataMemory mem, IntInput in, PrintStream out,
+	                             Node[] nodes, CallStack calls) {
+		int[] ints = mem.GetIntegers();
+		double[] reals = mem.GetFloats();
+		char[] types = mem.GetDataTypes();
+		int[][] intArrays = mem.GetIntegerArrays();
+		double[][] realArrays = mem.GetFloatArrays();
+		int op1 = code[at + 1];
+		int op2 = code[at + 2];
+		int op3 = code[at + 3];
+
+		switch (code[at]) {
+		case Interpreter.OP_STOP:
+			return new Stop();
+		case Interpreter.OP_DIV:
+			return new Div(ints, types, op1, op2, op3);
+		case Interpreter.OP_MUL:
+			return new Mul(ints, types, op1, op2, op3);
+		case Interpreter.OP_SUB:
+			return new Sub(ints, types, op1, op2, op3);
+		case Interpreter.OP_ADD:
+			return new Add(ints, types, op1, op2, op3);
+		case Interpreter.OP_MOV:
+			return new Mov(ints, types, op1, op3);
+		case Interpreter.OP_PRINT:
+			return new Print(mem, op3, out);
+		case Interpreter.OP_READ:
+			return new Read(ints, types, op3, in);
+		case Interpreter.OP_JMP:
+			return new Jmp();
+		case Interpreter.OP_JZ:
+			return new Jz(ints, op1);
+		case Interpreter.OP_JP:
+			return new Jp(ints, op1);
+		case Interpreter.OP_JN:
+			return new Jn(ints, op1);
+		case Interpreter.OP_JNZ:
+			return new Jnz(ints, op1);
+		case Interpreter.OP_JNP:
+			return new Jnp(ints, op1);
+		case Interpreter.OP_JNN:
+			return new Jnn(ints, op1);
+		case Interpreter.OP_JINDR:
+			return new Jindr(ints, op3, nodes);
+		case Interpreter.OP_CJZ:
+			return new Cjz(ints, op1, op2);
+		case Interpreter.OP_CJP:
+			return new Cjp(ints, op1, op2);
+		case Interpreter.OP_CJN:
+			return new Cjn(ints, op1, op2);
+		case Interpreter.OP_CJNZ:
+			return new Cjnz(ints, op1, op2);
+		case Interpreter.OP_CJNP:
+			return new Cjnp(ints, op1, op2);
+		case Interpreter.OP_CJNN:
+			return new Cjnn(ints, op1, op2);
+		case Interpreter.OP_LOOP:
+			return new Loop(ints, types, op1, op2);
+		case Interpreter.OP_DIVF:
+			return new DivF(reals, types, op1, op2, op3);
+		case Interpreter.OP_MULF:
+			return new MulF(reals, types, op1, op2, op3);
+		case Interpreter.OP_SUBF:
+			return new SubF(reals, types, op1, op2, op3);
+		case Interpreter.OP_ADDF:
+			return new AddF(reals, types, op1, op2, op3);
+		case Interpreter.OP_MOVF:
+			return new MovF(reals, types, op1, op3);
+		case Interpreter.OP_ITOF:
+			return new Itof(ints, reals, types, op1, op3);
+		case Interpreter.OP_FTOI:
+			return new Ftoi(ints, reals, types, op1, op3);
+		case Interpreter.OP_CMPF:
+			return new Cmpf(ints, reals, types, op1, op2, op3);
+		case Interpreter.OP_ABS:
+			return new Abs(ints, types, op1, op3);
+		case Interpreter.OP_ABSF:
+			return new AbsF(reals, types, op1, op3);
+		case Interpreter.OP_MIN:
+			return new Min(ints, types, op1, op2, op3);
+		case Interpreter.OP_MINF:
+			return new MinF(reals, types, op1, op2, op3);
+		case Interpreter.OP_MAX:
+			return new Max(ints, types, op1, op2, op3);
+		case Interpreter.OP_MAXF:
+			return new MaxF(reals, types, op1, op2, op3);
+		case Interpreter.OP_MOD:
+			return new Mod(ints, types, op1, op2, op3);
+		case Interpreter.OP_POW:
+			return new Pow(ints, types, op1, op2, op3);
+		case Interpreter.OP_POWF:
+			return new PowF(reals, types, op1, op2, op3);
+		case Interpreter.OP_SQRT:
+			return new Sqrt(reals, types, op1, op3);
+		case Interpreter.OP_LDA:
+			return new Lda(ints, types, intArrays[op1], op2, op3);
+		case Interpreter.OP_LDAF:
+			return new LdaF(ints, reals, types, realArrays[op1], op2, op3);
+		case Interpreter.OP_STA:
+			return new Sta(ints, intArrays[op3], op1, op2);
+		case Interpreter.OP_STAF:
+			return new StaF(ints, reals, realArrays[op3], op1, op2);
+		case Interpreter.OP_FILL:
+			return new Fill(ints, intArrays[op3], op1);
+		case Interpreter.OP_FILLF:
+			return new FillF(reals, realArrays[op3], op1);
+		case Interpreter.OP_COPY:
+			return new Copy(intArrays[op1], intArrays[op3]);
+		case Interpreter.OP_COPYF:
+			return new CopyF(realArrays[op1], realArrays[op3]);
+		case Interpreter.OP_SUM:
+			return new Sum(ints, types, intArrays[op1], op3);
+		case Interpreter.OP_SUMF:
+			return new SumF(reals, types, realArrays[op1], op3);
+		case Interpreter.OP_CALL:
+			return new Call(ints, reals, calls, at / Interpreter.QUAD_WIDTH + 1, op1, op2);
+		case Interpreter.OP_RET:
+			return new Ret(ints, reals, calls, nodes);
+		case Interpreter.OP_JTAB:
+			return new JTab(ints, op1, op2);
+		default:
+			return new OffEnd();
+		}
+	}
+
+	/**
+	 * Finds the node that really executes when control reaches the given quad. JMPs are skipped
+	 * over entirely, so nodes branch straight to their final destination.
+	 */
+	private static Node follow(int[] code, int pc, Node[] nodes) {
+		int count = nodes.length - 1;
+		for (int hops = 0; hops < count; hops++) {
+			if (pc < 0 || pc >= count) {
+				return nodes[count];
+			}
+			if (code[pc * Interpreter.QUAD_WIDTH] != Interpreter.OP_JMP) {
+				return nodes[pc];
+			}
+			pc = code[pc * Interpreter.QUAD_WIDTH + 3];
+		}
+
+		return nodes[pc]; // a JMP that loops back to itself
+	}
+
+	// =========================================================================
+	// Node implementations
+	// =========================================================================
+
+	/**
+	 * Node that may continue at a node other than its successor.
+	 */
+	abstract static class Branch extends Node {
+		Node target; // node that runs if the branch is taken
+	}
+
+	static final class Stop extends Node {
+		Node exec() { return null; }
+	}
+
+	static final class OffEnd extends Node {
+		Node exec() {
+			throw new IllegalArgumentException("QuadTable contained an unrecognized operation");
+		}
+	}
+
+	static final class Div extends Node {
+		Div(int[] ints, char[] types, int op1, int op2, int op3) {
+			this.ints = ints;
+			this.types = types;
+			this.op1 = op1;
+			this.op2 = op2;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			ints[op3] = ints[op1] / ints[op2];
+			types[op3] = SymbolTable.INTEGER_TYPE;
+			return next;
+		}
+
+		private final int[] ints;
+		private final char[] types;
+		private final int op1, op2, op3;
+	}
+
+	static final class Mul extends Node {
+		Mul(int[] ints, char[] types, int op1, int op2, int op3) {
+			this.ints = ints;
+			this.types = types;
+			this.op1 = op1;
+			this.op2 = op2;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			ints[op3] = ints[op1] * ints[op2];
+			types[op3] = SymbolTable.INTEGER_TYPE;
+			return next;
+		}
+
+		private final int[] ints;
+		private final char[] types;
+		private final int op1, op2, op3;
+	}
+
+	static final class Sub extends Node {
+		Sub(int[] ints, char[] types, int op1, int op2, int op3) {
+			this.ints = ints;
+			this.types = types;
+			this.op1 = op1;
+			this.op2 = op2;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			ints[op3] = ints[op1] - ints[op2];
+			types[op3] = SymbolTable.INTEGER_TYPE;
+			return next;
+		}
+
+		private final int[] ints;
+		private final char[] types;
+		private final int op1, op2, op3;
+	}
+
+	static final class Add extends Node {
+		Add(int[] ints, char[] types, int op1, int op2, int op3) {
+			this.ints = ints;
+			this.types = types;
+			this.op1 = op1;
+			this.op2 = op2;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			ints[op3] = ints[op1] + ints[op2];
+			types[op3] = SymbolTable.INTEGER_TYPE;
+			return next;
+		}
+
+		private final int[] ints;
+		private final char[] types;
+		private final int op1, op2, op3;
+	}
+
+	static final class Mov extends Node {
+		Mov(int[] ints, char[] types, int op1, int op3) {
+			this.ints = ints;
+			this.types = types;
+			this.op1 = op1;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			ints[op3] = ints[op1];
+			types[op3] = SymbolTable.INTEGER_TYPE;
+			return next;
+		}
+
+		private final int[] ints;
+		private final char[] types;
+		private final int op1, op3;
+	}
+
+	static final class DivF extends Node {
+		DivF(double[] reals, char[] types, int op1, int op2, int op3) {
+			this.reals = reals;
+			this.types = types;
+			this.op1 = op1;
+			this.op2 = op2;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			reals[op3] = reals[op1] / reals[op2];
+			types[op3] = SymbolTable.REAL_TYPE;
+			return next;
+		}
+
+		private final double[] reals;
+		private final char[] types;
+		private final int op1, op2, op3;
+	}
+
+	static final class MulF extends Node {
+		MulF(double[] reals, char[] types, int op1, int op2, int op3) {
+			this.reals = reals;
+			this.types = types;
+			this.op1 = op1;
+			this.op2 = op2;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			reals[op3] = reals[op1] * reals[op2];
+			types[op3] = SymbolTable.REAL_TYPE;
+			return next;
+		}
+
+		private final double[] reals;
+		private final char[] types;
+		private final int op1, op2, op3;
+	}
+
+	static final class SubF extends Node {
+		SubF(double[] reals, char[] types, int op1, int op2, int op3) {
+			this.reals = reals;
+			this.types = types;
+			this.op1 = op1;
+			this.op2 = op2;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			reals[op3] = reals[op1] - reals[op2];
+			types[op3] = SymbolTable.REAL_TYPE;
+			return next;
+		}
+
+		private final double[] reals;
+		private final char[] types;
+		private final int op1, op2, op3;
+	}
+
+	static final class AddF extends Node {
+		AddF(double[] reals, char[] types, int op1, int op2, int op3) {
+			this.reals = reals;
+			this.types = types;
+			this.op1 = op1;
+			this.op2 = op2;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			reals[op3] = reals[op1] + reals[op2];
+			types[op3] = SymbolTable.REAL_TYPE;
+			return next;
+		}
+
+		private final double[] reals;
+		private final char[] types;
+		private final int op1, op2, op3;
+	}
+
+	static final class MovF extends Node {
+		MovF(double[] reals, char[] types, int op1, int op3) {
+			this.reals = reals;
+			this.types = types;
+			this.op1 = op1;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			reals[op3] = reals[op1];
+			types[op3] = SymbolTable.REAL_TYPE;
+			return next;
+		}
+
+		private final double[] reals;
+		private final char[] types;
+		private final int op1, op3;
+	}
+
+	static final class Itof extends Node {
+		Itof(int[] ints, double[] reals, char[] types, int op1, int op3) {
+			this.ints = ints;
+			this.reals = reals;
+			this.types = types;
+			this.op1 = op1;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			reals[op3] = ints[op1];
+			types[op3] = SymbolTable.REAL_TYPE;
+			return next;
+		}
+
+		private final int[] ints;
+		private final double[] reals;
+		private final char[] types;
+		private final int op1, op3;
+	}
+
+	static final class Ftoi extends Node {
+		Ftoi(int[] ints, double[] reals, char[] types, int op1, int op3) {
+			this.ints = ints;
+			this.reals = reals;
+			this.types = types;
+			this.op1 = op1;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			ints[op3] = (int) reals[op1];
+			types[op3] = SymbolTable.INTEGER_TYPE;
+			return next;
+		}
+
+		private final int[] ints;
+		private final double[] reals;
+		private final char[] types;
+		private final int op1, op3;
+	}
+
+	static final class Cmpf extends Node {
+		Cmpf(int[] ints, double[] reals, char[] types, int op1, int op2, int op3) {
+			this.ints = ints;
+			this.reals = reals;
+			this.types = types;
+			this.op1 = op1;
+			this.op2 = op2;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			ints[op3] = Interpreter.compareReals(reals[op1], reals[op2]);
+			types[op3] = SymbolTable.INTEGER_TYPE;
+			return next;
+		}
+
+		private final int[] ints;
+		private final double[] reals;
+		private final char[] types;
+		private final int op1, op2, op3;
+	}
+
+	static final class Abs extends Node {
+		Abs(int[] ints, char[] types, int op1, int op3) {
+			this.ints = ints;
+			this.types = types;
+			this.op1 = op1;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			ints[op3] = Math.abs(ints[op1]);
+			types[op3] = SymbolTable.INTEGER_TYPE;
+			return next;
+		}
+
+		private final int[] ints;
+		private final char[] types;
+		private final int op1, op3;
+	}
+
+	static final class AbsF extends Node {
+		AbsF(double[] reals, char[] types, int op1, int op3) {
+			this.reals = reals;
+			this.types = types;
+			this.op1 = op1;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			reals[op3] = Math.abs(reals[op1]);
+			types[op3] = SymbolTable.REAL_TYPE;
+			return next;
+		}
+
+		private final double[] reals;
+		private final char[] types;
+		private final int op1, op3;
+	}
+
+	static final class Min extends Node {
+		Min(int[] ints, char[] types, int op1, int op2, int op3) {
+			this.ints = ints;
+			this.types = types;
+			this.op1 = op1;
+			this.op2 = op2;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			ints[op3] = Math.min(ints[op1], ints[op2]);
+			types[op3] = SymbolTable.INTEGER_TYPE;
+			return next;
+		}
+
+		private final int[] ints;
+		private final char[] types;
+		private final int op1, op2, op3;
+	}
+
+	static final class MinF extends Node {
+		MinF(double[] reals, char[] types, int op1, int op2, int op3) {
+			this.reals = reals;
+			this.types = types;
+			this.op1 = op1;
+			this.op2 = op2;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			reals[op3] = Math.min(reals[op1], reals[op2]);
+			types[op3] = SymbolTable.REAL_TYPE;
+			return next;
+		}
+
+		private final double[] reals;
+		private final char[] types;
+		private final int op1, op2, op3;
+	}
+
+	static final class Max extends Node {
+		Max(int[] ints, char[] types, int op1, int op2, int op3) {
+			this.ints = ints;
+			this.types = types;
+			this.op1 = op1;
+			this.op2 = op2;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			ints[op3] = Math.max(ints[op1], ints[op2]);
+			types[op3] = SymbolTable.INTEGER_TYPE;
+			return next;
+		}
+
+		private final int[] ints;
+		private final char[] types;
+		private final int op1, op2, op3;
+	}
+
+	static final class MaxF extends Node {
+		MaxF(double[] reals, char[] types, int op1, int op2, int op3) {
+			this.reals = reals;
+			this.types = types;
+			this.op1 = op1;
+			this.op2 = op2;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			reals[op3] = Math.max(reals[op1], reals[op2]);
+			types[op3] = SymbolTable.REAL_TYPE;
+			return next;
+		}
+
+		private final double[] reals;
+		private final char[] types;
+		private final int op1, op2, op3;
+	}
+
+	static final class Mod extends Node {
+		Mod(int[] ints, char[] types, int op1, int op2, int op3) {
+			this.ints = ints;
+			this.types = types;
+			this.op1 = op1;
+			this.op2 = op2;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			ints[op3] = ints[op1] % ints[op2];
+			types[op3] = SymbolTable.INTEGER_TYPE;
+			return next;
+		}
+
+		private final int[] ints;
+		private final char[] types;
+		private final int op1, op2, op3;
+	}
+
+	static final class Pow extends Node {
+		Pow(int[] ints, char[] types, int op1, int op2, int op3) {
+			this.ints = ints;
+			this.types = types;
+			this.op1 = op1;
+			this.op2 = op2;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			ints[op3] = (int) Math.pow(ints[op1], ints[op2]);
+			types[op3] = SymbolTable.INTEGER_TYPE;
+			return next;
+		}
+
+		private final int[] ints;
+		private final char[] types;
+		private final int op1, op2, op3;
+	}
+
+	static final class PowF extends Node {
+		PowF(double[] reals, char[] types, int op1, int op2, int op3) {
+			this.reals = reals;
+			this.types = types;
+			this.op1 = op1;
+			this.op2 = op2;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			reals[op3] = Math.pow(reals[op1], reals[op2]);
+			types[op3] = SymbolTable.REAL_TYPE;
+			return next;
+		}
+
+		private final double[] reals;
+		private final char[] types;
+		private final int op1, op2, op3;
+	}
+
+	static final class Sqrt extends Node {
+		Sqrt(double[] reals, char[] types, int op1, int op3) {
+			this.reals = reals;
+			this.types = types;
+			this.op1 = op1;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			reals[op3] = Math.sqrt(reals[op1]);
+			types[op3] = SymbolTable.REAL_TYPE;
+			return next;
+		}
+
+		private final double[] reals;
+		private final char[] types;
+		private final int op1, op3;
+	}
+
+	static final class Lda extends Node {
+		Lda(int[] ints, char[] types, int[] elements, int op2, int op3) {
+			this.ints = ints;
+			this.types = types;
+			this.elements = elements;
+			this.op2 = op2;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			ints[op3] = elements[ints[op2]];
+			types[op3] = SymbolTable.INTEGER_TYPE;
+			return next;
+		}
+
+		private final int[] ints;
+		private final char[] types;
+		private final int[] elements;
+		private final int op2, op3;
+	}
+
+	static final class LdaF extends Node {
+		LdaF(int[] ints, double[] reals, char[] types, double[] elements, int op2, int op3) {
+			this.ints = ints;
+			this.reals = reals;
+			this.types = types;
+			this.elements = elements;
+			this.op2 = op2;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			reals[op3] = elements[ints[op2]];
+			types[op3] = SymbolTable.REAL_TYPE;
+			return next;
+		}
+
+		private final int[] ints;
+		private final double[] reals;
+		private final char[] types;
+		private final double[] elements;
+		private final int op2, op3;
+	}
+
+	static final class Sta extends Node {
+		Sta(int[] ints, int[] elements, int op1, int op2) {
+			this.ints = ints;
+			this.elements = elements;
+			this.op1 = op1;
+			this.op2 = op2;
+		}
+
+		Node exec() {
+			elements[ints[op2]] = ints[op1];
+			return next;
+		}
+
+		private final int[] ints;
+		private final int[] elements;
+		private final int op1, op2;
+	}
+
+	static final class StaF extends Node {
+		StaF(int[] ints, double[] reals, double[] elements, int op1, int op2) {
+			this.ints = ints;
+			this.reals = reals;
+			this.elements = elements;
+			this.op1 = op1;
+			this.op2 = op2;
+		}
+
+		Node exec() {
+			elements[ints[op2]] = reals[op1];
+			return next;
+		}
+
+		private final int[] ints;
+		private final double[] reals;
+		private final double[] elements;
+		private final int op1, op2;
+	}
+
+	static final class Fill extends Node {
+		Fill(int[] ints, int[] elements, int op1) {
+			this.ints = ints;
+			this.elements = elements;
+			this.op1 = op1;
+		}
+
+		Node exec() {
+			Arrays.fill(elements, ints[op1]);
+			return next;
+		}
+
+		private final int[] ints;
+		private final int[] elements;
+		private final int op1;
+	}
+
+	static final class FillF extends Node {
+		FillF(double[] reals, double[] elements, int op1) {
+			this.reals = reals;
+			this.elements = elements;
+			this.op1 = op1;
+		}
+
+		Node exec() {
+			Arrays.fill(elements, reals[op1]);
+			return next;
+		}
+
+		private final double[] reals;
+		private final double[] elements;
+		private final int op1;
+	}
+
+	static final class Copy extends Node {
+		Copy(int[] from, int[] to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		Node exec() {
+			Interpreter.copyArray(from, to);
+			return next;
+		}
+
+		private final int[] from;
+		private final int[] to;
+	}
+
+	static final class CopyF extends Node {
+		CopyF(double[] from, double[] to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		Node exec() {
+			Interpreter.copyArray(from, to);
+			return next;
+		}
+
+		private final double[] from;
+		private final double[] to;
+	}
+
+	static final class Sum extends Node {
+		Sum(int[] ints, char[] types, int[] elements, int op3) {
+			this.ints = ints;
+			this.types = types;
+			this.elements = elements;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			ints[op3] = Interpreter.sumArray(elements);
+			types[op3] = SymbolTable.INTEGER_TYPE;
+			return next;
+		}
+
+		private final int[] ints;
+		private final char[] types;
+		private final int[] elements;
+		private final int op3;
+	}
+
+	static final class SumF extends Node {
+		SumF(double[] reals, char[] types, double[] elements, int op3) {
+			this.reals = reals;
+			this.types = types;
+			this.elements = elements;
+			this.op3 = op3;
+		}
+
+		Node exec() {
+			reals[op3] = Interpreter.sumArray(elements);
+			types[op3] = SymbolTable.REAL_TYPE;
+			return next;
+		}
+
+		private final double[] reals;
+		private final char[] types;
+		private final double[] elements;
+		private final int op3;
+	}
+
+	static final class Print extends Node {
+		Print(DataMemory mem, int op3, PrintStream out) {
+			this.mem = mem;
+			this.op3 = op3;
+			this.out = out;
+		}
+
+		Node exec() {
+			switch (mem.GetDataTypes()[op3]) {
+			case SymbolTable.INTEGER_TYPE:
+				out.println(mem.GetIntegers()[op3]);
+				break;
+			case SymbolTable.REAL_TYPE:
+				out.println(mem.GetFloats()[op3]);
+				break;
+			case SymbolTable.STRING_TYPE:
+				out.println(mem.GetStrings()[op3]);
+				break;
+			default:
+				throw new RuntimeException("Invalid symbol data type!");
+			}
+			return next;
+		}
+
+		private final DataMemory mem;
+		private final int op3;
+		private final PrintStream out;
+	}
+
+	static final class Read extends Node {
+		Read(int[] ints, char[] types, int op3, IntInput in) {
+			this.ints = ints;
+			this.types = types;
+			this.op3 = op3;
+			this.in = in;
+		}
+
+		Node exec() {
+			ints[op3] = in.NextInt();
+			types[op3] = SymbolTable.INTEGER_TYPE;
+			return next;
+		}
+
+		private final int[] ints;
+		private final char[] types;
+		private final int op3;
+		private final IntInput in;
+	}
+
+	// Only reached when a JMP jumps to itself; all other JMPs are linked around
+	static final class Jmp extends Branch {
+		Node exec() { return target; }
+	}
+
+	static final class Jz extends Branch {
+		Jz(int[] ints, int op1) {
+			this.ints = ints;
+			this.op1 = op1;
+		}
+
+		Node exec() { return (ints[op1] == 0) ? target : next; }
+
+		private final int[] ints;
+		private final int op1;
+	}
+
+	static final class Jp extends Branch {
+		Jp(int[] ints, int op1) {
+			this.ints = ints;
+			this.op1 = op1;
+		}
+
+		Node exec() { return (ints[op1] > 0) ? target : next; }
+
+		private final int[] ints;
+		private final int op1;
+	}
+
+	static final class Jn extends Branch {
+		Jn(int[] ints, int op1) {
+			this.ints = ints;
+			this.op1 = op1;
+		}
+
+		Node exec() { return (ints[op1] < 0) ? target : next; }
+
+		private final int[] ints;
+		private final int op1;
+	}
+
+	static final class Jnz extends Branch {
+		Jnz(int[] ints, int op1) {
+			this.ints = ints;
+			this.op1 = op1;
+		}
+
+		Node exec() { return (ints[op1] != 0) ? target : next; }
+
+		private final int[] ints;
+		private final int op1;
+	}
+
+	static final class Jnp extends Branch {
+		Jnp(int[] ints, int op1) {
+			this.ints = ints;
+			this.op1 = op1;
+		}
+
+		Node exec() { return (ints[op1] <= 0) ? target : next; }
+
+		private final int[] ints;
+		private final int op1;
+	}
+
+	static final class Jnn extends Branch {
+		Jnn(int[] ints, int op1) {
+			this.ints = ints;
+			this.op1 = op1;
+		}
+
+		Node exec() { return (ints[op1] >= 0) ? target : next; }
+
+		private final int[] ints;
+		private final int op1;
+	}
+
+	static final class Cjz extends Branch {
+		Cjz(int[] ints, int op1, int op2) {
+			this.ints = ints;
+			this.op1 = op1;
+			this.op2 = op2;
+		}
+
+		Node exec() { return (ints[op1] - ints[op2] == 0) ? target : next; }
+
+		private final int[] ints;
+		private final int op1, op2;
+	}
+
+	static final class Cjp extends Branch {
+		Cjp(int[] ints, int op1, int op2) {
+			this.ints = ints;
+			this.op1 = op1;
+			this.op2 = op2;
+		}
+
+		Node exec() { return (ints[op1] - ints[op2] > 0) ? target : next; }
+
+		private final int[] ints;
+		private final int op1, op2;
+	}
+
+	static final class Cjn extends Branch {
+		Cjn(int[] ints, int op1, int op2) {
+			this.ints = ints;
+			this.op1 = op1;
+			this.op2 = op2;
+		}
+
+		Node exec() { return (ints[op1] - ints[op2] < 0) ? target : next; }
+
+		private final int[] ints;
+		private final int op1, op2;
+	}
+
+	static final class Cjnz extends Branch {
+		Cjnz(int[] ints, int op1, int op2) {
+			this.ints = ints;
+			this.op1 = op1;
+			this.op2 = op2;
+		}
+
+		Node exec() { return (ints[op1] - ints[op2] != 0) ? target : next; }
+
+		private final int[] ints;
+		private final int op1, op2;
+	}
+
+	static final class Cjnp extends Branch {
+		Cjnp(int[] ints, int op1, int op2) {
+			this.ints = ints;
+			this.op1 = op1;
+			this.op2 = op2;
+		}
+
+		Node exec() { return (ints[op1] - ints[op2] <= 0) ? target : next; }
+
+		private final int[] ints;
+		private final int op1, op2;
+	}
+
+	static final class Cjnn extends Branch {
+		Cjnn(int[] ints, int op1, int op2) {
+			this.ints = ints;
+			this.op1 = op1;
+			this.op2 = op2;
+		}
+
+		Node exec() { return (ints[op1] - ints[op2] >= 0) ? target : next; }
+
+		private final int[] ints;
+		private final int op1, op2;
+	}
+
+	static final class Loop extends Branch {
+		Loop(int[] ints, char[] types, int op1, int op2) {
+			this.ints = ints;
+			this.types = types;
+			this.op1 = op1;
+			this.op2 = op2;
+		}
+
+		Node exec() {
+			ints[op1]++;
+			types[op1] = SymbolTable.INTEGER_TYPE;
+			return (ints[op2] - ints[op1] >= 0) ? target : next;
+		}
+
+		private final int[] ints;
+		private final char[] types;
+		private final int op1, op2;
+	}
+
+	// Targets are only known at run time, so JINDR looks up its destination in the node table
+	static final class Jindr extends Node {
+		Jindr(int[] ints, int op3, Node[] nodes) {
+			this.ints = ints;
+			this.op3 = op3;
+			this.nodes = nodes;
+		}
+
+		Node exec() {
+			int pc = ints[op3];
+			return (pc >= 0 && pc < nodes.length) ? nodes[pc] : nodes[nodes.length - 1];
+		}
+
+		private final int[] ints;
+		private final int op3;
+		private final Node[] nodes;
+	}
+
+	static final class Call extends Branch {
+		Call(int[] ints, double[] reals, CallStack calls, int returnAddress, int op1, int op2) {
+			this.ints = ints;
+			this.reals = reals;
+			this.calls = calls;
+			this.returnAddress = returnAddress;
+			this.op1 = op1;
+			this.op2 = op2;
+		}
+
+		Node exec() {
+			calls.push(returnAddress, ints, reals, op1, op2);
+			return target;
+		}
+
+		private final int[] ints;
+		private final double[] reals;
+		private final CallStack calls;
+		private final int returnAddress;
+		private final int op1, op2;
+	}
+
+	// Many CALLs may return to the same RET, so it looks up its destination in the node table
+	static final class Ret extends Node {
+		Ret(int[] ints, double[] reals, CallStack calls, Node[] nodes) {
+			this.ints = ints;
+			this.reals = reals;
+			this.calls = calls;
+			this.nodes = nodes;
+		}
+
+		Node exec() { return nodes[calls.pop(ints, reals)]; }
+
+		private final int[] ints;
+		private final double[] reals;
+		private final CallStack calls;
+		private final Node[] nodes;
+	}
+
+	// Every entry of the table is linked straight to the node its JMP leads to
+	static final class JTab extends Branch {
+		JTab(int[] ints, int op1, int op2) {
+			this.ints = ints;
+			this.op1 = op1;
+			this.table = new Node[Math.max(op2, 0)];
+		}
+
+		Node exec() {
+			int index = ints[op1];
+			return (index >= 0 && index < table.length) ? table[index] : target;
+		}
+
+		private final int[] ints;
+		private final int op1;
+		private final Node[] table; // node reached through each entry of the table
+	}
+}
@@ -0,0 +1,129 @@
+package com.bgould.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import com.bgould.compiler.ADT.DataMemory;
+import com.bgould.compiler.ADT.QuadTable;
+import com.bgould.compiler.ADT.SymbolTable;
+import com.bgould.compiler.utils.BufferedPrintStream;
+import com.bgould.compiler.utils.Constants;
+
+/**
+ * Runs the part of a program that cannot depend on its input at compile time, leaving only the
+ * rest to run.
+ *
+ * READ is a program's only source of input, so everything it does before its first READ is the
+ * same on every run. The program is run at compile time until it stops or reaches a READ, and is
+ * then replaced by a program that prints everything the first part printed as a single string
+ * constant, and carries on from where it stopped. The values the first part left in data memory
+ * become the initial values of their symbols. A program that never reads input is reduced to a
+ * PRINT and a STOP.
+ *
+ * The first part runs under an instruction budget, so a program that runs for a long time, or
+ * forever, only costs the budget to compile. If the budget runs out, or the first part fails, the
+ * program is left unchanged, to fail or carry on at run time as it would have.
+ */
+public class CompileTimeEvaluator {
+	// Quads executed at compile time before a program is left to run normally
+	public static final int DEFAULT_BUDGET = 1000000;
+
+	// Longest output folded into a string constant, well inside the limit on constants in a
+	// class file written by BytecodeCompiler
+	private static final int MAX_OUTPUT = 16 * 1024;
+
+	// Printed by READ before it waits for input
+	private static final String PROMPT = "> " + System.lineSeparator();
+
+	/**
+	 * Runs a program until it stops, reaches a READ, or executes budget quads, and replaces the
+	 * part that ran with its results.
+	 *
+	 * Programs containing JINDR are only replaced if they stop before their first READ, since
+	 * their jump targets are computed at run time and cannot be renumbered. Neither are programs
+	 * that reach their first READ inside a procedure or function, since the residual program
+	 * starts with no activations to return to.
+	 *
+	 * @param q The program to evaluate
+	 * @param s SymbolTable holding the program's data memory, which is updated with the results
+	 *        of the part that ran if the program is replaced
+	 * @param budget Maximum number of quads to execute at compile time
+	 * @return A new QuadTable holding the rest of the program, or q if nothing could be evaluated
+	 */
+	public static QuadTable evaluate(QuadTable q, SymbolTable s, int budget) {
+		int[] code = Interpreter.decode(q);
+		DataMemory mem = new DataMemory(s);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrintStream out = new BufferedPrintStream(output);
+		ExecutionContext context = new ExecutionContext(code, mem, out, budget);
+		ExecutionContext.Status status = context.run(budget);
+		out.flush();
+
+		boolean halted = status == ExecutionContext.Status.HALTED;
+		if (!halted && status != ExecutionContext.Status.WAITING_INPUT) {
+			return q; // failed, or used up the budget
+		}
+		if (!halted && (context.getExecutedCount() == 0 || context.getCallDepth() > 0 ||
+		                !canRelocate(q))) {
+			return q;
+		}
+
+		String printed = output.toString(StandardCharsets.UTF_8);
+		if (!halted) {
+			// the READ the program stopped at prompts again when it runs
+			printed = printed.substring(0, printed.length() - PROMPT.length());
+		}
+		if (printed.length() > MAX_OUTPUT) {
+			return q;
+		}
+
+		int text = -1;
+		if (!printed.isEmpty()) {
+			// PRINT ends the text with a line separator of its own
+			String lines = printed.substring(0, printed.length() -
+			                                    System.lineSeparator().length());
+			text = s.AddSymbol(UUID.randomUUID().toString(), SymbolTable.CONSTANT_USAGE, lines);
+			if (text < 0) {
+				return q; // no room for the constant
+			}
+		}
+		mem.WriteBack(s);
+
+		QuadTable residual = new QuadTable(Constants.MAX_QUAD);
+		if (text >= 0) {
+			residual.AddQuad(Interpreter.OP_PRINT, 0, 0, text);
+		}
+		if (halted) {
+			residual.AddQuad(Interpreter.OP_STOP, 0, 0, 0);
+			return residual;
+		}
+
+		// the rest of the program follows a jump to where it stopped, so every target moves
+		int shift = residual.Count() + 1;
+		residual.AddQuad(Interpreter.OP_JMP, 0, 0, context.getProgramCounter() + shift);
+		for (int i = 0; i < q.Count(); i++) {
+			int[] quad = q.GetQuad(i);
+			int target = quad[3];
+			if (QuadOptimizer.hasTarget(quad[0]) && target >= 0 && target <= q.Count()) {
+				target += shift;
+			}
+			residual.AddQuad(quad[0], quad[1], quad[2], target, q.GetLine(i));
+		}
+		return residual;
+	}
+
+	// Checks that the program's jumps can be renumbered, and that it fits with PRINT and JMP
+	private static boolean canRelocate(QuadTable q) {
+		if (q.Count() + 2 > Constants.MAX_QUAD) {
+			return false;
+		}
+		for (int i = 0; i < q.Count(); i++) {
+			if (q.GetQuad(i)[0] == Interpreter.OP_JINDR) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
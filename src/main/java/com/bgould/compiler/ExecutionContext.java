@@ -0,0 +1,558 @@
+package com.bgould.compiler;
+
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import com.bgould.compiler.ADT.DataMemory;
+import com.bgould.compiler.ADT.QuadTable;
+import com.bgould.compiler.ADT.SymbolTable;
+import com.bgould.compiler.utils.Constants;
+import com.bgould.compiler.utils.IntInput;
+
+/**
+ * A program that runs a slice at a time, so that many programs can share a few threads.
+ *
+ * Each call to run executes at most a given number of quads and then returns, saving the program
+ * counter so the next call carries on from the same point. A READ never blocks: if no input has
+ * been provided, run returns WAITING_INPUT and the READ is retried once input arrives.
+ *
+ * Between slices, a context can be saved as a Checkpoint and resumed later, in this process or
+ * another one.
+ */
+public class ExecutionContext {
+	// Quads between automatic checkpoints when running from the command line
+	public static final long DEFAULT_CHECKPOINT_INTERVAL = 10000000;
+
+	// Quads runToCompletion executes per slice, and so between checks for automatic checkpoints
+	private static final int COMPLETION_SLICE = 1 << 16;
+
+	/**
+	 * State of a program between slices.
+	 */
+	public enum Status {
+		RUNNING,       // can execute more quads
+		WAITING_INPUT, // stopped at a READ until provideInput is called
+		HALTED,        // executed STOP
+		FAILED,        // threw an exception, or used up its instruction budget
+	}
+
+	/**
+	 * Prepares a program to run with no limit on the number of quads it may execute.
+	 *
+	 * @param q QuadTable containing instruction memory for execution
+	 * @param s SymbolTable containing data memory, updated once the program finishes
+	 * @param out Destination of PRINT output and READ prompts
+	 */
+	public ExecutionContext(QuadTable q, SymbolTable s, PrintStream out) {
+		this(q, s, out, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Prepares a program to run.
+	 *
+	 * @param q QuadTable containing instruction memory for execution
+	 * @param s SymbolTable containing data memory, updated once the program finishes
+	 * @param out Destination of PRINT output and READ prompts
+	 * @param instructionBudget Number of quads the program may execute in total before it fails
+	 */
+	public ExecutionContext(QuadTable q, SymbolTable s, PrintStream out, long instructionBudget) {
+		this.code = Interpreter.decode(q);
+		this.symbols = s;
+		this.mem = new DataMemory(s);
+		this.out = out;
+		this.instructionBudget = instructionBudget;
+		this.input = new int[4];
+		this.calls = new CallStack();
+		this.status = Status.RUNNING;
+	}
+
+	/**
+	 * Prepares an already decoded program to run directly against a data memory, which is left
+	 * holding its results. Nothing is written back to a SymbolTable, and since the context has
+	 * no symbol names, it cannot be checkpointed.
+	 */
+	ExecutionContext(int[] code, DataMemory mem, PrintStream out, long instructionBudget) {
+		this.code = code;
+		this.symbols = null;
+		this.mem = mem;
+		this.out = out;
+		this.instructionBudget = instructionBudget;
+		this.input = new int[4];
+		this.calls = new CallStack();
+		this.status = Status.RUNNING;
+	}
+
+	/**
+	 * Resumes a program from a checkpoint.
+	 */
+	ExecutionContext(Checkpoint checkpoint, SymbolTable s, DataMemory mem, PrintStream out) {
+		this.code = checkpoint.code;
+		this.symbols = s;
+		this.mem = mem;
+		this.out = out;
+		this.instructionBudget = checkpoint.instructionBudget;
+		this.input = new int[Math.max(4, checkpoint.pendingInput.length)];
+		for (int value : checkpoint.pendingInput) {
+			provideInput(value);
+		}
+		this.pc = checkpoint.pc;
+		this.calls = checkpoint.calls.copy();
+		this.executed = checkpoint.executed;
+		this.prompted = checkpoint.prompted;
+		this.consumed = checkpoint.inputConsumed;
+		this.printed = checkpoint.outputLines;
+		this.status = Status.RUNNING;
+	}
+
+	/**
+	 * Queues a value for the program's READ instructions to consume.
+	 *
+	 * @param value The value to queue
+	 */
+	public synchronized void provideInput(int value) {
+		if (inputCount == input.length) {
+			int[] grown = new int[input.length * 2];
+			for (int i = 0; i < inputCount; i++) {
+				grown[i] = input[(inputHead + i) % input.length];
+			}
+			input = grown;
+			inputHead = 0;
+		}
+		input[(inputHead + inputCount) % input.length] = value;
+		inputCount++;
+	}
+
+	/**
+	 * @return true if a value is queued for the next READ
+	 */
+	public synchronized boolean hasInput() { return inputCount > 0; }
+
+	/**
+	 * Executes quads until the slice is used up, the program stops, or it needs input that has
+	 * not been provided. Calling run on a program that has halted or failed does nothing.
+	 *
+	 * @param maxQuads Maximum number of quads to execute in this slice
+	 * @return The status of the program after the slice
+	 */
+	public Status run(int maxQuads) {
+		if (status == Status.HALTED || status == Status.FAILED) {
+			return status;
+		}
+
+		try {
+			status = execute(maxQuads);
+		} catch (RuntimeException e) {
+			error = e;
+			status = Status.FAILED;
+		}
+
+		if (status == Status.HALTED || status == Status.FAILED) {
+			writeBack();
+			out.flush();
+		} else if (checkpointPath != null && executed >= nextCheckpoint) {
+			// skip this checkpoint rather than queue behind a write that has not finished
+			if (checkpointWrite == null || checkpointWrite.isDone()) {
+				checkpointWrite = checkpoint().saveAsync(checkpointPath);
+			}
+			nextCheckpoint = executed + checkpointInterval;
+		}
+		return status;
+	}
+
+	/**
+	 * Runs the program until it halts or fails, taking a value from the given source whenever it
+	 * waits for input.
+	 *
+	 * @param in Source of values for READ instructions
+	 * @return The status of the program, either HALTED or FAILED
+	 */
+	public Status runToCompletion(IntInput in) {
+		Status result;
+		while ((result = run(COMPLETION_SLICE)) != Status.HALTED && result != Status.FAILED) {
+			if (result == Status.WAITING_INPUT) {
+				try {
+					provideInput(in.NextInt());
+				} catch (RuntimeException e) {
+					error = e;
+					status = Status.FAILED;
+					writeBack();
+					out.flush();
+					return status;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Takes a snapshot of the program, from which it can later be resumed. Must not be called
+	 * while a slice is running.
+	 *
+	 * @return The snapshot, which shares nothing mutable with this context
+	 * @throws IllegalStateException If the program has already halted or failed
+	 */
+	public Checkpoint checkpoint() {
+		if (status == Status.HALTED || status == Status.FAILED) {
+			throw new IllegalStateException("Cannot checkpoint a program that has finished");
+		}
+		out.flush();
+		return new Checkpoint(code, symbols, mem, pc, calls, executed, instructionBudget,
+		                      pendingInput(), prompted, consumed, printed);
+	}
+
+	/**
+	 * Saves a checkpoint to a file in the background whenever the program has executed a given
+	 * number of quads since the last one. Each checkpoint replaces the previous one.
+	 *
+	 * @param path File to save checkpoints to, or null to stop checkpointing
+	 * @param interval Number of quads between checkpoints
+	 */
+	public void setCheckpointing(Path path, long interval) {
+		checkpointPath = path;
+		checkpointInterval = interval;
+		nextCheckpoint = executed + interval;
+	}
+
+	/**
+	 * @return A future completed once the latest automatic checkpoint has been written, or null
+	 *         if none has been taken
+	 */
+	public CompletableFuture<Void> getCheckpointWrite() { return checkpointWrite; }
+
+	/**
+	 * @return The SymbolTable the program's results are written back to once it finishes, or
+	 *         null if they are left in its data memory
+	 */
+	public SymbolTable getSymbols() { return symbols; }
+
+	public Status getStatus() { return status; }
+
+	public int getProgramCounter() { return pc; }
+
+	/**
+	 * @return Number of procedure and function calls that have not yet returned
+	 */
+	public int getCallDepth() { return calls.depth(); }
+
+	/**
+	 * @return Number of quads executed so far, over every slice
+	 */
+	public long getExecutedCount() { return executed; }
+
+	/**
+	 * @return The exception that made the program fail, or null
+	 */
+	public RuntimeException getError() { return error; }
+
+	private void writeBack() {
+		if (symbols != null) {
+			mem.WriteBack(symbols);
+		}
+	}
+
+	private synchronized boolean pollInput(int[] ints, int slot) {
+		if (inputCount == 0) {
+			return false;
+		}
+		ints[slot] = input[inputHead];
+		inputHead = (inputHead + 1) % input.length;
+		inputCount--;
+		return true;
+	}
+
+	// Copies the queued input, oldest first
+	private synchronized int[] pendingInput() {
+		int[] pending = new int[inputCount];
+		for (int i = 0; i < inputCount; i++) {
+			pending[i] = input[(inputHead + i) % input.length];
+		}
+		return pending;
+	}
+
+	/**
+	 * Runs the decoded program from pc, with the same semantics as the interpreter's checked
+	 * decoded loop.
+	 */
+	private Status execute(int maxQuads) {
+		int[] ints = mem.GetIntegers();
+		double[] reals = mem.GetFloats();
+		char[] types = mem.GetDataTypes();
+		int[][] intArrays = mem.GetIntegerArrays();
+		double[][] realArrays = mem.GetFloatArrays();
+		int at, op3;
+
+		long slice = Math.min(maxQuads, instructionBudget - executed);
+		for (long n = 0; n < slice; n++) {
+			at = pc * Interpreter.QUAD_WIDTH;
+			op3 = code[at + 3];
+
+			// READ must be able to suspend before it counts as executed
+			if (code[at] == Interpreter.OP_READ) {
+				if (!prompted) {
+					out.println("> "); // prompt
+					prompted = true;
+				}
+				if (!pollInput(ints, op3)) {
+					out.flush(); // the prompt must be seen while the program waits
+					return Status.WAITING_INPUT;
+				}
+				prompted = false;
+				consumed++;
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				pc++;
+				executed++;
+				continue;
+			}
+
+			pc++;
+			executed++;
+
+			switch (code[at]) {
+			case Interpreter.OP_STOP:
+				pc = Constants.MAX_QUAD;
+				return Status.HALTED;
+			case Interpreter.OP_DIV:
+				ints[op3] = ints[code[at + 1]] / ints[code[at + 2]];
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case Interpreter.OP_MUL:
+				ints[op3] = ints[code[at + 1]] * ints[code[at + 2]];
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case Interpreter.OP_SUB:
+				ints[op3] = ints[code[at + 1]] - ints[code[at + 2]];
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case Interpreter.OP_ADD:
+				ints[op3] = ints[code[at + 1]] + ints[code[at + 2]];
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case Interpreter.OP_MOV:
+				ints[op3] = ints[code[at + 1]];
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case Interpreter.OP_PRINT:
+				switch (types[op3]) {
+				case SymbolTable.INTEGER_TYPE:
+					out.println(ints[op3]);
+					break;
+				case SymbolTable.REAL_TYPE:
+					out.println(reals[op3]);
+					break;
+				case SymbolTable.STRING_TYPE:
+					out.println(mem.GetStrings()[op3]);
+					break;
+				default:
+					throw new RuntimeException("Invalid symbol data type!");
+				}
+				printed++;
+				break;
+			case Interpreter.OP_JMP:
+				pc = op3;
+				break;
+			case Interpreter.OP_JZ:
+				if (ints[code[at + 1]] == 0) { pc = op3; }
+				break;
+			case Interpreter.OP_JP:
+				if (ints[code[at + 1]] > 0) { pc = op3; }
+				break;
+			case Interpreter.OP_JN:
+				if (ints[code[at + 1]] < 0) { pc = op3; }
+				break;
+			case Interpreter.OP_JNZ:
+				if (ints[code[at + 1]] != 0) { pc = op3; }
+				break;
+			case Interpreter.OP_JNP:
+				if (ints[code[at + 1]] <= 0) { pc = op3; }
+				break;
+			case Interpreter.OP_JNN:
+				if (ints[code[at + 1]] >= 0) { pc = op3; }
+				break;
+			case Interpreter.OP_JINDR:
+				pc = ints[op3];
+				break;
+			case Interpreter.OP_CJZ:
+				if (ints[code[at + 1]] - ints[code[at + 2]] == 0) { pc = op3; }
+				break;
+			case Interpreter.OP_CJP:
+				if (ints[code[at + 1]] - ints[code[at + 2]] > 0) { pc = op3; }
+				break;
+			case Interpreter.OP_CJN:
+				if (ints[code[at + 1]] - ints[code[at + 2]] < 0) { pc = op3; }
+				break;
+			case Interpreter.OP_CJNZ:
+				if (ints[code[at + 1]] - ints[code[at + 2]] != 0) { pc = op3; }
+				break;
+			case Interpreter.OP_CJNP:
+				if (ints[code[at + 1]] - ints[code[at + 2]] <= 0) { pc = op3; }
+				break;
+			case Interpreter.OP_CJNN:
+				if (ints[code[at + 1]] - ints[code[at + 2]] >= 0) { pc = op3; }
+				break;
+			case Interpreter.OP_LOOP:
+				ints[code[at + 1]]++;
+				types[code[at + 1]] = SymbolTable.INTEGER_TYPE;
+				if (ints[code[at + 2]] - ints[code[at + 1]] >= 0) { pc = op3; }
+				break;
+			case Interpreter.OP_DIVF:
+				reals[op3] = reals[code[at + 1]] / reals[code[at + 2]];
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case Interpreter.OP_MULF:
+				reals[op3] = reals[code[at + 1]] * reals[code[at + 2]];
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case Interpreter.OP_SUBF:
+				reals[op3] = reals[code[at + 1]] - reals[code[at + 2]];
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case Interpreter.OP_ADDF:
+				reals[op3] = reals[code[at + 1]] + reals[code[at + 2]];
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case Interpreter.OP_MOVF:
+				reals[op3] = reals[code[at + 1]];
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case Interpreter.OP_ITOF:
+				reals[op3] = ints[code[at + 1]];
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case Interpreter.OP_FTOI:
+				ints[op3] = (int) reals[code[at + 1]];
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case Interpreter.OP_CMPF:
+				ints[op3] = Interpreter.compareReals(reals[code[at + 1]], reals[code[at + 2]]);
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case Interpreter.OP_ABS:
+				ints[op3] = Math.abs(ints[code[at + 1]]);
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case Interpreter.OP_ABSF:
+				reals[op3] = Math.abs(reals[code[at + 1]]);
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case Interpreter.OP_MIN:
+				ints[op3] = Math.min(ints[code[at + 1]], ints[code[at + 2]]);
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case Interpreter.OP_MINF:
+				reals[op3] = Math.min(reals[code[at + 1]], reals[code[at + 2]]);
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case Interpreter.OP_MAX:
+				ints[op3] = Math.max(ints[code[at + 1]], ints[code[at + 2]]);
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case Interpreter.OP_MAXF:
+				reals[op3] = Math.max(reals[code[at + 1]], reals[code[at + 2]]);
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case Interpreter.OP_MOD:
+				ints[op3] = ints[code[at + 1]] % ints[code[at + 2]];
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case Interpreter.OP_POW:
+				ints[op3] = (int) Math.pow(ints[code[at + 1]], ints[code[at + 2]]);
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case Interpreter.OP_POWF:
+				reals[op3] = Math.pow(reals[code[at + 1]], reals[code[at + 2]]);
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case Interpreter.OP_SQRT:
+				reals[op3] = Math.sqrt(reals[code[at + 1]]);
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case Interpreter.OP_LDA:
+				ints[op3] = intArrays[code[at + 1]][ints[code[at + 2]]];
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case Interpreter.OP_LDAF:
+				reals[op3] = realArrays[code[at + 1]][ints[code[at + 2]]];
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case Interpreter.OP_STA:
+				intArrays[op3][ints[code[at + 2]]] = ints[code[at + 1]];
+				break;
+			case Interpreter.OP_STAF:
+				realArrays[op3][ints[code[at + 2]]] = reals[code[at + 1]];
+				break;
+			case Interpreter.OP_FILL:
+				Arrays.fill(intArrays[op3], ints[code[at + 1]]);
+				break;
+			case Interpreter.OP_FILLF:
+				Arrays.fill(realArrays[op3], reals[code[at + 1]]);
+				break;
+			case Interpreter.OP_COPY:
+				Interpreter.copyArray(intArrays[code[at + 1]], intArrays[op3]);
+				break;
+			case Interpreter.OP_COPYF:
+				Interpreter.copyArray(realArrays[code[at + 1]], realArrays[op3]);
+				break;
+			case Interpreter.OP_SUM:
+				ints[op3] = Interpreter.sumArray(intArrays[code[at + 1]]);
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case Interpreter.OP_SUMF:
+				reals[op3] = Interpreter.sumArray(realArrays[code[at + 1]]);
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case Interpreter.OP_CALL:
+				calls.push(pc, ints, reals, code[at + 1], code[at + 2]);
+				pc = op3;
+				break;
+			case Interpreter.OP_RET:
+				pc = calls.pop(ints, reals);
+				break;
+			case Interpreter.OP_JTAB:
+				if (ints[code[at + 1]] >= 0 && ints[code[at + 1]] < code[at + 2]) {
+					pc += ints[code[at + 1]];
+				} else {
+					pc = op3;
+				}
+				break;
+			default: // unrecognized instruction
+				throw new IllegalArgumentException("QuadTable contained an unrecognized operation");
+			}
+		}
+
+		if (executed >= instructionBudget) {
+			error = new IllegalStateException("Program exceeded its budget of " +
+			                                  instructionBudget + " quads");
+			return Status.FAILED;
+		}
+		return Status.RUNNING;
+	}
+
+	@Override
+	public String toString() {
+		return "ExecutionContext[pc=" + pc + ", status=" + status + ", executed=" + executed + "]";
+	}
+
+	private final int[] code;             // decoded program
+	private final SymbolTable symbols;    // data memory to write results back to, or null
+	private final DataMemory mem;         // data memory while running
+	private final PrintStream out;        // destination of PRINT output
+	private final long instructionBudget; // quads the program may execute in total
+	private int[] input;                  // queue of values for READ, as a ring buffer
+	private int inputHead;                // index of the next value in input
+	private int inputCount;               // number of values queued in input
+	private int pc;                       // quad to execute next
+	private final CallStack calls;        // activations of procedures and functions
+	private long executed;                // quads executed so far
+	private long consumed;                // values READ so far
+	private long printed;                 // lines PRINTed so far
+	private boolean prompted;             // true once the READ at pc has printed its prompt
+	private volatile Status status;       // status after the last slice
+	private RuntimeException error;       // exception the program failed with, or null
+
+	private Path checkpointPath;                     // file automatic checkpoints are saved to
+	private long checkpointInterval;                 // quads between automatic checkpoints
+	private long nextCheckpoint;                     // executed count due the next checkpoint
+	private CompletableFuture<Void> checkpointWrite; // latest automatic checkpoint being written
+}
@@ -0,0 +1,267 @@
+package com.bgould.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.bgould.compiler.ADT.QuadTable;
+import com.bgould.compiler.ADT.SymbolTable;
+import com.bgould.compiler.utils.BufferedPrintStream;
+import com.bgould.compiler.utils.IntInput;
+
+/**
+ * Runs many compiled programs at once on a fixed pool of worker threads.
+ *
+ * Every job brings its own SymbolTable and input, and its output is captured separately, so jobs
+ * share no mutable state. All workers share a single Interpreter, and with it the opcode table and
+ * the most recent bytecode translation. The service records the latency of every job, from
+ * submission to completion, for reporting throughput and latency percentiles.
+ */
+public class ExecutionService implements AutoCloseable {
+	// Bytes of output a job collects before writing them to its result, kept small since every
+	// job allocates its own
+	private static final int JOB_BUFFER_SIZE = 4096;
+
+	/**
+	 * A program to run, together with the data memory and input it runs with.
+	 */
+	public static class Job {
+		/**
+		 * @param name Name identifying the job in its result
+		 * @param quads QuadTable containing instruction memory, which is only read
+		 * @param symbols SymbolTable containing data memory, which the job updates as it runs
+		 * @param input Whitespace separated integers for READ instructions, which take them
+		 *        without printing a prompt
+		 */
+		public Job(String name, QuadTable quads, SymbolTable symbols, String input) {
+			this.name = name;
+			this.quads = quads;
+			this.symbols = symbols;
+			this.input = input;
+		}
+
+		public String getName() { return name; }
+		public QuadTable getQuads() { return quads; }
+		public SymbolTable getSymbols() { return symbols; }
+		public String getInput() { return input; }
+
+		private final String name;
+		private final QuadTable quads;
+		private final SymbolTable symbols;
+		private final String input;
+	}
+
+	/**
+	 * The outcome of running one job.
+	 */
+	public static class Result {
+		private Result(Job job, String output, RuntimeException error, long queueNanos,
+		               long runNanos) {
+			this.job = job;
+			this.output = output;
+			this.error = error;
+			this.queueNanos = queueNanos;
+			this.runNanos = runNanos;
+		}
+
+		public Job getJob() { return job; }
+		public String getOutput() { return output; }
+		public RuntimeException getError() { return error; }
+		public boolean succeeded() { return error == null; }
+		public long getQueueNanos() { return queueNanos; }
+		public long getRunNanos() { return runNanos; }
+		public long getLatencyNanos() { return queueNanos + runNanos; }
+
+		private final Job job;                // the job that was run
+		private final String output;          // everything the program printed
+		private final RuntimeException error; // exception that stopped the program, or null
+		private final long queueNanos;        // time from submission until a worker started it
+		private final long runNanos;          // time spent executing
+	}
+
+	/**
+	 * A snapshot of the jobs the service has completed so far.
+	 */
+	public static class Stats {
+		private Stats(long[] latencies, int failed, long elapsedNanos) {
+			this.latencies = latencies;
+			this.failed = failed;
+			this.elapsedNanos = elapsedNanos;
+			Arrays.sort(this.latencies);
+		}
+
+		public int getCompleted() { return latencies.length; }
+		public int getFailed() { return failed; }
+		public long getElapsedNanos() { return elapsedNanos; }
+
+		/**
+		 * @return Jobs completed per second, between the first submission and the last completion
+		 */
+		public double getThroughput() {
+			return (elapsedNanos > 0) ? latencies.length / (elapsedNanos / 1e9) : 0;
+		}
+
+		/**
+		 * @return Average latency of a job, in nanoseconds
+		 */
+		public double getMeanLatencyNanos() {
+			return (latencies.length > 0) ? Arrays.stream(latencies).average().getAsDouble() : 0;
+		}
+
+		/**
+		 * @param percentile Percentage of jobs, between 0 and 100
+		 * @return The latency that the given percentage of jobs completed within, in nanoseconds
+		 */
+		public long getLatencyPercentileNanos(double percentile) {
+			if (latencies.length == 0) {
+				return 0;
+			}
+			int rank = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+			return latencies[Math.max(0, Math.min(rank, latencies.length - 1))];
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d jobs (%d failed) in %.3f ms: %.1f jobs/s, latency mean "
+			                         + "%.3f ms, p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+			                     getCompleted(), failed, elapsedNanos / 1e6, getThroughput(),
+			                     getMeanLatencyNanos() / 1e6, getLatencyPercentileNanos(50) / 1e6,
+			                     getLatencyPercentileNanos(99) / 1e6,
+			                     getLatencyPercentileNanos(100) / 1e6);
+		}
+
+		private final long[] latencies;  // latency of every completed job, sorted
+		private final int failed;        // number of jobs that threw an exception
+		private final long elapsedNanos; // time from the first submission to the last completion
+	}
+
+	/**
+	 * Starts a service with the given number of worker threads.
+	 *
+	 * @param workers Number of jobs that may run at the same time
+	 * @param engine Execution strategy used for every job
+	 */
+	public ExecutionService(int workers, Interpreter.Engine engine) {
+		interp = new Interpreter();
+		interp.setEngine(engine);
+
+		AtomicInteger threadCount = new AtomicInteger();
+		pool = Executors.newFixedThreadPool(workers, task -> {
+			Thread thread = new Thread(task, "interpreter-worker-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		latencies = new long[64];
+	}
+
+	/**
+	 * Queues a job to run on the next free worker.
+	 *
+	 * @param job The job to run
+	 * @return A future completed with the job's result. Exceptions thrown by the program are
+	 *         reported in the result rather than by the future.
+	 */
+	public Future<Result> submit(Job job) {
+		long submitted = System.nanoTime();
+		synchronized (this) {
+			if (firstSubmit == 0) {
+				firstSubmit = submitted;
+			}
+		}
+		return pool.submit(() -> execute(job, submitted));
+	}
+
+	/**
+	 * Runs a batch of jobs and waits for all of them to complete.
+	 *
+	 * @param jobs The jobs to run
+	 * @return The result of every job, in the same order as jobs
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public List<Result> runAll(List<Job> jobs) throws InterruptedException {
+		List<Future<Result>> futures = new ArrayList<>(jobs.size());
+		for (Job job : jobs) {
+			futures.add(submit(job));
+		}
+
+		List<Result> results = new ArrayList<>(jobs.size());
+		for (Future<Result> future : futures) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * @return Throughput and latency of the jobs completed so far
+	 */
+	public synchronized Stats getStats() {
+		long elapsed = (completed > 0) ? lastComplete - firstSubmit : 0;
+		return new Stats(Arrays.copyOf(latencies, completed), failed, elapsed);
+	}
+
+	/**
+	 * Stops accepting jobs, and waits for queued jobs to finish.
+	 */
+	@Override
+	public void close() {
+		pool.shutdown();
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private Result execute(Job job, long submitted) {
+		long started = System.nanoTime();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrintStream out = new BufferedPrintStream(output, JOB_BUFFER_SIZE);
+
+		RuntimeException error = null;
+		try {
+			interp.InterpretQuads(job.getQuads(), job.getSymbols(), false, null,
+			                      IntInput.FromString(job.getInput()), out);
+		} catch (RuntimeException e) {
+			error = e;
+		}
+		out.flush();
+
+		long finished = System.nanoTime();
+		record(finished - submitted, finished, error != null);
+		return new Result(job, output.toString(StandardCharsets.UTF_8), error, started - submitted,
+		                  finished - started);
+	}
+
+	private synchronized void record(long latency, long finished, boolean isFailure) {
+		if (completed == latencies.length) {
+			latencies = Arrays.copyOf(latencies, completed * 2);
+		}
+		latencies[completed++] = latency;
+		if (isFailure) {
+			failed++;
+		}
+		lastComplete = Math.max(lastComplete, finished);
+	}
+
+	private final Interpreter interp;  // shared by every worker
+	private final ExecutorService pool; // worker threads
+	private long[] latencies;          // latency of each completed job, in completion order
+	private int completed;             // number of entries in latencies
+	private int failed;                // number of completed jobs that threw an exception
+	private long firstSubmit;          // System.nanoTime() of the first submission, or 0
+	private long lastComplete;         // System.nanoTime() of the latest completion
+}
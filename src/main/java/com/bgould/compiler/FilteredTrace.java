@@ -0,0 +1,84 @@
+package com.bgould.compiler;
+
+/**
+ * Passes on to another trace only the quads selected by an Interpreter's current TraceFilter.
+ *
+ * The Interpreter's filter is read again every FILTER_CHECK_INTERVAL quads, so setTraceFilter takes
+ * effect while a program is running, without a volatile read for every quad. Each filter is turned
+ * into a mask over the program when it is first seen, so a quad that does not pass costs one array
+ * access.
+ */
+final class FilteredTrace extends Trace {
+	// Quads recorded between checks for a new filter
+	private static final int FILTER_CHECK_INTERVAL = 4096;
+
+	/**
+	 * @param target The trace to pass selected quads on to
+	 * @param interp The Interpreter whose filter selects quads
+	 * @param code The decoded program being traced
+	 */
+	FilteredTrace(Trace target, Interpreter interp, int[] code) {
+		this.target = target;
+		this.interp = interp;
+		this.code = code;
+	}
+
+	@Override
+	public void record(int pc, int opcode, int op1, int op2, int op3) {
+		if (--untilCheck < 0) {
+			untilCheck = FILTER_CHECK_INTERVAL;
+			TraceFilter current = interp.getTraceFilter();
+			if (current != filter) {
+				use(current);
+			}
+		}
+
+		passed = (mask == null || (pc >= 0 && pc < mask.length && mask[pc])) && sample();
+		if (passed) {
+			target.record(pc, opcode, op1, op2, op3);
+		}
+	}
+
+	@Override
+	public void recordResult(int value) {
+		if (passed) {
+			target.recordResult(value);
+		}
+	}
+
+	@Override
+	public void recordResult(double value) {
+		if (passed) {
+			target.recordResult(value);
+		}
+	}
+
+	@Override
+	public void close() { target.close(); }
+
+	private void use(TraceFilter current) {
+		filter = current;
+		mask = (current != null) ? current.maskFor(code) : null;
+		sampleInterval = (current != null) ? current.getSampleInterval() : 1;
+		sampled = 0;
+	}
+
+	// Counts a quad that passed the mask, returning true for one in every sampleInterval
+	private boolean sample() {
+		if (++sampled < sampleInterval) {
+			return false;
+		}
+		sampled = 0;
+		return true;
+	}
+
+	private final Trace target;       // trace selected quads are passed on to
+	private final Interpreter interp; // source of the current filter
+	private final int[] code;         // program the mask is computed for
+	private TraceFilter filter;       // filter the mask was computed from, or null for none
+	private boolean[] mask;           // quads passing filter, or null to pass every quad
+	private int sampleInterval = 1;   // one in this many passing quads is traced
+	private int sampled;              // passing quads counted since the last one traced
+	private int untilCheck;           // quads left to record before checking for a new filter
+	private boolean passed;           // true if the last quad was passed on to target
+}
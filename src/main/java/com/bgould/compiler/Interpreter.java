@@ -1,22 +1,144 @@
 package com.bgould.compiler;
 
+import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.Scanner;
 
+import com.bgould.compiler.ADT.DataMemory;
 import com.bgould.compiler.ADT.QuadTable;
 import com.bgould.compiler.ADT.ReserveTable;
 import com.bgould.compiler.ADT.SymbolTable;
+import com.bgould.compiler.utils.BufferedPrintStream;
 import com.bgould.compiler.utils.Constants;
-import com.bgould.compiler.utils.StringUtils;
+import com.bgould.compiler.utils.IntInput;
 
 /**
  * Class to execute compiled code using the generated QuadTable and SymbolTable
+ *
+ * All execution state lives in the call to InterpretQuads, so one Interpreter may run any number
+ * of programs at once from different threads, as long as each uses its own SymbolTable.
  */
 public class Interpreter {
+	/**
+	 * Strategies available for executing a program
+	 */
+	public enum Engine {
+		LOOKUP,   // looks up each opcode's name in the opcode table, then switches on the name
+		DECODED,  // decodes the QuadTable once, then switches on the integer opcodes
+		CLOSURE,  // links the program into a graph of executable nodes
+		BYTECODE, // translates the program to a JVM class, falling back to DECODED if it cannot
+	}
+
+	// Opcodes for every instruction the interpreter understands
+	public static final int OP_STOP = 0;
+	public static final int OP_DIV = 1;
+	public static final int OP_MUL = 2;
+	public static final int OP_SUB = 3;
+	public static final int OP_ADD = 4;
+	public static final int OP_MOV = 5;
+	public static final int OP_PRINT = 6;
+	public static final int OP_READ = 7;
+	public static final int OP_JMP = 8;
+	public static final int OP_JZ = 9;
+	public static final int OP_JP = 10;
+	public static final int OP_JN = 11;
+	public static final int OP_JNZ = 12;
+	public static final int OP_JNP = 13;
+	public static final int OP_JNN = 14;
+	public static final int OP_JINDR = 15;
+	// Fused superinstructions produced by QuadOptimizer
+	public static final int OP_CJZ = 16;  // if *op1 - *op2 == 0, pc = op3
+	public static final int OP_CJP = 17;  // if *op1 - *op2 > 0
+	public static final int OP_CJN = 18;  // if *op1 - *op2 < 0
+	public static final int OP_CJNZ = 19; // if *op1 - *op2 != 0
+	public static final int OP_CJNP = 20; // if *op1 - *op2 <= 0
+	public static final int OP_CJNN = 21; // if *op1 - *op2 >= 0
+	public static final int OP_LOOP = 22; // *op1 += 1, then if *op2 - *op1 >= 0, pc = op3
+	// Floating-point arithmetic and conversions, selected by the parser from operand types
+	public static final int OP_DIVF = 23; // *op3 = *op1 / *op2, all reals
+	public static final int OP_MULF = 24; // *op3 = *op1 * *op2, all reals
+	public static final int OP_SUBF = 25; // *op3 = *op1 - *op2, all reals
+	public static final int OP_ADDF = 26; // *op3 = *op1 + *op2, all reals
+	public static final int OP_MOVF = 27; // *op3 = *op1, both reals
+	public static final int OP_ITOF = 28; // *op3 = real value of integer *op1
+	public static final int OP_FTOI = 29; // *op3 = real *op1 truncated to an integer
+	public static final int OP_CMPF = 30; // *op3 = 1 if *op1 > *op2, 0 if equal, else -1
+	// Intrinsic math functions, each a single quad in place of a loop in the program
+	public static final int OP_ABS = 31;  // *op3 = |*op1|
+	public static final int OP_ABSF = 32; // *op3 = |*op1|, both reals
+	public static final int OP_MIN = 33;  // *op3 = lesser of *op1 and *op2
+	public static final int OP_MINF = 34; // *op3 = lesser of *op1 and *op2, all reals
+	public static final int OP_MAX = 35;  // *op3 = greater of *op1 and *op2
+	public static final int OP_MAXF = 36; // *op3 = greater of *op1 and *op2, all reals
+	public static final int OP_MOD = 37;  // *op3 = *op1 - (*op1 / *op2) * *op2
+	public static final int OP_POW = 38;  // *op3 = *op1 to the power *op2, saturated to an int
+	public static final int OP_POWF = 39; // *op3 = *op1 to the power *op2, all reals
+	public static final int OP_SQRT = 40; // *op3 = square root of *op1, both reals
+	// Arrays, whose elements are indexed from 0, with the lower bound already subtracted
+	public static final int OP_LDA = 41;   // *op3 = op1[*op2], integers
+	public static final int OP_LDAF = 42;  // *op3 = op1[*op2], reals
+	public static final int OP_STA = 43;   // op3[*op2] = *op1, integers
+	public static final int OP_STAF = 44;  // op3[*op2] = *op1, reals
+	public static final int OP_FILL = 45;  // every element of op3 = *op1, integers
+	public static final int OP_FILLF = 46; // every element of op3 = *op1, reals
+	public static final int OP_COPY = 47;  // elements of op3 = elements of op1, integers
+	public static final int OP_COPYF = 48; // elements of op3 = elements of op1, reals
+	public static final int OP_SUM = 49;   // *op3 = sum of the elements of op1, integers
+	public static final int OP_SUMF = 50;  // *op3 = sum of the elements of op1, reals
+
+	public static final int OP_CALL = 51; // save the op2 symbols from op1 and pc + 1, then pc = op3
+	public static final int OP_RET = 52;  // restore the latest saved symbols, then pc = saved pc
+	// Multi-way branch, followed by op2 JMP quads that form its table
+	public static final int OP_JTAB = 53; // if 0 <= *op1 < op2, pc = pc + 1 + *op1, else pc = op3
+
+	// Maximum number of opcodes the opcode table can hold
+	static final int OP_TABLE_SIZE = 64;
 
-	public Interpreter() { initializeOpTable(); }
+	// Number of ints used to store one decoded quad
+	static final int QUAD_WIDTH = 4;
+
+	public Interpreter() { engine = Engine.DECODED; }
+
+	/**
+	 * Selects the strategy used by InterpretQuads to execute programs
+	 *
+	 * @param engine The execution strategy to use
+	 */
+	public void setEngine(Engine engine) { this.engine = engine; }
 
 	/**
-	 * Executes the program specified by the given QuadTable and SymbolTable
+	 * Makes traced runs record a BinaryTrace to their trace file, instead of text lines.
+	 *
+	 * @param capacity Number of quads the trace holds in memory, or 0 to go back to text traces
+	 * @param flags Any combination of BinaryTrace.VALUES, SPILL and COMPRESS
+	 */
+	public void setBinaryTrace(int capacity, int flags) {
+		this.traceCapacity = capacity;
+		this.traceFlags = flags;
+	}
+
+	/**
+	 * Limits traced runs to the quads selected by a filter. Programs that are already running
+	 * switch to the new filter within a few thousand quads.
+	 *
+	 * @param filter The filter to apply, or null to trace every quad
+	 */
+	public void setTraceFilter(TraceFilter filter) { this.traceFilter = filter; }
+
+	public TraceFilter getTraceFilter() { return traceFilter; }
+
+	/**
+	 * Makes runs count their executed quads in a profiler, which must have been created for the
+	 * program being run. Profiled runs use the checked decoded loop, or the LOOKUP loop, whatever
+	 * the engine, and are not also traced.
+	 *
+	 * @param profiler The profiler to count executions in, or null to stop profiling
+	 */
+	public void setProfiler(Profiler profiler) { this.profiler = profiler; }
+
+	/**
+	 * Executes the program specified by the given QuadTable and SymbolTable, using the currently
+	 * selected engine
 	 *
 	 * @param q QuadTable containing instruction memory for execution
 	 * @param s SymbolTable containing data memory for execution
@@ -24,13 +146,119 @@ public class Interpreter {
 	 * @param filename File to log trace data to
 	 */
 	public void InterpretQuads(QuadTable q, SymbolTable s, boolean traceOn, String filename) {
+		PrintStream out = new BufferedPrintStream(System.out);
+		IntInput console = IntInput.FromStream(System.in).WithPrompt(out);
+		InterpretQuads(q, s, traceOn, filename, console, out);
+	}
+
+	/**
+	 * Executes the program specified by the given QuadTable and SymbolTable, using the currently
+	 * selected engine, with the given console. A prompt is printed before every value READ takes
+	 * from the Scanner, which is left open.
+	 *
+	 * @param q QuadTable containing instruction memory for execution
+	 * @param s SymbolTable containing data memory for execution
+	 * @param traceOn Switch determining if trace data is logged to a file
+	 * @param filename File to log trace data to
+	 * @param inputScanner Source of values for READ instructions
+	 * @param out Destination of PRINT output and READ prompts
+	 */
+	public void InterpretQuads(QuadTable q, SymbolTable s, boolean traceOn, String filename,
+	                           Scanner inputScanner, PrintStream out) {
+		InterpretQuads(q, s, traceOn, filename, IntInput.FromScanner(inputScanner).WithPrompt(out),
+		               out);
+	}
+
+	/**
+	 * Executes the program specified by the given QuadTable and SymbolTable, using the currently
+	 * selected engine, with its input supplied by the caller. out is flushed once the program
+	 * stops.
+	 *
+	 * @param q QuadTable containing instruction memory for execution
+	 * @param s SymbolTable containing data memory for execution
+	 * @param traceOn Switch determining if trace data is logged to a file
+	 * @param filename File to log trace data to
+	 * @param in Source of values for READ instructions
+	 * @param out Destination of PRINT output
+	 */
+	public void InterpretQuads(QuadTable q, SymbolTable s, boolean traceOn, String filename,
+	                           IntInput in, PrintStream out) {
+		Profiler profiler = this.profiler;
+		if (engine == Engine.LOOKUP) {
+			try (Trace trace = (profiler != null) ? profiler :
+			                   traceOn ? openTrace(filename, decode(q)) : null) {
+				interpretLookup(q, s, trace, in, out);
+			} finally {
+				out.flush();
+			}
+			return;
+		}
+
+		int[] code = decode(q);
+		DataMemory mem = new DataMemory(s);
+
+		try {
+			if (profiler != null || traceOn) {
+				// only the decoded engine supports tracing and profiling
+				try (Trace trace = (profiler != null) ? profiler : openTrace(filename, code)) {
+					interpretDecoded(code, mem, in, out, trace);
+				}
+			} else {
+				execute(code, mem, QuadVerifier.check(code, mem) == null, in, out);
+			}
+		} finally {
+			// symbols must reflect every executed instruction, even if execution failed
+			mem.WriteBack(s);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Executes an already decoded program directly against a data memory, using the currently
+	 * selected engine. LOOKUP needs a QuadTable, so it executes with the checked decoded loop.
+	 *
+	 * @param code The decoded program to execute
+	 * @param mem Data memory for execution, which is left holding the program's results
+	 * @param verified true if QuadVerifier has accepted code against memory of this shape
+	 * @param in Source of values for READ instructions
+	 * @param out Destination of PRINT output
+	 */
+	void execute(int[] code, DataMemory mem, boolean verified, IntInput in, PrintStream out) {
+		if (engine == Engine.CLOSURE) {
+			ClosureCompiler.run(ClosureCompiler.link(code, mem, in, out));
+			return;
+		}
+		if (engine == Engine.BYTECODE && runCompiled(code, mem, in, out)) {
+			return;
+		}
+
+		// programs that pass verification can skip the per-instruction checks
+		if (verified && engine != Engine.LOOKUP) {
+			interpretVerified(code, mem, in, out);
+		} else {
+			interpretDecoded(code, mem, in, out, null);
+		}
+	}
+
+	/**
+	 * Executes a program by looking up the name of every opcode as it is executed.
+	 *
+	 * @param q QuadTable containing instruction memory for execution
+	 * @param s SymbolTable containing data memory for execution
+	 * @param trace Destination of trace data, or null if tracing is off
+	 * @param in Source of values for READ instructions
+	 * @param out Destination of PRINT output
+	 */
+	private void interpretLookup(QuadTable q, SymbolTable s, Trace trace, IntInput in,
+	                             PrintStream out) {
 		// Vars needed to execute instructions
-		programCounter = 0;
+		int programCounter = 0;
 		int[] currInstruction;
 		char dstSymUsage;
 		int math1, math2;
+		double real1, real2;
 		int input;
-		Scanner inputScanner = new Scanner(System.in);
+		CallStack calls = new CallStack();
 
 		while (programCounter < Constants.MAX_QUAD) {
 			// Read current instruction from QuadTable
@@ -38,11 +266,9 @@ public class Interpreter {
 			String instrName = opTable.LookupCode(currInstruction[0]);
 			dstSymUsage = s.GetUsage(currInstruction[3]); // don't change symbol usage by default
 
-			if (traceOn) {
-				String trace =
-					makeTraceString(programCounter, currInstruction[0], currInstruction[1],
-				                    currInstruction[2], currInstruction[3]);
-				StringUtils.AppendToFile(filename, trace);
+			if (trace != null) {
+				trace.record(programCounter, currInstruction[0], currInstruction[1],
+				             currInstruction[2], currInstruction[3]);
 			}
 
 			// Increment PC, overwritten if branch chosen
@@ -95,11 +321,10 @@ public class Interpreter {
 				default:
 					throw new RuntimeException("Invalid symbol data type!");
 				}
-				System.out.println(value);
+				out.println(value);
 				break;
-			case "READ":                      // *op3 = next user input int
-				System.out.println("> ");       // prompt
-				input = inputScanner.nextInt(); // read int
+			case "READ":         // *op3 = next user input int
+				input = in.NextInt(); // read int
 				s.UpdateSymbol(currInstruction[3], dstSymUsage, input);
 				break;
 			case "JMP": // pc = op3
@@ -138,14 +363,797 @@ public class Interpreter {
 			case "JINDR": // pc = *op3
 				programCounter = s.GetInteger(currInstruction[3]);
 				break;
+			case "CJZ": // if *op1 - *op2 == 0, pc = op3
+				if (s.GetInteger(currInstruction[1]) - s.GetInteger(currInstruction[2]) == 0) {
+					programCounter = currInstruction[3];
+				}
+				break;
+			case "CJP": // if *op1 - *op2 > 0
+				if (s.GetInteger(currInstruction[1]) - s.GetInteger(currInstruction[2]) > 0) {
+					programCounter = currInstruction[3];
+				}
+				break;
+			case "CJN": // if *op1 - *op2 < 0
+				if (s.GetInteger(currInstruction[1]) - s.GetInteger(currInstruction[2]) < 0) {
+					programCounter = currInstruction[3];
+				}
+				break;
+			case "CJNZ": // if *op1 - *op2 != 0
+				if (s.GetInteger(currInstruction[1]) - s.GetInteger(currInstruction[2]) != 0) {
+					programCounter = currInstruction[3];
+				}
+				break;
+			case "CJNP": // if *op1 - *op2 <= 0
+				if (s.GetInteger(currInstruction[1]) - s.GetInteger(currInstruction[2]) <= 0) {
+					programCounter = currInstruction[3];
+				}
+				break;
+			case "CJNN": // if *op1 - *op2 >= 0
+				if (s.GetInteger(currInstruction[1]) - s.GetInteger(currInstruction[2]) >= 0) {
+					programCounter = currInstruction[3];
+				}
+				break;
+			case "LOOP": // *op1 += 1, then if *op2 - *op1 >= 0, pc = op3
+				math1 = s.GetInteger(currInstruction[1]) + 1;
+				s.UpdateSymbol(currInstruction[1], s.GetUsage(currInstruction[1]), math1);
+				if (s.GetInteger(currInstruction[2]) - math1 >= 0) {
+					programCounter = currInstruction[3];
+				}
+				break;
+			case "DIVF": // *op3 = *op1 / *op2, all reals
+				real1 = s.GetFloat(currInstruction[1]);
+				real2 = s.GetFloat(currInstruction[2]);
+
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, real1 / real2);
+				break;
+			case "MULF": // *op3 = *op1 * *op2, all reals
+				real1 = s.GetFloat(currInstruction[1]);
+				real2 = s.GetFloat(currInstruction[2]);
+
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, real1 * real2);
+				break;
+			case "SUBF": // *op3 = *op1 - *op2, all reals
+				real1 = s.GetFloat(currInstruction[1]);
+				real2 = s.GetFloat(currInstruction[2]);
+
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, real1 - real2);
+				break;
+			case "ADDF": // *op3 = *op1 + *op2, all reals
+				real1 = s.GetFloat(currInstruction[1]);
+				real2 = s.GetFloat(currInstruction[2]);
+
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, real1 + real2);
+				break;
+			case "MOVF": // *op3 = *op1, both reals
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, s.GetFloat(currInstruction[1]));
+				break;
+			case "ITOF": // *op3 = real value of integer *op1
+				real1 = s.GetInteger(currInstruction[1]);
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, real1);
+				break;
+			case "FTOI": // *op3 = real *op1 truncated to an integer
+				math1 = (int) s.GetFloat(currInstruction[1]);
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, math1);
+				break;
+			case "CMPF": // *op3 = 1 if *op1 > *op2, 0 if equal, else -1
+				real1 = s.GetFloat(currInstruction[1]);
+				real2 = s.GetFloat(currInstruction[2]);
+
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, compareReals(real1, real2));
+				break;
+			case "ABS": // *op3 = |*op1|
+				math1 = s.GetInteger(currInstruction[1]);
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, Math.abs(math1));
+				break;
+			case "ABSF": // *op3 = |*op1|, both reals
+				real1 = s.GetFloat(currInstruction[1]);
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, Math.abs(real1));
+				break;
+			case "MIN": // *op3 = lesser of *op1 and *op2
+				math1 = s.GetInteger(currInstruction[1]);
+				math2 = s.GetInteger(currInstruction[2]);
+
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, Math.min(math1, math2));
+				break;
+			case "MINF": // *op3 = lesser of *op1 and *op2, all reals
+				real1 = s.GetFloat(currInstruction[1]);
+				real2 = s.GetFloat(currInstruction[2]);
+
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, Math.min(real1, real2));
+				break;
+			case "MAX": // *op3 = greater of *op1 and *op2
+				math1 = s.GetInteger(currInstruction[1]);
+				math2 = s.GetInteger(currInstruction[2]);
+
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, Math.max(math1, math2));
+				break;
+			case "MAXF": // *op3 = greater of *op1 and *op2, all reals
+				real1 = s.GetFloat(currInstruction[1]);
+				real2 = s.GetFloat(currInstruction[2]);
+
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, Math.max(real1, real2));
+				break;
+			case "MOD": // *op3 = *op1 - (*op1 / *op2) * *op2
+				math1 = s.GetInteger(currInstruction[1]);
+				math2 = s.GetInteger(currInstruction[2]);
+
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, math1 % math2);
+				break;
+			case "POW": // *op3 = *op1 to the power *op2, saturated to an int
+				math1 = s.GetInteger(currInstruction[1]);
+				math2 = s.GetInteger(currInstruction[2]);
+
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, (int) Math.pow(math1, math2));
+				break;
+			case "POWF": // *op3 = *op1 to the power *op2, all reals
+				real1 = s.GetFloat(currInstruction[1]);
+				real2 = s.GetFloat(currInstruction[2]);
+
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, Math.pow(real1, real2));
+				break;
+			case "SQRT": // *op3 = square root of *op1, both reals
+				real1 = s.GetFloat(currInstruction[1]);
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, Math.sqrt(real1));
+				break;
+			case "LDA": // *op3 = op1[*op2], integers
+				math1 = s.GetIntegerArray(currInstruction[1])[s.GetInteger(currInstruction[2])];
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, math1);
+				break;
+			case "LDAF": // *op3 = op1[*op2], reals
+				real1 = s.GetFloatArray(currInstruction[1])[s.GetInteger(currInstruction[2])];
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, real1);
+				break;
+			case "STA": // op3[*op2] = *op1, integers
+				s.GetIntegerArray(currInstruction[3])[s.GetInteger(currInstruction[2])] =
+					s.GetInteger(currInstruction[1]);
+				break;
+			case "STAF": // op3[*op2] = *op1, reals
+				s.GetFloatArray(currInstruction[3])[s.GetInteger(currInstruction[2])] =
+					s.GetFloat(currInstruction[1]);
+				break;
+			case "FILL": // every element of op3 = *op1, integers
+				Arrays.fill(s.GetIntegerArray(currInstruction[3]),
+				            s.GetInteger(currInstruction[1]));
+				break;
+			case "FILLF": // every element of op3 = *op1, reals
+				Arrays.fill(s.GetFloatArray(currInstruction[3]), s.GetFloat(currInstruction[1]));
+				break;
+			case "COPY": // elements of op3 = elements of op1, integers
+				copyArray(s.GetIntegerArray(currInstruction[1]),
+				          s.GetIntegerArray(currInstruction[3]));
+				break;
+			case "COPYF": // elements of op3 = elements of op1, reals
+				copyArray(s.GetFloatArray(currInstruction[1]), s.GetFloatArray(currInstruction[3]));
+				break;
+			case "SUM": // *op3 = sum of the elements of op1, integers
+				math1 = sumArray(s.GetIntegerArray(currInstruction[1]));
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, math1);
+				break;
+			case "SUMF": // *op3 = sum of the elements of op1, reals
+				real1 = sumArray(s.GetFloatArray(currInstruction[1]));
+				s.UpdateSymbol(currInstruction[3], dstSymUsage, real1);
+				break;
+			case "CALL": // save the op2 symbols from op1 and pc + 1, then pc = op3
+				calls.push(programCounter, s, currInstruction[1], currInstruction[2]);
+				programCounter = currInstruction[3];
+				break;
+			case "RET": // restore the latest saved symbols, then pc = saved pc
+				programCounter = calls.pop(s);
+				break;
+			case "JTAB": // if 0 <= *op1 < op2, pc = pc + 1 + *op1, else pc = op3
+				math1 = s.GetInteger(currInstruction[1]);
+				if (math1 >= 0 && math1 < currInstruction[2]) {
+					programCounter += math1;
+				} else {
+					programCounter = currInstruction[3];
+				}
+				break;
+
+			default: // unrecognized instruction
+				throw new IllegalArgumentException("QuadTable contained an unrecognized operation");
+			}
+
+			if (trace != null && QuadOptimizer.writesOp3(currInstruction[0])) {
+				if (s.GetDataType(currInstruction[3]) == SymbolTable.REAL_TYPE) {
+					trace.recordResult(s.GetFloat(currInstruction[3]));
+				} else {
+					trace.recordResult(s.GetInteger(currInstruction[3]));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Executes a program from its decoded form. The QuadTable is flattened once up front, so each
+	 * executed instruction costs a single switch on an int, with no opcode table lookups.
+	 *
+	 * @param code The decoded program to execute
+	 * @param mem Data memory for execution
+	 * @param in Source of values for READ instructions
+	 * @param out Destination of PRINT output
+	 * @param trace Destination of trace data, or null if tracing is off
+	 */
+	private void interpretDecoded(int[] code, DataMemory mem, IntInput in, PrintStream out,
+	                              Trace trace) {
+		// Vars needed to execute instructions
+		int[] ints = mem.GetIntegers();
+		double[] reals = mem.GetFloats();
+		char[] types = mem.GetDataTypes();
+		int[][] intArrays = mem.GetIntegerArrays();
+		double[][] realArrays = mem.GetFloatArrays();
+		CallStack calls = new CallStack();
+		int pc = 0;
+		int at, op3;
+
+		while (pc < Constants.MAX_QUAD) {
+			// Read current instruction from decoded program
+			at = pc * QUAD_WIDTH;
+			op3 = code[at + 3];
+
+			if (trace != null) {
+				trace.record(pc, code[at], code[at + 1], code[at + 2], op3);
+			}
+
+			// Increment PC, overwritten if branch chosen
+			pc++;
+
+			// Execute current instruction
+			switch (code[at]) {
+			case OP_STOP: // terminate execution
+				pc = Constants.MAX_QUAD;
+				break;
+			case OP_DIV: // *op3 = *op1 / *op2
+				ints[op3] = ints[code[at + 1]] / ints[code[at + 2]];
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case OP_MUL: // *op3 = *op1 * *op2
+				ints[op3] = ints[code[at + 1]] * ints[code[at + 2]];
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case OP_SUB: // *op3 = *op1 - *op2
+				ints[op3] = ints[code[at + 1]] - ints[code[at + 2]];
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case OP_ADD: // *op3 = *op1 + *op2
+				ints[op3] = ints[code[at + 1]] + ints[code[at + 2]];
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case OP_MOV: // *op3 = *op1
+				ints[op3] = ints[code[at + 1]];
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case OP_PRINT: // display *op3 name and value
+				switch (types[op3]) {
+				case SymbolTable.INTEGER_TYPE:
+					out.println(ints[op3]);
+					break;
+				case SymbolTable.REAL_TYPE:
+					out.println(reals[op3]);
+					break;
+				case SymbolTable.STRING_TYPE:
+					out.println(mem.GetStrings()[op3]);
+					break;
+				default:
+					throw new RuntimeException("Invalid symbol data type!");
+				}
+				break;
+			case OP_READ: // *op3 = next user input int
+				ints[op3] = in.NextInt();
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case OP_JMP: // pc = op3
+				pc = op3;
+				break;
+			case OP_JZ: // if *op1 == 0, pc = op3
+				if (ints[code[at + 1]] == 0) {
+					pc = op3;
+				}
+				break;
+			case OP_JP: // if *op1 > 0
+				if (ints[code[at + 1]] > 0) {
+					pc = op3;
+				}
+				break;
+			case OP_JN: // if *op1 < 0
+				if (ints[code[at + 1]] < 0) {
+					pc = op3;
+				}
+				break;
+			case OP_JNZ: // if *op1 != 0
+				if (ints[code[at + 1]] != 0) {
+					pc = op3;
+				}
+				break;
+			case OP_JNP: // if *op1 <= 0
+				if (ints[code[at + 1]] <= 0) {
+					pc = op3;
+				}
+				break;
+			case OP_JNN: // if *op1 >= 0
+				if (ints[code[at + 1]] >= 0) {
+					pc = op3;
+				}
+				break;
+			case OP_JINDR: // pc = *op3
+				pc = ints[op3];
+				break;
+			case OP_CJZ: // if *op1 - *op2 == 0, pc = op3
+				if (ints[code[at + 1]] - ints[code[at + 2]] == 0) {
+					pc = op3;
+				}
+				break;
+			case OP_CJP: // if *op1 - *op2 > 0
+				if (ints[code[at + 1]] - ints[code[at + 2]] > 0) {
+					pc = op3;
+				}
+				break;
+			case OP_CJN: // if *op1 - *op2 < 0
+				if (ints[code[at + 1]] - ints[code[at + 2]] < 0) {
+					pc = op3;
+				}
+				break;
+			case OP_CJNZ: // if *op1 - *op2 != 0
+				if (ints[code[at + 1]] - ints[code[at + 2]] != 0) {
+					pc = op3;
+				}
+				break;
+			case OP_CJNP: // if *op1 - *op2 <= 0
+				if (ints[code[at + 1]] - ints[code[at + 2]] <= 0) {
+					pc = op3;
+				}
+				break;
+			case OP_CJNN: // if *op1 - *op2 >= 0
+				if (ints[code[at + 1]] - ints[code[at + 2]] >= 0) {
+					pc = op3;
+				}
+				break;
+			case OP_LOOP: // *op1 += 1, then if *op2 - *op1 >= 0, pc = op3
+				ints[code[at + 1]]++;
+				types[code[at + 1]] = SymbolTable.INTEGER_TYPE;
+				if (ints[code[at + 2]] - ints[code[at + 1]] >= 0) {
+					pc = op3;
+				}
+				break;
+			case OP_DIVF: // *op3 = *op1 / *op2, all reals
+				reals[op3] = reals[code[at + 1]] / reals[code[at + 2]];
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case OP_MULF: // *op3 = *op1 * *op2, all reals
+				reals[op3] = reals[code[at + 1]] * reals[code[at + 2]];
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case OP_SUBF: // *op3 = *op1 - *op2, all reals
+				reals[op3] = reals[code[at + 1]] - reals[code[at + 2]];
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case OP_ADDF: // *op3 = *op1 + *op2, all reals
+				reals[op3] = reals[code[at + 1]] + reals[code[at + 2]];
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case OP_MOVF: // *op3 = *op1, both reals
+				reals[op3] = reals[code[at + 1]];
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case OP_ITOF: // *op3 = real value of integer *op1
+				reals[op3] = ints[code[at + 1]];
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case OP_FTOI: // *op3 = real *op1 truncated to an integer
+				ints[op3] = (int) reals[code[at + 1]];
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case OP_CMPF: // *op3 = 1 if *op1 > *op2, 0 if equal, else -1
+				ints[op3] = compareReals(reals[code[at + 1]], reals[code[at + 2]]);
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case OP_ABS: // *op3 = |*op1|
+				ints[op3] = Math.abs(ints[code[at + 1]]);
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case OP_ABSF: // *op3 = |*op1|, both reals
+				reals[op3] = Math.abs(reals[code[at + 1]]);
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case OP_MIN: // *op3 = lesser of *op1 and *op2
+				ints[op3] = Math.min(ints[code[at + 1]], ints[code[at + 2]]);
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case OP_MINF: // *op3 = lesser of *op1 and *op2, all reals
+				reals[op3] = Math.min(reals[code[at + 1]], reals[code[at + 2]]);
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case OP_MAX: // *op3 = greater of *op1 and *op2
+				ints[op3] = Math.max(ints[code[at + 1]], ints[code[at + 2]]);
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case OP_MAXF: // *op3 = greater of *op1 and *op2, all reals
+				reals[op3] = Math.max(reals[code[at + 1]], reals[code[at + 2]]);
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case OP_MOD: // *op3 = *op1 - (*op1 / *op2) * *op2
+				ints[op3] = ints[code[at + 1]] % ints[code[at + 2]];
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case OP_POW: // *op3 = *op1 to the power *op2, saturated to an int
+				ints[op3] = (int) Math.pow(ints[code[at + 1]], ints[code[at + 2]]);
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case OP_POWF: // *op3 = *op1 to the power *op2, all reals
+				reals[op3] = Math.pow(reals[code[at + 1]], reals[code[at + 2]]);
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case OP_SQRT: // *op3 = square root of *op1, both reals
+				reals[op3] = Math.sqrt(reals[code[at + 1]]);
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case OP_LDA: // *op3 = op1[*op2], integers
+				ints[op3] = intArrays[code[at + 1]][ints[code[at + 2]]];
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case OP_LDAF: // *op3 = op1[*op2], reals
+				reals[op3] = realArrays[code[at + 1]][ints[code[at + 2]]];
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case OP_STA: // op3[*op2] = *op1, integers
+				intArrays[op3][ints[code[at + 2]]] = ints[code[at + 1]];
+				break;
+			case OP_STAF: // op3[*op2] = *op1, reals
+				realArrays[op3][ints[code[at + 2]]] = reals[code[at + 1]];
+				break;
+			case OP_FILL: // every element of op3 = *op1, integers
+				Arrays.fill(intArrays[op3], ints[code[at + 1]]);
+				break;
+			case OP_FILLF: // every element of op3 = *op1, reals
+				Arrays.fill(realArrays[op3], reals[code[at + 1]]);
+				break;
+			case OP_COPY: // elements of op3 = elements of op1, integers
+				copyArray(intArrays[code[at + 1]], intArrays[op3]);
+				break;
+			case OP_COPYF: // elements of op3 = elements of op1, reals
+				copyArray(realArrays[code[at + 1]], realArrays[op3]);
+				break;
+			case OP_SUM: // *op3 = sum of the elements of op1, integers
+				ints[op3] = sumArray(intArrays[code[at + 1]]);
+				types[op3] = SymbolTable.INTEGER_TYPE;
+				break;
+			case OP_SUMF: // *op3 = sum of the elements of op1, reals
+				reals[op3] = sumArray(realArrays[code[at + 1]]);
+				types[op3] = SymbolTable.REAL_TYPE;
+				break;
+			case OP_CALL: // save the op2 symbols from op1 and pc + 1, then pc = op3
+				calls.push(pc, ints, reals, code[at + 1], code[at + 2]);
+				pc = op3;
+				break;
+			case OP_RET: // restore the latest saved symbols, then pc = saved pc
+				pc = calls.pop(ints, reals);
+				break;
+			case OP_JTAB: // if 0 <= *op1 < op2, pc = pc + 1 + *op1, else pc = op3
+				if (ints[code[at + 1]] >= 0 && ints[code[at + 1]] < code[at + 2]) {
+					pc += ints[code[at + 1]];
+				} else {
+					pc = op3;
+				}
+				break;
 
 			default: // unrecognized instruction
 				throw new IllegalArgumentException("QuadTable contained an unrecognized operation");
 			}
+
+			if (trace != null && QuadOptimizer.writesOp3(code[at])) {
+				if (types[op3] == SymbolTable.REAL_TYPE) {
+					trace.recordResult(reals[op3]);
+				} else {
+					trace.recordResult(ints[op3]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Executes a program that QuadVerifier has accepted. Verification guarantees that every
+	 * symbol an instruction writes already holds an integer, and that control never leaves the
+	 * program, so data types are not updated and no bound is kept on the program counter.
+	 *
+	 * @param code The decoded program to execute, which must have been verified against mem
+	 * @param mem Data memory for execution
+	 * @param in Source of values for READ instructions
+	 * @param out Destination of PRINT output
+	 */
+	private void interpretVerified(int[] code, DataMemory mem, IntInput in, PrintStream out) {
+		int[] ints = mem.GetIntegers();
+		double[] reals = mem.GetFloats();
+		char[] types = mem.GetDataTypes();
+		int[][] intArrays = mem.GetIntegerArrays();
+		double[][] realArrays = mem.GetFloatArrays();
+		CallStack calls = new CallStack();
+		int pc = 0;
+		int at, op3;
+
+		while (true) {
+			at = pc * QUAD_WIDTH;
+			op3 = code[at + 3];
+			pc++;
+
+			switch (code[at]) {
+			case OP_STOP:
+				return;
+			case OP_DIV:
+				ints[op3] = ints[code[at + 1]] / ints[code[at + 2]];
+				break;
+			case OP_MUL:
+				ints[op3] = ints[code[at + 1]] * ints[code[at + 2]];
+				break;
+			case OP_SUB:
+				ints[op3] = ints[code[at + 1]] - ints[code[at + 2]];
+				break;
+			case OP_ADD:
+				ints[op3] = ints[code[at + 1]] + ints[code[at + 2]];
+				break;
+			case OP_MOV:
+				ints[op3] = ints[code[at + 1]];
+				break;
+			case OP_PRINT:
+				if (types[op3] == SymbolTable.INTEGER_TYPE) {
+					out.println(ints[op3]);
+				} else if (types[op3] == SymbolTable.REAL_TYPE) {
+					out.println(reals[op3]);
+				} else {
+					out.println(mem.GetStrings()[op3]);
+				}
+				break;
+			case OP_READ:
+				ints[op3] = in.NextInt();
+				break;
+			case OP_JMP:
+				pc = op3;
+				break;
+			case OP_JZ:
+				if (ints[code[at + 1]] == 0) { pc = op3; }
+				break;
+			case OP_JP:
+				if (ints[code[at + 1]] > 0) { pc = op3; }
+				break;
+			case OP_JN:
+				if (ints[code[at + 1]] < 0) { pc = op3; }
+				break;
+			case OP_JNZ:
+				if (ints[code[at + 1]] != 0) { pc = op3; }
+				break;
+			case OP_JNP:
+				if (ints[code[at + 1]] <= 0) { pc = op3; }
+				break;
+			case OP_JNN:
+				if (ints[code[at + 1]] >= 0) { pc = op3; }
+				break;
+			case OP_JINDR:
+				pc = ints[op3];
+				break;
+			case OP_CJZ:
+				if (ints[code[at + 1]] - ints[code[at + 2]] == 0) { pc = op3; }
+				break;
+			case OP_CJP:
+				if (ints[code[at + 1]] - ints[code[at + 2]] > 0) { pc = op3; }
+				break;
+			case OP_CJN:
+				if (ints[code[at + 1]] - ints[code[at + 2]] < 0) { pc = op3; }
+				break;
+			case OP_CJNZ:
+				if (ints[code[at + 1]] - ints[code[at + 2]] != 0) { pc = op3; }
+				break;
+			case OP_CJNP:
+				if (ints[code[at + 1]] - ints[code[at + 2]] <= 0) { pc = op3; }
+				break;
+			case OP_CJNN:
+				if (ints[code[at + 1]] - ints[code[at + 2]] >= 0) { pc = op3; }
+				break;
+			case OP_LOOP:
+				ints[code[at + 1]]++;
+				if (ints[code[at + 2]] - ints[code[at + 1]] >= 0) { pc = op3; }
+				break;
+			case OP_DIVF:
+				reals[op3] = reals[code[at + 1]] / reals[code[at + 2]];
+				break;
+			case OP_MULF:
+				reals[op3] = reals[code[at + 1]] * reals[code[at + 2]];
+				break;
+			case OP_SUBF:
+				reals[op3] = reals[code[at + 1]] - reals[code[at + 2]];
+				break;
+			case OP_ADDF:
+				reals[op3] = reals[code[at + 1]] + reals[code[at + 2]];
+				break;
+			case OP_MOVF:
+				reals[op3] = reals[code[at + 1]];
+				break;
+			case OP_ITOF:
+				reals[op3] = ints[code[at + 1]];
+				break;
+			case OP_FTOI:
+				ints[op3] = (int) reals[code[at + 1]];
+				break;
+			case OP_ABS:
+				ints[op3] = Math.abs(ints[code[at + 1]]);
+				break;
+			case OP_ABSF:
+				reals[op3] = Math.abs(reals[code[at + 1]]);
+				break;
+			case OP_MIN:
+				ints[op3] = Math.min(ints[code[at + 1]], ints[code[at + 2]]);
+				break;
+			case OP_MINF:
+				reals[op3] = Math.min(reals[code[at + 1]], reals[code[at + 2]]);
+				break;
+			case OP_MAX:
+				ints[op3] = Math.max(ints[code[at + 1]], ints[code[at + 2]]);
+				break;
+			case OP_MAXF:
+				reals[op3] = Math.max(reals[code[at + 1]], reals[code[at + 2]]);
+				break;
+			case OP_MOD:
+				ints[op3] = ints[code[at + 1]] % ints[code[at + 2]];
+				break;
+			case OP_POW:
+				ints[op3] = (int) Math.pow(ints[code[at + 1]], ints[code[at + 2]]);
+				break;
+			case OP_POWF:
+				reals[op3] = Math.pow(reals[code[at + 1]], reals[code[at + 2]]);
+				break;
+			case OP_SQRT:
+				reals[op3] = Math.sqrt(reals[code[at + 1]]);
+				break;
+			case OP_LDA:
+				ints[op3] = intArrays[code[at + 1]][ints[code[at + 2]]];
+				break;
+			case OP_LDAF:
+				reals[op3] = realArrays[code[at + 1]][ints[code[at + 2]]];
+				break;
+			case OP_STA:
+				intArrays[op3][ints[code[at + 2]]] = ints[code[at + 1]];
+				break;
+			case OP_STAF:
+				realArrays[op3][ints[code[at + 2]]] = reals[code[at + 1]];
+				break;
+			case OP_FILL:
+				Arrays.fill(intArrays[op3], ints[code[at + 1]]);
+				break;
+			case OP_FILLF:
+				Arrays.fill(realArrays[op3], reals[code[at + 1]]);
+				break;
+			case OP_COPY:
+				copyArray(intArrays[code[at + 1]], intArrays[op3]);
+				break;
+			case OP_COPYF:
+				copyArray(realArrays[code[at + 1]], realArrays[op3]);
+				break;
+			case OP_SUM:
+				ints[op3] = sumArray(intArrays[code[at + 1]]);
+				break;
+			case OP_SUMF:
+				reals[op3] = sumArray(realArrays[code[at + 1]]);
+				break;
+			case OP_CALL:
+				calls.push(pc, ints, reals, code[at + 1], code[at + 2]);
+				pc = op3;
+				break;
+			case OP_RET:
+				pc = calls.pop(ints, reals);
+				break;
+			case OP_JTAB:
+				if (ints[code[at + 1]] >= 0 && ints[code[at + 1]] < code[at + 2]) {
+					pc += ints[code[at + 1]];
+				} else {
+					pc = op3;
+				}
+				break;
+			default: // OP_CMPF, the only opcode left after verification
+				ints[op3] = compareReals(reals[code[at + 1]], reals[code[at + 2]]);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Compares two reals for CMPF. Unordered values (NaN) compare as less, matching the JVM's
+	 * dcmpl instruction.
+	 *
+	 * @param a Left operand
+	 * @param b Right operand
+	 * @return 1 if a > b, 0 if a == b, otherwise -1
+	 */
+	static int compareReals(double a, double b) {
+		return (a > b) ? 1 : (a == b) ? 0 : -1;
+	}
+
+	/**
+	 * Copies every element of one array into another for COPY. The parser only copies between
+	 * arrays of the same length; a shorter destination throws IndexOutOfBoundsException.
+	 *
+	 * @param from Array to copy
+	 * @param to Array to overwrite
+	 */
+	static void copyArray(int[] from, int[] to) { System.arraycopy(from, 0, to, 0, from.length); }
+
+	/**
+	 * Copies every element of one array into another for COPYF.
+	 *
+	 * @param from Array to copy
+	 * @param to Array to overwrite
+	 */
+	static void copyArray(double[] from, double[] to) {
+		System.arraycopy(from, 0, to, 0, from.length);
+	}
+
+	/**
+	 * Adds up the elements of an array for SUM. The sum wraps around on overflow, as ADD does.
+	 *
+	 * @param elements Array to sum
+	 * @return The sum of every element
+	 */
+	static int sumArray(int[] elements) {
+		int sum = 0;
+		for (int element : elements) {
+			sum += element;
+		}
+		return sum;
+	}
+
+	/**
+	 * Adds up the elements of an array for SUMF, in order from the first.
+	 *
+	 * @param elements Array to sum
+	 * @return The sum of every element
+	 */
+	static double sumArray(double[] elements) {
+		double sum = 0;
+		for (double element : elements) {
+			sum += element;
+		}
+		return sum;
+	}
+
+	/**
+	 * Executes a program by translating it to bytecode. The translation is kept, and reused for
+	 * as long as the same program is run against memory of the same shape.
+	 *
+	 * @param code The decoded program to execute
+	 * @param mem Data memory for execution
+	 * @param in Source of values for READ instructions
+	 * @param out Destination of PRINT output
+	 * @return true if the program was executed, false if it could not be translated
+	 */
+	private boolean runCompiled(int[] code, DataMemory mem, IntInput in, PrintStream out) {
+		// read the cache once, since other threads may replace it at any time
+		BytecodeCompiler.CompiledProgram program = compiled;
+		if (program == null || !program.matches(code, mem)) {
+			program = BytecodeCompiler.compile(code, mem);
+			if (program == null) {
+				return false;
+			}
+			compiled = program;
+		}
+
+		program.run(mem, in, out);
+		return true;
+	}
+
+	/**
+	 * Flattens a QuadTable into one array holding QUAD_WIDTH ints per quad. A row of -1s is left
+	 * after the last quad, so running off the end of the program still reaches an unrecognized
+	 * operation, just as it would in the QuadTable.
+	 *
+	 * @param q The QuadTable to decode
+	 * @return opCode, op1, op2, op3 of every quad in q, stored consecutively
+	 */
+	static int[] decode(QuadTable q) {
+		int count = q.Count();
+		int[] code = new int[(count + 1) * QUAD_WIDTH];
+
+		for (int i = 0; i < count; i++) {
+			System.arraycopy(q.GetQuad(i), 0, code, i * QUAD_WIDTH, QUAD_WIDTH);
 		}
+		Arrays.fill(code, count * QUAD_WIDTH, code.length, -1);
 
-		// clean up Scanner object
-		inputScanner.close();
+		return code;
 	}
 
 	/**
@@ -216,53 +1224,104 @@ public class Interpreter {
 	public int opcodeFor(String op) { return opTable.LookupName(op); }
 
 	/**
-	 * Adds QuadTable instruction names and their corresponding codes to the opcode table.
+	 * Builds the table of QuadTable instruction names and their corresponding codes. The table is
+	 * never modified afterwards, so it is shared by every Interpreter.
+	 *
+	 * @return The opcode table
 	 */
-	private void initializeOpTable() {
-		opTable = new ReserveTable(20);
+	private static ReserveTable initializeOpTable() {
+		ReserveTable opTable = new ReserveTable(OP_TABLE_SIZE);
+
+		opTable.Add("STOP", OP_STOP);
+
+		opTable.Add("DIV", OP_DIV);
+		opTable.Add("MUL", OP_MUL);
+		opTable.Add("SUB", OP_SUB);
+		opTable.Add("ADD", OP_ADD);
+
+		opTable.Add("MOV", OP_MOV);
+
+		opTable.Add("PRINT", OP_PRINT);
+		opTable.Add("READ", OP_READ);
+
+		opTable.Add("JMP", OP_JMP);
+		opTable.Add("JZ", OP_JZ);
+		opTable.Add("JP", OP_JP);
+		opTable.Add("JN", OP_JN);
+		opTable.Add("JNZ", OP_JNZ);
+		opTable.Add("JNP", OP_JNP);
+		opTable.Add("JNN", OP_JNN);
+		opTable.Add("JINDR", OP_JINDR);
 
-		opTable.Add("STOP", 0);
+		opTable.Add("CJZ", OP_CJZ);
+		opTable.Add("CJP", OP_CJP);
+		opTable.Add("CJN", OP_CJN);
+		opTable.Add("CJNZ", OP_CJNZ);
+		opTable.Add("CJNP", OP_CJNP);
+		opTable.Add("CJNN", OP_CJNN);
+		opTable.Add("LOOP", OP_LOOP);
 
-		opTable.Add("DIV", 1);
-		opTable.Add("MUL", 2);
-		opTable.Add("SUB", 3);
-		opTable.Add("ADD", 4);
+		opTable.Add("DIVF", OP_DIVF);
+		opTable.Add("MULF", OP_MULF);
+		opTable.Add("SUBF", OP_SUBF);
+		opTable.Add("ADDF", OP_ADDF);
+		opTable.Add("MOVF", OP_MOVF);
+		opTable.Add("ITOF", OP_ITOF);
+		opTable.Add("FTOI", OP_FTOI);
+		opTable.Add("CMPF", OP_CMPF);
 
-		opTable.Add("MOV", 5);
+		opTable.Add("ABS", OP_ABS);
+		opTable.Add("ABSF", OP_ABSF);
+		opTable.Add("MIN", OP_MIN);
+		opTable.Add("MINF", OP_MINF);
+		opTable.Add("MAX", OP_MAX);
+		opTable.Add("MAXF", OP_MAXF);
+		opTable.Add("MOD", OP_MOD);
+		opTable.Add("POW", OP_POW);
+		opTable.Add("POWF", OP_POWF);
+		opTable.Add("SQRT", OP_SQRT);
 
-		opTable.Add("PRINT", 6);
-		opTable.Add("READ", 7);
+		opTable.Add("LDA", OP_LDA);
+		opTable.Add("LDAF", OP_LDAF);
+		opTable.Add("STA", OP_STA);
+		opTable.Add("STAF", OP_STAF);
+		opTable.Add("FILL", OP_FILL);
+		opTable.Add("FILLF", OP_FILLF);
+		opTable.Add("COPY", OP_COPY);
+		opTable.Add("COPYF", OP_COPYF);
+		opTable.Add("SUM", OP_SUM);
+		opTable.Add("SUMF", OP_SUMF);
 
-		opTable.Add("JMP", 8);
-		opTable.Add("JZ", 9);
-		opTable.Add("JP", 10);
-		opTable.Add("JN", 11);
-		opTable.Add("JNZ", 12);
-		opTable.Add("JNP", 13);
-		opTable.Add("JNN", 14);
-		opTable.Add("JINDR", 15);
+		opTable.Add("CALL", OP_CALL);
+		opTable.Add("RET", OP_RET);
+		opTable.Add("JTAB", OP_JTAB);
+
+		return opTable;
 	}
 
 	/**
-	 * Formats the current state of the interpreter as a nice trace string
-	 *
-	 * @param pc Program counter
-	 * @param opcode opCode of the current operation
-	 * @param op1 First arg of the current operation
-	 * @param op2 Second arg of the current operation
-	 * @param op3 Third arg of the current operation
-	 *
-	 * @return Nicely formatted string representing the current operation being interpreted
+	 * @param opcode opCode of an operation
+	 * @return Name of the operation, or "" if opcode is not a valid operation
 	 */
-	private String makeTraceString(int pc, int opcode, int op1, int op2, int op3) {
-		String result = "";
-		result = "PC = " + String.format("%04d", pc) + ": " +
-		         StringUtils.PadToLength(opTable.LookupCode(opcode), 6) +
-		         String.format("%02d", op1) + ", " + String.format("%02d", op2) + ", " +
-		         String.format("%02d", op3);
-		return result;
+	static String mnemonicFor(int opcode) { return opTable.LookupCode(opcode); }
+
+	// Opens the trace selected by setBinaryTrace, filtered by the trace filter
+	private Trace openTrace(String filename, int[] code) {
+		Trace trace;
+		if (traceCapacity > 0) {
+			trace = new BinaryTrace(filename, traceCapacity, traceFlags);
+		} else {
+			trace = new TraceWriter(filename);
+		}
+		return new FilteredTrace(trace, this, code);
 	}
 
-	private ReserveTable opTable;
-	private int programCounter;
+	private static final ReserveTable opTable = initializeOpTable();
+	private volatile Engine engine;           // strategy used by InterpretQuads
+	private volatile int traceCapacity;       // quads held by a binary trace, or 0 for text traces
+	private volatile int traceFlags;          // flags of a binary trace
+	private volatile TraceFilter traceFilter; // quads traced, or null for every quad
+	private volatile Profiler profiler;       // counts executions, or null if not profiling
+	// last program translated to bytecode
+	private volatile BytecodeCompiler.CompiledProgram compiled;
 }
@@ -1,16 +1,97 @@
 package com.bgould.compiler;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+
 import com.bgould.compiler.ADT.Syntactic;
+import com.bgould.compiler.utils.BufferedPrintStream;
+import com.bgould.compiler.utils.IntInput;
 
+/**
+ * Usage: Main <source file> [engine] [--emit <class directory or .jar file>]
+ *            [--checkpoint <checkpoint file>] [--trace <quads>] [--profile]
+ *            [--precompute <quads>]
+ *        Main --resume <checkpoint file>
+ *
+ * With --emit, the program is only compiled, and written out as a standalone class or runnable jar
+ * instead of being run. With --checkpoint, the program saves a checkpoint to the given file at
+ * regular intervals while it runs, and --resume carries on from the last one saved. With --trace,
+ * the last <quads> quads executed are kept in a binary trace file, which BinaryTrace decodes.
+ * With --profile, the executions of every quad are counted, and written out as a report of the
+ * hottest lines and loops and as collapsed stacks for flame graph tools.
+ *
+ * With --precompute, the part of the program before its first READ is run while compiling, for
+ * up to <quads> quads, and replaced by its results. It is ignored with --checkpoint, --trace and
+ * --profile, which need the program's quads left as they are.
+ */
 public class Main {
 	public static void main(String[] args) {
+		if (args[0].equals("--resume") && args.length > 1) {
+			resume(args[1]);
+			return;
+		}
+
 		String filePath = args[0];
+		String emitPath = null;
 		System.out.println("Code Generation SP2024, by Brendan Gould");
 		System.out.println("Parsing " + filePath);
 		boolean traceon = true; // false;
 		Syntactic parser = new Syntactic(filePath, traceon);
-		parser.parse();
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("--emit") && i + 1 < args.length) {
+				emitPath = args[++i];
+			} else if (args[i].equals("--checkpoint") && i + 1 < args.length) {
+				parser.setCheckpointing(args[++i]);
+			} else if (args[i].equals("--trace") && i + 1 < args.length) {
+				parser.setTraceRing(Integer.parseInt(args[++i]));
+			} else if (args[i].equals("--profile")) {
+				parser.setProfiling(true);
+			} else if (args[i].equals("--precompute") && i + 1 < args.length) {
+				parser.setPrecomputeBudget(Integer.parseInt(args[++i]));
+			} else {
+				parser.setEngine(Interpreter.Engine.valueOf(args[i].toUpperCase()));
+			}
+		}
+
+		if (emitPath == null) {
+			parser.parse();
+		} else if (parser.compile() && parser.emit(emitPath)) {
+			System.out.println("Wrote " + emitPath);
+		} else {
+			System.out.println("Errors, unable to write program.");
+		}
+
+		System.out.println("Done.");
+	}
+
+	/**
+	 * Resumes a program from a checkpoint file, and runs it to completion. Checkpoints continue to
+	 * be saved to the same file.
+	 *
+	 * @param checkpointPath The checkpoint file to resume from
+	 */
+	private static void resume(String checkpointPath) {
+		Checkpoint checkpoint;
+		try {
+			checkpoint = Checkpoint.load(Paths.get(checkpointPath));
+		} catch (IOException e) {
+			System.out.println("Unable to read checkpoint " + checkpointPath + ": " +
+			                   e.getMessage());
+			return;
+		}
+		System.out.println("Resuming " + checkpointPath + " at quad " +
+		                   checkpoint.getProgramCounter() + ", after " +
+		                   checkpoint.getExecutedCount() + " quads");
 
+		PrintStream out = new BufferedPrintStream(System.out);
+		ExecutionContext context = checkpoint.resume(out);
+		context.setCheckpointing(Paths.get(checkpointPath),
+		                         ExecutionContext.DEFAULT_CHECKPOINT_INTERVAL);
+		ExecutionContext.Status status = context.runToCompletion(IntInput.FromStream(System.in));
+		if (status == ExecutionContext.Status.FAILED) {
+			throw context.getError();
+		}
 		System.out.println("Done.");
 	}
 }
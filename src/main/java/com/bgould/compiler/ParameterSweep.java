@@ -0,0 +1,141 @@
+package com.bgould.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.bgould.compiler.ADT.DataMemory;
+import com.bgould.compiler.ADT.QuadTable;
+import com.bgould.compiler.ADT.SymbolTable;
+import com.bgould.compiler.utils.BufferedPrintStream;
+import com.bgould.compiler.utils.IntInput;
+
+/**
+ * Runs one compiled program many times, each time with a different set of input values.
+ *
+ * The program is decoded and verified once, and its initial data memory is captured once. The
+ * decoded program is then shared read-only by every worker thread, and each worker keeps a single
+ * data memory of its own, which is reset from the captured one before every run. Runs therefore
+ * share nothing mutable, need no parsing, and allocate little beyond their output.
+ */
+public class ParameterSweep {
+	// Number of runs a worker claims at once, so workers rarely contend for the next index
+	private static final int BATCH_SIZE = 64;
+
+	/**
+	 * The outcome of running the program with one set of inputs.
+	 */
+	public static class Outcome {
+		private Outcome(String output, RuntimeException error) {
+			this.output = output;
+			this.error = error;
+		}
+
+		public String getOutput() { return output; }
+		public RuntimeException getError() { return error; }
+		public boolean succeeded() { return error == null; }
+
+		private final String output;          // everything the program printed
+		private final RuntimeException error; // exception that stopped the program, or null
+	}
+
+	/**
+	 * Prepares a program for sweeping. Neither table is modified.
+	 *
+	 * @param q QuadTable containing instruction memory of the program
+	 * @param s SymbolTable containing the initial data memory of every run
+	 * @param engine Execution strategy used for every run
+	 */
+	public ParameterSweep(QuadTable q, SymbolTable s, Interpreter.Engine engine) {
+		code = Interpreter.decode(q);
+		initial = new DataMemory(s);
+		verified = QuadVerifier.check(code, initial) == null;
+		interp = new Interpreter();
+		interp.setEngine(engine);
+	}
+
+	/**
+	 * Makes runs whose inputs match a run recorded in a cache replay its results instead of
+	 * executing, and record the results of the runs that do execute.
+	 *
+	 * @param cache The cache to use, or null to execute every run
+	 */
+	public void setResultCache(ResultCache cache) { this.cache = cache; }
+
+	/**
+	 * Runs the program once for every set of inputs, spread over the given number of threads.
+	 *
+	 * @param inputs For each run, the values its READ instructions consume, in order
+	 * @param threads Number of worker threads to run on
+	 * @return The outcome of every run, in the same order as inputs
+	 */
+	public List<Outcome> run(List<int[]> inputs, int threads) {
+		Outcome[] outcomes = new Outcome[inputs.size()];
+		AtomicInteger next = new AtomicInteger();
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> workers = new ArrayList<>(threads);
+			for (int i = 0; i < threads; i++) {
+				workers.add(pool.submit(() -> work(inputs, outcomes, next)));
+			}
+			for (Future<?> worker : workers) {
+				worker.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Sweep interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+
+		return List.of(outcomes);
+	}
+
+	/**
+	 * Claims runs in small batches until none are left, reusing one data memory and one output
+	 * buffer for all of them.
+	 */
+	private void work(List<int[]> inputs, Outcome[] outcomes, AtomicInteger next) {
+		DataMemory mem = new DataMemory(initial);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrintStream out = new BufferedPrintStream(output);
+
+		int start;
+		while ((start = next.getAndAdd(BATCH_SIZE)) < inputs.size()) {
+			int end = Math.min(start + BATCH_SIZE, inputs.size());
+			for (int i = start; i < end; i++) {
+				mem.CopyFrom(initial);
+				output.reset();
+
+				RuntimeException error = null;
+				try {
+					if (cache != null) {
+						cache.run(interp, code, mem, verified, inputs.get(i), out);
+					} else {
+						interp.execute(code, mem, verified, IntInput.FromArray(inputs.get(i)), out);
+					}
+				} catch (RuntimeException e) {
+					error = e;
+				}
+				out.flush();
+				outcomes[i] = new Outcome(output.toString(StandardCharsets.UTF_8), error);
+			}
+		}
+	}
+
+	private final int[] code;           // decoded program, shared by every worker
+	private final DataMemory initial;   // data memory every run starts from, never modified
+	private final boolean verified;     // true if code passed QuadVerifier against initial
+	private final Interpreter interp;   // shared by every worker
+	private volatile ResultCache cache; // results of earlier runs, or null to execute every run
+}
@@ -0,0 +1,302 @@
+package com.bgould.compiler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.bgould.compiler.ADT.QuadTable;
+import com.bgould.compiler.utils.StringUtils;
+
+/**
+ * Counts how often each quad of a program executes, to show where the program spends its time.
+ *
+ * A Profiler is given every executed quad as a Trace. It counts the executions of each quad, and
+ * for each quad how often control went somewhere other than the next quad, which for a
+ * conditional jump is how often it was taken. Counts per opcode, per source line and per loop are
+ * derived from these when a report is made, using the line QuadTable recorded for each quad.
+ *
+ * Loops are found from backward jumps: a jump at quad j to quad t <= j closes a loop over quads t
+ * to j, and the loop's iterations are the times that jump was taken.
+ *
+ * Counts accumulate over every run of the program the Profiler is given to. A Profiler must only
+ * be used by one run at a time.
+ */
+public class Profiler extends Trace {
+	// Number of lines and loops listed in each section of the report
+	private static final int REPORT_LIMIT = 20;
+
+	/**
+	 * Creates a profiler for a program.
+	 *
+	 * @param q QuadTable holding the program, and the source line of each quad
+	 * @param programName Name the program is reported under
+	 */
+	public Profiler(QuadTable q, String programName) {
+		this.code = Interpreter.decode(q);
+		this.programName = programName;
+		int count = code.length / Interpreter.QUAD_WIDTH;
+		lines = new int[count];
+		for (int pc = 0; pc < count; pc++) {
+			lines[pc] = q.GetLine(pc);
+		}
+		executions = new long[count];
+		taken = new long[count];
+		loops = findLoops();
+	}
+
+	@Override
+	public void record(int pc, int opcode, int op1, int op2, int op3) {
+		if (previous >= 0 && pc != previous + 1) {
+			taken[previous]++;
+		}
+		if (pc >= 0 && pc < executions.length) {
+			executions[pc]++;
+			previous = pc;
+		} else {
+			previous = -1;
+		}
+	}
+
+	/**
+	 * Ends a run, so the next run does not count a jump from the quad this one stopped at.
+	 */
+	@Override
+	public void close() { previous = -1; }
+
+	/**
+	 * @param pc Index of a quad
+	 * @return Number of times the quad was executed
+	 */
+	public long getExecutions(int pc) { return executions[pc]; }
+
+	/**
+	 * @param pc Index of a quad
+	 * @return Number of times control did not fall through from the quad to the next one
+	 */
+	public long getTaken(int pc) { return taken[pc]; }
+
+	/**
+	 * @return Number of quads executed in total
+	 */
+	public long getTotalExecutions() {
+		long total = 0;
+		for (long n : executions) {
+			total += n;
+		}
+		return total;
+	}
+
+	/**
+	 * @return Number of executions of each opcode, indexed by opcode
+	 */
+	public long[] getOpcodeExecutions() {
+		long[] counts = new long[Interpreter.OP_TABLE_SIZE];
+		for (int pc = 0; pc < executions.length; pc++) {
+			if (code[pc * Interpreter.QUAD_WIDTH] >= 0) {
+				counts[code[pc * Interpreter.QUAD_WIDTH]] += executions[pc];
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * @return Number of quads executed for each source line, indexed by line number. Quads with
+	 *         no known line are counted under line 0.
+	 */
+	public long[] getLineExecutions() {
+		int maxLine = 0;
+		for (int line : lines) {
+			maxLine = Math.max(maxLine, line);
+		}
+		long[] counts = new long[maxLine + 1];
+		for (int pc = 0; pc < executions.length; pc++) {
+			counts[lines[pc]] += executions[pc];
+		}
+		return counts;
+	}
+
+	/**
+	 * Builds a report of the hottest lines and loops, executions per opcode, how often each
+	 * conditional jump was taken, and executions of every quad that ran.
+	 *
+	 * @return The report, as printable text
+	 */
+	public String report() {
+		long total = getTotalExecutions();
+		StringBuilder report = new StringBuilder();
+		report.append("Profile of ").append(programName).append(": ").append(total)
+			.append(" quads executed\n");
+
+		report.append("\nHot lines\n");
+		report.append(String.format("  %6s  %14s  %7s%n", "Line", "Quads executed", "Share"));
+		long[] lineCounts = getLineExecutions();
+		List<Integer> hotLines = new ArrayList<>();
+		for (int line = 0; line < lineCounts.length; line++) {
+			if (lineCounts[line] > 0) {
+				hotLines.add(line);
+			}
+		}
+		hotLines.sort(Comparator.comparingLong((Integer line) -> -lineCounts[line]));
+		for (int line : hotLines.subList(0, Math.min(REPORT_LIMIT, hotLines.size()))) {
+			report.append(String.format("  %6s  %14d  %6.1f%%%n", lineName(line),
+			                            lineCounts[line], share(lineCounts[line], total)));
+		}
+
+		report.append("\nHot loops\n");
+		report.append(String.format("  %-11s  %-11s  %12s  %14s  %7s%n", "Lines", "Quads",
+		                            "Iterations", "Quads executed", "Share"));
+		List<int[]> hotLoops = new ArrayList<>(loops);
+		hotLoops.sort(Comparator.comparingLong((int[] loop) -> -loopExecutions(loop)));
+		for (int[] loop : hotLoops.subList(0, Math.min(REPORT_LIMIT, hotLoops.size()))) {
+			long executed = loopExecutions(loop);
+			if (executed == 0) {
+				break;
+			}
+			report.append(String.format("  %-11s  %-11s  %12d  %14d  %6.1f%%%n", loopLines(loop),
+			                            loop[0] + "-" + loop[1], taken[loop[1]], executed,
+			                            share(executed, total)));
+		}
+
+		report.append("\nOpcodes\n");
+		report.append(String.format("  %-6s  %14s  %7s%n", "Opcode", "Executed", "Share"));
+		long[] opcodeCounts = getOpcodeExecutions();
+		List<Integer> hotOpcodes = new ArrayList<>();
+		for (int opcode = 0; opcode < opcodeCounts.length; opcode++) {
+			if (opcodeCounts[opcode] > 0) {
+				hotOpcodes.add(opcode);
+			}
+		}
+		hotOpcodes.sort(Comparator.comparingLong((Integer opcode) -> -opcodeCounts[opcode]));
+		for (int opcode : hotOpcodes) {
+			report.append(String.format("  %-6s  %14d  %6.1f%%%n",
+			                            Interpreter.mnemonicFor(opcode), opcodeCounts[opcode],
+			                            share(opcodeCounts[opcode], total)));
+		}
+
+		report.append("\nConditional jumps\n");
+		report.append(String.format("  %4s  %6s  %-6s  %14s  %14s  %7s%n", "Quad", "Line",
+		                            "Opcode", "Executed", "Taken", "Taken%"));
+		for (int pc = 0; pc < executions.length; pc++) {
+			int opcode = code[pc * Interpreter.QUAD_WIDTH];
+			if (QuadOptimizer.isJump(opcode) && opcode != Interpreter.OP_JMP) {
+				report.append(String.format("  %04d  %6s  %-6s  %14d  %14d  %6.1f%%%n", pc,
+				                            lineName(lines[pc]), Interpreter.mnemonicFor(opcode),
+				                            executions[pc], taken[pc],
+				                            share(taken[pc], executions[pc])));
+			}
+		}
+
+		report.append("\nQuads\n");
+		report.append(String.format("  %4s  %6s  %-6s  %14s%n", "Quad", "Line", "Opcode",
+		                            "Executed"));
+		for (int pc = 0; pc < executions.length; pc++) {
+			if (executions[pc] > 0) {
+				String opcode = Interpreter.mnemonicFor(code[pc * Interpreter.QUAD_WIDTH]);
+				report.append(String.format("  %04d  %6s  %-6s  %14d%n", pc, lineName(lines[pc]),
+				                            opcode, executions[pc]));
+			}
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Builds the profile in the collapsed stack format read by flame graph tools. Each line is a
+	 * stack of frames separated by semicolons, then a space and the number of quads executed in
+	 * it. The frames are the program, the loops around a quad from the outermost in, the quad's
+	 * source line, and its opcode.
+	 *
+	 * @return The collapsed stacks, one per line
+	 */
+	public String collapsedStacks() {
+		Map<String, Long> stacks = new LinkedHashMap<>();
+		for (int pc = 0; pc < executions.length; pc++) {
+			if (executions[pc] == 0) {
+				continue;
+			}
+
+			StringBuilder stack = new StringBuilder(programName);
+			for (int[] loop : loops) { // outermost first
+				if (pc >= loop[0] && pc <= loop[1]) {
+					stack.append(";loop_L").append(loopLines(loop).replace("-", "-L"));
+				}
+			}
+			stack.append(";L").append(lineName(lines[pc])).append(';')
+				.append(Interpreter.mnemonicFor(code[pc * Interpreter.QUAD_WIDTH]));
+			stacks.merge(stack.toString(), executions[pc], Long::sum);
+		}
+
+		StringBuilder result = new StringBuilder();
+		for (Map.Entry<String, Long> entry : stacks.entrySet()) {
+			result.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Prints the report to a file
+	 *
+	 * @param filename The file to print to
+	 */
+	public void printReport(String filename) { StringUtils.PrintToFile(filename, report()); }
+
+	/**
+	 * Prints the collapsed stacks to a file
+	 *
+	 * @param filename The file to print to
+	 */
+	public void printCollapsedStacks(String filename) {
+		StringUtils.PrintToFile(filename, collapsedStacks());
+	}
+
+	// Finds the loop closed by every backward jump, as {first quad, jump quad}, outermost first
+	private List<int[]> findLoops() {
+		List<int[]> found = new ArrayList<>();
+		for (int pc = 0; pc < executions.length; pc++) {
+			int at = pc * Interpreter.QUAD_WIDTH;
+			if (QuadOptimizer.isJump(code[at]) && code[at + 3] >= 0 && code[at + 3] <= pc) {
+				found.add(new int[] {code[at + 3], pc});
+			}
+		}
+		// a loop nested in another is shorter, and starts no earlier
+		found.sort(Comparator.comparingInt((int[] loop) -> loop[0] - loop[1])
+			.thenComparingInt(loop -> loop[0]));
+		return found;
+	}
+
+	// Names the lines a loop's quads come from, as first-last
+	private String loopLines(int[] loop) {
+		int first = Integer.MAX_VALUE;
+		int last = 0;
+		for (int pc = loop[0]; pc <= loop[1]; pc++) {
+			if (lines[pc] > 0) {
+				first = Math.min(first, lines[pc]);
+				last = Math.max(last, lines[pc]);
+			}
+		}
+		return (last > 0) ? first + "-" + last : "?";
+	}
+
+	private long loopExecutions(int[] loop) {
+		long executed = 0;
+		for (int pc = loop[0]; pc <= loop[1]; pc++) {
+			executed += executions[pc];
+		}
+		return executed;
+	}
+
+	private static String lineName(int line) { return (line > 0) ? Integer.toString(line) : "?"; }
+
+	private static double share(long part, long whole) {
+		return (whole > 0) ? 100.0 * part / whole : 0;
+	}
+
+	private final int[] code;          // the decoded program
+	private final String programName;  // name the program is reported under
+	private final int[] lines;         // source line of each quad, or 0 if unknown
+	private final long[] executions;   // executions of each quad
+	private final long[] taken;        // times control did not fall through from each quad
+	private final List<int[]> loops;   // {first quad, jump quad} of each loop, outermost first
+	private int previous = -1;         // quad recorded last in this run, or -1
+}
@@ -0,0 +1,267 @@
+package com.bgould.compiler;
+
+import com.bgould.compiler.ADT.QuadTable;
+import com.bgould.compiler.ADT.SymbolTable;
+import com.bgould.compiler.utils.Constants;
+
+/**
+ * Rewrites generated quads into equivalent programs that execute fewer instructions.
+ */
+public class QuadOptimizer {
+	/**
+	 * Replaces common instruction sequences with fused superinstructions:
+	 *
+	 * SUB a, b, t; Jcc t, _, L      becomes  CJcc a, b, L
+	 * ADD c, 1, c; SUB e, c, t; JNN t, _, L  becomes  LOOP c, e, L
+	 *
+	 * A sequence is only fused if no jump lands in the middle of it, and its temp t is read by
+	 * nothing but the jump. The temp is then never written, so the program runs fewer
+	 * instructions and fewer stores. Jump targets are renumbered to match the shorter program.
+	 *
+	 * Programs containing JINDR are returned unchanged, since their jump targets are computed at
+	 * run time and cannot be renumbered.
+	 *
+	 * @param q The program to optimize
+	 * @param s SymbolTable holding the program's data memory
+	 * @return A new QuadTable holding the optimized program, or q if nothing could be fused
+	 */
+	public static QuadTable fuseSuperinstructions(QuadTable q, SymbolTable s) {
+		int count = q.Count();
+		boolean[] isTarget = new boolean[count + 1];
+		int[] reads = new int[s.Count()];
+
+		for (int i = 0; i < count; i++) {
+			int[] quad = q.GetQuad(i);
+			if (quad[0] == Interpreter.OP_JINDR) {
+				return q;
+			}
+			if (hasTarget(quad[0]) && quad[3] >= 0 && quad[3] <= count) {
+				isTarget[quad[3]] = true;
+			}
+			countReads(quad, reads);
+		}
+
+		// Choose the sequences to fuse, and where every quad ends up
+		int[] fusedOp = new int[count]; // opcode replacing the sequence starting here, or -1
+		int[] length = new int[count];  // number of quads in the sequence starting here
+		int[] newIndex = new int[count + 1];
+		int next = 0;
+		for (int i = 0; i < count; i += length[i]) {
+			fusedOp[i] = -1;
+			length[i] = 1;
+			if (isLoop(q, s, i, count, isTarget, reads)) {
+				fusedOp[i] = Interpreter.OP_LOOP;
+				length[i] = 3;
+			} else if (isCompareJump(q, i, count, isTarget, reads)) {
+				fusedOp[i] = compareJumpFor(q.GetQuad(i + 1)[0]);
+				length[i] = 2;
+			}
+
+			for (int j = i; j < i + length[i]; j++) {
+				newIndex[j] = next;
+			}
+			next++;
+		}
+		newIndex[count] = next;
+
+		if (next == count) {
+			return q;
+		}
+
+		// Emit the rewritten program
+		QuadTable optimized = new QuadTable(Constants.MAX_QUAD);
+		for (int i = 0; i < count; i += length[i]) {
+			int[] quad = q.GetQuad(i);
+			if (fusedOp[i] == Interpreter.OP_LOOP) {
+				int[] test = q.GetQuad(i + 1);
+				int[] jump = q.GetQuad(i + 2);
+				optimized.AddQuad(Interpreter.OP_LOOP, quad[3], test[1], remap(jump[3], newIndex),
+				                  q.GetLine(i));
+			} else if (fusedOp[i] != -1) {
+				int[] jump = q.GetQuad(i + 1);
+				optimized.AddQuad(fusedOp[i], quad[1], quad[2], remap(jump[3], newIndex),
+				                  q.GetLine(i));
+			} else if (hasTarget(quad[0])) {
+				optimized.AddQuad(quad[0], quad[1], quad[2], remap(quad[3], newIndex),
+				                  q.GetLine(i));
+			} else {
+				optimized.AddQuad(quad[0], quad[1], quad[2], quad[3], q.GetLine(i));
+			}
+		}
+
+		return optimized;
+	}
+
+	/**
+	 * Checks whether an opcode uses op3 as a quad index to jump to.
+	 *
+	 * @param opcode The opcode to check
+	 * @return true for JMP, conditional jumps and fused jumps
+	 */
+	static boolean isJump(int opcode) {
+		return (opcode >= Interpreter.OP_JMP && opcode <= Interpreter.OP_JNN) ||
+		    (opcode >= Interpreter.OP_CJZ && opcode <= Interpreter.OP_LOOP);
+	}
+
+	/**
+	 * Checks whether an opcode uses op3 as a quad index to transfer control to. A CALL also
+	 * returns to the quad after it, and a JTAB also jumps to the JMP quads of its table that
+	 * follow it, which stay next to it however the program is renumbered.
+	 *
+	 * @param opcode The opcode to check
+	 * @return true for jumps, CALL and JTAB
+	 */
+	static boolean hasTarget(int opcode) {
+		return isJump(opcode) || opcode == Interpreter.OP_CALL || opcode == Interpreter.OP_JTAB;
+	}
+
+	/**
+	 * Checks whether an opcode is a conditional jump testing a single symbol.
+	 *
+	 * @param opcode The opcode to check
+	 * @return true for JZ, JP, JN, JNZ, JNP and JNN
+	 */
+	static boolean isConditionalJump(int opcode) {
+		return opcode >= Interpreter.OP_JZ && opcode <= Interpreter.OP_JNN;
+	}
+
+	// Counts, for every symbol, the number of operands reading it in the given quad
+	private static void countReads(int[] quad, int[] reads) {
+		switch (quad[0]) {
+		case Interpreter.OP_DIV:
+		case Interpreter.OP_MUL:
+		case Interpreter.OP_SUB:
+		case Interpreter.OP_ADD:
+		case Interpreter.OP_CJZ:
+		case Interpreter.OP_CJP:
+		case Interpreter.OP_CJN:
+		case Interpreter.OP_CJNZ:
+		case Interpreter.OP_CJNP:
+		case Interpreter.OP_CJNN:
+		case Interpreter.OP_LOOP:
+		case Interpreter.OP_DIVF:
+		case Interpreter.OP_MULF:
+		case Interpreter.OP_SUBF:
+		case Interpreter.OP_ADDF:
+		case Interpreter.OP_CMPF:
+		case Interpreter.OP_MIN:
+		case Interpreter.OP_MINF:
+		case Interpreter.OP_MAX:
+		case Interpreter.OP_MAXF:
+		case Interpreter.OP_MOD:
+		case Interpreter.OP_POW:
+		case Interpreter.OP_POWF:
+		case Interpreter.OP_LDA:
+		case Interpreter.OP_LDAF:
+		case Interpreter.OP_STA:
+		case Interpreter.OP_STAF:
+			countRead(quad[1], reads);
+			countRead(quad[2], reads);
+			break;
+		case Interpreter.OP_MOV:
+		case Interpreter.OP_MOVF:
+		case Interpreter.OP_ITOF:
+		case Interpreter.OP_FTOI:
+		case Interpreter.OP_ABS:
+		case Interpreter.OP_ABSF:
+		case Interpreter.OP_SQRT:
+		case Interpreter.OP_FILL:
+		case Interpreter.OP_FILLF:
+		case Interpreter.OP_COPY:
+		case Interpreter.OP_COPYF:
+		case Interpreter.OP_SUM:
+		case Interpreter.OP_SUMF:
+		case Interpreter.OP_JZ:
+		case Interpreter.OP_JP:
+		case Interpreter.OP_JN:
+		case Interpreter.OP_JNZ:
+		case Interpreter.OP_JNP:
+		case Interpreter.OP_JNN:
+		case Interpreter.OP_JTAB:
+			countRead(quad[1], reads);
+			break;
+		case Interpreter.OP_PRINT:
+		case Interpreter.OP_JINDR:
+			countRead(quad[3], reads);
+			break;
+		default:
+			break;
+		}
+	}
+
+	private static void countRead(int slot, int[] reads) {
+		if (slot >= 0 && slot < reads.length) {
+			reads[slot]++;
+		}
+	}
+
+	// SUB a, b, t; Jcc t, _, L
+	private static boolean isCompareJump(QuadTable q, int i, int count, boolean[] isTarget,
+	                                     int[] reads) {
+		if (i + 1 >= count || isTarget[i + 1]) {
+			return false;
+		}
+
+		int[] sub = q.GetQuad(i);
+		int[] jump = q.GetQuad(i + 1);
+		return sub[0] == Interpreter.OP_SUB && isConditionalJump(jump[0]) && jump[1] == sub[3] &&
+		    isPrivateTemp(sub[3], reads);
+	}
+
+	// ADD c, 1, c; SUB e, c, t; JNN t, _, L
+	private static boolean isLoop(QuadTable q, SymbolTable s, int i, int count,
+	                              boolean[] isTarget, int[] reads) {
+		if (i + 2 >= count || isTarget[i + 1] || isTarget[i + 2]) {
+			return false;
+		}
+
+		int[] add = q.GetQuad(i);
+		int[] sub = q.GetQuad(i + 1);
+		int[] jump = q.GetQuad(i + 2);
+		return add[0] == Interpreter.OP_ADD && add[1] == add[3] && isConstantOne(q, s, add[2]) &&
+		    sub[0] == Interpreter.OP_SUB && sub[2] == add[3] && jump[0] == Interpreter.OP_JNN &&
+		    jump[1] == sub[3] && isPrivateTemp(sub[3], reads);
+	}
+
+	// A temp read only by the jump consuming it need not be written at all
+	private static boolean isPrivateTemp(int slot, int[] reads) {
+		return slot >= 0 && slot < reads.length && reads[slot] == 1;
+	}
+
+	// Checks that a symbol holds the integer 1, and that no quad can change it
+	private static boolean isConstantOne(QuadTable q, SymbolTable s, int slot) {
+		if (s.GetDataType(slot) != SymbolTable.INTEGER_TYPE || s.GetInteger(slot) != 1) {
+			return false;
+		}
+
+		for (int i = 0; i < q.Count(); i++) {
+			int[] quad = q.GetQuad(i);
+			if (writesOp3(quad[0]) && quad[3] == slot) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether an opcode stores a result into the symbol named by op3.
+	 *
+	 * @param opcode The opcode to check
+	 * @return true for arithmetic, moves, conversions, CMPF, intrinsics, array loads and sums,
+	 *         and READ. Array stores write to an element of op3, not op3 itself.
+	 */
+	static boolean writesOp3(int opcode) {
+		return (opcode >= Interpreter.OP_DIV && opcode <= Interpreter.OP_MOV) ||
+		    opcode == Interpreter.OP_READ ||
+		    (opcode >= Interpreter.OP_DIVF && opcode <= Interpreter.OP_LDAF) ||
+		    opcode == Interpreter.OP_SUM || opcode == Interpreter.OP_SUMF;
+	}
+
+	private static int compareJumpFor(int jumpOpcode) {
+		return Interpreter.OP_CJZ + (jumpOpcode - Interpreter.OP_JZ);
+	}
+
+	private static int remap(int target, int[] newIndex) {
+		return (target >= 0 && target < newIndex.length) ? newIndex[target] : target;
+	}
+}
@@ -0,0 +1,274 @@
+package com.bgould.compiler;
+
+import com.bgould.compiler.ADT.DataMemory;
+import com.bgould.compiler.ADT.QuadTable;
+import com.bgould.compiler.ADT.SymbolTable;
+
+/**
+ * Checks a program once before it runs, so that it can then be executed without checking each
+ * instruction as it is executed.
+ *
+ * A verified program only contains recognized opcodes, and every operand names a symbol that
+ * exists. Every symbol read or written as an integer already holds an integer, and likewise for
+ * reals and arrays, so no instruction can change a symbol's data type. Array indexes are not
+ * verified, and are left to the bounds checks of the JVM. Every jump lands on a quad of the
+ * program (JINDR only through a symbol that is never written), and the last quad never falls
+ * through past the end. Every CALL saves a range of symbols that exists; a RET without a matching
+ * CALL is left to fail as it is executed. The table of every JTAB lies within the program.
+ */
+public class QuadVerifier {
+	/**
+	 * Verifies a program before it is executed.
+	 *
+	 * @param q QuadTable containing instruction memory of the program
+	 * @param s SymbolTable containing data memory of the program
+	 * @throws IllegalArgumentException if the program cannot be verified
+	 */
+	public static void verify(QuadTable q, SymbolTable s) {
+		String problem = check(Interpreter.decode(q), new DataMemory(s));
+		if (problem != null) {
+			throw new IllegalArgumentException(problem);
+		}
+	}
+
+	/**
+	 * Verifies a decoded program against the data memory it will run on.
+	 *
+	 * @param code The program to verify, as produced by Interpreter.decode
+	 * @param mem Data memory the program will run against
+	 * @return null if the program is verified, otherwise a description of the first problem found
+	 */
+	static String check(int[] code, DataMemory mem) {
+		return new QuadVerifier(code, mem).check();
+	}
+
+	private QuadVerifier(int[] code, DataMemory mem) {
+		this.code = code;
+		this.ints = mem.GetIntegers();
+		this.types = mem.GetDataTypes();
+		this.count = code.length / Interpreter.QUAD_WIDTH - 1; // decode adds one row past the end
+		this.size = mem.Size();
+	}
+
+	private String check() {
+		if (count == 0) {
+			return "Program contains no quads";
+		}
+
+		boolean[] written = new boolean[size];
+		for (int pc = 0; pc < count; pc++) {
+			int at = pc * Interpreter.QUAD_WIDTH;
+			String problem = checkQuad(code[at], code[at + 1], code[at + 2], code[at + 3]);
+			if (problem != null) {
+				return "Quad " + pc + ": " + problem;
+			}
+			if (code[at] == Interpreter.OP_JTAB && !isTable(pc, code[at + 2])) {
+				return "Quad " + pc + ": JTAB table of " + code[at + 2] +
+				       " quads runs past the end of the program";
+			}
+			if (QuadOptimizer.writesOp3(code[at])) {
+				written[code[at + 3]] = true;
+			} else if (code[at] == Interpreter.OP_LOOP) {
+				written[code[at + 1]] = true;
+			}
+		}
+
+		// Indirect jumps are only static if their target symbol can never change
+		for (int pc = 0; pc < count; pc++) {
+			int at = pc * Interpreter.QUAD_WIDTH;
+			if (code[at] == Interpreter.OP_JINDR) {
+				int slot = code[at + 3];
+				if (written[slot] || !isQuad(ints[slot])) {
+					return "Quad " + pc + ": JINDR target is not a constant quad index";
+				}
+			}
+		}
+
+		int last = code[(count - 1) * Interpreter.QUAD_WIDTH];
+		if (last != Interpreter.OP_STOP && last != Interpreter.OP_JMP &&
+		    last != Interpreter.OP_JINDR && last != Interpreter.OP_RET) {
+			return "Quad " + (count - 1) + ": execution can run past the end of the program";
+		}
+
+		return null;
+	}
+
+	/**
+	 * Checks the operands of a single quad.
+	 *
+	 * @return null if the quad is valid, otherwise a description of the problem
+	 */
+	private String checkQuad(int opcode, int op1, int op2, int op3) {
+		switch (opcode) {
+		case Interpreter.OP_STOP:
+			return null;
+		case Interpreter.OP_DIV:
+		case Interpreter.OP_MUL:
+		case Interpreter.OP_SUB:
+		case Interpreter.OP_ADD:
+			return firstProblem(integer(op1), integer(op2), integer(op3));
+		case Interpreter.OP_MOV:
+			return firstProblem(integer(op1), integer(op3));
+		case Interpreter.OP_PRINT:
+			return printable(op3);
+		case Interpreter.OP_READ:
+		case Interpreter.OP_JINDR:
+			return integer(op3);
+		case Interpreter.OP_JMP:
+			return target(op3);
+		case Interpreter.OP_JZ:
+		case Interpreter.OP_JP:
+		case Interpreter.OP_JN:
+		case Interpreter.OP_JNZ:
+		case Interpreter.OP_JNP:
+		case Interpreter.OP_JNN:
+			return firstProblem(integer(op1), target(op3));
+		case Interpreter.OP_CJZ:
+		case Interpreter.OP_CJP:
+		case Interpreter.OP_CJN:
+		case Interpreter.OP_CJNZ:
+		case Interpreter.OP_CJNP:
+		case Interpreter.OP_CJNN:
+		case Interpreter.OP_LOOP:
+			return firstProblem(integer(op1), integer(op2), target(op3));
+		case Interpreter.OP_DIVF:
+		case Interpreter.OP_MULF:
+		case Interpreter.OP_SUBF:
+		case Interpreter.OP_ADDF:
+			return firstProblem(real(op1), real(op2), real(op3));
+		case Interpreter.OP_MOVF:
+			return firstProblem(real(op1), real(op3));
+		case Interpreter.OP_ITOF:
+			return firstProblem(integer(op1), real(op3));
+		case Interpreter.OP_FTOI:
+			return firstProblem(real(op1), integer(op3));
+		case Interpreter.OP_CMPF:
+			return firstProblem(real(op1), real(op2), integer(op3));
+		case Interpreter.OP_ABS:
+			return firstProblem(integer(op1), integer(op3));
+		case Interpreter.OP_ABSF:
+		case Interpreter.OP_SQRT:
+			return firstProblem(real(op1), real(op3));
+		case Interpreter.OP_MIN:
+		case Interpreter.OP_MAX:
+		case Interpreter.OP_MOD:
+		case Interpreter.OP_POW:
+			return firstProblem(integer(op1), integer(op2), integer(op3));
+		case Interpreter.OP_MINF:
+		case Interpreter.OP_MAXF:
+		case Interpreter.OP_POWF:
+			return firstProblem(real(op1), real(op2), real(op3));
+		case Interpreter.OP_LDA:
+			return firstProblem(array(op1, SymbolTable.INTEGER_ARRAY_TYPE), integer(op2),
+			                    integer(op3));
+		case Interpreter.OP_LDAF:
+			return firstProblem(array(op1, SymbolTable.REAL_ARRAY_TYPE), integer(op2), real(op3));
+		case Interpreter.OP_STA:
+			return firstProblem(integer(op1), integer(op2),
+			                    array(op3, SymbolTable.INTEGER_ARRAY_TYPE));
+		case Interpreter.OP_STAF:
+			return firstProblem(real(op1), integer(op2), array(op3, SymbolTable.REAL_ARRAY_TYPE));
+		case Interpreter.OP_FILL:
+			return firstProblem(integer(op1), array(op3, SymbolTable.INTEGER_ARRAY_TYPE));
+		case Interpreter.OP_FILLF:
+			return firstProblem(real(op1), array(op3, SymbolTable.REAL_ARRAY_TYPE));
+		case Interpreter.OP_COPY:
+			return firstProblem(array(op1, SymbolTable.INTEGER_ARRAY_TYPE),
+			                    array(op3, SymbolTable.INTEGER_ARRAY_TYPE));
+		case Interpreter.OP_COPYF:
+			return firstProblem(array(op1, SymbolTable.REAL_ARRAY_TYPE),
+			                    array(op3, SymbolTable.REAL_ARRAY_TYPE));
+		case Interpreter.OP_SUM:
+			return firstProblem(array(op1, SymbolTable.INTEGER_ARRAY_TYPE), integer(op3));
+		case Interpreter.OP_SUMF:
+			return firstProblem(array(op1, SymbolTable.REAL_ARRAY_TYPE), real(op3));
+		case Interpreter.OP_CALL:
+			return firstProblem(frame(op1, op2), target(op3));
+		case Interpreter.OP_RET:
+			return null;
+		case Interpreter.OP_JTAB:
+			return firstProblem(integer(op1), target(op3));
+		default:
+			return "unrecognized opcode " + opcode;
+		}
+	}
+
+	private String integer(int slot) {
+		if (!inMemory(slot)) {
+			return "symbol " + slot + " does not exist";
+		}
+		if (types[slot] != SymbolTable.INTEGER_TYPE) {
+			return "symbol " + slot + " is not an integer";
+		}
+		return null;
+	}
+
+	private String real(int slot) {
+		if (!inMemory(slot)) {
+			return "symbol " + slot + " does not exist";
+		}
+		if (types[slot] != SymbolTable.REAL_TYPE) {
+			return "symbol " + slot + " is not a real";
+		}
+		return null;
+	}
+
+	private String array(int slot, char arrayType) {
+		if (!inMemory(slot)) {
+			return "symbol " + slot + " does not exist";
+		}
+		if (types[slot] != arrayType) {
+			return "symbol " + slot + " is not an array of the right type";
+		}
+		return null;
+	}
+
+	private String frame(int first, int length) {
+		if (first < 0 || length < 0 || first > size - length) {
+			return "frame of " + length + " symbols from " + first + " does not exist";
+		}
+		return null;
+	}
+
+	private String printable(int slot) {
+		if (!inMemory(slot)) {
+			return "symbol " + slot + " does not exist";
+		}
+		switch (types[slot]) {
+		case SymbolTable.INTEGER_TYPE:
+		case SymbolTable.REAL_TYPE:
+		case SymbolTable.STRING_TYPE:
+			return null;
+		default:
+			return "symbol " + slot + " has an invalid data type";
+		}
+	}
+
+	// Checks that the length quads after the one at pc exist
+	private boolean isTable(int pc, int length) {
+		return length >= 0 && length < count - pc;
+	}
+
+	private String target(int pc) {
+		return isQuad(pc) ? null : "jump target " + pc + " is outside the program";
+	}
+
+	private static String firstProblem(String... problems) {
+		for (String problem : problems) {
+			if (problem != null) {
+				return problem;
+			}
+		}
+		return null;
+	}
+
+	private boolean inMemory(int slot) { return slot >= 0 && slot < size; }
+
+	private boolean isQuad(int pc) { return pc >= 0 && pc < count; }
+
+	private final int[] code;   // decoded program being verified
+	private final int[] ints;   // integer values of data memory
+	private final char[] types; // data types of data memory
+	private final int count;    // number of quads in the program
+	private final int size;     // number of symbols in data memory
+}
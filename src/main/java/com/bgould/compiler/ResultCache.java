@@ -0,0 +1,408 @@
+package com.bgould.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import com.bgould.compiler.ADT.DataMemory;
+import com.bgould.compiler.ADT.QuadTable;
+import com.bgould.compiler.ADT.SymbolTable;
+import com.bgould.compiler.utils.BufferedPrintStream;
+import com.bgould.compiler.utils.IntInput;
+
+/**
+ * Remembers the results of program runs, so running the same program again with the same data
+ * memory and input returns the recorded results instead of interpreting it.
+ *
+ * A program's only source of nondeterminism is the values its READ instructions take, so a run is
+ * determined by its decoded program, its initial data memory, and its input. Runs are keyed by a
+ * SHA-256 hash of all three, and the cache records everything PRINT wrote and the final data
+ * memory of each. Runs that fail are not recorded.
+ *
+ * The cache holds a bounded number of runs, and evicts the least recently used once it is full.
+ * It can be saved to a file and loaded again by a later process. The file format is a fixed
+ * header, the runs from least to most recently used, and a CRC32 of everything before it.
+ *
+ * A cache may be shared by any number of threads. A run that misses is executed outside the
+ * cache's lock, so two threads that miss on the same key both execute it.
+ */
+public class ResultCache {
+	private static final int MAGIC = 0x51524553; // "QRES"
+	private static final int VERSION = 1;
+
+	// Length in bytes of a key
+	private static final int KEY_SIZE = 32;
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param capacity Maximum number of runs held at once
+	 */
+	public ResultCache(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Cache capacity must be positive");
+		}
+		this.capacity = capacity;
+		entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Run> eldest) {
+				if (size() > ResultCache.this.capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Runs a program with the given input, or replays the recorded results of an identical run.
+	 * Either way, the output is written to out, and the final data memory is written back to s.
+	 *
+	 * @param interp Interpreter that runs the program on a miss, with its selected engine
+	 * @param q QuadTable containing instruction memory for execution
+	 * @param s SymbolTable containing data memory for execution
+	 * @param input The values READ instructions take, in order
+	 * @param out Destination of PRINT output, which is flushed once the program stops
+	 */
+	public void run(Interpreter interp, QuadTable q, SymbolTable s, int[] input, PrintStream out) {
+		int[] code = Interpreter.decode(q);
+		DataMemory mem = new DataMemory(s);
+		try {
+			run(interp, code, mem, QuadVerifier.check(code, mem) == null, input, out);
+		} finally {
+			// symbols must reflect every executed instruction, even if execution failed
+			mem.WriteBack(s);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Runs an already decoded program directly against a data memory, or replays the recorded
+	 * results of an identical run.
+	 *
+	 * @param interp Interpreter that runs the program on a miss, with its selected engine
+	 * @param code The decoded program
+	 * @param mem Data memory for execution, which is left holding the program's results
+	 * @param verified true if QuadVerifier has accepted code against memory of this shape
+	 * @param input The values READ instructions take, in order
+	 * @param out Destination of PRINT output
+	 */
+	void run(Interpreter interp, int[] code, DataMemory mem, boolean verified, int[] input,
+	         PrintStream out) {
+		ByteBuffer key = keyFor(code, mem, input);
+		Run recorded = lookup(key);
+		if (recorded != null) {
+			mem.CopyFrom(recorded.memory);
+			out.write(recorded.output, 0, recorded.output.length);
+			return;
+		}
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrintStream captured = new BufferedPrintStream(output);
+		byte[] printed;
+		try {
+			interp.execute(code, mem, verified, IntInput.FromArray(input), captured);
+		} finally {
+			captured.flush();
+			printed = output.toByteArray();
+			out.write(printed, 0, printed.length);
+		}
+		store(key, new Run(printed, new DataMemory(mem)));
+	}
+
+	public synchronized long getHits() { return hits; }
+
+	public synchronized long getMisses() { return misses; }
+
+	/**
+	 * @return Number of runs removed to make room for newer ones
+	 */
+	public synchronized long getEvictions() { return evictions; }
+
+	/**
+	 * @return Number of runs currently held
+	 */
+	public synchronized int getSize() { return entries.size(); }
+
+	/**
+	 * Removes every recorded run. The counters are left unchanged.
+	 */
+	public synchronized void clear() { entries.clear(); }
+
+	@Override
+	public synchronized String toString() {
+		long lookups = hits + misses;
+		return String.format("%d of %d runs held, %d hits, %d misses (%.1f%% hit), %d evictions",
+		                     entries.size(), capacity, hits, misses,
+		                     (lookups > 0) ? 100.0 * hits / lookups : 0, evictions);
+	}
+
+	/**
+	 * Writes every recorded run to a file. The file is replaced in one step, so it always holds
+	 * either the previous contents or these.
+	 *
+	 * @param path The file to write
+	 * @throws IOException If the file cannot be written
+	 */
+	public void save(Path path) throws IOException {
+		Map<ByteBuffer, Run> snapshot;
+		synchronized (this) {
+			snapshot = new LinkedHashMap<>(entries);
+		}
+
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (OutputStream stream = Files.newOutputStream(temp)) {
+			CheckedOutputStream checked = new CheckedOutputStream(stream, new CRC32());
+			DataOutputStream data = new DataOutputStream(new BufferedOutputStream(checked));
+			data.writeInt(MAGIC);
+			data.writeInt(VERSION);
+			data.writeInt(snapshot.size());
+			for (Map.Entry<ByteBuffer, Run> run : snapshot.entrySet()) {
+				data.write(run.getKey().array());
+				writeRun(data, run.getValue());
+			}
+			data.flush();
+			data.writeLong(checked.getChecksum().getValue());
+			data.flush();
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+		           StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads the runs recorded in a file written by save into a new cache. If the file holds more
+	 * runs than fit, the least recently used are evicted.
+	 *
+	 * @param path The file to read
+	 * @param capacity Maximum number of runs held at once
+	 * @return The cache, with its counters at zero
+	 * @throws IOException If the file cannot be read, or does not hold a complete cache
+	 */
+	public static ResultCache load(Path path, int capacity) throws IOException {
+		ResultCache cache = new ResultCache(capacity);
+		try (InputStream stream = Files.newInputStream(path)) {
+			CheckedInputStream checked =
+				new CheckedInputStream(new BufferedInputStream(stream), new CRC32());
+			DataInputStream data = new DataInputStream(checked);
+			if (data.readInt() != MAGIC) {
+				throw new IOException("Not a result cache");
+			}
+			if (data.readInt() != VERSION) {
+				throw new IOException("Unsupported result cache version");
+			}
+
+			int count = data.readInt();
+			for (int i = 0; i < count; i++) {
+				byte[] key = new byte[KEY_SIZE];
+				data.readFully(key);
+				cache.entries.put(ByteBuffer.wrap(key), readRun(data));
+			}
+
+			long expected = checked.getChecksum().getValue();
+			if (data.readLong() != expected) {
+				throw new IOException("Result cache is corrupt");
+			}
+		}
+		cache.evictions = 0;
+		return cache;
+	}
+
+	private synchronized Run lookup(ByteBuffer key) {
+		Run recorded = entries.get(key);
+		if (recorded != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return recorded;
+	}
+
+	private synchronized void store(ByteBuffer key, Run recorded) { entries.put(key, recorded); }
+
+	// Hashes everything that determines the results of a run
+	private static ByteBuffer keyFor(int[] code, DataMemory mem, int[] input) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(4 * (3 + code.length + input.length));
+		buffer.putInt(code.length);
+		buffer.asIntBuffer().put(code);
+		buffer.position(buffer.position() + 4 * code.length);
+		buffer.putInt(input.length);
+		buffer.asIntBuffer().put(input);
+		buffer.position(buffer.position() + 4 * input.length);
+		buffer.putInt(mem.Size());
+		digest.update(buffer.array());
+
+		int[] ints = mem.GetIntegers();
+		double[] reals = mem.GetFloats();
+		String[] strings = mem.GetStrings();
+		char[] types = mem.GetDataTypes();
+		ByteBuffer slot = ByteBuffer.allocate(10);
+		for (int i = 0; i < mem.Size(); i++) {
+			slot.clear();
+			slot.putChar(types[i]);
+			switch (types[i]) {
+			case SymbolTable.INTEGER_TYPE:
+				slot.putInt(ints[i]);
+				break;
+			case SymbolTable.REAL_TYPE:
+				slot.putDouble(reals[i]);
+				break;
+			case SymbolTable.INTEGER_ARRAY_TYPE:
+				int[] intElements = mem.GetIntegerArrays()[i];
+				slot.putInt(intElements.length);
+				digest.update(slot.array(), 0, slot.position());
+				slot.clear();
+				ByteBuffer intBytes = ByteBuffer.allocate(4 * intElements.length);
+				intBytes.asIntBuffer().put(intElements);
+				digest.update(intBytes);
+				break;
+			case SymbolTable.REAL_ARRAY_TYPE:
+				double[] realElements = mem.GetFloatArrays()[i];
+				slot.putInt(realElements.length);
+				digest.update(slot.array(), 0, slot.position());
+				slot.clear();
+				ByteBuffer realBytes = ByteBuffer.allocate(8 * realElements.length);
+				realBytes.asDoubleBuffer().put(realElements);
+				digest.update(realBytes);
+				break;
+			default:
+				byte[] bytes = strings[i].getBytes(StandardCharsets.UTF_8);
+				slot.putInt(bytes.length);
+				digest.update(slot.array(), 0, slot.position());
+				slot.clear();
+				digest.update(bytes);
+				break;
+			}
+			digest.update(slot.array(), 0, slot.position());
+		}
+		return ByteBuffer.wrap(digest.digest());
+	}
+
+	private static void writeRun(DataOutputStream data, Run recorded) throws IOException {
+		data.writeInt(recorded.output.length);
+		data.write(recorded.output);
+
+		DataMemory mem = recorded.memory;
+		int[] ints = mem.GetIntegers();
+		double[] reals = mem.GetFloats();
+		String[] strings = mem.GetStrings();
+		char[] types = mem.GetDataTypes();
+		data.writeInt(mem.Size());
+		for (int i = 0; i < mem.Size(); i++) {
+			data.writeChar(types[i]);
+			switch (types[i]) {
+			case SymbolTable.INTEGER_TYPE:
+				data.writeInt(ints[i]);
+				break;
+			case SymbolTable.REAL_TYPE:
+				data.writeDouble(reals[i]);
+				break;
+			case SymbolTable.INTEGER_ARRAY_TYPE:
+				data.writeInt(mem.GetIntegerArrays()[i].length);
+				for (int element : mem.GetIntegerArrays()[i]) {
+					data.writeInt(element);
+				}
+				break;
+			case SymbolTable.REAL_ARRAY_TYPE:
+				data.writeInt(mem.GetFloatArrays()[i].length);
+				for (double element : mem.GetFloatArrays()[i]) {
+					data.writeDouble(element);
+				}
+				break;
+			default:
+				byte[] bytes = strings[i].getBytes(StandardCharsets.UTF_8);
+				data.writeInt(bytes.length);
+				data.write(bytes);
+				break;
+			}
+		}
+	}
+
+	private static Run readRun(DataInputStream data) throws IOException {
+		byte[] output = new byte[data.readInt()];
+		data.readFully(output);
+
+		DataMemory mem = new DataMemory(data.readInt());
+		int[] ints = mem.GetIntegers();
+		double[] reals = mem.GetFloats();
+		String[] strings = mem.GetStrings();
+		char[] types = mem.GetDataTypes();
+		for (int i = 0; i < mem.Size(); i++) {
+			types[i] = data.readChar();
+			switch (types[i]) {
+			case SymbolTable.INTEGER_TYPE:
+				ints[i] = data.readInt();
+				break;
+			case SymbolTable.REAL_TYPE:
+				reals[i] = data.readDouble();
+				break;
+			case SymbolTable.STRING_TYPE:
+				byte[] bytes = new byte[data.readInt()];
+				data.readFully(bytes);
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+				break;
+			case SymbolTable.INTEGER_ARRAY_TYPE:
+				int[] intElements = new int[data.readInt()];
+				for (int j = 0; j < intElements.length; j++) {
+					intElements[j] = data.readInt();
+				}
+				mem.GetIntegerArrays()[i] = intElements;
+				break;
+			case SymbolTable.REAL_ARRAY_TYPE:
+				double[] realElements = new double[data.readInt()];
+				for (int j = 0; j < realElements.length; j++) {
+					realElements[j] = data.readDouble();
+				}
+				mem.GetFloatArrays()[i] = realElements;
+				break;
+			default:
+				throw new IOException("Slot " + i + " has an invalid data type");
+			}
+		}
+		return new Run(output, mem);
+	}
+
+	/**
+	 * The recorded results of one run. Never modified once recorded.
+	 */
+	private static class Run {
+		Run(byte[] output, DataMemory memory) {
+			this.output = output;
+			this.memory = memory;
+		}
+
+		final byte[] output;     // everything the program printed
+		final DataMemory memory; // data memory once the program stopped
+	}
+
+	private final int capacity;                   // maximum number of runs held
+	private final Map<ByteBuffer, Run> entries;   // runs by key, least recently used first
+	private long hits;                            // lookups that found a recorded run
+	private long misses;                          // lookups that had to execute the program
+	private long evictions;                       // runs removed to make room for newer ones
+}
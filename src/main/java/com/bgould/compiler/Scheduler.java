@@ -0,0 +1,118 @@
+package com.bgould.compiler;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Multiplexes many ExecutionContexts over a few threads.
+ *
+ * Runnable programs wait in a single queue. A worker takes the program at the head, runs it for
+ * one quantum, and puts it back at the tail if it can still run, so a program in an endless loop
+ * only ever holds a thread for one quantum at a time. Programs waiting for input are set aside
+ * until provideInput is called, and hold no thread at all.
+ */
+public class Scheduler implements AutoCloseable {
+	/**
+	 * Starts a scheduler.
+	 *
+	 * @param threads Number of worker threads
+	 * @param quantum Number of quads a program runs before the next program gets a turn
+	 */
+	public Scheduler(int threads, int quantum) {
+		this.quantum = quantum;
+		runnable = new LinkedBlockingQueue<>();
+		waiting = ConcurrentHashMap.newKeySet();
+		completions = new ConcurrentHashMap<>();
+
+		workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread(this::work, "scheduler-worker-" + (i + 1));
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Adds a program to the scheduler.
+	 *
+	 * @param context The program to run
+	 * @return A future completed with the context once it has halted or failed
+	 */
+	public CompletableFuture<ExecutionContext> submit(ExecutionContext context) {
+		CompletableFuture<ExecutionContext> done = new CompletableFuture<>();
+		completions.put(context, done);
+		runnable.add(context);
+		return done;
+	}
+
+	/**
+	 * Queues a value for a program's READ instructions, and wakes the program if it was waiting
+	 * for it.
+	 *
+	 * @param context A program added with submit
+	 * @param value The value to queue
+	 */
+	public void provideInput(ExecutionContext context, int value) {
+		synchronized (context) {
+			context.provideInput(value);
+			if (waiting.remove(context)) {
+				runnable.add(context);
+			}
+		}
+	}
+
+	/**
+	 * @return Number of programs currently set aside waiting for input
+	 */
+	public int getWaitingCount() { return waiting.size(); }
+
+	/**
+	 * Stops the worker threads. Programs that have not finished are abandoned.
+	 */
+	@Override
+	public void close() {
+		for (Thread worker : workers) {
+			worker.interrupt();
+		}
+	}
+
+	private void work() {
+		try {
+			while (true) {
+				ExecutionContext context = runnable.take();
+				ExecutionContext.Status status = context.run(quantum);
+
+				switch (status) {
+				case RUNNING:
+					runnable.add(context);
+					break;
+				case WAITING_INPUT:
+					// input may have arrived while the slice was finishing
+					synchronized (context) {
+						if (context.hasInput()) {
+							runnable.add(context);
+						} else {
+							waiting.add(context);
+						}
+					}
+					break;
+				default:
+					completions.remove(context).complete(context);
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			// close() was called
+		}
+	}
+
+	private final int quantum;                                    // quads per turn
+	private final LinkedBlockingQueue<ExecutionContext> runnable; // programs ready to run
+	private final Set<ExecutionContext> waiting;                  // programs blocked on READ
+	// futures of the programs that have not finished yet
+	private final Map<ExecutionContext, CompletableFuture<ExecutionContext>> completions;
+	private final Thread[] workers;
+}
@@ -0,0 +1,41 @@
+package com.bgould.compiler;
+
+/**
+ * Destination of the interpreter's execution trace.
+ *
+ * The interpreter calls record before executing each quad. After a quad that writes its op3
+ * symbol has executed, it also calls recordResult with the value left in that symbol.
+ */
+public abstract class Trace implements AutoCloseable {
+	/**
+	 * Adds the quad about to be executed to the trace.
+	 *
+	 * @param pc Program counter
+	 * @param opcode opCode of the current operation
+	 * @param op1 First arg of the current operation
+	 * @param op2 Second arg of the current operation
+	 * @param op3 Third arg of the current operation
+	 */
+	public abstract void record(int pc, int opcode, int op1, int op2, int op3);
+
+	/**
+	 * Adds the integer the last recorded quad wrote to its op3 symbol. Ignored by default.
+	 *
+	 * @param value The value written
+	 */
+	public void recordResult(int value) {}
+
+	/**
+	 * Adds the real the last recorded quad wrote to its op3 symbol. Ignored by default.
+	 *
+	 * @param value The value written
+	 */
+	public void recordResult(double value) {}
+
+	/**
+	 * Finishes writing the trace. Failures are reported rather than thrown, since a trace should
+	 * never stop the program it traces.
+	 */
+	@Override
+	public abstract void close();
+}
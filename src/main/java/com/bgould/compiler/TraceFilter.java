@@ -0,0 +1,131 @@
+package com.bgould.compiler;
+
+import java.util.Arrays;
+
+/**
+ * Selects which executed quads are traced.
+ *
+ * A filter can restrict tracing to ranges of program counters, to a set of opcodes, and to quads
+ * that write particular symbols. A quad is traced if it passes every kind of restriction the
+ * filter has, and matching any one of a kind is enough to pass it. A filter with no restrictions
+ * passes every quad. Of the quads that pass, only one in every sample interval is traced.
+ *
+ * Filters are immutable. Each method returns a new filter, so a filter can be handed to an
+ * Interpreter that is already running a program without any further locking.
+ */
+public final class TraceFilter {
+	/**
+	 * Creates a filter that traces every quad.
+	 */
+	public TraceFilter() {
+		this(new int[0], new int[0], new int[0], 1);
+	}
+
+	private TraceFilter(int[] ranges, int[] opcodes, int[] symbols, int sampleInterval) {
+		this.ranges = ranges;
+		this.opcodes = opcodes;
+		this.symbols = symbols;
+		this.sampleInterval = sampleInterval;
+	}
+
+	/**
+	 * @param first The first program counter to trace
+	 * @param last The last program counter to trace, inclusive
+	 * @return A filter that also passes quads at program counters from first to last
+	 */
+	public TraceFilter pcRange(int first, int last) {
+		return new TraceFilter(append(ranges, first, last), opcodes, symbols, sampleInterval);
+	}
+
+	/**
+	 * @param codes Opcodes to trace, such as Interpreter.OP_ADD
+	 * @return A filter that also passes quads with any of the given opcodes
+	 */
+	public TraceFilter opcodes(int... codes) {
+		return new TraceFilter(ranges, append(opcodes, codes), symbols, sampleInterval);
+	}
+
+	/**
+	 * @param indexes SymbolTable indexes of symbols whose writes are traced
+	 * @return A filter that also passes quads that write any of the given symbols
+	 */
+	public TraceFilter writesTo(int... indexes) {
+		return new TraceFilter(ranges, opcodes, append(symbols, indexes), sampleInterval);
+	}
+
+	/**
+	 * @param interval Trace one in this many of the quads that pass the filter
+	 * @return A filter passing the same quads, sampled at the given interval
+	 */
+	public TraceFilter sampleEvery(int interval) {
+		if (interval <= 0) {
+			throw new IllegalArgumentException("Sample interval must be positive");
+		}
+		return new TraceFilter(ranges, opcodes, symbols, interval);
+	}
+
+	public int getSampleInterval() { return sampleInterval; }
+
+	/**
+	 * Checks every quad of a program against the filter once, so that filtering an executed quad
+	 * costs a single array access.
+	 *
+	 * @param code A decoded program
+	 * @return For each quad of code, true if it passes the filter
+	 */
+	boolean[] maskFor(int[] code) {
+		boolean[] mask = new boolean[code.length / Interpreter.QUAD_WIDTH];
+		for (int pc = 0; pc < mask.length; pc++) {
+			int at = pc * Interpreter.QUAD_WIDTH;
+			mask[pc] = passesRanges(pc) && passesOpcodes(code[at]) &&
+			           passesSymbols(code[at], code[at + 1], code[at + 3]);
+		}
+		return mask;
+	}
+
+	private boolean passesRanges(int pc) {
+		if (ranges.length == 0) {
+			return true;
+		}
+		for (int i = 0; i < ranges.length; i += 2) {
+			if (pc >= ranges[i] && pc <= ranges[i + 1]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean passesOpcodes(int opcode) {
+		return opcodes.length == 0 || contains(opcodes, opcode);
+	}
+
+	private boolean passesSymbols(int opcode, int op1, int op3) {
+		if (symbols.length == 0) {
+			return true;
+		}
+		if (opcode == Interpreter.OP_LOOP) {
+			return contains(symbols, op1); // the only quad that writes op1
+		}
+		return QuadOptimizer.writesOp3(opcode) && contains(symbols, op3);
+	}
+
+	private static boolean contains(int[] values, int value) {
+		for (int v : values) {
+			if (v == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int[] append(int[] values, int... more) {
+		int[] result = Arrays.copyOf(values, values.length + more.length);
+		System.arraycopy(more, 0, result, values.length, more.length);
+		return result;
+	}
+
+	private final int[] ranges;       // first and last program counter of each range
+	private final int[] opcodes;      // opcodes to trace
+	private final int[] symbols;      // symbols whose writes are traced
+	private final int sampleInterval; // one in this many passing quads is traced
+}
@@ -0,0 +1,264 @@
+package com.bgould.compiler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Appends the interpreter's execution trace to a file from a background thread.
+ *
+ * Each executed quad is formatted straight into a batch buffer, without building any Strings.
+ * Full batches are handed to the writer thread through a bounded queue, and the thread writes
+ * each one to a single open channel and returns the buffer for reuse. The interpreter only waits
+ * when it has filled every buffer faster than the disk could take them.
+ *
+ * Trace lines have the form "PC = 0004: ADD   01, 03, 01". As with the rest of the compiler's file
+ * output, a trace that cannot be written is reported with a stack trace rather than stopping the
+ * program, and the rest of the trace is discarded.
+ */
+public class TraceWriter extends Trace {
+	// Bytes formatted before a batch is handed to the writer thread
+	private static final int BATCH_SIZE = 64 * 1024;
+
+	// Batches that may be formatted or waiting to be written at once
+	private static final int BATCH_COUNT = 4;
+
+	// Longest trace line, not counting the operation name: "PC = ", ": ", ", " twice, four ints
+	// of up to 11 characters each, and a line separator
+	private static final int MAX_LINE_LENGTH = 5 + 2 + 2 + 2 + 4 * 11 + 2;
+
+	// Width the operation name is padded to
+	private static final int NAME_WIDTH = 6;
+
+	// Handed to the writer thread to make it stop
+	private static final ByteBuffer CLOSE = ByteBuffer.allocate(0);
+
+	private static final byte[] PC_PREFIX = "PC = ".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+	// Encoded name of every opcode in the opcode table, empty for unused codes
+	private static final byte[][] NAMES = encodeNames();
+
+	/**
+	 * Opens a trace file for appending, and starts its writer thread.
+	 *
+	 * @param filename File to append the trace to, which is created if it does not exist
+	 */
+	public TraceWriter(String filename) {
+		channel = open(filename);
+		filled = new ArrayBlockingQueue<>(BATCH_COUNT + 1); // room for CLOSE
+		free = new ArrayBlockingQueue<>(BATCH_COUNT);
+		for (int i = 1; i < BATCH_COUNT; i++) {
+			free.add(ByteBuffer.allocate(BATCH_SIZE));
+		}
+		batch = ByteBuffer.allocate(BATCH_SIZE);
+
+		writer = new Thread(this::drain, "trace-writer");
+		writer.setDaemon(true);
+		if (channel != null) {
+			writer.start();
+		}
+	}
+
+	@Override
+	public void record(int pc, int opcode, int op1, int op2, int op3) {
+		if (channel == null) {
+			return;
+		}
+		if (count + maxLineLength(opcode) > BATCH_SIZE) {
+			handOff();
+		}
+
+		byte[] line = batch.array();
+		count = formatLine(line, count, pc, opcode, op1, op2, op3);
+		System.arraycopy(NEWLINE, 0, line, count, NEWLINE.length);
+		count += NEWLINE.length;
+	}
+
+	/**
+	 * Writes out the rest of the trace, stops the writer thread, and closes the file.
+	 */
+	@Override
+	public void close() {
+		if (batch == null || channel == null) {
+			return;
+		}
+		if (count > 0) {
+			handOff();
+		}
+		batch = null;
+		put(filled, CLOSE);
+
+		boolean interrupted = false;
+		while (writer.isAlive()) {
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	// Queues the current batch for writing, and starts filling a free one
+	private void handOff() {
+		if (failed) {
+			count = 0; // nothing more will be written, so reuse the batch
+			return;
+		}
+		batch.limit(count);
+		put(filled, batch);
+		try {
+			batch = free.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while tracing", e);
+		}
+		count = 0;
+	}
+
+	// Body of the writer thread
+	private void drain() {
+		while (true) {
+			ByteBuffer next;
+			try {
+				next = filled.take();
+			} catch (InterruptedException e) {
+				continue; // only close() may stop the writer, so no batch is lost
+			}
+			if (next == CLOSE) {
+				return;
+			}
+
+			// after a failure, batches are still taken so the interpreter never blocks
+			if (!failed) {
+				try {
+					while (next.hasRemaining()) {
+						channel.write(next);
+					}
+				} catch (IOException e) {
+					e.printStackTrace();
+					failed = true;
+				}
+			}
+			next.clear();
+			free.add(next);
+		}
+	}
+
+	private static FileChannel open(String filename) {
+		try {
+			return FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+			                        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private static void put(BlockingQueue<ByteBuffer> queue, ByteBuffer buffer) {
+		try {
+			queue.put(buffer);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while tracing", e);
+		}
+	}
+
+	/**
+	 * Formats a trace line, without its line separator.
+	 *
+	 * @param line Array to format the line into, with room for maxLineLength(opcode) bytes
+	 * @param count Index in line to start the line at
+	 * @return Index in line just past the end of the line
+	 */
+	static int formatLine(byte[] line, int count, int pc, int opcode, int op1, int op2, int op3) {
+		System.arraycopy(PC_PREFIX, 0, line, count, PC_PREFIX.length);
+		count += PC_PREFIX.length;
+		count = appendPadded(line, count, pc, 4);
+		line[count++] = ':';
+		line[count++] = ' ';
+
+		byte[] name = nameOf(opcode);
+		System.arraycopy(name, 0, line, count, name.length);
+		count += name.length;
+		for (int i = name.length; i < NAME_WIDTH; i++) {
+			line[count++] = ' ';
+		}
+
+		count = appendPadded(line, count, op1, 2);
+		line[count++] = ',';
+		line[count++] = ' ';
+		count = appendPadded(line, count, op2, 2);
+		line[count++] = ',';
+		line[count++] = ' ';
+		return appendPadded(line, count, op3, 2);
+	}
+
+	/**
+	 * @param opcode opCode of an operation
+	 * @return Most bytes a trace line for the operation can take, including its line separator
+	 */
+	static int maxLineLength(int opcode) {
+		return MAX_LINE_LENGTH + Math.max(nameOf(opcode).length, NAME_WIDTH);
+	}
+
+	// Formats like String.format("%0" + width + "d", value), returning the index past the end
+	private static int appendPadded(byte[] line, int count, int value, int width) {
+		long magnitude = value;
+		if (magnitude < 0) {
+			line[count++] = '-';
+			magnitude = -magnitude;
+			width--;
+		}
+
+		int digits = 1;
+		for (long rest = magnitude / 10; rest > 0; rest /= 10) {
+			digits++;
+		}
+		for (int i = digits; i < width; i++) {
+			line[count++] = '0';
+		}
+		for (int at = count + digits - 1; at >= count; at--) {
+			line[at] = (byte) ('0' + magnitude % 10);
+			magnitude /= 10;
+		}
+		return count + digits;
+	}
+
+	private static byte[] nameOf(int opcode) {
+		if (opcode < 0 || opcode >= NAMES.length) {
+			return Interpreter.mnemonicFor(opcode).getBytes(StandardCharsets.UTF_8);
+		}
+		return NAMES[opcode];
+	}
+
+	private static byte[][] encodeNames() {
+		byte[][] names = new byte[Interpreter.OP_TABLE_SIZE][];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = Interpreter.mnemonicFor(i).getBytes(StandardCharsets.UTF_8);
+		}
+		return names;
+	}
+
+	private final FileChannel channel;              // trace file, or null if it could not be opened
+	private final BlockingQueue<ByteBuffer> filled; // batches waiting to be written, in order
+	private final BlockingQueue<ByteBuffer> free;   // written batches ready to be reused
+	private final Thread writer;                    // thread writing filled batches
+	private ByteBuffer batch;                       // batch being formatted, or null once closed
+	private int count;                              // number of bytes formatted into batch
+	private volatile boolean failed;                // true once a write to the file has failed
+}
@@ -0,0 +1,192 @@
+package com.bgould.compiler.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A PrintStream that collects output in a large byte buffer, for interpreting print-heavy
+ * programs.
+ *
+ * Output only reaches the underlying stream when the buffer fills up or flush is called, so a
+ * program's PRINTs cost one write per buffer rather than one per line. Integers are formatted
+ * straight into the buffer without allocating, and each String printed is encoded once and its
+ * bytes reused every time the same String is printed again, which is the common case for the
+ * string constants of a program.
+ *
+ * Unlike PrintStream, this class is not synchronized, and must only be used by one thread at a
+ * time.
+ */
+public class BufferedPrintStream extends PrintStream {
+	/**
+	 * Creates a stream with a buffer of the default size.
+	 *
+	 * @param out The stream output is flushed to
+	 */
+	public BufferedPrintStream(OutputStream out) {
+		this(out, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a stream with a buffer of the given size.
+	 *
+	 * @param out The stream output is flushed to
+	 * @param capacity Number of bytes collected before they are written to out
+	 */
+	public BufferedPrintStream(OutputStream out, int capacity) {
+		super(out, false, StandardCharsets.UTF_8);
+		this.buffer = new byte[Math.max(capacity, MIN_CAPACITY)];
+		this.encoded = new IdentityHashMap<>();
+	}
+
+	@Override
+	public void println(int x) {
+		reserve(MAX_INT_LENGTH + NEWLINE.length);
+		if (x == Integer.MIN_VALUE) {
+			// has no positive counterpart to format
+			appendAscii("-2147483648");
+		} else {
+			if (x < 0) {
+				buffer[count++] = '-';
+				x = -x;
+			}
+			int end = count + digitCount(x);
+			for (int at = end - 1; at >= count; at--) {
+				buffer[at] = (byte) ('0' + x % 10);
+				x /= 10;
+			}
+			count = end;
+		}
+		appendNewline();
+	}
+
+	@Override
+	public void println(double x) {
+		String text = Double.toString(x);
+		reserve(text.length() + NEWLINE.length);
+		appendAscii(text);
+		appendNewline();
+	}
+
+	@Override
+	public void println(String x) {
+		byte[] bytes = encode((x == null) ? "null" : x);
+		append(bytes, 0, bytes.length);
+		reserve(NEWLINE.length);
+		appendNewline();
+	}
+
+	@Override
+	public void write(int b) {
+		reserve(1);
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		append(b, off, len);
+	}
+
+	@Override
+	public void flush() {
+		drain();
+		super.flush();
+	}
+
+	@Override
+	public void close() {
+		drain();
+		super.close();
+	}
+
+	/**
+	 * @return Number of bytes waiting in the buffer
+	 */
+	public int Pending() { return count; }
+
+	// Makes room for n more bytes, writing out the buffer if it cannot hold them
+	private void reserve(int n) {
+		if (count + n > buffer.length) {
+			drain();
+		}
+	}
+
+	private void append(byte[] b, int off, int len) {
+		if (len > buffer.length) {
+			// too big to buffer, so write it straight through
+			drain();
+			writeOut(b, off, len);
+			return;
+		}
+		reserve(len);
+		System.arraycopy(b, off, buffer, count, len);
+		count += len;
+	}
+
+	// Only for text known to be ASCII, which the caller has reserved room for
+	private void appendAscii(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			buffer[count++] = (byte) text.charAt(i);
+		}
+	}
+
+	private void appendNewline() {
+		for (byte b : NEWLINE) {
+			buffer[count++] = b;
+		}
+	}
+
+	private byte[] encode(String text) {
+		byte[] bytes = encoded.get(text);
+		if (bytes == null) {
+			if (encoded.size() == MAX_ENCODED_STRINGS) {
+				encoded.clear();
+			}
+			bytes = text.getBytes(StandardCharsets.UTF_8);
+			encoded.put(text, bytes);
+		}
+		return bytes;
+	}
+
+	private void drain() {
+		if (count > 0) {
+			writeOut(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	// Follows PrintStream in recording failures for checkError rather than throwing them
+	private void writeOut(byte[] b, int off, int len) {
+		try {
+			out.write(b, off, len);
+		} catch (InterruptedIOException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			setError();
+		}
+	}
+
+	// Number of decimal digits in a non-negative int
+	private static int digitCount(int x) {
+		int digits = 1;
+		while (x >= 10) {
+			x /= 10;
+			digits++;
+		}
+		return digits;
+	}
+
+	private static final int DEFAULT_CAPACITY = 64 * 1024;
+	private static final int MIN_CAPACITY = 64;         // room for any number and a newline
+	private static final int MAX_INT_LENGTH = 11;       // length of "-2147483648"
+	private static final int MAX_ENCODED_STRINGS = 256; // encodings kept before starting over
+	private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+	private final byte[] buffer;               // output not yet written to out
+	private final Map<String, byte[]> encoded; // UTF-8 bytes of Strings printed so far
+	private int count;                         // number of bytes used in buffer
+}
@@ -0,0 +1,375 @@
+package com.bgould.compiler.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Assembles a minimal JVM class file: a constant pool, and any number of methods with a Code
+ * attribute. Fields, interfaces and debugging attributes are not supported.
+ *
+ * Classes are written with class file version 49 (Java 5), the last version that does not
+ * require StackMapTable frames, so callers can branch freely without computing frames.
+ */
+public class ClassFileWriter {
+	public static final int ACC_PUBLIC = 0x0001;
+	public static final int ACC_STATIC = 0x0008;
+	public static final int ACC_FINAL = 0x0010;
+	public static final int ACC_SUPER = 0x0020;
+
+	private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+	private static final int MAJOR_VERSION = 49;
+
+	// Constant pool tags
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_DOUBLE = 6;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	/**
+	 * Growable buffer holding the bytecode of a single method.
+	 */
+	public static class CodeBuffer {
+		/**
+		 * Appends a single byte, such as an opcode.
+		 *
+		 * @param b The byte to append; only the low 8 bits are used
+		 */
+		public void U1(int b) { bytes.write(b); }
+
+		/**
+		 * Appends a big-endian 2-byte value.
+		 *
+		 * @param v The value to append; only the low 16 bits are used
+		 */
+		public void U2(int v) {
+			bytes.write(v >>> 8);
+			bytes.write(v);
+		}
+
+		/**
+		 * Appends a big-endian 4-byte value.
+		 *
+		 * @param v The value to append
+		 */
+		public void U4(int v) {
+			U2(v >>> 16);
+			U2(v);
+		}
+
+		/**
+		 * Gets the offset the next appended byte will be written to.
+		 *
+		 * @return The number of bytes in this buffer
+		 */
+		public int Position() { return bytes.size(); }
+
+		/**
+		 * Gets the bytes appended so far, with every patch applied.
+		 *
+		 * @return The contents of this buffer
+		 */
+		public byte[] ToByteArray() {
+			byte[] code = bytes.toByteArray();
+			for (int[] patch : patches) {
+				code[patch[0]] = (byte) (patch[1] >>> 8);
+				code[patch[0] + 1] = (byte) patch[1];
+			}
+			return code;
+		}
+
+		/**
+		 * Overwrites a 2-byte value that was already appended, e.g. a branch offset that was not
+		 * known when the branch was emitted.
+		 *
+		 * @param position Offset of the first of the two bytes to overwrite
+		 * @param v The new value; only the low 16 bits are used
+		 */
+		public void PatchU2(int position, int v) { patches.add(new int[] {position, v}); }
+
+		/**
+		 * Overwrites a big-endian 4-byte value that was already appended, e.g. an entry of a
+		 * tableswitch.
+		 *
+		 * @param position Offset of the first of the four bytes to overwrite
+		 * @param v The new value
+		 */
+		public void PatchU4(int position, int v) {
+			PatchU2(position, v >>> 16);
+			PatchU2(position + 2, v);
+		}
+
+		private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private ArrayList<int[]> patches = new ArrayList<>(); // {position, value} pairs
+	}
+
+	/**
+	 * Creates a writer for a class with no methods.
+	 *
+	 * @param className Internal name of the class to write, e.g. "com/example/Foo"
+	 * @param superName Internal name of the superclass, e.g. "java/lang/Object"
+	 * @param access Access flags of the class
+	 */
+	public ClassFileWriter(String className, String superName, int access) {
+		this.access = access;
+		this.thisClass = ClassRef(className);
+		this.superClass = ClassRef(superName);
+	}
+
+	/**
+	 * Gets the constant pool index of a UTF-8 string, adding it if necessary.
+	 *
+	 * @param value The string to store
+	 * @return Index of the CONSTANT_Utf8 entry
+	 */
+	public int Utf8(String value) {
+		Integer index = poolIndex.get("U" + value);
+		if (index != null) {
+			return index;
+		}
+
+		try {
+			pool.writeByte(CONSTANT_UTF8);
+			pool.writeUTF(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return addEntry("U" + value, 1);
+	}
+
+	/**
+	 * Gets the constant pool index of a class reference, adding it if necessary.
+	 *
+	 * @param internalName Internal name of the class, e.g. "java/lang/String"
+	 * @return Index of the CONSTANT_Class entry
+	 */
+	public int ClassRef(String internalName) {
+		return refEntry("C" + internalName, CONSTANT_CLASS, Utf8(internalName));
+	}
+
+	/**
+	 * Gets the constant pool index of a String literal, adding it if necessary.
+	 *
+	 * @param value The literal value
+	 * @return Index of the CONSTANT_String entry
+	 */
+	public int StringConst(String value) {
+		return refEntry("S" + value, CONSTANT_STRING, Utf8(value));
+	}
+
+	/**
+	 * Gets the constant pool index of an int literal, adding it if necessary.
+	 *
+	 * @param value The literal value
+	 * @return Index of the CONSTANT_Integer entry
+	 */
+	public int IntConst(int value) {
+		Integer index = poolIndex.get("I" + value);
+		if (index != null) {
+			return index;
+		}
+
+		try {
+			pool.writeByte(CONSTANT_INTEGER);
+			pool.writeInt(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return addEntry("I" + value, 1);
+	}
+
+	/**
+	 * Gets the constant pool index of a double literal, adding it if necessary.
+	 *
+	 * @param value The literal value
+	 * @return Index of the CONSTANT_Double entry
+	 */
+	public int DoubleConst(double value) {
+		String key = "D" + Double.doubleToRawLongBits(value);
+		Integer index = poolIndex.get(key);
+		if (index != null) {
+			return index;
+		}
+
+		try {
+			pool.writeByte(CONSTANT_DOUBLE);
+			pool.writeDouble(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return addEntry(key, 2); // doubles take up two constant pool slots
+	}
+
+	/**
+	 * Gets the constant pool index of a field reference, adding it if necessary.
+	 *
+	 * @param owner Internal name of the class declaring the field
+	 * @param name Name of the field
+	 * @param descriptor Type descriptor of the field
+	 * @return Index of the CONSTANT_Fieldref entry
+	 */
+	public int FieldRef(String owner, String name, String descriptor) {
+		return memberEntry(CONSTANT_FIELDREF, owner, name, descriptor);
+	}
+
+	/**
+	 * Gets the constant pool index of a method reference, adding it if necessary.
+	 *
+	 * @param owner Internal name of the class declaring the method
+	 * @param name Name of the method
+	 * @param descriptor Type descriptor of the method
+	 * @return Index of the CONSTANT_Methodref entry
+	 */
+	public int MethodRef(String owner, String name, String descriptor) {
+		return memberEntry(CONSTANT_METHODREF, owner, name, descriptor);
+	}
+
+	/**
+	 * Adds a method to the class.
+	 *
+	 * @param access Access flags of the method
+	 * @param name Name of the method
+	 * @param descriptor Type descriptor of the method
+	 * @param maxStack Maximum operand stack depth reached by the code
+	 * @param maxLocals Number of local variable slots used by the code, including parameters
+	 * @param code Bytecode of the method body
+	 * @param handlers Exception table entries as {start, end, handler} offsets; each catches any
+	 *     Throwable
+	 */
+	public void AddMethod(int access, String name, String descriptor, int maxStack, int maxLocals,
+	                      byte[] code, int[][] handlers) {
+		try {
+			methods.writeShort(access);
+			methods.writeShort(Utf8(name));
+			methods.writeShort(Utf8(descriptor));
+			methods.writeShort(1); // only the Code attribute
+
+			methods.writeShort(Utf8("Code"));
+			methods.writeInt(12 + code.length + 8 * handlers.length);
+			methods.writeShort(maxStack);
+			methods.writeShort(maxLocals);
+			methods.writeInt(code.length);
+			methods.write(code);
+			methods.writeShort(handlers.length);
+			for (int[] handler : handlers) {
+				methods.writeShort(handler[0]);
+				methods.writeShort(handler[1]);
+				methods.writeShort(handler[2]);
+				methods.writeShort(0); // catch any type
+			}
+			methods.writeShort(0); // no Code attributes
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		methodCount++;
+	}
+
+	/**
+	 * Serializes the class.
+	 *
+	 * @return The contents of a class file
+	 */
+	public byte[] ToByteArray() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		try {
+			out.writeInt(CLASS_FILE_MAGIC);
+			out.writeShort(0);
+			out.writeShort(MAJOR_VERSION);
+			out.writeShort(poolCount);
+			poolBytes.writeTo(out);
+			out.writeShort(access);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(0); // interfaces
+			out.writeShort(0); // fields
+			out.writeShort(methodCount);
+			methodBytes.writeTo(out);
+			out.writeShort(0); // class attributes
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	private int refEntry(String key, int tag, int target) {
+		Integer index = poolIndex.get(key);
+		if (index != null) {
+			return index;
+		}
+
+		try {
+			pool.writeByte(tag);
+			pool.writeShort(target);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return addEntry(key, 1);
+	}
+
+	private int memberEntry(int tag, String owner, String name, String descriptor) {
+		String key = "M" + tag + owner + "." + name + descriptor;
+		Integer index = poolIndex.get(key);
+		if (index != null) {
+			return index;
+		}
+
+		int classIndex = ClassRef(owner);
+		int nameAndType = nameAndType(name, descriptor);
+		try {
+			pool.writeByte(tag);
+			pool.writeShort(classIndex);
+			pool.writeShort(nameAndType);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return addEntry(key, 1);
+	}
+
+	private int nameAndType(String name, String descriptor) {
+		String key = "N" + name + ":" + descriptor;
+		Integer index = poolIndex.get(key);
+		if (index != null) {
+			return index;
+		}
+
+		int nameIndex = Utf8(name);
+		int descriptorIndex = Utf8(descriptor);
+		try {
+			pool.writeByte(CONSTANT_NAME_AND_TYPE);
+			pool.writeShort(nameIndex);
+			pool.writeShort(descriptorIndex);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return addEntry(key, 1);
+	}
+
+	// Records the entry just written to the pool, and returns its index
+	private int addEntry(String key, int slots) {
+		int index = poolCount;
+		poolIndex.put(key, index);
+		poolCount += slots;
+		return index;
+	}
+
+	private int access;     // access flags of the class
+	private int thisClass;  // constant pool index of this class
+	private int superClass; // constant pool index of the superclass
+	private int methodCount;
+
+	private int poolCount = 1; // constant pool indices start at 1
+	private HashMap<String, Integer> poolIndex = new HashMap<>(); // dedupes constant pool entries
+	private ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+	private DataOutputStream pool = new DataOutputStream(poolBytes);
+	private ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+	private DataOutputStream methods = new DataOutputStream(methodBytes);
+}
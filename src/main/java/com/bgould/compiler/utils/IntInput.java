@@ -0,0 +1,248 @@
+package com.bgould.compiler.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+/**
+ * A source of integers for the READ instruction.
+ *
+ * Text sources are read through a tokenizer that parses whitespace separated integers straight
+ * out of a byte buffer, so reading a value allocates nothing. As with Scanner.nextInt, reading
+ * past the end throws NoSuchElementException, and a token that is not an int throws
+ * InputMismatchException.
+ *
+ * Sources do not prompt for their values. Wrap a source with WithPrompt to have it print a
+ * prompt before every value, as a console does.
+ */
+public abstract class IntInput {
+	/**
+	 * Reads the next value.
+	 *
+	 * @return The next integer in the input
+	 * @throws NoSuchElementException If the input is exhausted
+	 * @throws InputMismatchException If the next token is not an int
+	 */
+	public abstract int NextInt();
+
+	/**
+	 * Wraps this source so that it prints a prompt before every value it reads.
+	 *
+	 * @param out Stream to print the prompt to, which is flushed so the prompt is seen
+	 * @return A source reading the same values as this one
+	 */
+	public IntInput WithPrompt(PrintStream out) {
+		IntInput source = this;
+		return new IntInput() {
+			@Override
+			public int NextInt() {
+				out.println(PROMPT);
+				out.flush();
+				return source.NextInt();
+			}
+		};
+	}
+
+	/**
+	 * @param values The values to read, which are not copied
+	 * @return A source reading the given values in order
+	 */
+	public static IntInput FromArray(int... values) {
+		return new IntInput() {
+			@Override
+			public int NextInt() {
+				if (position == values.length) {
+					throw new NoSuchElementException();
+				}
+				return values[position++];
+			}
+
+			private int position; // index of the next value
+		};
+	}
+
+	/**
+	 * @param text Whitespace separated integers
+	 * @return A source reading the integers in text
+	 */
+	public static IntInput FromString(String text) {
+		// the encoded text is parsed in place, as a single block
+		return new Tokenizer(text.getBytes(StandardCharsets.UTF_8)) {
+			@Override
+			int fill(byte[] buffer) {
+				if (filled || buffer.length == 0) {
+					return -1;
+				}
+				filled = true;
+				return buffer.length;
+			}
+
+			private boolean filled; // true once the text has been handed to the tokenizer
+		};
+	}
+
+	/**
+	 * Creates a source reading whitespace separated integers from a stream. The stream is read a
+	 * block at a time, so it should not be read by anything else while the source is in use.
+	 *
+	 * @param in The stream to read, which is left open
+	 * @return A source reading the integers in the stream
+	 */
+	public static IntInput FromStream(InputStream in) {
+		return new Tokenizer(new byte[BUFFER_SIZE]) {
+			@Override
+			int fill(byte[] buffer) {
+				try {
+					return in.read(buffer);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Creates a source reading whitespace separated integers from a file, which is memory-mapped
+	 * rather than read through a stream.
+	 *
+	 * @param path The file to read
+	 * @return A source reading the integers in the file
+	 * @throws IOException If the file cannot be opened or mapped
+	 */
+	public static IntInput FromFile(Path path) throws IOException {
+		MappedByteBuffer[] regions;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			regions = new MappedByteBuffer[(int) ((size + MAX_REGION - 1) / MAX_REGION)];
+			for (int i = 0; i < regions.length; i++) {
+				long start = i * MAX_REGION;
+				regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+				                         Math.min(MAX_REGION, size - start));
+			}
+		}
+
+		return new Tokenizer(new byte[BUFFER_SIZE]) {
+			@Override
+			int fill(byte[] buffer) {
+				while (region < regions.length && !regions[region].hasRemaining()) {
+					region++;
+				}
+				if (region == regions.length) {
+					return -1;
+				}
+				int length = Math.min(buffer.length, regions[region].remaining());
+				regions[region].get(buffer, 0, length);
+				return length;
+			}
+
+			private int region; // index of the region being read
+		};
+	}
+
+	/**
+	 * @param scanner The scanner to read with, which is left open
+	 * @return A source reading integers with Scanner.nextInt
+	 */
+	public static IntInput FromScanner(Scanner scanner) {
+		return new IntInput() {
+			@Override
+			public int NextInt() {
+				return scanner.nextInt();
+			}
+		};
+	}
+
+	/**
+	 * Parses integers out of blocks of bytes supplied by fill.
+	 */
+	private abstract static class Tokenizer extends IntInput {
+		Tokenizer(byte[] buffer) { this.buffer = buffer; }
+
+		/**
+		 * Reads the next block of input into the buffer. Must not return 0.
+		 *
+		 * @return Number of bytes read, or -1 at the end of the input
+		 */
+		abstract int fill(byte[] buffer);
+
+		@Override
+		public int NextInt() {
+			int b = skipWhitespace();
+			if (b < 0) {
+				throw new NoSuchElementException();
+			}
+
+			boolean negative = (b == '-');
+			if (b == '-' || b == '+') {
+				b = read();
+			}
+			if (!isDigit(b)) {
+				throw new InputMismatchException("Expected an integer");
+			}
+
+			// accumulate negatively, since the magnitude of Integer.MIN_VALUE has no int
+			int value = 0;
+			do {
+				int digit = b - '0';
+				if (value < (Integer.MIN_VALUE + digit) / 10) {
+					throw new InputMismatchException("Integer out of range");
+				}
+				value = value * 10 - digit;
+				b = read();
+			} while (isDigit(b));
+
+			if (b >= 0 && !isWhitespace(b)) {
+				throw new InputMismatchException("Expected an integer");
+			}
+			if (!negative) {
+				if (value == Integer.MIN_VALUE) {
+					throw new InputMismatchException("Integer out of range");
+				}
+				value = -value;
+			}
+			return value;
+		}
+
+		private int skipWhitespace() {
+			int b;
+			do {
+				b = read();
+			} while (b >= 0 && isWhitespace(b));
+			return b;
+		}
+
+		// Returns the next byte, or -1 at the end of the input
+		private int read() {
+			if (position == limit) {
+				limit = fill(buffer);
+				position = 0;
+				if (limit < 0) {
+					limit = 0;
+					return -1;
+				}
+			}
+			return buffer[position++] & 0xff;
+		}
+
+		private static boolean isDigit(int b) { return b >= '0' && b <= '9'; }
+
+		private static boolean isWhitespace(int b) { return b == ' ' || (b >= '\t' && b <= '\r'); }
+
+		private final byte[] buffer; // block of input being parsed
+		private int position;        // index of the next byte in buffer
+		private int limit;           // number of bytes in buffer
+	}
+
+	private static final String PROMPT = "> ";
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final long MAX_REGION = Integer.MAX_VALUE; // largest buffer a file maps to
+}